@@ -0,0 +1,141 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.*;
+
+
+// Replays a simulated workout (sets separated by rest) through the watch's
+// adaptive sampling, and reports what it saved against how much rep counting
+// suffered.
+//
+// Of what is reported, only the time the gyro was off is a saving in sensor
+// power. The samples saved are those of our raw stream alone, which the
+// watch sends next to the SDK's own: the accelerometer stays on at the SDK's
+// rate, so they save encoding, radio time and processing on the phone, not
+// sensor power.
+//
+// The watch's capture is simulated on a 50Hz recording: while the
+// MotionEnergyDetector says active every sample is kept, and during rest only
+// one every REST_PERIOD_MS. Each set is then counted with PeakRepCounter
+// twice, once from the full recording and once from the adaptive one
+// resampled to 50Hz (as SampleFusion does on the phone), against the number
+// of reps actually done.
+public class AdaptiveSamplingSimulation
+{
+    public static void main(String[] args)
+    {
+        for (float restSeconds : new float[] { 30.0f, 90.0f, 180.0f })
+        {
+            new AdaptiveSamplingSimulation(NUM_SETS, restSeconds).run();
+        }
+    }
+
+    public AdaptiveSamplingSimulation(int numSets, float restSeconds)
+    {
+        m_numSets = numSets;
+        m_restSeconds = restSeconds;
+    }
+
+    public void run()
+    {
+        Fixtures.Workout workout = Fixtures.createWorkout(m_numSets, m_restSeconds, SEED);
+        SampleBlock full = workout.samples;
+        long[] setStarts = workout.setStarts;
+        long[] setEnds = workout.setEnds;
+        int[] repCounts = workout.repCounts;
+
+        // what the watch would have sent
+        MotionEnergyDetector detector = new MotionEnergyDetector();
+        detector.reset(true);
+        SampleBlock adaptive = new SampleBlock(full.size());
+        boolean active = true;
+        long lastKept = Long.MIN_VALUE;
+        long detectionDelay = 0;
+        long gyroOffMs = 0;
+        int nextSet = 0;
+        for (int i = 0; i < full.size(); ++i)
+        {
+            long t = full.getTime(i);
+            if (!active && i > 0)
+            {
+                gyroOffMs += t - full.getTime(i - 1);
+            }
+            if (!active && t - lastKept < REST_PERIOD_MS)
+            {
+                continue;
+            }
+            lastKept = t;
+            adaptive.add(t, full.getValue(i, 0), full.getValue(i, 1), full.getValue(i, 2),
+                    (active ? full.getValue(i, 3) : 0.0f), (active ? full.getValue(i, 4) : 0.0f), (active ? full.getValue(i, 5) : 0.0f));
+
+            boolean wasActive = active;
+            active = detector.update(t, full.getValue(i, 0), full.getValue(i, 1), full.getValue(i, 2));
+            while (nextSet < m_numSets && setEnds[nextSet] <= t)
+            {
+                ++nextSet;
+            }
+            if (active && !wasActive && nextSet < m_numSets && t >= setStarts[nextSet])
+            {
+                detectionDelay += t - setStarts[nextSet];
+            }
+        }
+
+        // count every set both ways
+        PeakRepCounter counter = new PeakRepCounter();
+        int fullError = 0;
+        int adaptiveError = 0;
+        for (int set = 0; set < m_numSets; ++set)
+        {
+            counter.analyze(resample(full, setStarts[set], setEnds[set]));
+            fullError += Math.abs(counter.getResult(0).repCount - repCounts[set]);
+            counter.analyze(resample(adaptive, setStarts[set], setEnds[set]));
+            adaptiveError += Math.abs(counter.getResult(0).repCount - repCounts[set]);
+        }
+
+        System.out.println(String.format(
+                "%d sets, %.0fs rest: gyro off %.0f%% of the time; raw stream kept %d of %d samples (%.0f%% saved); " +
+                "rep count error %.2f full, %.2f adaptive; mean detection delay %dms",
+                m_numSets, m_restSeconds, 100.0f * gyroOffMs / (full.getTime(full.size() - 1) - full.getTime(0)),
+                adaptive.size(), full.size(), 100.0f * (full.size() - adaptive.size()) / full.size(),
+                fullError / (float) m_numSets, adaptiveError / (float) m_numSets, detectionDelay / m_numSets));
+    }
+
+    ////////////////////////////////////////
+
+    private static final int NUM_SETS = 20;
+    private static final long SAMPLE_PERIOD_MS = 20;    // 50Hz
+    private static final long REST_PERIOD_MS = 100;     // 10Hz
+    private static final long SEED = 7;
+
+    private final int m_numSets;
+    private final float m_restSeconds;
+
+    // samples within [start, end), linearly resampled to 50Hz
+    private static SampleBlock resample(SampleBlock samples, long start, long end)
+    {
+        SampleBlock window = new SampleBlock(0);
+        for (int i = 0; i < samples.size(); ++i)
+        {
+            long t = samples.getTime(i);
+            if (t >= start && t < end)
+            {
+                window.add(t, samples.getValue(i, 0), samples.getValue(i, 1), samples.getValue(i, 2),
+                        samples.getValue(i, 3), samples.getValue(i, 4), samples.getValue(i, 5));
+            }
+        }
+
+        int maxSamples = (int) ((end - start) / SAMPLE_PERIOD_MS) + 1;
+        SampleFusion fusion = new SampleFusion(1000.0f / SAMPLE_PERIOD_MS, 1, maxSamples);
+        fusion.setStreams(new SampleSeries[] { window }, 1);
+        int numSamples = fusion.fuse();
+
+        SampleBlock resampled = new SampleBlock(numSamples);
+        float[] values = fusion.getOutput();
+        for (int i = 0; i < numSamples; ++i)
+        {
+            int base = i * fusion.getStride();
+            resampled.add((long) (fusion.getStartTime() + i * fusion.getPeriodMs()),
+                    values[base], values[base + 1], values[base + 2], values[base + 3], values[base + 4], values[base + 5]);
+        }
+        return resampled;
+    }
+}
@@ -0,0 +1,72 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.SampleBlock;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+// Analyzer creation, analyze() and result formatting, for sets of different lengths.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AnalysisBenchmark
+{
+    @Param({"10", "60", "600"})
+    public int seconds;
+
+    @Setup
+    public void setUp()
+    {
+        m_trainer = new StandInAnalyzer.Trainer();
+        for (int i = 0; i < TRAINING_SETS; ++i)
+        {
+            m_trainer.addTrainingDataSet(Fixtures.createSet(TRAINING_SET_SECONDS, i), Fixtures.getRepCount(TRAINING_SET_SECONDS));
+        }
+        m_trainer.train();
+
+        m_set = Fixtures.createSet(seconds, SEED);
+        m_analyzer = StandInAnalyzer.createTrained(m_trainer);
+        m_analyzer.analyze(m_set);
+    }
+
+    @Benchmark
+    public StandInAnalyzer createAnalyzer()
+    {
+        return StandInAnalyzer.createTrained(m_trainer);
+    }
+
+    @Benchmark
+    public int analyze()
+    {
+        m_analyzer.analyze(m_set);
+        return m_analyzer.getNumResults();
+    }
+
+    // what the results label does with each result
+    @Benchmark
+    public String formatResult()
+    {
+        StandInAnalyzer.Result result = m_analyzer.getResult(0);
+        return String.format(
+                "%d reps\n" +
+                        "duration %.2fs\n" +
+                        "rep time %.2f (%.2f-%.2f)\n" +
+                        "variation %.2f\n",
+                result.repCount,
+                result.duration,
+                result.meanRepTime, result.minRepTime, result.maxRepTime,
+                result.internalVariation);
+    }
+
+    ////////////////////////////////////////
+
+    private static final int TRAINING_SETS = 3;
+    private static final float TRAINING_SET_SECONDS = 25.0f;
+    private static final long SEED = 1234;
+
+    private StandInAnalyzer.Trainer m_trainer;
+    private StandInAnalyzer m_analyzer;
+    private SampleBlock m_set;
+}
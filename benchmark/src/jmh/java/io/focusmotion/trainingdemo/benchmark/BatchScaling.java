@@ -0,0 +1,130 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.*;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+// Stored sessions re-counted per second by BatchAnalyzer as its thread count
+// grows, as when the app re-counts them after a model is retrained.
+//
+// NUM_SESSIONS Fixtures sets of 20 to 120 seconds are appended to a
+// SessionStore in a temporary file, and then re-counted from it, loading and
+// decoding included, with 1 to MAX_THREADS threads (or the core count, if
+// more). Results are delivered on a single thread standing for the main
+// thread. Printed per thread count: sessions per second, the best of RUNS
+// batches, and the speedup over one thread. Past the core count, the throughput should stay flat. Throws,
+// and so exits non-zero, if a session fails or a thread count finds a
+// different total rep count.
+public class BatchScaling
+{
+    public static void main(String[] args) throws Exception
+    {
+        File file = File.createTempFile("batch-scaling", ".bin");
+        file.deleteOnExit();
+        SessionStore store = new SessionStore(file);
+        Random random = new Random(SEED);
+        for (int i = 0; i < NUM_SESSIONS; ++i)
+        {
+            store.append(Fixtures.createSet(SET_SECONDS_MIN + random.nextInt(SET_SECONDS_RANGE), random.nextLong()), "", -1);
+        }
+        List<SessionStore.Session> sessions = store.getSessions();
+
+        int numCores = Runtime.getRuntime().availableProcessors();
+        int maxThreads = Math.max(MAX_THREADS, numCores);
+        System.out.println(String.format("%d cores, %d sessions (%.1fMB stored)", numCores, sessions.size(),
+                file.length() / 1e6));
+
+        ExecutorService main = Executors.newSingleThreadExecutor();
+        for (int i = 0; i < WARMUP_RUNS; ++i)
+        {
+            run(store, sessions, numCores, main);
+        }
+
+        float baseline = 0.0f;
+        long repCount = -1;
+        for (int numThreads = 1; numThreads <= maxThreads; ++numThreads)
+        {
+            float bestSeconds = Float.MAX_VALUE;
+            for (int i = 0; i < RUNS; ++i)
+            {
+                Run run = run(store, sessions, numThreads, main);
+                if (repCount >= 0 && run.repCount != repCount)
+                {
+                    throw new AssertionError(String.format("%d threads counted %d reps, 1 thread %d", numThreads,
+                            run.repCount, repCount));
+                }
+                repCount = run.repCount;
+                bestSeconds = Math.min(bestSeconds, run.seconds);
+            }
+            float sessionsPerSecond = sessions.size() / bestSeconds;
+            if (numThreads == 1)
+            {
+                baseline = sessionsPerSecond;
+            }
+            System.out.println(String.format("%2d threads: %6.1f sessions/s, %.2fx one thread", numThreads,
+                    sessionsPerSecond, sessionsPerSecond / baseline));
+        }
+        main.shutdown();
+    }
+
+    ////////////////////////////////////////
+
+    private static final long SEED = 13;
+    private static final int NUM_SESSIONS = 500;
+    private static final int SET_SECONDS_MIN = 20;
+    private static final int SET_SECONDS_RANGE = 101;
+    private static final int MAX_THREADS = 8;
+    private static final int WARMUP_RUNS = 3;
+    private static final int RUNS = 5;
+
+    private static class Run
+    {
+        float seconds;
+        long repCount;
+        String failure; // the first, or null
+    }
+
+    private static Run run(SessionStore store, List<SessionStore.Session> sessions, int numThreads, Executor main)
+            throws InterruptedException
+    {
+        final Run run = new Run();
+        final CountDownLatch complete = new CountDownLatch(1);
+        BatchAnalyzer analyzer = new BatchAnalyzer(store, numThreads, main);
+        long startTime = System.nanoTime();
+        analyzer.start(sessions, PeakRepCounter.Model.DEFAULT,
+                new BatchAnalyzer.Sink()
+                {
+                    @Override
+                    public void onResult(SessionStore.Session session, RepResult result)
+                    {
+                        run.repCount += result.repCount;
+                    }
+
+                    @Override
+                    public void onFailure(SessionStore.Session session, Exception error)
+                    {
+                        if (run.failure == null)
+                        {
+                            run.failure = String.format("session %d: %s", session.id, error);
+                        }
+                    }
+
+                    @Override
+                    public void onBatchComplete(int numAnalyzed, int numFailed, long elapsedMs)
+                    {
+                        complete.countDown();
+                    }
+                } );
+        complete.await();
+        run.seconds = (System.nanoTime() - startTime) / 1e9f;
+        analyzer.shutdown();
+        if (run.failure != null)
+        {
+            throw new AssertionError(run.failure);
+        }
+        return run;
+    }
+}
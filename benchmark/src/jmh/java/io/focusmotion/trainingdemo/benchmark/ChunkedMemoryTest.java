@@ -0,0 +1,171 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.*;
+
+
+// Memory profile of ChunkedAnalyzer against analyzing a whole recording at
+// once, on synthetic recordings of up to an hour of reps.
+//
+// Each recording is generated a sample at a time, so the generator itself
+// holds nothing. The chunked path streams it through ChunkedAnalyzer, spilling
+// to a temporary file; the whole path collects it into a SampleBlock and runs
+// PeakRepCounter over it, as with the SDK's getOutput() and analyze(). Live
+// heap is measured after a full GC every CHECKPOINT_MS of the recording and
+// at the end; both results are printed, so they can be compared, and the spill
+// file is read back to check that it holds every sample.
+public class ChunkedMemoryTest
+{
+    public static void main(String[] args) throws IOException
+    {
+        // warm up the JIT first; live heap is then measured against what's left
+        new ChunkedMemoryTest(WARMUP_MINUTES, 0, false).run();
+        long baseline = getLiveHeap();
+
+        for (int minutes : new int[] { 10, 30, 60 })
+        {
+            new ChunkedMemoryTest(minutes, baseline, true).run();
+        }
+    }
+
+    public ChunkedMemoryTest(int minutes, long baseline, boolean verbose)
+    {
+        m_numSamples = (long) (minutes * 60 * Fixtures.SAMPLE_RATE);
+        m_minutes = minutes;
+        m_baseline = baseline;
+        m_verbose = verbose;
+    }
+
+    public void run() throws IOException
+    {
+        File spillFile = File.createTempFile("chunked", ".spill");
+        try
+        {
+            runChunked(spillFile);
+            runWhole();
+        }
+        finally
+        {
+            spillFile.delete();
+        }
+    }
+
+    ////////////////////////////////////////
+
+    private static final long CHECKPOINT_MS = 5 * 60 * 1000;
+    private static final long SEED = 3;
+    private static final int WARMUP_MINUTES = 5;
+    private static final int NUM_COLLECTIONS = 3;
+    private static final int SPILL_READ_SAMPLES = 4096;
+
+    private final long m_numSamples;
+    private final int m_minutes;
+    private final long m_baseline;
+    private final boolean m_verbose;
+
+    private void runChunked(File spillFile) throws IOException
+    {
+        long peak = 0;
+
+        ChunkedAnalyzer analyzer = new ChunkedAnalyzer(new PeakRepCounter(), spillFile);
+        analyzer.reset();
+        Fixtures.SetGenerator generator = new Fixtures.SetGenerator(SEED);
+        float[] values = new float[SampleBlock.NUM_CHANNELS];
+        long startTime = System.nanoTime();
+        for (long i = 0; i < m_numSamples; ++i)
+        {
+            long time = generator.getTime();
+            generator.next(values);
+            analyzer.add(time, values[0], values[1], values[2], values[3], values[4], values[5]);
+            if (time > 0 && time % CHECKPOINT_MS == 0)
+            {
+                peak = Math.max(peak, getLiveHeap() - m_baseline);
+            }
+        }
+        RepResult result = analyzer.finish(new RepResult());
+        long elapsedMs = (System.nanoTime() - startTime) / 1000000;
+        peak = Math.max(peak, getLiveHeap() - m_baseline);
+
+        // every sample should be in the spill file
+        long numSpilled = 0;
+        ChunkedAnalyzer.SpillReader reader = new ChunkedAnalyzer.SpillReader(spillFile);
+        SampleBlock block = new SampleBlock(SPILL_READ_SAMPLES);
+        for (int count; (count = reader.read(block, SPILL_READ_SAMPLES)) > 0; )
+        {
+            numSpilled += count;
+        }
+        reader.close();
+
+        print("chunked", result, peak, elapsedMs);
+        if (m_verbose)
+        {
+            System.out.println(String.format("    spilled %d of %d samples, %d KB", numSpilled, m_numSamples, spillFile.length() / 1024));
+        }
+    }
+
+    private void runWhole()
+    {
+        long peak = 0;
+
+        SampleBlock recording = new SampleBlock(0);
+        Fixtures.SetGenerator generator = new Fixtures.SetGenerator(SEED);
+        float[] values = new float[SampleBlock.NUM_CHANNELS];
+        long startTime = System.nanoTime();
+        for (long i = 0; i < m_numSamples; ++i)
+        {
+            long time = generator.getTime();
+            generator.next(values);
+            recording.add(time, values[0], values[1], values[2], values[3], values[4], values[5]);
+            if (time > 0 && time % CHECKPOINT_MS == 0)
+            {
+                peak = Math.max(peak, getLiveHeap() - m_baseline);
+            }
+        }
+        PeakRepCounter counter = new PeakRepCounter();
+        counter.analyze(recording);
+        RepResult result = new RepResult();
+        result.set(counter.getResult(0));
+        long elapsedMs = (System.nanoTime() - startTime) / 1000000;
+        peak = Math.max(peak, getLiveHeap() - m_baseline);
+
+        print("whole", result, peak, elapsedMs);
+        recording.clear();
+    }
+
+    private void print(String name, RepResult result, long peakHeap, long elapsedMs)
+    {
+        if (!m_verbose)
+        {
+            return;
+        }
+        System.out.println(String.format(
+                "%d min, %-7s: peak live heap %6d KB; %d reps (%d done), rep time %.3f (%.2f-%.2f), variation %.3f; %dms",
+                m_minutes, name, peakHeap / 1024, result.repCount, Fixtures.getRepCount(m_minutes * 60.0f),
+                result.meanRepTime, result.minRepTime, result.maxRepTime, result.internalVariation, elapsedMs));
+    }
+
+    // heap in use right after a full collection, as the collector reports it, so allocations since don't count;
+    // what's left after a collection can still include some garbage, so take the least over a few of them
+    private static long getLiveHeap()
+    {
+        long live = Long.MAX_VALUE;
+        for (int i = 0; i < NUM_COLLECTIONS; ++i)
+        {
+            System.gc();
+            long used = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            {
+                MemoryUsage usage = pool.getCollectionUsage();
+                if (pool.getType() == MemoryType.HEAP && usage != null)
+                {
+                    used += usage.getUsed();
+                }
+            }
+            live = Math.min(live, used);
+        }
+        return live;
+    }
+}
@@ -0,0 +1,93 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.*;
+
+import java.util.*;
+
+
+// Cross-validates PeakRepCounter models on simulated labeled sessions, as
+// the app does after training, for a range of caps on the number of training
+// data sets, so the cap can be chosen against accuracy and training time.
+//
+// The sets are 15 to 45 seconds at a few tempos and amplitudes. As in the
+// app, where every set is labeled 10 reps, some labels are wrong: every
+// MISLABELED-th set is labeled 10 whatever was done. Each cap is run on one
+// thread and on NUM_THREADS, and the per-fold results are printed for the
+// uncapped run.
+public class CrossValidationSimulation
+{
+    public static void main(String[] args) throws InterruptedException
+    {
+        Random random = new Random(SEED);
+        List<SampleBlock> sets = new ArrayList<>();
+        int[] repCounts = new int[NUM_SETS];
+        for (int i = 0; i < NUM_SETS; ++i)
+        {
+            float seconds = 15 + random.nextInt(31);
+            float tempo = TEMPOS[random.nextInt(TEMPOS.length)];
+            float amplitude = AMPLITUDES[random.nextInt(AMPLITUDES.length)];
+            sets.add(Fixtures.createSet(seconds, tempo, amplitude, random.nextLong()));
+            repCounts[i] = (i % MISLABELED == MISLABELED - 1 ? 10 : Fixtures.getRepCount(seconds));
+        }
+        System.out.println(String.format("%d sets, %d folds; %d processors", NUM_SETS, NUM_FOLDS,
+                Runtime.getRuntime().availableProcessors()));
+
+        CrossValidator serial = new CrossValidator(1);
+        CrossValidator parallel = new CrossValidator(NUM_THREADS);
+        try
+        {
+            // warm up the JIT first
+            for (int i = 0; i < WARMUP_RUNS; ++i)
+            {
+                serial.evaluate(sets, repCounts, NUM_FOLDS, Integer.MAX_VALUE);
+            }
+
+            for (int maxTrainingSets : MAX_TRAINING_SETS)
+            {
+                CrossValidator.Report serialReport = serial.evaluate(sets, repCounts, NUM_FOLDS, maxTrainingSets);
+                CrossValidator.Report report = parallel.evaluate(sets, repCounts, NUM_FOLDS, maxTrainingSets);
+                long trainNs = 0;
+                long inferenceNs = 0;
+                for (CrossValidator.Fold fold : report.folds)
+                {
+                    trainNs += fold.trainNs;
+                    inferenceNs += fold.inferenceNs;
+                }
+                System.out.println(String.format(
+                        "max %s training sets: rep count error %.2f, rep time error %.3fs; " +
+                        "train %.3fms, count %.2fms per fold; %dms on 1 thread, %dms on %d",
+                        (maxTrainingSets == Integer.MAX_VALUE ? "all" : String.format("%3d", maxTrainingSets)),
+                        report.repCountError, report.repTimeError, trainNs / 1e6 / report.folds.size(),
+                        inferenceNs / 1e6 / report.folds.size(), serialReport.elapsedMs, report.elapsedMs, NUM_THREADS));
+                if (maxTrainingSets == Integer.MAX_VALUE)
+                {
+                    for (CrossValidator.Fold fold : report.folds)
+                    {
+                        System.out.println(String.format(
+                                "    fold %d: %d training, %d test sets; rep count error %.2f, rep time error %.3fs; " +
+                                "train %.3fms, count %.2fms",
+                                fold.index, fold.numTrainingSets, fold.numTestSets, fold.repCountError, fold.repTimeError,
+                                fold.trainNs / 1e6, fold.inferenceNs / 1e6));
+                    }
+                }
+            }
+        }
+        finally
+        {
+            serial.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    ////////////////////////////////////////
+
+    private static final long SEED = 13;
+    private static final int NUM_SETS = 100;
+    private static final int NUM_FOLDS = 5;
+    private static final int NUM_THREADS = 4;
+    private static final int WARMUP_RUNS = 5;
+    private static final int MISLABELED = 8;
+    private static final float[] TEMPOS = { 0.8f, 1.0f, 1.3f };
+    private static final float[] AMPLITUDES = { 0.7f, 1.0f, 1.4f };
+    private static final int[] MAX_TRAINING_SETS = { 2, 5, 10, 20, 40, Integer.MAX_VALUE };
+}
@@ -0,0 +1,343 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.*;
+
+import java.util.*;
+
+
+// Replays recorded or synthetic sample sets as if they came from devices, for
+// load and soak testing without hardware; runs on a plain JVM.
+//
+// The SDK's Device can't be created or subclassed outside the SDK, so
+// simulated devices report to a Listener that mirrors DeviceListener;
+// SimulatedPhone passes its events on as the app's DeviceListener does. Events
+// are scheduled on a virtual clock (in milliseconds) and fired in order of
+// time, then of scheduling, so a given script always produces the same
+// callbacks in the same order. While a set is recorded, its samples are
+// delivered in batches every DATA_INTERVAL_MS of virtual time, each followed
+// by onDataReceived(). run() paces the virtual clock at a multiple of real
+// time, or replays as fast as the listener keeps up.
+public class DeviceSimulator
+{
+    public interface Listener
+    {
+        void onAvailableChanged(SimulatedDevice device, boolean available);
+        void onConnectedChanged(SimulatedDevice device, boolean connected);
+        void onRecordingChanged(SimulatedDevice device, boolean recording);
+        void onDataReceived(SimulatedDevice device);
+        void onConnectionFailed(SimulatedDevice device, String message);
+    }
+
+    public static class SimulatedDevice
+    {
+        SimulatedDevice(String name)
+        {
+            m_name = name;
+        }
+
+        public String getName()
+        {
+            return m_name;
+        }
+
+        public boolean isAvailable()
+        {
+            return m_available;
+        }
+
+        public boolean isConnected()
+        {
+            return m_connected;
+        }
+
+        public boolean isRecording()
+        {
+            return m_recording;
+        }
+
+        // Samples of the current or last recording, on the virtual clock.
+        public SampleBlock getOutput()
+        {
+            return m_output;
+        }
+
+        @Override
+        public String toString()
+        {
+            return m_name;
+        }
+
+        ////////////////////////////////////////
+
+        private final String m_name;
+        private boolean m_available;
+        private boolean m_connected;
+        private boolean m_recording;
+        private SampleBlock m_output = new SampleBlock(0);
+
+        // the set being replayed
+        private SampleSeries m_set;
+        private long m_setStartTime;
+        private int m_nextSample;
+    }
+
+    public static final long DATA_INTERVAL_MS = 100;
+
+    public DeviceSimulator(Listener listener)
+    {
+        m_listener = listener;
+    }
+
+    public SimulatedDevice addDevice(String name)
+    {
+        SimulatedDevice device = new SimulatedDevice(name);
+        m_devices.add(device);
+        return device;
+    }
+
+    public List<SimulatedDevice> getDevices()
+    {
+        return Collections.unmodifiableList(m_devices);
+    }
+
+    public void scheduleAvailable(SimulatedDevice device, long time, boolean available)
+    {
+        schedule(time, available ? EVENT_AVAILABLE : EVENT_UNAVAILABLE, device, null);
+    }
+
+    public void scheduleConnect(SimulatedDevice device, long time)
+    {
+        schedule(time, EVENT_CONNECT, device, null);
+    }
+
+    public void scheduleDisconnect(SimulatedDevice device, long time)
+    {
+        schedule(time, EVENT_DISCONNECT, device, null);
+    }
+
+    public void scheduleConnectionFailure(SimulatedDevice device, long time, String message)
+    {
+        schedule(time, EVENT_CONNECTION_FAILED, device, message);
+    }
+
+    // Record set on device starting at time; returns the virtual time recording stops.
+    public long scheduleSet(SimulatedDevice device, long time, SampleSeries set)
+    {
+        schedule(time, EVENT_START_RECORDING, device, set);
+        return time + getDuration(set);
+    }
+
+    // Current virtual time, in milliseconds.
+    public long getTime()
+    {
+        return m_time;
+    }
+
+    public int getNumPendingEvents()
+    {
+        return m_events.size();
+    }
+
+    // Fire every scheduled event, with the virtual clock running speed times faster than real time
+    // (1 to 100, say), or as fast as possible if speed is 0.
+    public void run(float speed) throws InterruptedException
+    {
+        long realStart = System.nanoTime();
+        long virtualStart = m_time;
+
+        while (!m_events.isEmpty())
+        {
+            Event event = m_events.poll();
+            if (speed > 0.0f)
+            {
+                long due = realStart + (long) ((event.time - virtualStart) * 1e6 / speed);
+                long wait = due - System.nanoTime();
+                if (wait > 0)
+                {
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                }
+            }
+            m_time = event.time;
+            fire(event);
+        }
+    }
+
+    ////////////////////////////////////////
+
+    private static final int EVENT_AVAILABLE = 0;
+    private static final int EVENT_UNAVAILABLE = 1;
+    private static final int EVENT_CONNECT = 2;
+    private static final int EVENT_DISCONNECT = 3;
+    private static final int EVENT_CONNECTION_FAILED = 4;
+    private static final int EVENT_START_RECORDING = 5;
+    private static final int EVENT_DATA = 6;
+    private static final int EVENT_STOP_RECORDING = 7;
+
+    private static class Event implements Comparable<Event>
+    {
+        Event(long time, long sequence, int type, SimulatedDevice device, Object argument)
+        {
+            this.time = time;
+            this.sequence = sequence;
+            this.type = type;
+            this.device = device;
+            this.argument = argument;
+        }
+
+        final long time;
+        final long sequence;
+        final int type;
+        final SimulatedDevice device;
+        final Object argument;
+
+        @Override
+        public int compareTo(Event other)
+        {
+            if (time != other.time)
+            {
+                return (time < other.time ? -1 : 1);
+            }
+            return (sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1));
+        }
+    }
+
+    private final Listener m_listener;
+    private final List<SimulatedDevice> m_devices = new ArrayList<>();
+    private final PriorityQueue<Event> m_events = new PriorityQueue<>();
+    private long m_nextSequence;
+    private long m_time;
+
+    private void schedule(long time, int type, SimulatedDevice device, Object argument)
+    {
+        m_events.add(new Event(time, m_nextSequence++, type, device, argument));
+    }
+
+    private void fire(Event event)
+    {
+        SimulatedDevice device = event.device;
+        switch (event.type)
+        {
+            case EVENT_AVAILABLE:
+            case EVENT_UNAVAILABLE:
+                boolean available = (event.type == EVENT_AVAILABLE);
+                if (device.m_available != available)
+                {
+                    if (!available)
+                    {
+                        disconnect(device);
+                    }
+                    device.m_available = available;
+                    m_listener.onAvailableChanged(device, available);
+                }
+                break;
+
+            case EVENT_CONNECT:
+                if (device.m_available && !device.m_connected)
+                {
+                    device.m_connected = true;
+                    m_listener.onConnectedChanged(device, true);
+                }
+                break;
+
+            case EVENT_DISCONNECT:
+                disconnect(device);
+                break;
+
+            case EVENT_CONNECTION_FAILED:
+                m_listener.onConnectionFailed(device, (String) event.argument);
+                break;
+
+            case EVENT_START_RECORDING:
+                if (device.m_connected && !device.m_recording)
+                {
+                    SampleSeries set = (SampleSeries) event.argument;
+                    device.m_set = set;
+                    device.m_setStartTime = m_time;
+                    device.m_nextSample = 0;
+                    device.m_output = new SampleBlock(set.size());
+                    device.m_recording = true;
+                    m_listener.onRecordingChanged(device, true);
+                    scheduleNextData(device, set);
+                }
+                break;
+
+            // ignored if the set's recording was cut short by a disconnect
+            case EVENT_DATA:
+                if (device.m_recording && device.m_set == event.argument)
+                {
+                    deliverSamples(device);
+                    m_listener.onDataReceived(device);
+                    scheduleNextData(device, device.m_set);
+                }
+                break;
+
+            case EVENT_STOP_RECORDING:
+                if (device.m_recording && device.m_set == event.argument)
+                {
+                    deliverSamples(device);
+                    stopRecording(device);
+                }
+                break;
+        }
+    }
+
+    // data is scheduled one batch at a time, so long soak scripts don't queue millions of events
+    private void scheduleNextData(SimulatedDevice device, SampleSeries set)
+    {
+        long end = device.m_setStartTime + getDuration(set);
+        long next = m_time + DATA_INTERVAL_MS;
+        if (next < end)
+        {
+            schedule(next, EVENT_DATA, device, set);
+        }
+        else
+        {
+            schedule(end, EVENT_STOP_RECORDING, device, set);
+        }
+    }
+
+    private static long getDuration(SampleSeries set)
+    {
+        return (set.size() > 0 ? set.getTime(set.size() - 1) - set.getTime(0) : 0);
+    }
+
+    // append the set's samples up to the current time to the device's output
+    private void deliverSamples(SimulatedDevice device)
+    {
+        SampleSeries set = device.m_set;
+        while (device.m_nextSample < set.size())
+        {
+            int sample = device.m_nextSample;
+            long time = device.m_setStartTime + (set.getTime(sample) - set.getTime(0));
+            if (time > m_time)
+            {
+                break;
+            }
+            device.m_output.add(time,
+                    set.getValue(sample, SampleBlock.ACCEL_X), set.getValue(sample, SampleBlock.ACCEL_Y), set.getValue(sample, SampleBlock.ACCEL_Z),
+                    set.getValue(sample, SampleBlock.GYRO_X), set.getValue(sample, SampleBlock.GYRO_Y), set.getValue(sample, SampleBlock.GYRO_Z));
+            ++device.m_nextSample;
+        }
+    }
+
+    private void stopRecording(SimulatedDevice device)
+    {
+        device.m_recording = false;
+        device.m_set = null;
+        m_listener.onRecordingChanged(device, false);
+    }
+
+    private void disconnect(SimulatedDevice device)
+    {
+        if (!device.m_connected)
+        {
+            return;
+        }
+        if (device.m_recording)
+        {
+            stopRecording(device);
+        }
+        device.m_connected = false;
+        m_listener.onConnectedChanged(device, false);
+    }
+}
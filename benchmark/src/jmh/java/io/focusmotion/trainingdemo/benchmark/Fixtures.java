@@ -0,0 +1,170 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.SampleBlock;
+
+import java.util.Random;
+
+
+// Synthetic recordings: a wrist-worn sensor doing reps at about REP_PERIOD
+// seconds each, with some variation between reps and sensor noise, and whole
+// workouts of such sets separated by rest. Deterministic for a given seed, so
+// benchmark runs are comparable.
+public class Fixtures
+{
+    public static final float SAMPLE_RATE = 50.0f;  // Hz
+    public static final float REP_PERIOD = 2.5f;    // seconds
+
+    // A continuous recording of rest, set, rest, set, ..., rest.
+    public static class Workout
+    {
+        public final SampleBlock samples = new SampleBlock(0);
+        public final long[] setStarts;
+        public final long[] setEnds;
+        public final int[] repCounts;
+
+        Workout(int numSets)
+        {
+            setStarts = new long[numSets];
+            setEnds = new long[numSets];
+            repCounts = new int[numSets];
+        }
+    }
+
+    // Generates the samples of a set one at a time, for streams too long to hold in memory.
+    public static class SetGenerator
+    {
+        public SetGenerator(long seed)
+        {
+            m_random = new Random(seed);
+        }
+
+        // Time of the next sample, in milliseconds from the start.
+        public long getTime()
+        {
+            return (long) (m_index * 1000 / SAMPLE_RATE);
+        }
+
+        // Fill values with the next sample's NUM_CHANNELS values.
+        public void next(float[] values)
+        {
+            m_phase += 1.0 / (m_period * SAMPLE_RATE);
+            if (m_phase >= 1.0)
+            {
+                // next rep; vary its length a little
+                m_phase -= 1.0;
+                m_period = REP_PERIOD * (0.85 + 0.3 * m_random.nextDouble());
+            }
+            double motion = Math.sin(2.0 * Math.PI * m_phase);
+
+            values[SampleBlock.ACCEL_X] = (float) (3.0 * motion + 0.3 * m_random.nextGaussian());
+            values[SampleBlock.ACCEL_Y] = (float) (9.81 + 1.5 * motion + 0.3 * m_random.nextGaussian());
+            values[SampleBlock.ACCEL_Z] = (float) (0.3 * m_random.nextGaussian());
+            values[SampleBlock.GYRO_X] = (float) (1.2 * Math.cos(2.0 * Math.PI * m_phase) + 0.05 * m_random.nextGaussian());
+            values[SampleBlock.GYRO_Y] = (float) (0.05 * m_random.nextGaussian());
+            values[SampleBlock.GYRO_Z] = (float) (0.05 * m_random.nextGaussian());
+            ++m_index;
+        }
+
+        private final Random m_random;
+        private long m_index;
+        private double m_phase = 0.0;
+        private double m_period = REP_PERIOD;
+    }
+
+    public static SampleBlock createSet(float seconds, long seed)
+    {
+        SetGenerator generator = new SetGenerator(seed);
+        int numSamples = (int) (seconds * SAMPLE_RATE);
+        SampleBlock block = new SampleBlock(numSamples);
+        float[] values = new float[SampleBlock.NUM_CHANNELS];
+        for (int i = 0; i < numSamples; ++i)
+        {
+            long time = generator.getTime();
+            generator.next(values);
+            block.add(time, values[0], values[1], values[2], values[3], values[4], values[5]);
+        }
+        return block;
+    }
+
+    // The reps of createSet(seconds, seed), each tempo times as long and with amplitude times the motion.
+    public static SampleBlock createSet(float seconds, float tempo, float amplitude, long seed)
+    {
+        SampleBlock set = createSet(seconds, seed);
+
+        // stretch time by the tempo, and resample to SAMPLE_RATE
+        SampleBlock block = new SampleBlock(0);
+        long end = (long) (set.getTime(set.size() - 1) * tempo);
+        for (long time = 0; time <= end; time += SAMPLE_PERIOD_MS)
+        {
+            int i = Math.min((int) (time / tempo / SAMPLE_PERIOD_MS), set.size() - 1);
+            block.add(time,
+                    amplitude * set.getValue(i, SampleBlock.ACCEL_X),
+                    9.81f + amplitude * (set.getValue(i, SampleBlock.ACCEL_Y) - 9.81f),
+                    amplitude * set.getValue(i, SampleBlock.ACCEL_Z),
+                    amplitude * set.getValue(i, SampleBlock.GYRO_X),
+                    set.getValue(i, SampleBlock.GYRO_Y), set.getValue(i, SampleBlock.GYRO_Z));
+        }
+        return block;
+    }
+
+    public static int getRepCount(float seconds)
+    {
+        return (int) (seconds / REP_PERIOD);
+    }
+
+    // numSets sets of 20 to 60 seconds, with restSeconds of rest before, between and after them.
+    public static Workout createWorkout(int numSets, float restSeconds, long seed)
+    {
+        Random random = new Random(seed);
+        Workout workout = new Workout(numSets);
+
+        long time = 0;
+        for (int set = 0; set < numSets; ++set)
+        {
+            time = addRest(workout.samples, time, restSeconds, random);
+            float seconds = 20 + random.nextInt(41);
+            SampleBlock samples = createSet(seconds, random.nextLong());
+            workout.setStarts[set] = time;
+            for (int i = 0; i < samples.size(); ++i)
+            {
+                workout.samples.add(time + samples.getTime(i),
+                        samples.getValue(i, 0), samples.getValue(i, 1), samples.getValue(i, 2),
+                        samples.getValue(i, 3), samples.getValue(i, 4), samples.getValue(i, 5));
+            }
+            time += samples.getTime(samples.size() - 1) + SAMPLE_PERIOD_MS;
+            workout.setEnds[set] = time;
+            workout.repCounts[set] = getRepCount(seconds);
+        }
+        addRest(workout.samples, time, restSeconds, random);
+        return workout;
+    }
+
+    // Wrist held still from time for seconds: gravity, sensor noise, and now and then a small shift.
+    // Returns the time after the rest.
+    public static long addRest(SampleBlock block, long time, float seconds, Random random)
+    {
+        long end = time + (long) (seconds * 1000);
+        float shift = 0.0f;
+        for (; time < end; time += SAMPLE_PERIOD_MS)
+        {
+            if (random.nextInt(500) == 0)
+            {
+                shift = (float) (0.5 * random.nextGaussian());
+            }
+            block.add(time,
+                    (float) (shift + 0.3 * random.nextGaussian()),
+                    (float) (9.81 + 0.3 * random.nextGaussian()),
+                    (float) (0.3 * random.nextGaussian()),
+                    (float) (0.05 * random.nextGaussian()),
+                    (float) (0.05 * random.nextGaussian()),
+                    (float) (0.05 * random.nextGaussian()));
+        }
+        return time;
+    }
+
+    ////////////////////////////////////////
+
+    private static final long SAMPLE_PERIOD_MS = (long) (1000 / SAMPLE_RATE);
+
+    private Fixtures() {}
+}
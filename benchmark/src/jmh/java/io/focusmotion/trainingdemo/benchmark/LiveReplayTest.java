@@ -0,0 +1,194 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.*;
+
+import java.util.Random;
+
+
+// Replays recorded sample streams the way LiveAnalysis counts them, and checks
+// that the streaming count is the batch count.
+//
+// Each recording arrives as the watch sends it, in frames of FRAME_SAMPLES at
+// the device's sample rate, into a small SampleRingBuffer that wraps many
+// times over. Once per LIVE_INTERVAL_MS of the recording, the samples received
+// since the last update are added to a PeakRepCounter and a live estimate
+// taken, as on the analysis thread; at the end the count is finished. The
+// finished result must equal PeakRepCounter.analyze() over the whole
+// recording, field for field. Recordings are 5 seconds to 10 minutes, at
+// several tempos and amplitudes, with jittered timestamps, and some start at a
+// lower rate, so the smoothing window changes partway through. Also printed:
+// how far the last live estimate was from the final count, and the time per
+// update early and late in the longest recordings, which should stay flat.
+// Throws, and so exits non-zero, if a result differs.
+public class LiveReplayTest
+{
+    public static void main(String[] args)
+    {
+        Random random = new Random(SEED);
+        PeakRepCounter batch = new PeakRepCounter();
+        PeakRepCounter streaming = new PeakRepCounter();
+        int numRecordings = 0;
+        long liveError = 0;
+        for (float seconds : SECONDS)
+        {
+            for (int i = 0; i < RECORDINGS_PER_LENGTH; ++i)
+            {
+                SampleBlock recording = createRecording(seconds, (i % 3 == 0), random);
+                batch.analyze(recording);
+                RepResult expected = batch.getResult(0);
+
+                Replay replay = new Replay(recording, streaming);
+                replay.run();
+                check(streaming.getNumResults() == 1, "no streaming result");
+                RepResult actual = streaming.getResult(0);
+                check(equal(expected, actual), String.format("%.0fs recording %d: streaming %s, batch %s",
+                        seconds, i, format(actual), format(expected)));
+
+                liveError += Math.abs(replay.lastLive.repCount - actual.repCount);
+                ++numRecordings;
+                if (i == 0)
+                {
+                    System.out.println(String.format("%4.0fs: %3d reps; %4d updates, %.3fms each in the first minute, " +
+                            "%.3fms in the last; finish %.3fms", seconds, actual.repCount, replay.numUpdates,
+                            replay.firstMinuteNs / 1e6 / Math.max(replay.numFirstMinute, 1),
+                            replay.lastMinuteNs / 1e6 / Math.max(replay.numLastMinute, 1), replay.finishNs / 1e6));
+                }
+            }
+        }
+        System.out.println(String.format("%d recordings: streaming and batch results equal; last live estimate off by %.2f reps on average",
+                numRecordings, liveError / (float) numRecordings));
+    }
+
+    ////////////////////////////////////////
+
+    private static final long SEED = 11;
+    private static final float[] SECONDS = { 5, 20, 45, 90, 180, 600 };
+    private static final int RECORDINGS_PER_LENGTH = 12;
+    private static final float[] TEMPOS = { 0.6f, 1.0f, 1.5f };
+    private static final float[] AMPLITUDES = { 0.5f, 1.0f, 2.0f };
+    private static final int FRAME_SAMPLES = 50;        // as the watch's SampleBatcher
+    private static final long LIVE_INTERVAL_MS = 1000;  // as LiveAnalysis
+    private static final int BUFFER_CAPACITY = 1000;
+    private static final long MINUTE_MS = 60 * 1000;
+
+    // one recording through the ring buffer and the streaming counter
+    private static class Replay
+    {
+        Replay(SampleBlock recording, PeakRepCounter counter)
+        {
+            m_recording = recording;
+            m_counter = counter;
+        }
+
+        void run()
+        {
+            m_counter.begin();
+            m_buffer.clear();
+            m_numAdded = 0;
+            long end = m_recording.getTime(m_recording.size() - 1);
+            long nextUpdate = m_recording.getTime(0) + LIVE_INTERVAL_MS;
+            for (int start = 0; start < m_recording.size(); start += FRAME_SAMPLES)
+            {
+                // a frame arrives
+                int count = Math.min(FRAME_SAMPLES, m_recording.size() - start);
+                for (int i = start; i < start + count; ++i)
+                {
+                    m_buffer.add(m_recording.getTime(i),
+                            m_recording.getValue(i, 0), m_recording.getValue(i, 1), m_recording.getValue(i, 2),
+                            m_recording.getValue(i, 3), m_recording.getValue(i, 4), m_recording.getValue(i, 5));
+                }
+
+                long time = m_recording.getTime(start + count - 1);
+                if (time >= nextUpdate)
+                {
+                    nextUpdate = time + LIVE_INTERVAL_MS;
+                    long startTime = System.nanoTime();
+                    addNewSamples();
+                    m_counter.update(lastLive);
+                    long elapsed = System.nanoTime() - startTime;
+                    ++numUpdates;
+                    if (time < MINUTE_MS)
+                    {
+                        firstMinuteNs += elapsed;
+                        ++numFirstMinute;
+                    }
+                    else if (time > end - MINUTE_MS)
+                    {
+                        lastMinuteNs += elapsed;
+                        ++numLastMinute;
+                    }
+                }
+            }
+
+            long startTime = System.nanoTime();
+            addNewSamples();
+            m_counter.finish();
+            finishNs = System.nanoTime() - startTime;
+        }
+
+        final RepResult lastLive = new RepResult();
+        int numUpdates;
+        long firstMinuteNs;
+        int numFirstMinute;
+        long lastMinuteNs;
+        int numLastMinute;
+        long finishNs;
+
+        private final SampleBlock m_recording;
+        private final PeakRepCounter m_counter;
+        private final SampleRingBuffer m_buffer = new SampleRingBuffer(BUFFER_CAPACITY);
+        private final SampleRingBuffer.View m_view = new SampleRingBuffer.View();
+        private long m_numAdded;
+
+        // as LiveAnalysis does on the analysis thread
+        private void addNewSamples()
+        {
+            long total = m_buffer.getTotalSamples();
+            int count = (int) Math.min(total - m_numAdded, m_buffer.size());
+            check(total - m_numAdded <= m_buffer.size(), "ring buffer overran between updates");
+            m_numAdded = total;
+            m_buffer.view(m_view, m_buffer.size() - count, count);
+            m_counter.add(m_view, 0, count);
+        }
+    }
+
+    // a set at one of TEMPOS and AMPLITUDES, with timestamps jittered by a few ms, and optionally its first
+    // seconds at 35Hz instead of 50
+    private static SampleBlock createRecording(float seconds, boolean slowStart, Random random)
+    {
+        float tempo = TEMPOS[random.nextInt(TEMPOS.length)];
+        float amplitude = AMPLITUDES[random.nextInt(AMPLITUDES.length)];
+        SampleBlock set = Fixtures.createSet(seconds, tempo, amplitude, random.nextLong());
+
+        SampleBlock recording = new SampleBlock(set.size());
+        long time = 0;
+        for (int i = 0; i < set.size(); ++i)
+        {
+            boolean slow = (slowStart && time < 3000);
+            time += (slow ? 28 : 20) + random.nextInt(5) - 2;
+            recording.add(time, set.getValue(i, 0), set.getValue(i, 1), set.getValue(i, 2),
+                    set.getValue(i, 3), set.getValue(i, 4), set.getValue(i, 5));
+        }
+        return recording;
+    }
+
+    private static boolean equal(RepResult a, RepResult b)
+    {
+        return a.repCount == b.repCount && a.duration == b.duration && a.meanRepTime == b.meanRepTime &&
+                a.minRepTime == b.minRepTime && a.maxRepTime == b.maxRepTime && a.internalVariation == b.internalVariation;
+    }
+
+    private static String format(RepResult result)
+    {
+        return String.format("%d reps, rep time %s (%s-%s), variation %s", result.repCount, result.meanRepTime,
+                result.minRepTime, result.maxRepTime, result.internalVariation);
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+        {
+            throw new AssertionError(message);
+        }
+    }
+}
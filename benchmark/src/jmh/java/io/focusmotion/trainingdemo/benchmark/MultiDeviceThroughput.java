@@ -0,0 +1,162 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+
+// Analysis throughput and latency as devices are added, with the threading
+// DeviceManager sets up: one SerialWorker per device, as each device's
+// AnalysisPipeline has, classify work for every device on one shared pool
+// sized to the cores, and results delivered on a single "main" thread.
+//
+// Each of 1 to MAX_DEVICES devices records NUM_SETS sets; all devices stop
+// each set at the same moment, the worst case, and every set is classified
+// against NUM_MOVEMENTS stand-in analyzers. Printed per device count: sets
+// analyzed per second, stop-to-result latency, and the longest time the main
+// thread spent on one delivery. As on AnalysisPipeline, no set is dropped when
+// a device's worker is behind; it waits its turn. Once the devices outnumber
+// the cores, the latency of a set grows with the device count: per-device
+// workers keep one device's analysis from queueing behind another's, but
+// share the cores.
+public class MultiDeviceThroughput
+{
+    public static void main(String[] args) throws Exception
+    {
+        List<StandInAnalyzer> analyzers = new ArrayList<>();
+        for (int i = 0; i < NUM_MOVEMENTS; ++i)
+        {
+            StandInAnalyzer.Trainer trainer = new StandInAnalyzer.Trainer();
+            float seconds = 20.0f + 10.0f * i;
+            trainer.addTrainingDataSet(Fixtures.createSet(seconds, i), Fixtures.getRepCount(seconds));
+            trainer.train();
+            analyzers.add(StandInAnalyzer.createTrained(trainer));
+        }
+        Random random = new Random(SEED);
+        SampleBlock[] sets = new SampleBlock[NUM_SETS * MAX_DEVICES];
+        for (int i = 0; i < sets.length; ++i)
+        {
+            sets[i] = Fixtures.createSet(SET_SECONDS_MIN + random.nextInt(SET_SECONDS_RANGE), random.nextLong());
+        }
+
+        System.out.println(String.format("%d cores, %d movements", Runtime.getRuntime().availableProcessors(), NUM_MOVEMENTS));
+        for (int i = 0; i < WARMUP_RUNS; ++i)
+        {
+            run(MAX_DEVICES, analyzers, sets, false);
+        }
+        for (int numDevices = 1; numDevices <= MAX_DEVICES; ++numDevices)
+        {
+            run(numDevices, analyzers, sets, true);
+        }
+    }
+
+    ////////////////////////////////////////
+
+    private static final long SEED = 3;
+    private static final int MAX_DEVICES = 4;
+    private static final int NUM_SETS = 40;
+    private static final int NUM_MOVEMENTS = 3;
+    private static final int SET_SECONDS_MIN = 20;
+    private static final int SET_SECONDS_RANGE = 60;
+    private static final int WARMUP_RUNS = 10;
+
+    private static void run(int numDevices, final List<StandInAnalyzer> analyzers, SampleBlock[] sets, boolean report)
+            throws Exception
+    {
+        final ExecutorService main = Executors.newSingleThreadExecutor();
+        final ExecutorService classifyExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        SerialWorker[] workers = new SerialWorker[numDevices];
+        for (int i = 0; i < numDevices; ++i)
+        {
+            workers[i] = new SerialWorker("analysis", Thread.NORM_PRIORITY - 1, 0, main);
+        }
+
+        final LatencyHistogram latency = new LatencyHistogram("stop to result");
+        final LatencyHistogram delivery = new LatencyHistogram("delivery");
+        long startTime = System.nanoTime();
+        for (int set = 0; set < NUM_SETS; ++set)
+        {
+            // every device stops a set now, and is classified on its own worker
+            final CountDownLatch delivered = new CountDownLatch(numDevices);
+            final long stopTime = System.nanoTime();
+            for (int device = 0; device < numDevices; ++device)
+            {
+                final SampleBlock samples = sets[set * MAX_DEVICES + device];
+                workers[device].submit(
+                        new SerialWorker.Task<Integer>()
+                        {
+                            @Override
+                            public Integer run()
+                            {
+                                return classify(samples, analyzers, classifyExecutor);
+                            }
+                        },
+                        new SerialWorker.Receiver<Integer>()
+                        {
+                            @Override
+                            public void onResult(Integer repCount)
+                            {
+                                long deliveryStart = System.nanoTime();
+                                latency.recordSince(stopTime);
+                                delivery.recordSince(deliveryStart);
+                                delivered.countDown();
+                            }
+                        }, false);
+            }
+            // a set takes far longer to do than to count, so the next ones stop after these are counted
+            delivered.await();
+        }
+        float seconds = (System.nanoTime() - startTime) / 1e9f;
+
+        for (SerialWorker worker : workers)
+        {
+            worker.shutdown();
+        }
+        classifyExecutor.shutdown();
+        main.shutdown();
+        if (!report)
+        {
+            return;
+        }
+        System.out.println(String.format("%d devices: %5.1f sets/s; latency mean %6.1fms, p95 %6.1fms, max %6.1fms; " +
+                "longest delivery %.2fms", numDevices, latency.getCount() / seconds, latency.getMeanMs(),
+                latency.getPercentileMs(95), latency.getMaxMs(), delivery.getMaxMs()));
+    }
+
+    // as AnalysisPipeline.classify(): one task per movement on the shared pool, and the count of the best match
+    private static int classify(final SampleBlock samples, List<StandInAnalyzer> analyzers, ExecutorService classifyExecutor)
+    {
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (final StandInAnalyzer analyzer : analyzers)
+        {
+            futures.add(classifyExecutor.submit(
+                    new Callable<Integer>()
+                    {
+                        @Override
+                        public Integer call()
+                        {
+                            // each movement's analyzer is used by one task at a time, as the AnalyzerPool's are
+                            synchronized (analyzer)
+                            {
+                                analyzer.analyze(samples);
+                                return analyzer.getResult(0).repCount;
+                            }
+                        }
+                    } ));
+        }
+        int best = 0;
+        for (Future<Integer> future : futures)
+        {
+            try
+            {
+                best = Math.max(best, future.get());
+            }
+            catch (InterruptedException | ExecutionException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,70 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+// FFT-based period estimation against the direct autocorrelation it replaced,
+// over the lag range PeakRepCounter's default model searches. The direct
+// version grows with set length times the number of lags; the FFT version
+// only with set length.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PeriodEstimatorBenchmark
+{
+    @Param({"10", "60", "600", "3600"})
+    public int seconds;
+
+    @Setup
+    public void setUp()
+    {
+        SampleBlock set = Fixtures.createSet(seconds, SEED);
+        m_numSamples = set.size();
+        m_signal = new float[m_numSamples];
+        float sum = 0.0f;
+        for (int i = 0; i < m_numSamples; ++i)
+        {
+            float x = set.getValue(i, SampleBlock.ACCEL_X);
+            float y = set.getValue(i, SampleBlock.ACCEL_Y);
+            float z = set.getValue(i, SampleBlock.ACCEL_Z);
+            m_signal[i] = (float) Math.sqrt(x * x + y * y + z * z);
+            sum += m_signal[i];
+        }
+        float mean = sum / m_numSamples;
+        for (int i = 0; i < m_numSamples; ++i)
+        {
+            m_signal[i] -= mean;
+        }
+
+        m_minLag = (int) (PeakRepCounter.Model.DEFAULT.minRepTime * Fixtures.SAMPLE_RATE);
+        m_maxLag = Math.min(m_numSamples / 2, (int) Math.ceil(PeakRepCounter.Model.DEFAULT.maxRepTime * Fixtures.SAMPLE_RATE));
+        m_estimator = new PeriodEstimator();
+        m_estimator.estimate(m_signal, m_numSamples, m_minLag, m_maxLag);
+    }
+
+    @Benchmark
+    public float fft()
+    {
+        return m_estimator.estimate(m_signal, m_numSamples, m_minLag, m_maxLag);
+    }
+
+    @Benchmark
+    public float direct()
+    {
+        return PeriodEstimator.estimateDirect(m_signal, m_numSamples, m_minLag, m_maxLag);
+    }
+
+    ////////////////////////////////////////
+
+    private static final long SEED = 1234;
+
+    private float[] m_signal;
+    private int m_numSamples;
+    private int m_minLag;
+    private int m_maxLag;
+    private PeriodEstimator m_estimator;
+}
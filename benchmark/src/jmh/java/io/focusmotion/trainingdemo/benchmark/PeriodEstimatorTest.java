@@ -0,0 +1,128 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.*;
+
+import java.util.Random;
+
+
+// PeriodEstimator's FFT autocorrelation against the direct sum, over
+// randomized signals: Fixtures recordings, noisy sinusoids of random period,
+// white noise, sparse spikes, and signals left with a large mean, which stress
+// float precision most. Lengths run from two samples to ten minutes at 50Hz,
+// and maximum lags from a few samples to past the length. At every lag, the
+// FFT's sum of products must differ from the direct sum by at most TOLERANCE
+// times the signal's energy. The estimated period must be within a sample of the direct
+// version's, for the signals with a clear period. A single estimator is reused
+// throughout, as PeakRepCounter reuses its own. Throws, and so exits non-zero,
+// on the first difference.
+public class PeriodEstimatorTest
+{
+    public static void main(String[] args)
+    {
+        Random random = new Random(SEED);
+        PeriodEstimator estimator = new PeriodEstimator();
+        float[] signal = new float[MAX_SAMPLES];
+        double worstError = 0.0;
+        int numPeriodic = 0;
+        for (int i = 0; i < NUM_SIGNALS; ++i)
+        {
+            int n = (i < 20 ? 2 + i : 2 + random.nextInt(random.nextBoolean() ? 1000 : MAX_SAMPLES - 2));
+            int kind = random.nextInt(NUM_KINDS);
+            fill(signal, n, kind, random);
+            int maxLag = Math.min(n - 1, 1 + random.nextInt(MAX_LAG));
+
+            float[] direct = PeriodEstimator.autocorrelateDirect(signal, n, maxLag);
+            float[] fft = estimator.autocorrelate(signal, n, maxLag);
+            double energy = direct[0] * (double) n;
+            for (int lag = 0; lag <= maxLag; ++lag)
+            {
+                // compare sums of products, so lags with few products aren't held to a tighter bound
+                double error = Math.abs(fft[lag] - direct[lag]) * (n - lag);
+                double relative = (energy > 0.0 ? error / energy : error);
+                check(relative <= TOLERANCE, String.format("signal %d (kind %d, %d samples) lag %d: %g by FFT, %g directly",
+                        i, kind, n, lag, fft[lag], direct[lag]));
+                worstError = Math.max(worstError, relative);
+            }
+
+            if (kind == SINUSOID || kind == RECORDING)
+            {
+                int minLag = Math.min(maxLag, MIN_LAG);
+                float period = estimator.estimate(signal, n, minLag, maxLag);
+                float directPeriod = PeriodEstimator.estimateDirect(signal, n, minLag, maxLag);
+                check(Math.abs(period - directPeriod) <= 1.0f, String.format("signal %d (kind %d, %d samples): " +
+                        "period %.2f by FFT, %.2f directly", i, kind, n, period, directPeriod));
+                ++numPeriodic;
+            }
+        }
+        System.out.println(String.format("%d signals: worst difference %.1e of the signal's energy; " +
+                "%d periods estimated alike", NUM_SIGNALS, worstError, numPeriodic));
+    }
+
+    ////////////////////////////////////////
+
+    private static final long SEED = 11;
+    private static final int NUM_SIGNALS = 400;
+    private static final int MAX_SAMPLES = 600 * 50;
+    private static final int MAX_LAG = 400;
+    private static final int MIN_LAG = 25; // PeakRepCounter's default shortest rep at 50Hz
+    private static final double TOLERANCE = 1e-5;
+
+    private static final int RECORDING = 0;
+    private static final int SINUSOID = 1;
+    private static final int NOISE = 2;
+    private static final int SPIKES = 3;
+    private static final int OFFSET = 4;
+    private static final int NUM_KINDS = 5;
+
+    private static void fill(float[] signal, int n, int kind, Random random)
+    {
+        if (kind == RECORDING)
+        {
+            SampleBlock set = Fixtures.createSet(n / Fixtures.SAMPLE_RATE + 1, random.nextLong());
+            float sum = 0.0f;
+            for (int i = 0; i < n; ++i)
+            {
+                float x = set.getValue(i, SampleBlock.ACCEL_X);
+                float y = set.getValue(i, SampleBlock.ACCEL_Y);
+                float z = set.getValue(i, SampleBlock.ACCEL_Z);
+                signal[i] = (float) Math.sqrt(x * x + y * y + z * z);
+                sum += signal[i];
+            }
+            // mean removed, as PeakRepCounter does
+            float mean = sum / n;
+            for (int i = 0; i < n; ++i)
+            {
+                signal[i] -= mean;
+            }
+            return;
+        }
+
+        double period = MIN_LAG + random.nextDouble() * (MAX_LAG - MIN_LAG) / 2;
+        double phase = random.nextDouble() * 2.0 * Math.PI;
+        float amplitude = (float) Math.pow(10.0, random.nextInt(7) - 3);
+        float offset = (kind == OFFSET ? amplitude * 100.0f : 0.0f);
+        for (int i = 0; i < n; ++i)
+        {
+            switch (kind)
+            {
+                case SINUSOID:
+                    signal[i] = amplitude * (float) (Math.sin(2.0 * Math.PI * i / period + phase) + 0.2 * random.nextGaussian());
+                    break;
+                case SPIKES:
+                    signal[i] = (random.nextInt(50) == 0 ? amplitude : 0.0f);
+                    break;
+                default:
+                    signal[i] = offset + amplitude * (float) random.nextGaussian();
+                    break;
+            }
+        }
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+        {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+// The pure-Java PeakRepCounter against the SDK-shaped stand-in, on the same sets.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RepCounterBenchmark
+{
+    @Param({"10", "60", "600"})
+    public int seconds;
+
+    @Setup
+    public void setUp()
+    {
+        StandInAnalyzer.Trainer trainer = new StandInAnalyzer.Trainer();
+        trainer.addTrainingDataSet(Fixtures.createSet(TRAINING_SET_SECONDS, 0), Fixtures.getRepCount(TRAINING_SET_SECONDS));
+        trainer.train();
+        m_standIn = StandInAnalyzer.createTrained(trainer);
+
+        m_set = Fixtures.createSet(seconds, SEED);
+        m_counter = new PeakRepCounter();
+        m_counter.analyze(m_set);
+    }
+
+    @Benchmark
+    public int peakRepCounter()
+    {
+        m_counter.analyze(m_set);
+        return m_counter.getResult(0).repCount;
+    }
+
+    @Benchmark
+    public int standInAnalyzer()
+    {
+        m_standIn.analyze(m_set);
+        return m_standIn.getResult(0).repCount;
+    }
+
+    ////////////////////////////////////////
+
+    private static final float TRAINING_SET_SECONDS = 25.0f;
+    private static final long SEED = 1234;
+
+    private SampleBlock m_set;
+    private PeakRepCounter m_counter;
+    private StandInAnalyzer m_standIn;
+}
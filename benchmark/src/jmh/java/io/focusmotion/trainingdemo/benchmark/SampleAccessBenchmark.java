@@ -0,0 +1,59 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+// Counting the recording so far from a fresh copy of it, as every analysis of
+// Device.getOutput() does, against counting it through a SampleRingBuffer
+// view, which copies nothing. Run with the gc profiler (the jmh block in
+// build.gradle turns it on) and compare gc.alloc.rate.norm, the bytes
+// allocated per call: the copy allocates the whole recording each time, the
+// view nothing once the counter's scratch arrays have grown.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SampleAccessBenchmark
+{
+    @Param({"10", "60", "600"})
+    public int seconds;
+
+    @Setup
+    public void setUp()
+    {
+        SampleBlock set = Fixtures.createSet(seconds, SEED);
+        m_buffer = new SampleRingBuffer(set.size());
+        for (int i = 0; i < set.size(); ++i)
+        {
+            m_buffer.add(set.getTime(i), set.getValue(i, 0), set.getValue(i, 1), set.getValue(i, 2),
+                    set.getValue(i, 3), set.getValue(i, 4), set.getValue(i, 5));
+        }
+        m_counter.analyze(set);
+    }
+
+    @Benchmark
+    public int copy()
+    {
+        SampleBlock output = m_buffer.copyTo(new SampleBlock(0));
+        m_counter.analyze(output);
+        return m_counter.getResult(0).repCount;
+    }
+
+    @Benchmark
+    public int view()
+    {
+        m_counter.analyze(m_buffer.view(m_view));
+        return m_counter.getResult(0).repCount;
+    }
+
+    ////////////////////////////////////////
+
+    private static final long SEED = 1234;
+
+    private SampleRingBuffer m_buffer;
+    private final SampleRingBuffer.View m_view = new SampleRingBuffer.View();
+    private final PeakRepCounter m_counter = new PeakRepCounter();
+}
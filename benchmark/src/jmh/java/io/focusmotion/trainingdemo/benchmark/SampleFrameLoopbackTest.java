@@ -0,0 +1,125 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.*;
+
+import java.util.Random;
+
+
+// The watch's SampleFrameEncoder against the phone's SampleFrameDecoder: the
+// two modules each declare the frame's path, version and quantization, so
+// first those must agree, and then frames encoded on one side must decode on
+// the other to the same timestamps, and to values within half a quantization
+// step. Frames of 0 to BATCH_MAX_SAMPLES samples are tried, with jittered and
+// repeated timestamps, values from Fixtures recordings and random ones up to
+// the sensors' full range, and gyro channels zeroed as during rest. Throws,
+// and so exits non-zero, on the first difference.
+public class SampleFrameLoopbackTest
+{
+    public static void main(String[] args)
+    {
+        check(SampleFrameEncoder.PATH.equals(SampleFrameDecoder.PATH), "paths differ");
+        check(SampleFrameEncoder.VERSION == SampleFrameDecoder.VERSION, "versions differ");
+        check(SampleFrameEncoder.ACCEL_RESOLUTION == SampleFrameDecoder.ACCEL_RESOLUTION, "accelerometer resolutions differ");
+        check(SampleFrameEncoder.GYRO_RESOLUTION == SampleFrameDecoder.GYRO_RESOLUTION, "gyro resolutions differ");
+        check(SampleFrameEncoder.NUM_CHANNELS == SampleBlock.NUM_CHANNELS, "channel counts differ");
+
+        Random random = new Random(SEED);
+        SampleFrameEncoder encoder = new SampleFrameEncoder();
+        SampleFrameDecoder decoder = new SampleFrameDecoder();
+        SampleRingBuffer buffer = new SampleRingBuffer(BATCH_MAX_SAMPLES);
+        long[] times = new long[BATCH_MAX_SAMPLES];
+        float[] values = new float[BATCH_MAX_SAMPLES * SampleFrameEncoder.NUM_CHANNELS];
+        byte[] frame = new byte[SampleFrameEncoder.getMaxFrameSize(BATCH_MAX_SAMPLES)];
+        SampleBlock recording = Fixtures.createSet(RECORDING_SECONDS, SEED);
+
+        long numSamples = 0;
+        long numBytes = 0;
+        for (int i = 0; i < NUM_FRAMES; ++i)
+        {
+            int count = (i < BATCH_MAX_SAMPLES + 1 ? i : random.nextInt(BATCH_MAX_SAMPLES + 1));
+            fill(times, values, count, recording, random);
+
+            int length = encoder.encode(times, values, count, frame);
+            check(length <= SampleFrameEncoder.getMaxFrameSize(count), "frame longer than its maximum size");
+
+            buffer.clear();
+            int decoded = decoder.decode(frame, buffer);
+            check(decoded == count && buffer.size() == count, String.format("frame %d: %d of %d samples decoded", i, decoded, count));
+            compare(i, times, values, count, buffer);
+            numSamples += count;
+            numBytes += length;
+        }
+        System.out.println(String.format("%d frames, %d samples: all decoded as encoded, %.1f bytes per sample",
+                NUM_FRAMES, numSamples, numBytes / (float) numSamples));
+    }
+
+    ////////////////////////////////////////
+
+    private static final long SEED = 5;
+    private static final int NUM_FRAMES = 2000;
+    private static final int BATCH_MAX_SAMPLES = 50; // as the watch's SampleBatcher
+    private static final float RECORDING_SECONDS = 60.0f;
+    private static final float MAX_ACCEL = 80.0f; // m/s^2, about 8g
+    private static final float MAX_GYRO = 35.0f;  // rad/s, about 2000 degrees/s
+
+    private static void fill(long[] times, float[] values, int count, SampleBlock recording, Random random)
+    {
+        int kind = random.nextInt(3);
+        int offset = random.nextInt(recording.size() - BATCH_MAX_SAMPLES);
+        long time = Math.abs(random.nextLong() % (1L << 42)); // event timestamps in ms since boot, or since the epoch
+        for (int sample = 0; sample < count; ++sample)
+        {
+            // usually 20ms apart; sometimes repeated, or far apart after a pause
+            int gap = random.nextInt(20);
+            time += (gap == 0 ? 0 : gap == 1 ? random.nextInt(100000) : 18 + random.nextInt(5));
+            times[sample] = time;
+            for (int channel = 0; channel < SampleFrameEncoder.NUM_CHANNELS; ++channel)
+            {
+                float value;
+                if (kind == 0)
+                {
+                    value = recording.getValue(offset + sample, channel);
+                }
+                else
+                {
+                    float max = (channel < 3 ? MAX_ACCEL : MAX_GYRO);
+                    value = (random.nextFloat() * 2.0f - 1.0f) * max;
+                }
+                if (kind == 2 && channel >= 3)
+                {
+                    // gyro off, during rest
+                    value = 0.0f;
+                }
+                values[sample * SampleFrameEncoder.NUM_CHANNELS + channel] = value;
+            }
+        }
+    }
+
+    private static void compare(int frame, long[] times, float[] values, int count, SampleRingBuffer buffer)
+    {
+        SampleRingBuffer.View view = buffer.view(new SampleRingBuffer.View());
+        for (int sample = 0; sample < count; ++sample)
+        {
+            check(view.getTime(sample) == times[sample], String.format("frame %d sample %d: time %d decoded as %d",
+                    frame, sample, times[sample], view.getTime(sample)));
+            for (int channel = 0; channel < SampleFrameEncoder.NUM_CHANNELS; ++channel)
+            {
+                float resolution = (channel < 3 ? SampleFrameEncoder.ACCEL_RESOLUTION : SampleFrameEncoder.GYRO_RESOLUTION);
+                float expected = values[sample * SampleFrameEncoder.NUM_CHANNELS + channel];
+                float actual = view.getValue(sample, channel);
+                // half a step, plus float rounding of the rescaled value
+                float tolerance = resolution * 0.5f + Math.abs(expected) * 1e-6f;
+                check(Math.abs(actual - expected) <= tolerance, String.format("frame %d sample %d channel %d: %f decoded as %f",
+                        frame, sample, channel, expected, actual));
+            }
+        }
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+        {
+            throw new AssertionError(message);
+        }
+    }
+}
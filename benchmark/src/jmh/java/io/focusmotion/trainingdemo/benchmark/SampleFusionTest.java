@@ -0,0 +1,209 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.*;
+
+import java.util.Random;
+
+
+// SampleFusion recovering known clock offsets and drifts.
+//
+// Each case records one Fixtures set with a reference device and up to
+// three others. Each other device has a random clock offset (up to
+// MAX_OFFSET_MS), a clock drift (up to MAX_DRIFT), its own sample rate,
+// timing jitter and sensor noise. It also starts recording up to
+// MAX_START_DELAY_MS earlier or later, so the first timestamps are only a
+// rough guess. align() must recover every offset to within one sample
+// period at the common rate, and every drift to within what a
+// one-period error at each end of the recording allows. After fuse(), each
+// stream's acceleration magnitude must correlate with the reference's, and
+// counting reps in the streams' mean magnitude, as DeviceManager does, must
+// find the reference stream's count to within one rep.
+// Streams that are empty or a single sample long must be handled without
+// an exception. Throws, and so exits non-zero, on the first failure.
+public class SampleFusionTest
+{
+    public static void main(String[] args)
+    {
+        checkShortStreams();
+
+        Random random = new Random(SEED);
+        double worstOffsetError = 0.0;
+        double worstDriftError = 0.0;
+        double worstCorrelation = 1.0;
+        int worstCountError = 0;
+        PeakRepCounter counter = new PeakRepCounter();
+        for (int i = 0; i < NUM_CASES; ++i)
+        {
+            float seconds = 30 + random.nextInt(570);
+            int numStreams = 2 + random.nextInt(MAX_STREAMS - 1);
+            SampleBlock motion = Fixtures.createSet(seconds, 0.6f + random.nextFloat(), 0.5f + random.nextFloat() * 1.5f,
+                    random.nextLong());
+
+            SampleBlock[] streams = new SampleBlock[numStreams];
+            double[] offsets = new double[numStreams];
+            double[] drifts = new double[numStreams];
+            streams[0] = record(motion, 0.0, 0.0, 0, RATE, random);
+            for (int s = 1; s < numStreams; ++s)
+            {
+                offsets[s] = (random.nextDouble() * 2.0 - 1.0) * MAX_OFFSET_MS;
+                drifts[s] = (random.nextDouble() * 2.0 - 1.0) * MAX_DRIFT;
+                long startDelay = (long) ((random.nextDouble() * 2.0 - 1.0) * MAX_START_DELAY_MS);
+                float rate = STREAM_RATES[random.nextInt(STREAM_RATES.length)];
+                streams[s] = record(motion, offsets[s], drifts[s], startDelay, rate, random);
+            }
+
+            float motionSeconds = motion.getTime(motion.size() - 1) / 1000.0f;
+            SampleFusion fusion = new SampleFusion(RATE, MAX_STREAMS, motion.size() + 1);
+            fusion.setStreams(streams, numStreams);
+            fusion.align();
+
+            double span = (streams[0].getTime(streams[0].size() - 1) - streams[0].getTime(0));
+            for (int s = 1; s < numStreams; ++s)
+            {
+                double offsetError = Math.abs(fusion.getOffset(s) - offsets[s]);
+                double driftError = Math.abs(fusion.getDrift(s) - drifts[s]);
+                double driftTolerance = 2.0 * fusion.getPeriodMs() / (span - ALIGN_WINDOW_MS);
+                check(offsetError <= fusion.getPeriodMs(), String.format("case %d stream %d: offset %.1fms recovered as %.1fms",
+                        i, s, offsets[s], fusion.getOffset(s)));
+                check(driftError <= driftTolerance, String.format("case %d stream %d: drift %.6f recovered as %.6f",
+                        i, s, drifts[s], fusion.getDrift(s)));
+                worstOffsetError = Math.max(worstOffsetError, offsetError);
+                worstDriftError = Math.max(worstDriftError, driftError);
+            }
+
+            int numSamples = fusion.fuse();
+            check(numSamples > (motionSeconds - 2 * MAX_START_DELAY_MS / 1000.0f - 1) * RATE,
+                    String.format("case %d: only %d fused samples of %.0fs", i, numSamples, motionSeconds));
+            for (int s = 1; s < numStreams; ++s)
+            {
+                double correlation = correlate(fusion, 0, s);
+                check(correlation > MIN_CORRELATION, String.format("case %d stream %d: fused correlation %.3f", i, s, correlation));
+                worstCorrelation = Math.min(worstCorrelation, correlation);
+            }
+
+            counter.analyze(streams[0]);
+            int repCount = counter.getResult(0).repCount;
+            counter.analyze(new SampleFusion.MeanMagnitude(fusion));
+            int fusedCount = counter.getResult(0).repCount;
+            check(Math.abs(fusedCount - repCount) <= 1, String.format("case %d: %d reps fused, %d in the reference stream",
+                    i, fusedCount, repCount));
+            worstCountError = Math.max(worstCountError, Math.abs(fusedCount - repCount));
+        }
+        System.out.println(String.format("%d cases: worst offset error %.1fms, worst drift error %.1e, " +
+                "worst fused correlation %.3f, worst fused count %d reps off", NUM_CASES, worstOffsetError, worstDriftError,
+                worstCorrelation, worstCountError));
+    }
+
+    ////////////////////////////////////////
+
+    private static final long SEED = 17;
+    private static final int NUM_CASES = 60;
+    private static final int MAX_STREAMS = 4;
+    private static final float RATE = 50.0f;
+    private static final float[] STREAM_RATES = { 25.0f, 50.0f, 60.0f, 100.0f };
+    private static final double MAX_OFFSET_MS = 5000.0;
+    private static final double MAX_DRIFT = 2e-4;          // 200ppm
+    private static final double MAX_START_DELAY_MS = 500.0; // within SampleFusion's search of 64 samples
+    private static final double ALIGN_WINDOW_MS = 256 * 1000.0 / RATE;
+    private static final float NOISE = 0.05f;
+    private static final double MIN_CORRELATION = 0.9;
+
+    // Sample motion (at Fixtures.SAMPLE_RATE from time 0) as a device whose clock reads
+    // physicalTime + offset + drift * physicalTime, recording from startDelay on.
+    private static SampleBlock record(SampleBlock motion, double offset, double drift, long startDelay, float rate,
+                                      Random random)
+    {
+        double motionEnd = motion.getTime(motion.size() - 1);
+        double periodMs = 1000.0 / rate;
+        SampleBlock stream = new SampleBlock((int) (motionEnd / periodMs) + 1);
+        float[] values = new float[SampleBlock.NUM_CHANNELS];
+        for (double physical = Math.max(0, startDelay); physical <= motionEnd; physical += periodMs)
+        {
+            double jittered = Math.min(motionEnd, physical + random.nextGaussian() * periodMs * 0.05);
+            interpolate(motion, jittered, values);
+            long time = Math.round(jittered + offset + drift * jittered);
+            if (stream.size() > 0 && time <= stream.getTime(stream.size() - 1))
+            {
+                continue;
+            }
+            stream.add(time,
+                    values[0] + NOISE * (float) random.nextGaussian(), values[1] + NOISE * (float) random.nextGaussian(),
+                    values[2] + NOISE * (float) random.nextGaussian(), values[3], values[4], values[5]);
+        }
+        return stream;
+    }
+
+    private static void interpolate(SampleBlock motion, double time, float[] out)
+    {
+        double periodMs = 1000.0 / Fixtures.SAMPLE_RATE;
+        int i = Math.min(motion.size() - 2, (int) (time / periodMs));
+        double t0 = motion.getTime(i);
+        double t1 = motion.getTime(i + 1);
+        float f = (float) Math.max(0.0, Math.min(1.0, (time - t0) / (t1 - t0)));
+        for (int channel = 0; channel < SampleBlock.NUM_CHANNELS; ++channel)
+        {
+            float v0 = motion.getValue(i, channel);
+            out[channel] = v0 + (motion.getValue(i + 1, channel) - v0) * f;
+        }
+    }
+
+    // Pearson correlation of two fused streams' acceleration magnitude
+    private static double correlate(SampleFusion fusion, int a, int b)
+    {
+        float[] output = fusion.getOutput();
+        int stride = fusion.getStride();
+        int n = fusion.getNumSamples();
+        double sumA = 0.0, sumB = 0.0, sumAA = 0.0, sumBB = 0.0, sumAB = 0.0;
+        for (int i = 0; i < n; ++i)
+        {
+            double x = magnitude(output, i * stride + a * SampleBlock.NUM_CHANNELS);
+            double y = magnitude(output, i * stride + b * SampleBlock.NUM_CHANNELS);
+            sumA += x;
+            sumB += y;
+            sumAA += x * x;
+            sumBB += y * y;
+            sumAB += x * y;
+        }
+        double covariance = sumAB / n - (sumA / n) * (sumB / n);
+        double varianceA = sumAA / n - (sumA / n) * (sumA / n);
+        double varianceB = sumBB / n - (sumB / n) * (sumB / n);
+        return covariance / Math.sqrt(varianceA * varianceB);
+    }
+
+    private static double magnitude(float[] values, int index)
+    {
+        float x = values[index + SampleBlock.ACCEL_X];
+        float y = values[index + SampleBlock.ACCEL_Y];
+        float z = values[index + SampleBlock.ACCEL_Z];
+        return Math.sqrt(x * x + y * y + z * z);
+    }
+
+    // no streams, an empty stream, a one-sample stream: nothing to align or fuse, and no exception
+    private static void checkShortStreams()
+    {
+        SampleFusion fusion = new SampleFusion(RATE, MAX_STREAMS, 1000);
+        fusion.setStreams(new SampleSeries[0], 0);
+        fusion.align();
+        check(fusion.fuse() == 0, "fused samples from no streams");
+
+        SampleBlock full = Fixtures.createSet(10, SEED);
+        SampleBlock empty = new SampleBlock(0);
+        SampleBlock single = new SampleBlock(1);
+        single.add(full.getTime(0), 0, 0, 9.8f, 0, 0, 0);
+        SampleSeries[][] cases = { { empty }, { empty, full }, { full, empty }, { full, single }, { single, full } };
+        for (SampleSeries[] streams : cases)
+        {
+            fusion.setStreams(streams, streams.length);
+            fusion.align();
+            check(fusion.fuse() == 0, "fused samples with a stream too short to fuse");
+        }
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+        {
+            throw new AssertionError(message);
+        }
+    }
+}
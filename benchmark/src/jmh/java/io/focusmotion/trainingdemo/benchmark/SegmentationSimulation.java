@@ -0,0 +1,201 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.*;
+
+import java.util.*;
+
+
+// Streams simulated workouts through SetSegmenter, as one continuous
+// recording, and checks the sets it finds against the ones actually done.
+//
+// Every rest also has a short burst of motion in the middle (picking up the
+// weights, say), which must not come out as a set. Reported per workout: sets
+// found, missed and spurious; the mean error of set starts and ends; the rep
+// count error of the segmented sets, next to PeakRepCounter on the exact set
+// boundaries; and the longest time spent counting one set, next to counting
+// the whole recording at once.
+public class SegmentationSimulation
+{
+    public static void main(String[] args)
+    {
+        for (float restSeconds : new float[] { 15.0f, 60.0f, 180.0f })
+        {
+            new SegmentationSimulation(NUM_SETS, restSeconds).run();
+        }
+    }
+
+    public SegmentationSimulation(int numSets, float restSeconds)
+    {
+        m_numSets = numSets;
+        m_restSeconds = restSeconds;
+    }
+
+    public void run()
+    {
+        final Fixtures.Workout workout = Fixtures.createWorkout(m_numSets, m_restSeconds, SEED);
+        addFidgets(workout, new Random(SEED));
+        SampleBlock samples = workout.samples;
+
+        final List<SetSegmenter.Segment> sets = new ArrayList<>();
+        final long[] maxAnalysisNs = new long[1];
+        SetSegmenter segmenter = new SetSegmenter(
+                new TimedRepCounter(new PeakRepCounter(), maxAnalysisNs),
+                new SetSegmenter.Listener()
+                {
+                    @Override
+                    public void onSetStarted(long startTime)
+                    {
+                    }
+
+                    @Override
+                    public void onSegmentClosed(SetSegmenter.Segment segment)
+                    {
+                        if (segment.isSet)
+                        {
+                            sets.add(segment);
+                        }
+                    }
+                } );
+        for (int i = 0; i < samples.size(); ++i)
+        {
+            segmenter.add(samples.getTime(i),
+                    samples.getValue(i, 0), samples.getValue(i, 1), samples.getValue(i, 2),
+                    samples.getValue(i, 3), samples.getValue(i, 4), samples.getValue(i, 5));
+        }
+        segmenter.finish();
+
+        // match each set found to the set done that it overlaps most
+        int found = 0;
+        int spurious = 0;
+        long boundaryError = 0;
+        int repError = 0;
+        boolean[] matched = new boolean[m_numSets];
+        for (SetSegmenter.Segment set : sets)
+        {
+            int best = -1;
+            long bestOverlap = 0;
+            for (int k = 0; k < m_numSets; ++k)
+            {
+                long overlap = Math.min(set.endTime, workout.setEnds[k]) - Math.max(set.startTime, workout.setStarts[k]);
+                if (overlap > bestOverlap)
+                {
+                    best = k;
+                    bestOverlap = overlap;
+                }
+            }
+            if (best < 0 || matched[best])
+            {
+                ++spurious;
+                continue;
+            }
+            matched[best] = true;
+            ++found;
+            boundaryError += Math.abs(set.startTime - workout.setStarts[best]) + Math.abs(set.endTime - workout.setEnds[best]);
+            repError += Math.abs((set.result != null ? set.result.repCount : 0) - workout.repCounts[best]);
+        }
+
+        // the same counter on the exact set boundaries, for reference
+        PeakRepCounter counter = new PeakRepCounter();
+        int exactRepError = 0;
+        for (int k = 0; k < m_numSets; ++k)
+        {
+            counter.analyze(slice(samples, workout.setStarts[k], workout.setEnds[k]));
+            exactRepError += Math.abs(counter.getResult(0).repCount - workout.repCounts[k]);
+        }
+
+        long startTime = System.nanoTime();
+        counter.analyze(samples);
+        long wholeNs = System.nanoTime() - startTime;
+
+        System.out.println(String.format(
+                "%d sets, %.0fs rest: found %d, missed %d, spurious %d; boundary error %dms; " +
+                "rep count error %.2f segmented, %.2f exact; longest set analysis %.1fms, whole recording %.1fms",
+                m_numSets, m_restSeconds, found, m_numSets - found, spurious, boundaryError / Math.max(2 * found, 1),
+                repError / (float) Math.max(found, 1), exactRepError / (float) m_numSets,
+                maxAnalysisNs[0] / 1e6f, wholeNs / 1e6f));
+    }
+
+    ////////////////////////////////////////
+
+    private static final int NUM_SETS = 20;
+    private static final float FIDGET_SECONDS = 2.0f;
+    private static final long SEED = 11;
+
+    private final int m_numSets;
+    private final float m_restSeconds;
+
+    // Passes analyze() on, keeping the longest time it took.
+    private static class TimedRepCounter implements RepCounter
+    {
+        TimedRepCounter(RepCounter counter, long[] maxNs)
+        {
+            m_counter = counter;
+            m_maxNs = maxNs;
+        }
+
+        @Override
+        public void analyze(SampleSeries samples)
+        {
+            long startTime = System.nanoTime();
+            m_counter.analyze(samples);
+            m_maxNs[0] = Math.max(m_maxNs[0], System.nanoTime() - startTime);
+        }
+
+        @Override
+        public int getNumResults()
+        {
+            return m_counter.getNumResults();
+        }
+
+        @Override
+        public RepResult getResult(int index)
+        {
+            return m_counter.getResult(index);
+        }
+
+        private final RepCounter m_counter;
+        private final long[] m_maxNs;
+    }
+
+    // overwrite FIDGET_SECONDS in the middle of every rest before a set with set-like motion
+    private static void addFidgets(Fixtures.Workout workout, Random random)
+    {
+        SampleBlock samples = workout.samples;
+        float[] values = samples.getValues();
+        long restStart = 0;
+        int sample = 0;
+        for (int k = 0; k < workout.setStarts.length; ++k)
+        {
+            long middle = (restStart + workout.setStarts[k]) / 2;
+            SampleBlock fidget = Fixtures.createSet(FIDGET_SECONDS, random.nextLong());
+            while (samples.getTime(sample) < middle)
+            {
+                ++sample;
+            }
+            for (int i = 0; i < fidget.size(); ++i)
+            {
+                for (int channel = 0; channel < SampleBlock.NUM_CHANNELS; ++channel)
+                {
+                    values[(sample + i) * SampleBlock.NUM_CHANNELS + channel] = fidget.getValue(i, channel);
+                }
+            }
+            restStart = workout.setEnds[k];
+        }
+    }
+
+    // samples within [start, end)
+    private static SampleBlock slice(SampleBlock samples, long start, long end)
+    {
+        SampleBlock slice = new SampleBlock(0);
+        for (int i = 0; i < samples.size(); ++i)
+        {
+            long t = samples.getTime(i);
+            if (t >= start && t < end)
+            {
+                slice.add(t, samples.getValue(i, 0), samples.getValue(i, 1), samples.getValue(i, 2),
+                        samples.getValue(i, 3), samples.getValue(i, 4), samples.getValue(i, 5));
+            }
+        }
+        return slice;
+    }
+}
@@ -0,0 +1,289 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.*;
+
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+
+// Checks the delivery guarantees AnalysisPipeline relies on from SerialWorker,
+// with a single-threaded executor standing in for the main thread:
+// - submitting never blocks the main thread, however far behind the worker is;
+// - every result is delivered on the main thread;
+// - results of dropped requests and of cancelled generations are never
+//   delivered, including results computed before the cancel;
+// - every other result is delivered.
+// Throws, and so exits non-zero, on the first failed check.
+public class SerialWorkerTest
+{
+    public static void main(String[] args) throws Exception
+    {
+        SerialWorkerTest test = new SerialWorkerTest();
+        try
+        {
+            test.testBackpressure();
+            test.testCancel();
+        }
+        finally
+        {
+            test.shutdown();
+        }
+        System.out.println("all checks passed");
+    }
+
+    public SerialWorkerTest() throws Exception
+    {
+        m_main = Executors.newSingleThreadExecutor(
+                new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread(Runnable r)
+                    {
+                        return new Thread(r, "main");
+                    }
+                } );
+        m_mainThread = m_main.submit(
+                new Callable<Thread>()
+                {
+                    @Override
+                    public Thread call()
+                    {
+                        return Thread.currentThread();
+                    }
+                } ).get();
+        m_worker = new SerialWorker("worker", Thread.NORM_PRIORITY, MAX_DROPPABLE, m_main);
+    }
+
+    // A worker much slower than the requests: the main thread never waits, and what isn't dropped is delivered.
+    public void testBackpressure() throws Exception
+    {
+        final AtomicInteger numRun = new AtomicInteger();
+        final AtomicInteger numDelivered = new AtomicInteger();
+        final long[] maxSubmitNs = new long[1];
+        final long droppedBefore = m_worker.getNumDropped();
+
+        for (int i = 0; i < NUM_REQUESTS; ++i)
+        {
+            onMain(
+                    new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            long startTime = System.nanoTime();
+                            m_worker.submit(
+                                    new SerialWorker.Task<Integer>()
+                                    {
+                                        @Override
+                                        public Integer run()
+                                        {
+                                            sleep(SLOW_TASK_MS);
+                                            return numRun.incrementAndGet();
+                                        }
+                                    },
+                                    new SerialWorker.Receiver<Integer>()
+                                    {
+                                        @Override
+                                        public void onResult(Integer result)
+                                        {
+                                            checkMainThread();
+                                            numDelivered.incrementAndGet();
+                                        }
+                                    }, true);
+                            maxSubmitNs[0] = Math.max(maxSubmitNs[0], System.nanoTime() - startTime);
+                        }
+                    } );
+            sleep(REQUEST_INTERVAL_MS);
+        }
+        drain();
+
+        long numDropped = m_worker.getNumDropped() - droppedBefore;
+        System.out.println(String.format("backpressure: %d requests, %d run, %d delivered, %d dropped; longest submit %.3fms",
+                NUM_REQUESTS, numRun.get(), numDelivered.get(), numDropped, maxSubmitNs[0] / 1e6));
+        check(maxSubmitNs[0] < MAX_SUBMIT_MS * 1000000, "submit blocked the main thread");
+        check(numDropped > 0, "nothing was dropped; the worker wasn't behind");
+        check(numDelivered.get() == numRun.get(), "a result that ran wasn't delivered");
+        check(numRun.get() + numDropped == NUM_REQUESTS, "a request was neither run nor dropped");
+    }
+
+    // Requests and cancels interleaved at random on the main thread: only the current generation's results arrive.
+    public void testCancel() throws Exception
+    {
+        final Random random = new Random(SEED);
+        // main thread only: the generation, and the requests submitted and results delivered in it
+        final int[] counts = new int[3];
+        final AtomicInteger numRun = new AtomicInteger();
+        final AtomicInteger numDelivered = new AtomicInteger();
+
+        for (int i = 0; i < NUM_REQUESTS; ++i)
+        {
+            // the last few requests aren't cancelled, so the last generation has results to deliver
+            final boolean mayCancel = (i < NUM_REQUESTS - LAST_GENERATION_REQUESTS);
+            onMain(
+                    new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            final int generation = counts[GENERATION];
+                            final int workMs = random.nextInt(3);
+                            // not droppable, so every result not cancelled must arrive
+                            m_worker.submit(
+                                    new SerialWorker.Task<Integer>()
+                                    {
+                                        @Override
+                                        public Integer run()
+                                        {
+                                            sleep(workMs);
+                                            numRun.incrementAndGet();
+                                            return generation;
+                                        }
+                                    },
+                                    new SerialWorker.Receiver<Integer>()
+                                    {
+                                        @Override
+                                        public void onResult(Integer result)
+                                        {
+                                            checkMainThread();
+                                            expect(result == counts[GENERATION], String.format(
+                                                    "result of generation %d delivered in generation %d", result, counts[GENERATION]));
+                                            ++counts[DELIVERED];
+                                            numDelivered.incrementAndGet();
+                                        }
+                                    }, false);
+                            ++counts[SUBMITTED];
+
+                            if (mayCancel && random.nextInt(CANCEL_ONE_IN) == 0)
+                            {
+                                // give the worker time to compute, and post, some results of this generation first
+                                sleep(random.nextInt(4));
+                                m_worker.cancel();
+                                ++counts[GENERATION];
+                                counts[SUBMITTED] = 0;
+                                counts[DELIVERED] = 0;
+                            }
+                        }
+                    } );
+            sleep(REQUEST_INTERVAL_MS);
+        }
+        drain();
+
+        final int[] last = new int[3];
+        onMain(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        System.arraycopy(counts, 0, last, 0, counts.length);
+                    }
+                } );
+        int numComputedThenCancelled = numRun.get() - numDelivered.get();
+        System.out.println(String.format("cancel: %d requests in %d generations; %d run, %d delivered, %d run and then " +
+                "cancelled; last generation %d of %d delivered", NUM_REQUESTS, last[GENERATION] + 1, numRun.get(),
+                numDelivered.get(), numComputedThenCancelled, last[DELIVERED], last[SUBMITTED]));
+        check(last[GENERATION] > 0, "never cancelled");
+        check(numComputedThenCancelled > 0, "no result was cancelled after it was computed");
+        check(last[DELIVERED] == last[SUBMITTED], "a result of the current generation was lost");
+    }
+
+    public void shutdown()
+    {
+        m_worker.shutdown();
+        m_main.shutdown();
+    }
+
+    ////////////////////////////////////////
+
+    private static final long SEED = 17;
+    private static final int NUM_REQUESTS = 400;
+    private static final int MAX_DROPPABLE = 2;
+    private static final int SLOW_TASK_MS = 50;
+    private static final int REQUEST_INTERVAL_MS = 1;
+    private static final long MAX_SUBMIT_MS = 10; // a submit that waited for the worker would take SLOW_TASK_MS
+    private static final int CANCEL_ONE_IN = 10;
+    private static final int LAST_GENERATION_REQUESTS = 20;
+    private static final long DRAIN_TIMEOUT_S = 60;
+    private static final int GENERATION = 0;
+    private static final int SUBMITTED = 1;
+    private static final int DELIVERED = 2;
+
+    private final ExecutorService m_main;
+    private final Thread m_mainThread;
+    private final SerialWorker m_worker;
+    private final AtomicReference<String> m_failure = new AtomicReference<>();
+
+    private void checkMainThread()
+    {
+        expect(Thread.currentThread() == m_mainThread, "delivered on " + Thread.currentThread().getName());
+    }
+
+    // run on the main thread and wait for it
+    private void onMain(Runnable runnable) throws Exception
+    {
+        m_main.submit(runnable).get();
+    }
+
+    // wait until everything submitted so far has run and been delivered
+    private void drain() throws Exception
+    {
+        final CountDownLatch done = new CountDownLatch(1);
+        onMain(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        m_worker.submit(
+                                new SerialWorker.Task<Void>()
+                                {
+                                    @Override
+                                    public Void run()
+                                    {
+                                        return null;
+                                    }
+                                },
+                                new SerialWorker.Receiver<Void>()
+                                {
+                                    @Override
+                                    public void onResult(Void result)
+                                    {
+                                        done.countDown();
+                                    }
+                                }, false);
+                    }
+                } );
+        check(done.await(DRAIN_TIMEOUT_S, TimeUnit.SECONDS), "worker never drained");
+        check(m_failure.get() == null, m_failure.get());
+    }
+
+    // for checks on the main thread, where a throw would only kill the executor's thread
+    private void expect(boolean condition, String message)
+    {
+        if (!condition)
+        {
+            m_failure.compareAndSet(null, message);
+        }
+    }
+
+    private void check(boolean condition, String message)
+    {
+        if (!condition)
+        {
+            throw new AssertionError(message);
+        }
+    }
+
+    private static void sleep(long ms)
+    {
+        try
+        {
+            Thread.sleep(ms);
+        }
+        catch (InterruptedException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+}
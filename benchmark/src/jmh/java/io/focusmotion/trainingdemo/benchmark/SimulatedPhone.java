@@ -0,0 +1,296 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+// The phone side of the app, for DeviceSimulator's devices: what
+// MainActivity's DeviceListener does with a device whose raw samples our wear
+// app sends, short of the SDK's own analysis, which can't run on a plain JVM.
+//
+// The samples a device delivers are cut into frames of up to FRAME_SAMPLES,
+// encoded by the watch's SampleFrameEncoder and decoded by the phone's
+// SampleFrameDecoder into the device's SampleRingBuffer, as WearSampleReceiver
+// does. When recording starts the buffer is cleared, as SessionRecorder does,
+// and the device's RawSampleAnalysis started; every onDataReceived() passes
+// the new samples on; when recording stops the analysis is finished and its
+// count goes to the Listener. The app has a single raw-sample device, the
+// primary; here every device gets its own buffer and analysis, so several can
+// be simulated at once. Spill files go to a temporary directory, deleted on
+// exit.
+//
+// The thread calling the DeviceSimulator.Listener methods stands for the
+// app's main thread. The counting runs on a SerialWorker per device, as on
+// each device's AnalysisPipeline, and its results are delivered on the
+// calling thread, as a Looper would: at the start of the next event, or in
+// awaitIdle(). Call shutdown() when done, to stop the workers.
+public class SimulatedPhone implements DeviceSimulator.Listener
+{
+    public interface Listener
+    {
+        // result is null if the recording couldn't be counted
+        void onSetCounted(DeviceSimulator.SimulatedDevice device, RepResult result);
+    }
+
+    public SimulatedPhone(Listener listener)
+    {
+        m_listener = listener;
+    }
+
+    public long getNumFrames()
+    {
+        return m_numFrames;
+    }
+
+    public long getNumBytes()
+    {
+        return m_numBytes;
+    }
+
+    public int getNumConnectionFailures()
+    {
+        return m_numConnectionFailures;
+    }
+
+    // Wait for every device's counting to finish, and deliver its results.
+    public void awaitIdle() throws InterruptedException
+    {
+        final int[] numIdle = new int[1];
+        for (Watch watch : m_watches.values())
+        {
+            watch.worker.submit(
+                    new SerialWorker.Task<Void>()
+                    {
+                        @Override
+                        public Void run()
+                        {
+                            return null;
+                        }
+                    },
+                    new SerialWorker.Receiver<Void>()
+                    {
+                        @Override
+                        public void onResult(Void result)
+                        {
+                            ++numIdle[0];
+                        }
+                    }, false);
+        }
+        while (numIdle[0] < m_watches.size())
+        {
+            m_deliveries.take().run();
+        }
+    }
+
+    public void shutdown()
+    {
+        for (Watch watch : m_watches.values())
+        {
+            watch.worker.shutdown();
+        }
+    }
+
+    ////////////////////////////////////////
+    // DeviceSimulator.Listener
+
+    @Override
+    public void onAvailableChanged(DeviceSimulator.SimulatedDevice device, boolean available)
+    {
+        runDeliveries();
+    }
+
+    @Override
+    public void onConnectedChanged(DeviceSimulator.SimulatedDevice device, boolean connected)
+    {
+        runDeliveries();
+    }
+
+    @Override
+    public void onRecordingChanged(DeviceSimulator.SimulatedDevice device, boolean recording)
+    {
+        runDeliveries();
+        Watch watch = getWatch(device);
+        if (recording)
+        {
+            synchronized (watch.buffer)
+            {
+                watch.buffer.clear();
+            }
+            watch.numSent = 0;
+            watch.analysis.start(watch.runner, false);
+        }
+        else
+        {
+            // the simulator delivers the last samples without an onDataReceived()
+            sendFrames(device, watch);
+            watch.analysis.finish();
+        }
+    }
+
+    @Override
+    public void onDataReceived(DeviceSimulator.SimulatedDevice device)
+    {
+        runDeliveries();
+        Watch watch = getWatch(device);
+        sendFrames(device, watch);
+        watch.analysis.onDataReceived();
+    }
+
+    @Override
+    public void onConnectionFailed(DeviceSimulator.SimulatedDevice device, String message)
+    {
+        runDeliveries();
+        ++m_numConnectionFailures;
+    }
+
+    ////////////////////////////////////////
+
+    private static final int FRAME_SAMPLES = 50;               // as the watch's SampleBatcher
+    private static final int BUFFER_CAPACITY = 60 * 60 * 50;   // as MainActivity
+    private static final long LONG_RECORDING_MS = 10 * 60 * 1000; // as MainActivity
+
+    // what the app keeps for its raw-sample device
+    private static class Watch
+    {
+        SerialWorker worker;
+        SerialWorker.Runner runner; // runs on worker, as AnalysisPipeline.run() does
+        SampleRingBuffer buffer;
+        RawSampleAnalysis analysis;
+        int numSent; // of the device's output, encoded into frames so far
+    }
+
+    private final Listener m_listener;
+    private final BlockingQueue<Runnable> m_deliveries = new LinkedBlockingQueue<>(); // for the calling thread
+    private final Executor m_deliveryExecutor =
+            new Executor()
+            {
+                @Override
+                public void execute(Runnable r)
+                {
+                    m_deliveries.add(r);
+                }
+            };
+    private final Map<DeviceSimulator.SimulatedDevice, Watch> m_watches = new HashMap<>();
+    private final SampleFrameEncoder m_encoder = new SampleFrameEncoder();
+    private final SampleFrameDecoder m_decoder = new SampleFrameDecoder();
+    private final long[] m_times = new long[FRAME_SAMPLES];
+    private final float[] m_values = new float[FRAME_SAMPLES * SampleBlock.NUM_CHANNELS];
+    private final byte[] m_frame = new byte[SampleFrameEncoder.getMaxFrameSize(FRAME_SAMPLES)];
+    private File m_spillDirectory;
+    private long m_numFrames;
+    private long m_numBytes;
+    private int m_numConnectionFailures;
+
+    private Watch getWatch(final DeviceSimulator.SimulatedDevice device)
+    {
+        Watch watch = m_watches.get(device);
+        if (watch == null)
+        {
+            watch = new Watch();
+            // nothing is droppable, as on AnalysisPipeline
+            final SerialWorker worker = new SerialWorker("analysis " + device.getName(), Thread.NORM_PRIORITY - 1, 0,
+                    m_deliveryExecutor);
+            watch.worker = worker;
+            watch.runner =
+                    new SerialWorker.Runner()
+                    {
+                        @Override
+                        public <T> void run(SerialWorker.Task<T> task, SerialWorker.Receiver<T> receiver)
+                        {
+                            worker.submit(task, receiver, false);
+                        }
+                    };
+            watch.buffer = new SampleRingBuffer(BUFFER_CAPACITY);
+            watch.analysis = new RawSampleAnalysis(watch.buffer, createSpillFile(device), LONG_RECORDING_MS,
+                    new RawSampleAnalysis.Listener()
+                    {
+                        @Override
+                        public void onSetStarted(long startTime)
+                        {
+                        }
+
+                        @Override
+                        public void onSegmentClosed(SetSegmenter.Segment segment)
+                        {
+                        }
+
+                        @Override
+                        public void onRecordingCounted(RepResult result)
+                        {
+                            m_listener.onSetCounted(device, result);
+                        }
+
+                        @Override
+                        public void onSpillFailed(IOException e)
+                        {
+                            throw new RuntimeException(e);
+                        }
+                    } );
+            m_watches.put(device, watch);
+        }
+        return watch;
+    }
+
+    // the results the workers have delivered so far, as the main thread's Looper would run them between events
+    private void runDeliveries()
+    {
+        Runnable delivery;
+        while ((delivery = m_deliveries.poll()) != null)
+        {
+            delivery.run();
+        }
+    }
+
+    private File createSpillFile(DeviceSimulator.SimulatedDevice device)
+    {
+        try
+        {
+            if (m_spillDirectory == null)
+            {
+                m_spillDirectory = File.createTempFile("simulated-phone", "");
+                m_spillDirectory.delete();
+                m_spillDirectory.mkdir();
+                m_spillDirectory.deleteOnExit();
+            }
+            File file = new File(m_spillDirectory, device.getName() + ".spill");
+            file.deleteOnExit();
+            return file;
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // the device's samples not sent yet, through the watch's encoder and the phone's decoder into its buffer
+    private void sendFrames(DeviceSimulator.SimulatedDevice device, Watch watch)
+    {
+        SampleBlock output = device.getOutput();
+        while (watch.numSent < output.size())
+        {
+            int count = Math.min(FRAME_SAMPLES, output.size() - watch.numSent);
+            for (int i = 0; i < count; ++i)
+            {
+                int sample = watch.numSent + i;
+                m_times[i] = output.getTime(sample);
+                for (int channel = 0; channel < SampleBlock.NUM_CHANNELS; ++channel)
+                {
+                    m_values[i * SampleBlock.NUM_CHANNELS + channel] = output.getValue(sample, channel);
+                }
+            }
+            int length = m_encoder.encode(m_times, m_values, count, m_frame);
+            byte[] frame = Arrays.copyOf(m_frame, length); // as the message arrives
+            synchronized (watch.buffer)
+            {
+                m_decoder.decode(frame, watch.buffer);
+            }
+            watch.numSent += count;
+            ++m_numFrames;
+            m_numBytes += length;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+// A simulated workout (numDevices devices, ten 60-second sets each) replayed
+// unpaced through SimulatedPhone, so every set's samples go through the frame
+// encoder and decoder and are counted by RawSampleAnalysis as the app counts
+// them; measures the whole device-to-result path, simulator overhead
+// included.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SimulatorBenchmark
+{
+    @Param({"1", "4"})
+    public int numDevices;
+
+    @Setup
+    public void setUp()
+    {
+        m_sets = new SampleBlock[NUM_SETS];
+        for (int i = 0; i < NUM_SETS; ++i)
+        {
+            m_sets[i] = Fixtures.createSet(SET_SECONDS, SEED + i);
+        }
+    }
+
+    @Benchmark
+    public int workout() throws InterruptedException
+    {
+        final int[] totalReps = new int[1];
+        SimulatedPhone phone = new SimulatedPhone(
+                new SimulatedPhone.Listener()
+                {
+                    @Override
+                    public void onSetCounted(DeviceSimulator.SimulatedDevice device, RepResult result)
+                    {
+                        totalReps[0] += result.repCount;
+                    }
+                } );
+        DeviceSimulator simulator = new DeviceSimulator(phone);
+
+        for (int i = 0; i < numDevices; ++i)
+        {
+            DeviceSimulator.SimulatedDevice device = simulator.addDevice("sim-" + i);
+            simulator.scheduleAvailable(device, 0, true);
+            simulator.scheduleConnect(device, 0);
+            long time = 1000;
+            for (SampleBlock set : m_sets)
+            {
+                time = simulator.scheduleSet(device, time, set) + REST_MS;
+            }
+        }
+        simulator.run(0.0f);
+        phone.awaitIdle();
+        phone.shutdown();
+        return totalReps[0];
+    }
+
+    ////////////////////////////////////////
+
+    private static final int NUM_SETS = 10;
+    private static final float SET_SECONDS = 60.0f;
+    private static final long REST_MS = 30 * 1000;
+    private static final long SEED = 1234;
+
+    private SampleBlock[] m_sets;
+}
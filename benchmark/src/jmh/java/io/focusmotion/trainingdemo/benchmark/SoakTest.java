@@ -0,0 +1,198 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.*;
+
+import java.util.*;
+
+
+// Drives the app's raw-sample path through the DeviceSimulator for hours of
+// simulated workouts: the simulator's events go to a SimulatedPhone, which
+// handles them as the app's DeviceListener does, so every set's samples go
+// through the frame encoder and decoder into a ring buffer and are counted by
+// RawSampleAnalysis on a worker per device. Checks every set's count and
+// reports, once per simulated hour, the time the phone's main thread spends
+// on each event, the time from a set stopping to its count being delivered
+// (at the first event after it is ready), data rate and heap use.
+//
+//   SoakTest [hours] [speed] [devices]
+//
+// speed 0 (the default) replays as fast as possible; 1 is real time. Every
+// device does sets of 10 to 120 seconds with a rest between them; one device
+// fails to connect once at the start, as a real one might.
+public class SoakTest implements DeviceSimulator.Listener, SimulatedPhone.Listener
+{
+    public static void main(String[] args) throws InterruptedException
+    {
+        float hours = (args.length > 0 ? Float.parseFloat(args[0]) : 1.0f);
+        float speed = (args.length > 1 ? Float.parseFloat(args[1]) : 0.0f);
+        int numDevices = (args.length > 2 ? Integer.parseInt(args[2]) : 2);
+
+        new SoakTest().run(hours, speed, numDevices);
+    }
+
+    public void run(float hours, float speed, int numDevices) throws InterruptedException
+    {
+        long end = (long) (hours * HOUR_MS);
+        Random random = new Random(SEED);
+
+        DeviceSimulator simulator = new DeviceSimulator(this);
+        for (int i = 0; i < numDevices; ++i)
+        {
+            DeviceSimulator.SimulatedDevice device = simulator.addDevice("sim-" + i);
+            simulator.scheduleAvailable(device, 0, true);
+            if (i == 0)
+            {
+                simulator.scheduleConnectionFailure(device, 50, "simulated failure");
+            }
+            simulator.scheduleConnect(device, 100 + i);
+        }
+
+        // one hour of sets at a time, so the script doesn't hold every set in memory
+        long realStart = System.nanoTime();
+        for (long hourStart = 0; hourStart < end; hourStart += HOUR_MS)
+        {
+            long hourEnd = Math.min(end, hourStart + HOUR_MS);
+            for (DeviceSimulator.SimulatedDevice device : simulator.getDevices())
+            {
+                long time = Math.max(hourStart, 1000);
+                while (true)
+                {
+                    float seconds = 10 + random.nextInt(111);
+                    SampleBlock set = Fixtures.createSet(seconds, random.nextLong());
+                    if (time + (long) (seconds * 1000) > hourEnd)
+                    {
+                        break;
+                    }
+                    getExpected(device).add(Fixtures.getRepCount(seconds));
+                    time = simulator.scheduleSet(device, time, set) + REST_MS;
+                }
+            }
+            simulator.run(speed);
+            m_phone.awaitIdle();
+            report(hourEnd, System.nanoTime() - realStart);
+        }
+        m_phone.shutdown();
+    }
+
+    ////////////////////////////////////////
+    // DeviceSimulator.Listener, passed on to the phone
+
+    @Override
+    public void onAvailableChanged(DeviceSimulator.SimulatedDevice device, boolean available)
+    {
+        long startTime = System.nanoTime();
+        m_phone.onAvailableChanged(device, available);
+        m_mainThread.recordSince(startTime);
+    }
+
+    @Override
+    public void onConnectedChanged(DeviceSimulator.SimulatedDevice device, boolean connected)
+    {
+        long startTime = System.nanoTime();
+        m_phone.onConnectedChanged(device, connected);
+        m_mainThread.recordSince(startTime);
+    }
+
+    @Override
+    public void onRecordingChanged(DeviceSimulator.SimulatedDevice device, boolean recording)
+    {
+        long startTime = System.nanoTime();
+        m_phone.onRecordingChanged(device, recording);
+        m_mainThread.recordSince(startTime);
+        if (!recording)
+        {
+            getStopTimes(device).add(startTime);
+        }
+    }
+
+    @Override
+    public void onDataReceived(DeviceSimulator.SimulatedDevice device)
+    {
+        m_dataReceived.record();
+        long startTime = System.nanoTime();
+        m_phone.onDataReceived(device);
+        m_mainThread.recordSince(startTime);
+    }
+
+    @Override
+    public void onConnectionFailed(DeviceSimulator.SimulatedDevice device, String message)
+    {
+        long startTime = System.nanoTime();
+        m_phone.onConnectionFailed(device, message);
+        m_mainThread.recordSince(startTime);
+    }
+
+    ////////////////////////////////////////
+    // SimulatedPhone.Listener
+
+    @Override
+    public void onSetCounted(DeviceSimulator.SimulatedDevice device, RepResult result)
+    {
+        // a count can come after the next set stopped, when replaying faster than the sets are counted
+        Long stopTime = getStopTimes(device).poll();
+        if (stopTime != null)
+        {
+            m_finishLatency.recordSince(stopTime);
+        }
+        // each device records its sets in the order they were scheduled
+        int repCount = (result != null ? result.repCount : 0);
+        Integer expected = getExpected(device).poll();
+        if (expected != null)
+        {
+            ++m_numSets;
+            m_totalError += Math.abs(repCount - expected);
+        }
+    }
+
+    ////////////////////////////////////////
+
+    private static final long HOUR_MS = 60 * 60 * 1000;
+    private static final long REST_MS = 30 * 1000;
+    private static final long SEED = 42;
+
+    private final SimulatedPhone m_phone = new SimulatedPhone(this);
+    private final LatencyHistogram m_mainThread = new LatencyHistogram("main thread per event");
+    private final LatencyHistogram m_finishLatency = new LatencyHistogram("stop to count");
+    private final Map<DeviceSimulator.SimulatedDevice, Queue<Long>> m_stopTimes = new HashMap<>();
+    private final EventRate m_dataReceived = new EventRate("onDataReceived");
+    private final Map<DeviceSimulator.SimulatedDevice, Queue<Integer>> m_expected = new HashMap<>();
+    private int m_numSets;
+    private long m_totalError;
+
+    // rep counts of the sets scheduled on device and not yet counted
+    private Queue<Integer> getExpected(DeviceSimulator.SimulatedDevice device)
+    {
+        Queue<Integer> expected = m_expected.get(device);
+        if (expected == null)
+        {
+            expected = new ArrayDeque<>();
+            m_expected.put(device, expected);
+        }
+        return expected;
+    }
+
+    // System.nanoTime() at the stop of each set of device not yet counted
+    private Queue<Long> getStopTimes(DeviceSimulator.SimulatedDevice device)
+    {
+        Queue<Long> stopTimes = m_stopTimes.get(device);
+        if (stopTimes == null)
+        {
+            stopTimes = new ArrayDeque<>();
+            m_stopTimes.put(device, stopTimes);
+        }
+        return stopTimes;
+    }
+
+    private void report(long virtualTime, long realNanos)
+    {
+        Runtime runtime = Runtime.getRuntime();
+        long heap = runtime.totalMemory() - runtime.freeMemory();
+        System.out.println(String.format("%.1fh simulated in %.1fs: %d sets, mean rep count error %.2f, %d connection failures, " +
+                "%d frames of %.0f bytes on average, heap %dKB", virtualTime / (float) HOUR_MS, realNanos / 1e9f, m_numSets,
+                m_totalError / (float) Math.max(m_numSets, 1), m_phone.getNumConnectionFailures(), m_phone.getNumFrames(),
+                m_phone.getNumBytes() / (float) Math.max(m_phone.getNumFrames(), 1), heap / 1024));
+        System.out.println("  " + m_mainThread);
+        System.out.println("  " + m_finishLatency);
+        System.out.println("  " + m_dataReceived);
+    }
+}
@@ -0,0 +1,185 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.SampleBlock;
+import io.focusmotion.trainingdemo.SampleSeries;
+
+import java.util.*;
+
+
+// Local stand-in for the SDK's MovementAnalyzer/AnalyzerTrainer, with the same
+// shape: a trainer learns from labeled sets, a trained analyzer is created
+// from it, analyzes a set and returns AnalyzerResult-like results.
+// Reps are counted as peaks in smoothed acceleration magnitude.
+public class StandInAnalyzer
+{
+    public static class Result
+    {
+        public int repCount;
+        public float duration;
+        public float meanRepTime;
+        public float minRepTime;
+        public float maxRepTime;
+        public float internalVariation;
+    }
+
+    public static class Trainer
+    {
+        public void addTrainingDataSet(SampleSeries samples, int repCount)
+        {
+            m_dataSets.add(samples);
+            m_repCounts.add(repCount);
+        }
+
+        // Like the SDK, retrains over every data set each time.
+        public void train()
+        {
+            double totalPeriod = 0.0;
+            double totalAmplitude = 0.0;
+            for (int i = 0; i < m_dataSets.size(); ++i)
+            {
+                SampleSeries samples = m_dataSets.get(i);
+                float duration = (samples.getTime(samples.size() - 1) - samples.getTime(0)) / 1000.0f;
+                totalPeriod += duration / m_repCounts.get(i);
+
+                float[] magnitude = smoothedMagnitude(samples);
+                float mean = mean(magnitude);
+                double deviation = 0.0;
+                for (float m : magnitude)
+                {
+                    deviation += Math.abs(m - mean);
+                }
+                totalAmplitude += deviation / magnitude.length;
+            }
+            m_period = (float) (totalPeriod / m_dataSets.size());
+            m_threshold = (float) (totalAmplitude / m_dataSets.size());
+        }
+
+        public int getNumTrainingDataSets()
+        {
+            return m_dataSets.size();
+        }
+
+        private final List<SampleSeries> m_dataSets = new ArrayList<>();
+        private final List<Integer> m_repCounts = new ArrayList<>();
+        private float m_period;
+        private float m_threshold;
+    }
+
+    public static StandInAnalyzer createTrained(Trainer trainer)
+    {
+        return new StandInAnalyzer(trainer.m_period, trainer.m_threshold);
+    }
+
+    public void analyze(SampleSeries samples)
+    {
+        m_results.clear();
+        int n = samples.size();
+        if (n < 2)
+        {
+            return;
+        }
+
+        float[] magnitude = smoothedMagnitude(samples);
+        float mean = mean(magnitude);
+        long minSpacing = (long) (m_period * 1000 * 0.5f);
+
+        // peaks above mean + threshold, at least half a rep apart
+        List<Long> peakTimes = new ArrayList<>();
+        long lastPeak = Long.MIN_VALUE / 2;
+        for (int i = 1; i < n - 1; ++i)
+        {
+            if (magnitude[i] > mean + m_threshold && magnitude[i] >= magnitude[i - 1] && magnitude[i] > magnitude[i + 1])
+            {
+                long time = samples.getTime(i);
+                if (time - lastPeak >= minSpacing)
+                {
+                    peakTimes.add(time);
+                    lastPeak = time;
+                }
+            }
+        }
+
+        Result result = new Result();
+        result.duration = (samples.getTime(n - 1) - samples.getTime(0)) / 1000.0f;
+        result.repCount = peakTimes.size();
+        if (peakTimes.size() > 1)
+        {
+            float sum = 0.0f;
+            float sumSquares = 0.0f;
+            result.minRepTime = Float.MAX_VALUE;
+            for (int i = 1; i < peakTimes.size(); ++i)
+            {
+                float repTime = (peakTimes.get(i) - peakTimes.get(i - 1)) / 1000.0f;
+                sum += repTime;
+                sumSquares += repTime * repTime;
+                result.minRepTime = Math.min(result.minRepTime, repTime);
+                result.maxRepTime = Math.max(result.maxRepTime, repTime);
+            }
+            int count = peakTimes.size() - 1;
+            result.meanRepTime = sum / count;
+            float variance = Math.max(0.0f, sumSquares / count - result.meanRepTime * result.meanRepTime);
+            result.internalVariation = (float) Math.sqrt(variance) / result.meanRepTime;
+        }
+        m_results.add(result);
+    }
+
+    public int getNumResults()
+    {
+        return m_results.size();
+    }
+
+    public Result getResult(int index)
+    {
+        return m_results.get(index);
+    }
+
+    ////////////////////////////////////////
+
+    private final float m_period;
+    private final float m_threshold;
+    private final List<Result> m_results = new ArrayList<>();
+
+    private StandInAnalyzer(float period, float threshold)
+    {
+        m_period = period;
+        m_threshold = threshold;
+    }
+
+    private static float[] smoothedMagnitude(SampleSeries samples)
+    {
+        final int window = 5;
+        int n = samples.size();
+        float[] magnitude = new float[n];
+        for (int i = 0; i < n; ++i)
+        {
+            float x = samples.getValue(i, SampleBlock.ACCEL_X);
+            float y = samples.getValue(i, SampleBlock.ACCEL_Y);
+            float z = samples.getValue(i, SampleBlock.ACCEL_Z);
+            magnitude[i] = (float) Math.sqrt(x * x + y * y + z * z);
+        }
+
+        // moving average
+        float[] smoothed = new float[n];
+        float sum = 0.0f;
+        for (int i = 0; i < n; ++i)
+        {
+            sum += magnitude[i];
+            if (i >= window)
+            {
+                sum -= magnitude[i - window];
+            }
+            smoothed[i] = sum / Math.min(i + 1, window);
+        }
+        return smoothed;
+    }
+
+    private static float mean(float[] values)
+    {
+        float sum = 0.0f;
+        for (float v : values)
+        {
+            sum += v;
+        }
+        return sum / values.length;
+    }
+}
@@ -0,0 +1,39 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+// train() as the number of data sets grows.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrainingBenchmark
+{
+    @Param({"1", "5", "20"})
+    public int numDataSets;
+
+    @Setup
+    public void setUp()
+    {
+        m_trainer = new StandInAnalyzer.Trainer();
+        for (int i = 0; i < numDataSets; ++i)
+        {
+            m_trainer.addTrainingDataSet(Fixtures.createSet(SET_SECONDS, i), Fixtures.getRepCount(SET_SECONDS));
+        }
+    }
+
+    @Benchmark
+    public StandInAnalyzer.Trainer train()
+    {
+        m_trainer.train();
+        return m_trainer;
+    }
+
+    ////////////////////////////////////////
+
+    private static final float SET_SECONDS = 25.0f;
+
+    private StandInAnalyzer.Trainer m_trainer;
+}
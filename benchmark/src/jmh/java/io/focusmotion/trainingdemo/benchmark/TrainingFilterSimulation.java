@@ -0,0 +1,297 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.*;
+
+import java.util.*;
+
+
+// Replays a training session, with and without TrainingFilter, and reports
+// the time spent in train() against the accuracy of the model trained.
+//
+// The user presses the train button after every set, labeling it 10 reps, as
+// the app does; each set is added and the trainer retrained, as by
+// TrainingService. Most sets are good, at one of a few tempos and
+// amplitudes the user repeats, so many are near-duplicates; the rest are bad:
+// shorter sets with fewer than 10 reps, sets with packets dropped, and sets of
+// irregular motion. train() is the stand-in SDK trainer's, whose cost grows
+// with the data sets but whose model doesn't depend on them, so accuracy is
+// that of PeakRepCounter with a model trained on the same sets: the range of
+// rep times it looks for, and the mean rep count error on two test sets. The
+// short sets, labeled 10 reps, stretch the range down towards rep times no
+// good set has. On sets at the trained tempos that makes no difference; the
+// fast test sets are done at 1.5s a rep, each rep with a second, weaker push,
+// so half-reps fall inside the unfiltered range but not the filtered one, and
+// a model that allows them counts each rep twice.
+//
+// Last, a user who lifts consistently, every set at the same tempo and
+// amplitude, trains with the filter: only the first MAX_PER_SIGNATURE sets
+// of each signature are trained, and the rest rejected as near-duplicates.
+public class TrainingFilterSimulation
+{
+    public static void main(String[] args)
+    {
+        List<Candidate> candidates = createCandidates(new Random(SEED));
+        List<Candidate> tests = createTests(new Random(SEED + 1));
+        List<Candidate> fastTests = createFastTests(new Random(SEED + 2));
+        System.out.println(String.format("%d candidate sets (%d bad), %d test sets at the trained tempos, %d fast",
+                candidates.size(), NUM_BAD, tests.size(), fastTests.size()));
+
+        // warm up the JIT first
+        new TrainingFilterSimulation("unfiltered", candidates, false).run(tests, fastTests);
+        new TrainingFilterSimulation("filtered", candidates, true).run(tests, fastTests);
+
+        new TrainingFilterSimulation("unfiltered", candidates, false).run(tests, fastTests);
+        new TrainingFilterSimulation("filtered", candidates, true).run(tests, fastTests);
+        new TrainingFilterSimulation("consistent", createConsistent(new Random(SEED + 3)), true).run(tests, fastTests);
+    }
+
+    public TrainingFilterSimulation(String name, List<Candidate> candidates, boolean filtered)
+    {
+        m_name = name;
+        m_candidates = candidates;
+        m_filtered = filtered;
+    }
+
+    public void run(List<Candidate> tests, List<Candidate> fastTests)
+    {
+        StandInAnalyzer.Trainer trainer = new StandInAnalyzer.Trainer();
+        TrainingFilter filter = new TrainingFilter();
+        TrainingFilter.Verdict verdict = new TrainingFilter.Verdict();
+        List<SampleBlock> trained = new ArrayList<>();
+        int numBadTrained = 0;
+        long filterNs = 0;
+        long trainNs = 0;
+        long lastTrainNs = 0;
+
+        for (Candidate candidate : m_candidates)
+        {
+            if (m_filtered)
+            {
+                long startTime = System.nanoTime();
+                filter.check(candidate.samples, LABELED_REPS, verdict);
+                filterNs += System.nanoTime() - startTime;
+                if (!verdict.accepted)
+                {
+                    continue;
+                }
+            }
+
+            trainer.addTrainingDataSet(candidate.samples, LABELED_REPS);
+            trained.add(candidate.samples);
+            if (candidate.bad)
+            {
+                ++numBadTrained;
+            }
+            long startTime = System.nanoTime();
+            trainer.train();
+            lastTrainNs = System.nanoTime() - startTime;
+            trainNs += lastTrainNs;
+        }
+
+        int[] labels = new int[trained.size()];
+        Arrays.fill(labels, LABELED_REPS);
+        PeakRepCounter.Model model = PeakRepCounter.Model.train(trained, labels);
+        PeakRepCounter counter = new PeakRepCounter(model);
+
+        System.out.println(String.format(
+                "%-10s: %2d of %2d data sets trained (%d bad); train() %.1fms in all, last %.2fms; filter %.1fms; " +
+                "model rep times %.2fs to %.2fs; rep count error %.2f at the trained tempos, %.2f fast",
+                m_name, trained.size(), m_candidates.size(), numBadTrained, trainNs / 1e6, lastTrainNs / 1e6,
+                filterNs / 1e6, model.minRepTime, model.maxRepTime, getCountError(counter, tests),
+                getCountError(counter, fastTests)));
+    }
+
+    ////////////////////////////////////////
+
+    private static final long SEED = 5;
+    private static final int LABELED_REPS = 10;
+    private static final float SET_SECONDS = 25.0f;                 // 10 reps at the fixtures' tempo
+    private static final float[] TEMPOS = { 0.8f, 1.0f, 1.3f };     // of the fixtures' rep time
+    private static final float[] AMPLITUDES = { 0.7f, 1.0f, 1.4f }; // of the fixtures' motion
+    private static final float JITTER = 0.03f;
+    private static final int NUM_GOOD = 60;
+    private static final int NUM_SHORT = 8;
+    private static final int NUM_GAPPY = 6;
+    private static final int NUM_IRREGULAR = 6;
+    private static final int NUM_BAD = NUM_SHORT + NUM_GAPPY + NUM_IRREGULAR;
+    private static final int NUM_TESTS = 30;
+    private static final float FAST_TEMPO = 0.6f;       // of the fixtures' rep time
+    private static final float SECOND_PUSH = 0.8f;      // of the first
+    private static final int NUM_CONSISTENT = 20;
+
+    private final String m_name;
+    private final List<Candidate> m_candidates;
+    private final boolean m_filtered;
+
+    private static class Candidate
+    {
+        Candidate(SampleBlock samples, int repCount, boolean bad)
+        {
+            this.samples = samples;
+            this.repCount = repCount;
+            this.bad = bad;
+        }
+
+        final SampleBlock samples;
+        final int repCount;     // actually done
+        final boolean bad;
+    }
+
+    private static List<Candidate> createCandidates(Random random)
+    {
+        List<Candidate> candidates = new ArrayList<>();
+        for (int i = 0; i < NUM_GOOD; ++i)
+        {
+            candidates.add(new Candidate(createSet(SET_SECONDS, random), LABELED_REPS, false));
+        }
+        for (int i = 0; i < NUM_SHORT; ++i)
+        {
+            // the user stopped early, but the set is still labeled 10 reps
+            float seconds = 12.5f + random.nextInt(5) * Fixtures.REP_PERIOD / 2;
+            candidates.add(new Candidate(createSet(seconds, random), Fixtures.getRepCount(seconds), true));
+        }
+        for (int i = 0; i < NUM_GAPPY; ++i)
+        {
+            candidates.add(new Candidate(dropPackets(createSet(SET_SECONDS, random)), LABELED_REPS, true));
+        }
+        for (int i = 0; i < NUM_IRREGULAR; ++i)
+        {
+            candidates.add(new Candidate(createIrregular(SET_SECONDS, random), 0, true));
+        }
+        Collections.shuffle(candidates, random);
+        return candidates;
+    }
+
+    // sets of 15 to 45 seconds at every tempo and amplitude
+    private static List<Candidate> createTests(Random random)
+    {
+        List<Candidate> tests = new ArrayList<>();
+        for (int i = 0; i < NUM_TESTS; ++i)
+        {
+            float seconds = 15 + random.nextInt(31);
+            tests.add(new Candidate(createSet(seconds, random), Fixtures.getRepCount(seconds), false));
+        }
+        return tests;
+    }
+
+    // sets of 6 to 18 fast reps with a second push
+    private static List<Candidate> createFastTests(Random random)
+    {
+        List<Candidate> tests = new ArrayList<>();
+        for (int i = 0; i < NUM_TESTS; ++i)
+        {
+            int numReps = 6 + random.nextInt(13);
+            float amplitude = AMPLITUDES[random.nextInt(AMPLITUDES.length)];
+            tests.add(new Candidate(createTwoPhase(numReps, amplitude, random), numReps, false));
+        }
+        return tests;
+    }
+
+    // every set good, and at the middle tempo and amplitude
+    private static List<Candidate> createConsistent(Random random)
+    {
+        List<Candidate> candidates = new ArrayList<>();
+        for (int i = 0; i < NUM_CONSISTENT; ++i)
+        {
+            float tempo = TEMPOS[1] * (1.0f + JITTER * (float) random.nextGaussian());
+            float amplitude = AMPLITUDES[1] * (1.0f + JITTER * (float) random.nextGaussian());
+            candidates.add(new Candidate(Fixtures.createSet(SET_SECONDS, tempo, amplitude, random.nextLong()),
+                    LABELED_REPS, false));
+        }
+        return candidates;
+    }
+
+    // mean absolute rep count error of the counter over the tests
+    private static float getCountError(PeakRepCounter counter, List<Candidate> tests)
+    {
+        int error = 0;
+        for (Candidate test : tests)
+        {
+            counter.analyze(test.samples);
+            error += Math.abs(counter.getResult(0).repCount - test.repCount);
+        }
+        return error / (float) tests.size();
+    }
+
+    // a set of the reps done in seconds at the fixtures' tempo, at one of TEMPOS and AMPLITUDES
+    private static SampleBlock createSet(float seconds, Random random)
+    {
+        float tempo = TEMPOS[random.nextInt(TEMPOS.length)] * (1.0f + JITTER * (float) random.nextGaussian());
+        float amplitude = AMPLITUDES[random.nextInt(AMPLITUDES.length)] * (1.0f + JITTER * (float) random.nextGaussian());
+        return Fixtures.createSet(seconds, tempo, amplitude, random.nextLong());
+    }
+
+    // drop every fourth second of samples
+    private static SampleBlock dropPackets(SampleBlock set)
+    {
+        SampleBlock block = new SampleBlock(0);
+        int samplesPerSecond = (int) Fixtures.SAMPLE_RATE;
+        for (int start = 0; start < set.size(); start += samplesPerSecond)
+        {
+            if (start % (4 * samplesPerSecond) == 3 * samplesPerSecond)
+            {
+                continue;
+            }
+            for (int i = start; i < Math.min(start + samplesPerSecond, set.size()); ++i)
+            {
+                block.add(set.getTime(i), set.getValue(i, 0), set.getValue(i, 1), set.getValue(i, 2),
+                        set.getValue(i, 3), set.getValue(i, 4), set.getValue(i, 5));
+            }
+        }
+        return block;
+    }
+
+    // motion with no steady rep: bursts of random length and strength
+    private static SampleBlock createIrregular(float seconds, Random random)
+    {
+        SampleBlock block = new SampleBlock(0);
+        long period = (long) (1000 / Fixtures.SAMPLE_RATE);
+        float strength = 0.0f;
+        double phase = 0.0;
+        double step = 0.0;
+        for (long time = 0; time < seconds * 1000; time += period)
+        {
+            if (random.nextInt(25) == 0)
+            {
+                strength = 4.0f * random.nextFloat();
+                step = (0.2 + 2.0 * random.nextDouble()) / Fixtures.SAMPLE_RATE;
+            }
+            phase += step;
+            float motion = strength * (float) Math.sin(2.0 * Math.PI * phase);
+            block.add(time,
+                    motion + 0.3f * (float) random.nextGaussian(),
+                    9.81f + 0.5f * motion + 0.3f * (float) random.nextGaussian(),
+                    0.3f * (float) random.nextGaussian(),
+                    0.05f * (float) random.nextGaussian(), 0.05f * (float) random.nextGaussian(), 0.05f * (float) random.nextGaussian());
+        }
+        return block;
+    }
+
+    // reps at FAST_TEMPO, each pushing out and then back SECOND_PUSH as hard, varying in length as the fixtures'
+    private static SampleBlock createTwoPhase(int numReps, float amplitude, Random random)
+    {
+        SampleBlock block = new SampleBlock(0);
+        long period = (long) (1000 / Fixtures.SAMPLE_RATE);
+        double repTime = Fixtures.REP_PERIOD * FAST_TEMPO;
+        double phase = 0.0;
+        int rep = 0;
+        for (long time = 0; rep < numReps; time += period)
+        {
+            phase += period / 1000.0 / repTime;
+            if (phase >= 1.0)
+            {
+                phase -= 1.0;
+                ++rep;
+                repTime = Fixtures.REP_PERIOD * FAST_TEMPO * (0.85 + 0.3 * random.nextDouble());
+            }
+            double push = Math.sin(2.0 * Math.PI * phase);
+            float motion = amplitude * (float) (phase < 0.5 ? push : -SECOND_PUSH * push);
+            block.add(time,
+                    3.0f * motion + 0.3f * (float) random.nextGaussian(),
+                    9.81f + 1.5f * motion + 0.3f * (float) random.nextGaussian(),
+                    0.3f * (float) random.nextGaussian(),
+                    0.05f * (float) random.nextGaussian(), 0.05f * (float) random.nextGaussian(), 0.05f * (float) random.nextGaussian());
+        }
+        return block;
+    }
+}
@@ -0,0 +1,198 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.SampleBlock;
+import io.focusmotion.trainingdemo.TrainingQueue;
+
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+
+
+// Queued against coalesced training, as the train button is pressed while a
+// training run is busy.
+//
+// A session adds NUM_DATA_SETS data sets, one press every interval, to a
+// stand-in trainer on a single training thread, as TrainingService does.
+// Intervals are fractions of the time train() takes over every data set, from
+// a burst of presses to presses slower than training.
+// Queued, each press runs its own train() over every data set so far;
+// coalesced, presses go through a TrainingQueue and each run adds everything
+// queued since the last one before a single train(). For each press interval
+// this prints the number of train() calls, the training thread's busy time,
+// and the time from the last press until a model covering every data set is
+// ready.
+//
+// Then a run is cancelled partway through adding a batch, and must stop
+// adding at its next check; fails if it doesn't.
+public class TrainingQueueSimulation
+{
+    public static void main(String[] args) throws Exception
+    {
+        SampleBlock[] sets = new SampleBlock[NUM_DATA_SETS];
+        for (int i = 0; i < sets.length; ++i)
+        {
+            sets[i] = Fixtures.createSet(SET_SECONDS, i);
+        }
+
+        // warm up
+        for (int i = 0; i < 5; ++i)
+        {
+            run(sets, 0, false);
+            run(sets, 0, true);
+        }
+        long trainNs = measureTrain(sets);
+        System.out.println(String.format("train() over %d data sets: %.2fms", sets.length, trainNs / 1e6));
+
+        for (float fraction : PRESS_INTERVALS)
+        {
+            long interval = (long) (fraction * trainNs);
+            for (boolean coalesce : new boolean[] { false, true })
+            {
+                Session session = run(sets, interval, coalesce);
+                System.out.println(String.format("presses every %.2f train(), %-9s: %2d train() calls, %7.1fms training, " +
+                        "model ready %6.1fms after the last press", fraction, (coalesce ? "coalesced" : "queued"),
+                        session.numRuns, session.trainingNs / 1e6, session.readyNs / 1e6));
+            }
+        }
+
+        checkCancel(sets);
+    }
+
+    ////////////////////////////////////////
+
+    private static final int NUM_DATA_SETS = 20;
+    private static final float SET_SECONDS = 120.0f;
+    private static final float[] PRESS_INTERVALS = { 0.0f, 0.1f, 0.25f, 0.5f, 1.0f, 2.0f }; // of a full train()
+
+    private static class Session
+    {
+        volatile int numRuns;
+        volatile long trainingNs;
+        volatile long readyNs;
+    }
+
+    private static long measureTrain(SampleBlock[] sets)
+    {
+        StandInAnalyzer.Trainer trainer = new StandInAnalyzer.Trainer();
+        for (SampleBlock set : sets)
+        {
+            trainer.addTrainingDataSet(set, Fixtures.getRepCount(SET_SECONDS));
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 10; ++i)
+        {
+            long startTime = System.nanoTime();
+            trainer.train();
+            best = Math.min(best, System.nanoTime() - startTime);
+        }
+        return best;
+    }
+
+    private static Session run(final SampleBlock[] sets, long intervalNs, boolean coalesce) throws Exception
+    {
+        final Session session = new Session();
+        final StandInAnalyzer.Trainer trainer = new StandInAnalyzer.Trainer();
+        final TrainingQueue<SampleBlock> queue = new TrainingQueue<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        final long[] lastPress = new long[1];
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        for (int i = 0; i < sets.length; ++i)
+        {
+            final SampleBlock set = sets[i];
+            Runnable task;
+            if (coalesce)
+            {
+                queue.add(set);
+                task = new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        TrainingQueue.Batch<SampleBlock> batch = queue.take();
+                        if (batch == null)
+                        {
+                            return;
+                        }
+                        for (SampleBlock item : batch.items)
+                        {
+                            trainer.addTrainingDataSet(item, Fixtures.getRepCount(SET_SECONDS));
+                        }
+                        train(trainer, session, sets.length, lastPress, done);
+                    }
+                };
+            }
+            else
+            {
+                task = new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        trainer.addTrainingDataSet(set, Fixtures.getRepCount(SET_SECONDS));
+                        train(trainer, session, sets.length, lastPress, done);
+                    }
+                };
+            }
+            synchronized (lastPress)
+            {
+                lastPress[0] = System.nanoTime();
+            }
+            executor.execute(task);
+            if (intervalNs > 0)
+            {
+                LockSupport.parkNanos(intervalNs);
+            }
+        }
+        done.await();
+        executor.shutdown();
+        return session;
+    }
+
+    // training thread
+    private static void train(StandInAnalyzer.Trainer trainer, Session session, int numDataSets, long[] lastPress,
+                              CountDownLatch done)
+    {
+        long startTime = System.nanoTime();
+        trainer.train();
+        long endTime = System.nanoTime();
+        ++session.numRuns;
+        session.trainingNs += endTime - startTime;
+        if (trainer.getNumTrainingDataSets() == numDataSets)
+        {
+            synchronized (lastPress)
+            {
+                session.readyNs = endTime - lastPress[0];
+            }
+            done.countDown();
+        }
+    }
+
+    // a batch cancelled after its first data set stops there, and the queue is empty afterwards
+    private static void checkCancel(SampleBlock[] sets)
+    {
+        TrainingQueue<SampleBlock> queue = new TrainingQueue<>();
+        for (SampleBlock set : sets)
+        {
+            queue.add(set);
+        }
+        StandInAnalyzer.Trainer trainer = new StandInAnalyzer.Trainer();
+        TrainingQueue.Batch<SampleBlock> batch = queue.take();
+        queue.add(sets[0]);
+        for (int i = 0; i < batch.items.size(); ++i)
+        {
+            if (i > 0 && queue.isCancelled(batch))
+            {
+                break;
+            }
+            trainer.addTrainingDataSet(batch.items.get(i), Fixtures.getRepCount(SET_SECONDS));
+            if (i == 0)
+            {
+                queue.cancel();
+            }
+        }
+        if (trainer.getNumTrainingDataSets() != 1 || queue.take() != null)
+        {
+            throw new AssertionError(String.format("cancelled run added %d data sets", trainer.getNumTrainingDataSets()));
+        }
+        System.out.println("cancelled run stopped after its first data set");
+    }
+}
@@ -0,0 +1,74 @@
+package io.focusmotion.trainingdemo.benchmark;
+
+import io.focusmotion.trainingdemo.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+// Per-sample cost of counting reps on the watch with WatchRepCounter, next to
+// the phone's PeakRepCounter analyzing the same set in one go.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WatchRepCounterBenchmark
+{
+    @Setup
+    public void setUp()
+    {
+        m_set = Fixtures.createSet(SET_SECONDS, SEED);
+        m_times = new long[NUM_SAMPLES];
+        m_accel = new float[NUM_SAMPLES * 3];
+        for (int i = 0; i < NUM_SAMPLES; ++i)
+        {
+            m_times[i] = m_set.getTime(i);
+            m_accel[i * 3] = m_set.getValue(i, SampleBlock.ACCEL_X);
+            m_accel[i * 3 + 1] = m_set.getValue(i, SampleBlock.ACCEL_Y);
+            m_accel[i * 3 + 2] = m_set.getValue(i, SampleBlock.ACCEL_Z);
+        }
+
+        m_watchCounter = new WatchRepCounter(
+                new WatchRepCounter.Listener()
+                {
+                    @Override
+                    public void onRepCounted(int repCount)
+                    {
+                    }
+                } );
+        m_peakCounter = new PeakRepCounter();
+        m_peakCounter.analyze(m_set);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_SAMPLES)
+    public int watchRepCounter()
+    {
+        m_watchCounter.reset();
+        for (int i = 0; i < NUM_SAMPLES; ++i)
+        {
+            m_watchCounter.add(m_times[i], m_accel[i * 3], m_accel[i * 3 + 1], m_accel[i * 3 + 2]);
+        }
+        return m_watchCounter.getRepCount();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_SAMPLES)
+    public int peakRepCounter()
+    {
+        m_peakCounter.analyze(m_set);
+        return m_peakCounter.getResult(0).repCount;
+    }
+
+    ////////////////////////////////////////
+
+    private static final int SET_SECONDS = 60;
+    private static final int NUM_SAMPLES = (int) (SET_SECONDS * Fixtures.SAMPLE_RATE);
+    private static final long SEED = 1234;
+
+    private SampleBlock m_set;
+    private long[] m_times;
+    private float[] m_accel;
+    private WatchRepCounter m_watchCounter;
+    private PeakRepCounter m_peakCounter;
+}
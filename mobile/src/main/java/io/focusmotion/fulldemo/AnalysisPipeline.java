@@ -0,0 +1,239 @@
+package io.focusmotion.trainingdemo;
+
+import io.focusmotion.sdk.*;
+
+import android.os.*;
+import android.util.Log;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+
+// Runs MovementAnalyzer work on a dedicated background thread and delivers
+// results back on the main thread, through a SerialWorker.
+//
+// Analysis requests are each the end of a set, which can't be asked for again,
+// so none is ever dropped, even when several sets end in quick succession:
+// they wait their turn, and every callback is called unless the work is
+// cancelled first. Cancelling discards queued work and suppresses delivery of
+// any result still in flight (the SDK's analyze() itself cannot be
+// interrupted); a caller that cancels clears the state it kept for the
+// result itself.
+//
+// classify() analyzes one output against several trained movements at once,
+// with one task per movement on the classify executor, which the pipelines of
+// all devices share, so several devices don't oversubscribe the cores.
+public class AnalysisPipeline implements SerialWorker.Runner
+{
+    public interface Callback
+    {
+        // called on the main thread; result is null if the analyzer produced no results
+        void onAnalysisComplete(AnalyzerResult result);
+    }
+
+    public interface ClassifyCallback
+    {
+        // called on the main thread; movementType and result are null if no movement matched
+        void onClassificationComplete(String movementType, AnalyzerResult result);
+    }
+
+    // Create a shared executor for classify(), sized to the number of cores.
+    public static ExecutorService createClassifyExecutor()
+    {
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread thread = new Thread(r, "classify");
+                        thread.setPriority(Thread.NORM_PRIORITY - 1);
+                        return thread;
+                    }
+                } );
+    }
+
+    public AnalysisPipeline(AnalyzerPool pool, ExecutorService classifyExecutor)
+    {
+        m_pool = pool;
+        m_classifyExecutor = classifyExecutor;
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        m_worker = new SerialWorker("analysis", Thread.NORM_PRIORITY - 1, 0,
+                new Executor()
+                {
+                    @Override
+                    public void execute(Runnable r)
+                    {
+                        mainHandler.post(r);
+                    }
+                } );
+    }
+
+    // Analyze the output with the trained analyzer for the given movement.
+    public void analyze(final DeviceOutput output, final String movementType, final Callback callback)
+    {
+        m_worker.submit(
+                new SerialWorker.Task<AnalyzerResult>()
+                {
+                    @Override
+                    public AnalyzerResult run()
+                    {
+                        long startTime = SystemClock.elapsedRealtime();
+                        AnalyzerResult result = runAnalyzer(output, movementType);
+                        logInfo(String.format("analyzed in %dms (%s)", SystemClock.elapsedRealtime() - startTime, m_pool));
+                        return result;
+                    }
+                },
+                new SerialWorker.Receiver<AnalyzerResult>()
+                {
+                    @Override
+                    public void onResult(AnalyzerResult result)
+                    {
+                        callback.onAnalysisComplete(result);
+                    }
+                }, false);
+    }
+
+    // Analyze the output against each of the movements, and report the best match.
+    public void classify(final DeviceOutput output, final List<String> movementTypes, final ClassifyCallback callback)
+    {
+        m_worker.submit(
+                new SerialWorker.Task<Match>()
+                {
+                    @Override
+                    public Match run()
+                    {
+                        long startTime = SystemClock.elapsedRealtime();
+                        List<Future<AnalyzerResult>> futures = new ArrayList<>();
+                        for (final String movementType : movementTypes)
+                        {
+                            futures.add(m_classifyExecutor.submit(
+                                    new Callable<AnalyzerResult>()
+                                    {
+                                        @Override
+                                        public AnalyzerResult call()
+                                        {
+                                            return runAnalyzer(output, movementType);
+                                        }
+                                    } ));
+                        }
+
+                        Match match = new Match();
+                        for (int i = 0; i < futures.size(); ++i)
+                        {
+                            AnalyzerResult result = getResult(futures.get(i));
+                            if (isBetterMatch(result, match.result))
+                            {
+                                match.movementType = movementTypes.get(i);
+                                match.result = result;
+                            }
+                        }
+                        logInfo(String.format("classified against %d movements in %dms (%s)",
+                                movementTypes.size(), SystemClock.elapsedRealtime() - startTime, m_pool));
+                        return match;
+                    }
+                },
+                new SerialWorker.Receiver<Match>()
+                {
+                    @Override
+                    public void onResult(Match match)
+                    {
+                        callback.onClassificationComplete(match.movementType, match.result);
+                    }
+                }, false);
+    }
+
+    // Run other work on the analysis thread, in order with the analyses; like them, it is never dropped, only cancelled.
+    // receiver is called on the main thread, and may be null.
+    @Override
+    public <T> void run(SerialWorker.Task<T> task, SerialWorker.Receiver<T> receiver)
+    {
+        m_worker.submit(task, receiver, false);
+    }
+
+    // Discard pending work and any results not yet delivered.
+    public void cancel()
+    {
+        m_worker.cancel();
+    }
+
+    // The classify executor is shared, and is left running.
+    public void shutdown()
+    {
+        m_worker.shutdown();
+    }
+
+    ////////////////////////////////////////
+
+    private static class Match
+    {
+        String movementType;
+        AnalyzerResult result;
+    }
+
+    private final AnalyzerPool m_pool;
+    private final ExecutorService m_classifyExecutor;
+    private final SerialWorker m_worker;
+
+    private static AnalyzerResult getResult(Future<AnalyzerResult> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (ExecutionException e)
+        {
+            logInfo("analysis failed: " + e.getCause());
+            return null;
+        }
+    }
+
+    // A movement matches if reps were counted; among those, the one whose reps are most alike wins.
+    private static boolean isBetterMatch(AnalyzerResult result, AnalyzerResult bestResult)
+    {
+        if (result == null || result.repCount <= 0)
+        {
+            return false;
+        }
+        return (bestResult == null || result.internalVariation < bestResult.internalVariation);
+    }
+
+    private AnalyzerResult runAnalyzer(DeviceOutput output, String movementType)
+    {
+        // don't analyze while the model is being retrained
+        m_pool.getModelLock().readLock().lock();
+        try
+        {
+            MovementAnalyzer analyzer = m_pool.acquire(movementType);
+            try
+            {
+                long startTime = System.nanoTime();
+                analyzer.analyze(output);
+                Metrics.ANALYZE.recordSince(startTime);
+
+                startTime = System.nanoTime();
+                AnalyzerResult result = (analyzer.getNumResults() > 0 ? analyzer.getResult(0) : null);
+                Metrics.GET_RESULT.recordSince(startTime);
+                return result;
+            }
+            finally
+            {
+                m_pool.release(movementType, analyzer);
+            }
+        }
+        finally
+        {
+            m_pool.getModelLock().readLock().unlock();
+        }
+    }
+
+    private static void logInfo(String msg)
+    {
+        Log.i(AnalysisPipeline.class.getName(), msg);
+    }
+}
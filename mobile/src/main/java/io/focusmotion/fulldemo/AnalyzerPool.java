@@ -0,0 +1,150 @@
+package io.focusmotion.trainingdemo;
+
+import io.focusmotion.sdk.*;
+
+import java.util.*;
+import java.util.concurrent.locks.*;
+
+
+// Keeps trained MovementAnalyzers alive between sets, so each set doesn't pay
+// for native allocation and model load again.
+//
+// Idle analyzers are keyed by movement type and evicted least-recently-used
+// once more than maxSize are held. A trained analyzer captures the model at
+// creation time, so invalidate() must be called whenever the trainer's model
+// changes; analyzers checked out at that point are destroyed when released.
+//
+// The model lock guards the trained model itself: hold the read lock while
+// creating or running analyzers, and the write lock while training.
+public class AnalyzerPool
+{
+    public AnalyzerPool(int maxSize)
+    {
+        m_maxSize = maxSize;
+        m_idle = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    // Get a trained analyzer for the movement; must be returned with release().
+    public MovementAnalyzer acquire(String movementType)
+    {
+        synchronized (this)
+        {
+            MovementAnalyzer analyzer = m_idle.remove(movementType);
+            if (analyzer != null)
+            {
+                ++m_hits;
+                m_checkedOut.put(analyzer, m_generation);
+                return analyzer;
+            }
+            ++m_misses;
+        }
+
+        // create outside the lock; this is the expensive part
+        long startTime = System.nanoTime();
+        MovementAnalyzer analyzer = MovementAnalyzer.createTrainedSingleMovementAnalyzer(movementType);
+        Metrics.CREATE_ANALYZER.recordSince(startTime);
+        synchronized (this)
+        {
+            m_checkedOut.put(analyzer, m_generation);
+        }
+        return analyzer;
+    }
+
+    public void release(String movementType, MovementAnalyzer analyzer)
+    {
+        List<MovementAnalyzer> toDestroy = new ArrayList<>();
+
+        synchronized (this)
+        {
+            Integer generation = m_checkedOut.remove(analyzer);
+            if (generation == null || generation != m_generation || m_idle.containsKey(movementType))
+            {
+                // stale model, or we already have an idle one for this movement
+                toDestroy.add(analyzer);
+            }
+            else
+            {
+                m_idle.put(movementType, analyzer);
+                evict(toDestroy);
+            }
+        }
+
+        destroyAll(toDestroy);
+    }
+
+    // Drop all pooled analyzers; call after the trained model changes.
+    public void invalidate()
+    {
+        List<MovementAnalyzer> toDestroy;
+        synchronized (this)
+        {
+            ++m_generation;
+            toDestroy = new ArrayList<>(m_idle.values());
+            m_idle.clear();
+        }
+        destroyAll(toDestroy);
+    }
+
+    public void destroy()
+    {
+        invalidate();
+    }
+
+    public ReadWriteLock getModelLock()
+    {
+        return m_modelLock;
+    }
+
+    public synchronized int getHits()
+    {
+        return m_hits;
+    }
+
+    public synchronized int getMisses()
+    {
+        return m_misses;
+    }
+
+    public synchronized int getEvictions()
+    {
+        return m_evictions;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("AnalyzerPool: %d idle, %d hits, %d misses, %d evictions",
+                m_idle.size(), m_hits, m_misses, m_evictions);
+    }
+
+    ////////////////////////////////////////
+
+    private final int m_maxSize;
+    private final LinkedHashMap<String, MovementAnalyzer> m_idle; // in access order
+    private final IdentityHashMap<MovementAnalyzer, Integer> m_checkedOut = new IdentityHashMap<>();
+    private int m_generation;
+    private final ReadWriteLock m_modelLock = new ReentrantReadWriteLock();
+
+    private int m_hits;
+    private int m_misses;
+    private int m_evictions;
+
+    private void evict(List<MovementAnalyzer> toDestroy)
+    {
+        Iterator<Map.Entry<String, MovementAnalyzer>> it = m_idle.entrySet().iterator();
+        while (m_idle.size() > m_maxSize && it.hasNext())
+        {
+            toDestroy.add(it.next().getValue());
+            it.remove();
+            ++m_evictions;
+        }
+    }
+
+    private static void destroyAll(List<MovementAnalyzer> analyzers)
+    {
+        for (MovementAnalyzer analyzer : analyzers)
+        {
+            analyzer.destroy();
+        }
+    }
+}
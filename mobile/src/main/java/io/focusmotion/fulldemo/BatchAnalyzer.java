@@ -0,0 +1,204 @@
+package io.focusmotion.trainingdemo;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+// Re-analyzes many stored sessions at once, e.g. after a model is retrained.
+//
+// Each batch runs one worker per thread, and each worker owns its own
+// PeakRepCounter (whose buffers aren't shared), taking the next session from
+// a shared index until there are none left, so a few long sessions don't
+// leave the other threads idle. Results are streamed to the Sink through the
+// delivery Executor (the main thread's Handler, in the app) as they
+// complete; at most MAX_PENDING_RESULTS can be waiting for delivery at once,
+// and workers block until the sink catches up, so a big batch can't flood the
+// main looper. A session that can't be loaded or counted is reported as a
+// failure and the worker goes on to the next one. Cancelling a batch stops its
+// workers after their current session and drops undelivered results. Has no
+// Android dependencies, so its scaling with the thread count can be measured
+// off the device.
+public class BatchAnalyzer
+{
+    public interface Sink
+    {
+        // called through the delivery Executor, in order of completion
+        void onResult(SessionStore.Session session, RepResult result);
+
+        // called through the delivery Executor, in order of completion, instead of onResult()
+        void onFailure(SessionStore.Session session, Exception error);
+
+        // called through the delivery Executor after the last result, unless the batch was cancelled
+        void onBatchComplete(int numAnalyzed, int numFailed, long elapsedMs);
+    }
+
+    public class Batch
+    {
+        public void cancel()
+        {
+            m_cancelled = true;
+            // wake any worker waiting for the sink
+            m_permits.release(m_numThreads);
+        }
+
+        public boolean isCancelled()
+        {
+            return m_cancelled;
+        }
+
+        ////////////////////////////////////////
+
+        Batch(List<SessionStore.Session> sessions, PeakRepCounter.Model model, Sink sink)
+        {
+            m_sessions = sessions;
+            m_model = model;
+            m_sink = sink;
+        }
+
+        private final List<SessionStore.Session> m_sessions;
+        private final PeakRepCounter.Model m_model;
+        private final Sink m_sink;
+        private final AtomicInteger m_nextSession = new AtomicInteger();
+        private final AtomicInteger m_numAnalyzed = new AtomicInteger();
+        private final AtomicInteger m_numFailed = new AtomicInteger();
+        private final AtomicInteger m_numWorkers = new AtomicInteger();
+        private final Semaphore m_permits = new Semaphore(MAX_PENDING_RESULTS);
+        private final long m_startTime = System.nanoTime();
+        private volatile boolean m_cancelled;
+
+        private void runWorker()
+        {
+            PeakRepCounter counter = new PeakRepCounter(m_model);
+            try
+            {
+                int index;
+                while (!m_cancelled && (index = m_nextSession.getAndIncrement()) < m_sessions.size())
+                {
+                    SessionStore.Session session = m_sessions.get(index);
+                    RepResult result = new RepResult();
+                    Exception error = null;
+                    try
+                    {
+                        counter.analyze(m_store.load(session.id));
+                        if (counter.getNumResults() > 0)
+                        {
+                            result.set(counter.getResult(0));
+                        }
+                        m_numAnalyzed.incrementAndGet();
+                    }
+                    catch (IOException | RuntimeException e)
+                    {
+                        // a bad session shouldn't end the batch, or leave the rest of this worker's share undone
+                        m_numFailed.incrementAndGet();
+                        error = e;
+                    }
+
+                    m_permits.acquireUninterruptibly();
+                    deliver(session, result, error);
+                }
+            }
+            finally
+            {
+                if (m_numWorkers.decrementAndGet() == 0)
+                {
+                    complete();
+                }
+            }
+        }
+
+        private void deliver(final SessionStore.Session session, final RepResult result, final Exception error)
+        {
+            m_deliveryExecutor.execute(
+                    new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            m_permits.release();
+                            if (m_cancelled)
+                            {
+                                return;
+                            }
+                            if (error != null)
+                            {
+                                m_sink.onFailure(session, error);
+                            }
+                            else
+                            {
+                                m_sink.onResult(session, result);
+                            }
+                        }
+                    } );
+        }
+
+        private void complete()
+        {
+            final int numAnalyzed = m_numAnalyzed.get();
+            final int numFailed = m_numFailed.get();
+            final long elapsed = (System.nanoTime() - m_startTime) / 1000000;
+            m_deliveryExecutor.execute(
+                    new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            if (!m_cancelled)
+                            {
+                                m_sink.onBatchComplete(numAnalyzed, numFailed, elapsed);
+                            }
+                        }
+                    } );
+        }
+    }
+
+    public BatchAnalyzer(SessionStore store, int numThreads, Executor deliveryExecutor)
+    {
+        m_store = store;
+        m_numThreads = numThreads;
+        m_deliveryExecutor = deliveryExecutor;
+        m_executor = new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>());
+    }
+
+    // Analyze sessions with the given model; results go to sink.
+    public Batch start(List<SessionStore.Session> sessions, PeakRepCounter.Model model, Sink sink)
+    {
+        final Batch batch = new Batch(sessions, model, sink);
+        int numWorkers = Math.max(1, Math.min(m_numThreads, sessions.size()));
+        batch.m_numWorkers.set(numWorkers);
+        for (int i = 0; i < numWorkers; ++i)
+        {
+            m_executor.execute(
+                    new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            batch.runWorker();
+                        }
+                    } );
+        }
+        return batch;
+    }
+
+    public int getNumThreads()
+    {
+        return m_numThreads;
+    }
+
+    public void shutdown()
+    {
+        m_executor.shutdownNow();
+    }
+
+    ////////////////////////////////////////
+
+    private static final int MAX_PENDING_RESULTS = 16;
+
+    private final SessionStore m_store;
+    private final int m_numThreads;
+    private final ThreadPoolExecutor m_executor;
+    private final Executor m_deliveryExecutor;
+}
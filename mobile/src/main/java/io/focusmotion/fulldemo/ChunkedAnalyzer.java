@@ -0,0 +1,283 @@
+package io.focusmotion.trainingdemo;
+
+import java.io.*;
+
+
+// Counts reps in a recording of any length as its samples arrive, in memory
+// bounded by CHUNK_MS, instead of holding the whole recording for one
+// analyze() at the end.
+//
+// The recording is cut into chunks of CHUNK_MS. Each chunk is analyzed by
+// PeakRepCounter together with OVERLAP_MS of samples on either side, so reps
+// near its edges are found as they would be in the whole set, but only the
+// peaks within the chunk itself are kept; a peak closer to the previous one
+// than the model's shortest rep time is the same rep found again at a chunk
+// boundary. The kept peaks are merged into the same statistics PeakRepCounter
+// computes for a whole set. Once analyzed, a chunk's samples are appended to
+// the spill file, if any, and dropped from memory; SpillReader reads them back
+// a block at a time. With spillAfterMs, a recording is only spilled once it
+// gets that long: until then the analyzed chunks are held in memory, and a
+// shorter recording is never written at all. Not thread-safe.
+//
+// The spill file holds, for each sample, its time (long) and NUM_CHANNELS
+// values (float), big-endian.
+public class ChunkedAnalyzer
+{
+    // Reads a spill file back, in blocks of at most maxSamples.
+    public static class SpillReader
+    {
+        public SpillReader(File file) throws IOException
+        {
+            m_in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+
+        // Replace the contents of block with the next samples; returns how many, 0 at the end.
+        public int read(SampleBlock block, int maxSamples) throws IOException
+        {
+            block.clear();
+            try
+            {
+                while (block.size() < maxSamples)
+                {
+                    long time = m_in.readLong();
+                    block.add(time, m_in.readFloat(), m_in.readFloat(), m_in.readFloat(),
+                            m_in.readFloat(), m_in.readFloat(), m_in.readFloat());
+                }
+            }
+            catch (EOFException e)
+            {
+                // end of the file
+            }
+            return block.size();
+        }
+
+        public void close() throws IOException
+        {
+            m_in.close();
+        }
+
+        ////////////////////////////////////////
+
+        private final DataInputStream m_in;
+    }
+
+    // spillFile may be null, to drop analyzed samples without keeping them
+    public ChunkedAnalyzer(PeakRepCounter counter, File spillFile)
+    {
+        this(counter, spillFile, 0);
+    }
+
+    // spill only recordings of at least spillAfterMs
+    public ChunkedAnalyzer(PeakRepCounter counter, File spillFile, long spillAfterMs)
+    {
+        m_counter = counter;
+        m_spillFile = spillFile;
+        m_spillAfterMs = spillAfterMs;
+    }
+
+    // Start a new recording.
+    public void reset() throws IOException
+    {
+        closeSpill();
+        if (m_spillFile != null)
+        {
+            m_spillFile.delete();
+        }
+        m_window.clear();
+        m_held.clear();
+        m_spilledUntil = Long.MIN_VALUE;
+        m_firstTime = -1;
+        m_lastTime = -1;
+        m_numPeaks = 0;
+        m_intervalSum = 0;
+        m_intervalSquares = 0;
+        m_minInterval = Long.MAX_VALUE;
+        m_maxInterval = 0;
+        m_numSamples = 0;
+    }
+
+    public void add(long time, float ax, float ay, float az, float gx, float gy, float gz) throws IOException
+    {
+        if (m_firstTime < 0)
+        {
+            m_firstTime = time;
+            m_chunkStart = time;
+        }
+        m_lastTime = time;
+        ++m_numSamples;
+        m_window.add(time, ax, ay, az, gx, gy, gz);
+
+        if (time >= m_chunkStart + CHUNK_MS + OVERLAP_MS)
+        {
+            long chunkEnd = m_chunkStart + CHUNK_MS;
+            analyzeChunk(chunkEnd);
+            dropChunk(chunkEnd);
+            m_chunkStart = chunkEnd;
+        }
+    }
+
+    // End of the recording: analyze what's left and fill result with the statistics of the whole recording.
+    public RepResult finish(RepResult result) throws IOException
+    {
+        if (m_window.size() > 0)
+        {
+            analyzeChunk(Long.MAX_VALUE);
+            dropChunk(Long.MAX_VALUE);
+        }
+        closeSpill();
+
+        result.clear();
+        result.repCount = m_numPeaks;
+        result.duration = (m_firstTime >= 0 ? (m_lastTime - m_firstTime) / 1000.0f : 0.0f);
+        if (m_numPeaks >= 2)
+        {
+            int count = m_numPeaks - 1;
+            float mean = (float) (m_intervalSum / 1000.0 / count);
+            double variance = Math.max(0.0, m_intervalSquares / 1e6 / count - mean * mean);
+            result.meanRepTime = mean;
+            result.minRepTime = m_minInterval / 1000.0f;
+            result.maxRepTime = m_maxInterval / 1000.0f;
+            result.internalVariation = (float) Math.sqrt(variance) / mean;
+        }
+        return result;
+    }
+
+    // Milliseconds from the first sample to the last so far.
+    public long getDuration()
+    {
+        return (m_firstTime >= 0 ? m_lastTime - m_firstTime : 0);
+    }
+
+    public long getNumSamples()
+    {
+        return m_numSamples;
+    }
+
+    public File getSpillFile()
+    {
+        return m_spillFile;
+    }
+
+    ////////////////////////////////////////
+
+    private static final long CHUNK_MS = 60000;
+    private static final long OVERLAP_MS = 10000;   // more than the longest rep time the counter looks for
+
+    private final PeakRepCounter m_counter;
+    private final File m_spillFile;
+    private final long m_spillAfterMs;
+    private DataOutputStream m_spill;   // open while spilling a recording
+    private final SampleBlock m_held = new SampleBlock(0); // analyzed samples to spill if the recording gets long enough
+
+    // samples from OVERLAP_MS before m_chunkStart on; m_spare takes them in turn when a chunk is dropped
+    private SampleBlock m_window = new SampleBlock(0);
+    private SampleBlock m_spare = new SampleBlock(0);
+    private long m_chunkStart;
+    private long m_spilledUntil = Long.MIN_VALUE; // samples before this time are spilled or held already
+    private long m_firstTime = -1;
+    private long m_lastTime = -1;
+    private long m_numSamples;
+
+    // merged over all chunks so far
+    private int m_numPeaks;
+    private long m_lastPeakTime;
+    private long m_intervalSum;
+    private double m_intervalSquares;
+    private long m_minInterval = Long.MAX_VALUE;
+    private long m_maxInterval;
+
+    // count reps in the window and keep the peaks within [m_chunkStart, chunkEnd)
+    private void analyzeChunk(long chunkEnd)
+    {
+        m_counter.analyze(m_window);
+        long minSpacing = (long) (m_counter.getModel().minRepTime * 1000);
+        for (int i = 0; i < m_counter.getNumPeaks(); ++i)
+        {
+            long time = m_counter.getPeakTime(i);
+            if (time < m_chunkStart || time >= chunkEnd)
+            {
+                continue;
+            }
+            if (m_numPeaks > 0)
+            {
+                long interval = time - m_lastPeakTime;
+                if (interval < minSpacing)
+                {
+                    continue;
+                }
+                m_intervalSum += interval;
+                m_intervalSquares += (double) interval * interval;
+                m_minInterval = Math.min(m_minInterval, interval);
+                m_maxInterval = Math.max(m_maxInterval, interval);
+            }
+            m_lastPeakTime = time;
+            ++m_numPeaks;
+        }
+    }
+
+    // spill (or hold) the samples before chunkEnd, and keep only those the next chunk's overlap needs
+    private void dropChunk(long chunkEnd) throws IOException
+    {
+        if (m_spillFile != null && m_spill == null && m_lastTime - m_firstTime >= m_spillAfterMs)
+        {
+            m_spill = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(m_spillFile)));
+            // the chunks dropped before the recording got long enough
+            write(m_held.getTimes(), m_held.getValues(), 0, m_held.size());
+            m_held.clear();
+        }
+        boolean hold = (m_spillFile != null && m_spill == null);
+
+        long keepFrom = chunkEnd - OVERLAP_MS;
+        long[] times = m_window.getTimes();
+        float[] values = m_window.getValues();
+        m_spare.clear();
+        for (int i = 0; i < m_window.size(); ++i)
+        {
+            long time = times[i];
+            int base = i * SampleBlock.NUM_CHANNELS;
+            if (time >= m_spilledUntil && time < chunkEnd)
+            {
+                if (m_spill != null)
+                {
+                    write(times, values, i, 1);
+                }
+                else if (hold)
+                {
+                    m_held.add(time, values[base], values[base + 1], values[base + 2],
+                            values[base + 3], values[base + 4], values[base + 5]);
+                }
+            }
+            if (time >= keepFrom)
+            {
+                m_spare.add(time, values[base], values[base + 1], values[base + 2],
+                        values[base + 3], values[base + 4], values[base + 5]);
+            }
+        }
+        m_spilledUntil = chunkEnd;
+
+        SampleBlock window = m_window;
+        m_window = m_spare;
+        m_spare = window;
+    }
+
+    private void write(long[] times, float[] values, int start, int count) throws IOException
+    {
+        for (int i = start; i < start + count; ++i)
+        {
+            m_spill.writeLong(times[i]);
+            for (int channel = 0; channel < SampleBlock.NUM_CHANNELS; ++channel)
+            {
+                m_spill.writeFloat(values[i * SampleBlock.NUM_CHANNELS + channel]);
+            }
+        }
+    }
+
+    private void closeSpill() throws IOException
+    {
+        if (m_spill != null)
+        {
+            m_spill.close();
+            m_spill = null;
+        }
+    }
+}
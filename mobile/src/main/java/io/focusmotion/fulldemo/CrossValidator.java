@@ -0,0 +1,168 @@
+package io.focusmotion.trainingdemo;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+
+// Measures how well a model trained on labeled sets counts reps on sets it
+// hasn't seen, by k-fold cross-validation.
+//
+// Set i goes to fold i % k, so folds of sets stored in time order each
+// span the whole history. For each fold, a PeakRepCounter.Model is trained on
+// the sets of the other folds (at most maxTrainingSets of them, the latest
+// ones, to see what a cap on the data sets would cost), and the held-out sets
+// are counted with it. The folds run in parallel, one task per fold, each
+// with its own PeakRepCounter. Per fold, and over all of them, the report
+// gives the mean rep count error, the mean rep time error (against the set's
+// duration over its labeled rep count, as the model is trained), and the
+// time spent training and counting. evaluate() blocks until every fold is
+// done; it can be called from several threads at once.
+public class CrossValidator
+{
+    public static class Fold
+    {
+        public int index;
+        public int numTrainingSets;
+        public int numTestSets;
+        public float repCountError;     // mean absolute, in reps
+        public int numTimedSets;        // test sets with 2 or more reps counted
+        public float repTimeError;      // mean absolute, in seconds, over the timed sets
+        public long trainNs;
+        public long inferenceNs;        // counting all the test sets
+    }
+
+    public static class Report
+    {
+        public final List<Fold> folds = new ArrayList<>();
+        public int numSets;
+        public float repCountError;     // over all test sets
+        public float repTimeError;
+        public long elapsedMs;
+    }
+
+    public CrossValidator(int numThreads)
+    {
+        m_executor = new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>());
+    }
+
+    // Cross-validate over sets labeled with repCounts, in k folds; k is capped at the number of sets.
+    public Report evaluate(List<? extends SampleSeries> sets, int[] repCounts, int k, int maxTrainingSets)
+            throws InterruptedException
+    {
+        int numSets = sets.size();
+        if (numSets < 2 || k < 2)
+        {
+            throw new IllegalArgumentException(String.format("Can't cross-validate %d sets in %d folds", numSets, k));
+        }
+        k = Math.min(k, numSets);
+
+        long startTime = System.nanoTime();
+        List<Callable<Fold>> tasks = new ArrayList<>();
+        for (int i = 0; i < k; ++i)
+        {
+            tasks.add(createTask(sets, repCounts, k, i, maxTrainingSets));
+        }
+
+        Report report = new Report();
+        report.numSets = numSets;
+        float repCountError = 0.0f;
+        float repTimeError = 0.0f;
+        int numTimed = 0;
+        for (Future<Fold> future : m_executor.invokeAll(tasks))
+        {
+            Fold fold;
+            try
+            {
+                fold = future.get();
+            }
+            catch (ExecutionException e)
+            {
+                throw new RuntimeException("Fold failed", e.getCause());
+            }
+            report.folds.add(fold);
+            repCountError += fold.repCountError * fold.numTestSets;
+            repTimeError += fold.repTimeError * fold.numTimedSets;
+            numTimed += fold.numTimedSets;
+        }
+        report.repCountError = repCountError / numSets;
+        report.repTimeError = (numTimed > 0 ? repTimeError / numTimed : 0.0f);
+        report.elapsedMs = (System.nanoTime() - startTime) / 1000000;
+        return report;
+    }
+
+    public void shutdown()
+    {
+        m_executor.shutdownNow();
+    }
+
+    ////////////////////////////////////////
+
+    private final ThreadPoolExecutor m_executor;
+
+    private static Callable<Fold> createTask(final List<? extends SampleSeries> sets, final int[] repCounts, final int k,
+                                             final int index, final int maxTrainingSets)
+    {
+        return new Callable<Fold>()
+        {
+            @Override
+            public Fold call()
+            {
+                return runFold(sets, repCounts, k, index, maxTrainingSets);
+            }
+        };
+    }
+
+    private static Fold runFold(List<? extends SampleSeries> sets, int[] repCounts, int k, int index, int maxTrainingSets)
+    {
+        // the latest maxTrainingSets sets outside the fold
+        List<SampleSeries> trainingSets = new ArrayList<>();
+        List<Integer> trainingLabels = new ArrayList<>();
+        for (int i = sets.size() - 1; i >= 0 && trainingSets.size() < maxTrainingSets; --i)
+        {
+            if (i % k != index)
+            {
+                trainingSets.add(sets.get(i));
+                trainingLabels.add(repCounts[i]);
+            }
+        }
+        int[] labels = new int[trainingLabels.size()];
+        for (int i = 0; i < labels.length; ++i)
+        {
+            labels[i] = trainingLabels.get(i);
+        }
+
+        Fold fold = new Fold();
+        fold.index = index;
+        fold.numTrainingSets = trainingSets.size();
+
+        long startTime = System.nanoTime();
+        PeakRepCounter.Model model = PeakRepCounter.Model.train(trainingSets, labels);
+        fold.trainNs = System.nanoTime() - startTime;
+
+        PeakRepCounter counter = new PeakRepCounter(model);
+        float repCountError = 0.0f;
+        float repTimeError = 0.0f;
+        for (int i = index; i < sets.size(); i += k)
+        {
+            SampleSeries set = sets.get(i);
+            startTime = System.nanoTime();
+            counter.analyze(set);
+            fold.inferenceNs += System.nanoTime() - startTime;
+            ++fold.numTestSets;
+
+            RepResult result = (counter.getNumResults() > 0 ? counter.getResult(0) : null);
+            int repCount = (result != null ? result.repCount : 0);
+            repCountError += Math.abs(repCount - repCounts[i]);
+            if (repCount >= 2 && repCounts[i] > 0 && set.size() >= 2)
+            {
+                float repTime = (set.getTime(set.size() - 1) - set.getTime(0)) / 1000.0f / repCounts[i];
+                repTimeError += Math.abs(result.meanRepTime - repTime);
+                ++fold.numTimedSets;
+            }
+        }
+        fold.repCountError = repCountError / Math.max(fold.numTestSets, 1);
+        fold.repTimeError = (fold.numTimedSets > 0 ? repTimeError / fold.numTimedSets : 0.0f);
+        return fold;
+    }
+}
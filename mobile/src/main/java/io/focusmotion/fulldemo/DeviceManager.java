@@ -0,0 +1,312 @@
+package io.focusmotion.trainingdemo;
+
+import io.focusmotion.sdk.*;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+
+
+// Tracks every available device, instead of only the most recent one.
+//
+// Each device is connected as soon as it becomes available, records whenever
+// recording is started, and gets its own AnalysisPipeline (and so its own
+// analysis thread), so a slow analysis of one device's set doesn't hold up
+// the others. Classification runs on one executor shared by every pipeline,
+// so recording from several devices doesn't start a pool of threads per
+// device.
+//
+// One device is the primary: training, live results and the raw-sample
+// analyses follow it. The raw samples come from our wear app, so they belong
+// to one device only, and that device is preferred: the primary is the one
+// chosen with setPrimary() while it is available, or else the first connected
+// device that has raw samples, or else the first connected one. It is kept
+// while any device records, so a set is never split between two primaries.
+// If more watches send raw samples during a set, fuseRawSamples() aligns
+// their clocks to the primary's and counts the set from all of them.
+// Must be used from the main thread.
+public class DeviceManager
+{
+    public static class DeviceState
+    {
+        DeviceState(Device device, boolean hasRawSamples, AnalysisPipeline pipeline)
+        {
+            this.device = device;
+            this.hasRawSamples = hasRawSamples;
+            this.pipeline = pipeline;
+        }
+
+        public final Device device;
+        public final boolean hasRawSamples; // our wear app sends this device's raw samples
+        public final AnalysisPipeline pipeline;
+
+        public DeviceOutput output;     // of the last recording
+        public String movementType;     // of the last result
+        public AnalyzerResult result;   // of the last analysis, or null
+        public long startTime;          // System.nanoTime() when the last recording started
+        public long stopTime;           // System.nanoTime() when the last recording's output was fetched
+    }
+
+    public interface FusionCallback
+    {
+        // called on the main thread; result is null if the streams don't overlap
+        void onFused(RepResult result, int numStreams);
+    }
+
+    public DeviceManager(AnalyzerPool pool)
+    {
+        m_pool = pool;
+    }
+
+    // Returns true if the set of devices changed.
+    public boolean onAvailableChanged(Device device, boolean available, boolean hasRawSamples)
+    {
+        if (available)
+        {
+            if (m_devices.containsKey(device))
+            {
+                return false;
+            }
+            m_devices.put(device, new DeviceState(device, hasRawSamples, new AnalysisPipeline(m_pool, m_classifyExecutor)));
+            device.connect();
+        }
+        else
+        {
+            DeviceState state = m_devices.remove(device);
+            if (state == null)
+            {
+                return false;
+            }
+            state.pipeline.shutdown();
+        }
+        updatePrimary();
+        return true;
+    }
+
+    // Returns true if the primary device changed.
+    public boolean onConnectedChanged(Device device, boolean connected)
+    {
+        DeviceState primary = m_primary;
+        updatePrimary();
+        return (m_primary != primary);
+    }
+
+    // Returns true if the primary device changed; call after handling the change, so a set ends on its own primary.
+    public boolean onRecordingChanged(Device device, boolean recording)
+    {
+        DeviceState primary = m_primary;
+        updatePrimary();
+        return (m_primary != primary);
+    }
+
+    // Make a device the primary while it is available; null goes back to the automatic choice.
+    // Returns true if the primary device changed; it can't while any device is recording.
+    public boolean setPrimary(Device device)
+    {
+        m_chosenPrimary = device;
+        DeviceState primary = m_primary;
+        updatePrimary();
+        return (m_primary != primary);
+    }
+
+    public DeviceState get(Device device)
+    {
+        return m_devices.get(device);
+    }
+
+    public Collection<DeviceState> getDevices()
+    {
+        return Collections.unmodifiableCollection(m_devices.values());
+    }
+
+    // null if there are no devices
+    public DeviceState getPrimary()
+    {
+        return m_primary;
+    }
+
+    public boolean isPrimary(Device device)
+    {
+        return (m_primary != null && m_primary.device == device);
+    }
+
+    // The primary device, if its raw samples are what the wear app is sending.
+    public boolean isRawSampleSource(Device device)
+    {
+        return (isPrimary(device) && m_primary.hasRawSamples);
+    }
+
+    public boolean isAnyConnected()
+    {
+        for (DeviceState state : m_devices.values())
+        {
+            if (state.device.isConnected())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isAnyRecording()
+    {
+        for (DeviceState state : m_devices.values())
+        {
+            if (state.device.isRecording())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void startRecording()
+    {
+        for (DeviceState state : m_devices.values())
+        {
+            if (state.device.isConnected() && !state.device.isRecording())
+            {
+                state.device.startRecording();
+            }
+        }
+    }
+
+    public void stopRecording()
+    {
+        for (DeviceState state : m_devices.values())
+        {
+            if (state.device.isRecording())
+            {
+                state.device.stopRecording();
+            }
+        }
+    }
+
+    // Count a set from the primary's raw samples and those of other watches together, on the primary's analysis
+    // thread. Each other stream is aligned to the primary's clock; at most MAX_FUSED_STREAMS streams are used.
+    public void fuseRawSamples(final SampleBlock primarySamples, final List<SampleBlock> otherSamples,
+                               final PeakRepCounter.Model model, final FusionCallback callback)
+    {
+        if (m_primary == null)
+        {
+            return;
+        }
+        final int numStreams = Math.min(MAX_FUSED_STREAMS, 1 + otherSamples.size());
+        m_primary.pipeline.run(
+                new SerialWorker.Task<RepResult>()
+                {
+                    @Override
+                    public RepResult run()
+                    {
+                        SampleSeries[] streams = new SampleSeries[numStreams];
+                        streams[0] = primarySamples;
+                        for (int i = 1; i < numStreams; ++i)
+                        {
+                            streams[i] = otherSamples.get(i - 1);
+                        }
+                        return countFused(streams, model);
+                    }
+                },
+                new SerialWorker.Receiver<RepResult>()
+                {
+                    @Override
+                    public void onResult(RepResult result)
+                    {
+                        callback.onFused(result, numStreams);
+                    }
+                } );
+    }
+
+    public void shutdown()
+    {
+        for (DeviceState state : m_devices.values())
+        {
+            state.pipeline.shutdown();
+        }
+        m_devices.clear();
+        m_primary = null;
+        m_classifyExecutor.shutdown();
+    }
+
+    ////////////////////////////////////////
+
+    private static final int MAX_FUSED_STREAMS = 4;
+    private static final float FUSION_RATE = 50.0f; // Hz
+
+    private final AnalyzerPool m_pool;
+    private final ExecutorService m_classifyExecutor = AnalysisPipeline.createClassifyExecutor();
+    private final LinkedHashMap<Device, DeviceState> m_devices = new LinkedHashMap<>();
+    private Device m_chosenPrimary;
+    private DeviceState m_primary;
+    private SampleFusion m_fusion;     // grown to the longest set so far, with this locked
+    private int m_fusionCapacity;      // samples
+
+    // on whichever pipeline's thread belongs to the primary
+    private synchronized RepResult countFused(SampleSeries[] streams, PeakRepCounter.Model model)
+    {
+        SampleSeries primary = streams[0];
+        if (primary.size() < 2)
+        {
+            return null;
+        }
+        int numSamples = (int) ((primary.getTime(primary.size() - 1) - primary.getTime(0)) * FUSION_RATE / 1000.0f) + 1;
+        if (m_fusion == null || numSamples > m_fusionCapacity)
+        {
+            m_fusion = new SampleFusion(FUSION_RATE, MAX_FUSED_STREAMS, numSamples);
+            m_fusionCapacity = numSamples;
+        }
+        m_fusion.setStreams(streams, streams.length);
+        m_fusion.align();
+        if (m_fusion.fuse() == 0)
+        {
+            return null;
+        }
+        PeakRepCounter counter = new PeakRepCounter(model);
+        counter.analyze(new SampleFusion.MeanMagnitude(m_fusion));
+        if (counter.getNumResults() == 0)
+        {
+            return null;
+        }
+        RepResult result = new RepResult();
+        result.set(counter.getResult(0));
+        return result;
+    }
+
+    private void updatePrimary()
+    {
+        if (m_primary != null && m_devices.get(m_primary.device) == m_primary && isAnyRecording())
+        {
+            // not in the middle of a set
+            return;
+        }
+        m_primary = choosePrimary();
+    }
+
+    private DeviceState choosePrimary()
+    {
+        DeviceState chosen = (m_chosenPrimary != null ? m_devices.get(m_chosenPrimary) : null);
+        if (chosen != null)
+        {
+            return chosen;
+        }
+        DeviceState firstConnected = null;
+        for (DeviceState state : m_devices.values())
+        {
+            if (state.device.isConnected())
+            {
+                if (state.hasRawSamples)
+                {
+                    return state;
+                }
+                if (firstConnected == null)
+                {
+                    firstConnected = state;
+                }
+            }
+        }
+        if (firstConnected != null)
+        {
+            return firstConnected;
+        }
+        return (m_devices.isEmpty() ? null : m_devices.values().iterator().next());
+    }
+}
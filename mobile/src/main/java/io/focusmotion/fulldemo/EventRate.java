@@ -0,0 +1,70 @@
+package io.focusmotion.trainingdemo;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+// Counts a callback and how often it arrives, without locking.
+//
+// The interval between consecutive calls goes into a LatencyHistogram, so a
+// callback that stalls shows up in the high percentiles even when its
+// average rate looks fine.
+public class EventRate
+{
+    public EventRate(String name)
+    {
+        m_name = name;
+        m_intervals = new LatencyHistogram(name + " interval");
+    }
+
+    public void record()
+    {
+        long now = System.nanoTime();
+        long last = m_lastTime.getAndSet(now);
+        if (m_count.getAndIncrement() == 0)
+        {
+            m_firstTime.set(now);
+        }
+        else
+        {
+            m_intervals.record(now - last);
+        }
+    }
+
+    public long getCount()
+    {
+        return m_count.get();
+    }
+
+    // Calls per second between the first and the latest call.
+    public float getRate()
+    {
+        long count = m_count.get();
+        long elapsed = m_lastTime.get() - m_firstTime.get();
+        return (count > 1 && elapsed > 0 ? (count - 1) * 1e9f / elapsed : 0.0f);
+    }
+
+    public LatencyHistogram getIntervals()
+    {
+        return m_intervals;
+    }
+
+    public void reset()
+    {
+        m_count.set(0);
+        m_intervals.reset();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s: n=%d rate=%.1f/s\n  %s", m_name, getCount(), getRate(), m_intervals);
+    }
+
+    ////////////////////////////////////////
+
+    private final String m_name;
+    private final LatencyHistogram m_intervals;
+    private final AtomicLong m_count = new AtomicLong();
+    private final AtomicLong m_firstTime = new AtomicLong();
+    private final AtomicLong m_lastTime = new AtomicLong();
+}
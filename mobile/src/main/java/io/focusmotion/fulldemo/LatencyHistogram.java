@@ -0,0 +1,143 @@
+package io.focusmotion.trainingdemo;
+
+import java.util.concurrent.atomic.*;
+
+
+// Lock-free latency histogram with bounded relative error, in the style of
+// HdrHistogram.
+//
+// Latencies are kept in microseconds in log-linear buckets: each power of two
+// is split into SUB_BUCKETS linear buckets, so any value is known to within
+// 1/SUB_BUCKETS (about 6%) from 1us up to hours, in a fixed array of
+// counters. Recording is a few shifts and atomic increments with no locking
+// or allocation, so it can be called from any thread on hot paths; reading
+// percentiles while recording is in progress gives a consistent-enough view
+// for diagnostics.
+public class LatencyHistogram
+{
+    public LatencyHistogram(String name)
+    {
+        m_name = name;
+    }
+
+    public String getName()
+    {
+        return m_name;
+    }
+
+    public void record(long nanos)
+    {
+        long micros = Math.max(0, nanos / 1000);
+        m_counts.incrementAndGet(getBucket(micros));
+        m_count.incrementAndGet();
+        m_sum.addAndGet(micros);
+
+        long max = m_max.get();
+        while (micros > max && !m_max.compareAndSet(max, micros))
+        {
+            max = m_max.get();
+        }
+    }
+
+    // Record the time since startNanos, from System.nanoTime().
+    public void recordSince(long startNanos)
+    {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount()
+    {
+        return m_count.get();
+    }
+
+    public float getMeanMs()
+    {
+        long count = m_count.get();
+        return (count > 0 ? m_sum.get() / 1000.0f / count : 0.0f);
+    }
+
+    public float getMaxMs()
+    {
+        return m_max.get() / 1000.0f;
+    }
+
+    // Upper bound of the bucket holding the given percentile (0-100), in milliseconds.
+    public float getPercentileMs(double percentile)
+    {
+        long count = m_count.get();
+        if (count == 0)
+        {
+            return 0.0f;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int bucket = 0; bucket < NUM_BUCKETS; ++bucket)
+        {
+            seen += m_counts.get(bucket);
+            if (seen >= target)
+            {
+                return Math.min(getUpperBound(bucket), m_max.get()) / 1000.0f;
+            }
+        }
+        return getMaxMs();
+    }
+
+    public void reset()
+    {
+        for (int bucket = 0; bucket < NUM_BUCKETS; ++bucket)
+        {
+            m_counts.set(bucket, 0);
+        }
+        m_count.set(0);
+        m_sum.set(0);
+        m_max.set(0);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s: n=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+                m_name, getCount(), getMeanMs(), getPercentileMs(50), getPercentileMs(90), getPercentileMs(99), getMaxMs());
+    }
+
+    ////////////////////////////////////////
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40; // about 12 days, in microseconds
+    private static final int NUM_BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final String m_name;
+    private final AtomicLongArray m_counts = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong m_count = new AtomicLong();
+    private final AtomicLong m_sum = new AtomicLong();
+    private final AtomicLong m_max = new AtomicLong();
+
+    // values below SUB_BUCKETS get a bucket each; above that, SUB_BUCKETS buckets per power of two
+    private static int getBucket(long micros)
+    {
+        if (micros < SUB_BUCKETS)
+        {
+            return (int) micros;
+        }
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXPONENT);
+        int mantissa = (int) Math.min(micros >>> (exponent - SUB_BUCKET_BITS), 2 * SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + (mantissa - SUB_BUCKETS);
+    }
+
+    private static long getLowerBound(int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+        {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    private static long getUpperBound(int bucket)
+    {
+        return (bucket + 1 < NUM_BUCKETS ? getLowerBound(bucket + 1) - 1 : Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,203 @@
+package io.focusmotion.trainingdemo;
+
+import android.os.SystemClock;
+
+
+// Publishes rep counts while a set is still being recorded.
+//
+// The SDK only analyzes a whole recording at once, so re-analyzing the output
+// received so far would cost more with every update. Instead, the raw samples
+// our wear app sends (through WearSampleReceiver's SampleRingBuffer) are
+// counted as they arrive by a PeakRepCounter, incrementally: at most once per
+// LIVE_INTERVAL_MS, the samples received since the last update are added to
+// the counter and a live estimate taken, on the device's AnalysisPipeline
+// thread, with at most one update in flight. When recording stops, finish()
+// adds the last samples and finalizes the count, which is the same as
+// PeakRepCounter.analyze() over the whole set but only runs the parts that
+// need every sample at once.
+//
+// The counter's model is trained for the movements in the TrainerRegistry,
+// including those only restored from a saved model; with several movements
+// it spans all their rep times, since which one was done is only known once
+// the recording is classified. Recordings
+// without raw samples (from a Pebble or Band) get no live counts, and a set
+// longer than MAX_SAMPLES is left to the chunked analysis. All methods must be
+// called on the main thread.
+public class LiveAnalysis
+{
+    public interface Listener
+    {
+        // an estimate during the set
+        void onLiveResult(RepResult result);
+
+        // the count of the whole set, once recording stopped
+        void onSetCounted(RepResult result);
+    }
+
+    public LiveAnalysis(TrainerRegistry registry, SampleRingBuffer buffer, Listener listener)
+    {
+        m_registry = registry;
+        m_buffer = buffer;
+        m_listener = listener;
+    }
+
+    // Call when recording starts, after the buffer has been cleared; does nothing unless a movement has data sets.
+    public void start(AnalysisPipeline pipeline)
+    {
+        m_pipeline = null;
+        m_pending = false;
+        m_lastStartTime = 0;
+
+        float minRepTime = Float.MAX_VALUE;
+        float maxRepTime = 0.0f;
+        for (String movementType : m_registry.getMovementTypes())
+        {
+            TrainingService service = m_registry.get(movementType);
+            if (service.getDataSets().isEmpty())
+            {
+                continue;
+            }
+            PeakRepCounter.Model model = service.getCounterModel();
+            minRepTime = Math.min(minRepTime, model.minRepTime);
+            maxRepTime = Math.max(maxRepTime, model.maxRepTime);
+        }
+        if (maxRepTime == 0.0f)
+        {
+            return;
+        }
+        final PeakRepCounter.Model model = new PeakRepCounter.Model(minRepTime, maxRepTime);
+
+        m_pipeline = pipeline;
+        // the counter is only touched on the analysis thread, after anything still running there
+        pipeline.run(
+                new SerialWorker.Task<Void>()
+                {
+                    @Override
+                    public Void run()
+                    {
+                        m_counter.setModel(model);
+                        m_counter.begin();
+                        m_numAdded = 0;
+                        return null;
+                    }
+                }, null);
+    }
+
+    public void onDataReceived()
+    {
+        long now = SystemClock.elapsedRealtime();
+        if (m_pipeline == null || m_pending || now - m_lastStartTime < LIVE_INTERVAL_MS)
+        {
+            return;
+        }
+
+        m_pending = true;
+        m_lastStartTime = now;
+        m_pipeline.run(
+                new SerialWorker.Task<RepResult>()
+                {
+                    @Override
+                    public RepResult run()
+                    {
+                        if (!addNewSamples())
+                        {
+                            return null;
+                        }
+                        return m_counter.update(new RepResult());
+                    }
+                },
+                new SerialWorker.Receiver<RepResult>()
+                {
+                    @Override
+                    public void onResult(RepResult result)
+                    {
+                        m_pending = false;
+                        if (result != null && result.repCount > 0)
+                        {
+                            m_listener.onLiveResult(result);
+                        }
+                    }
+                } );
+    }
+
+    // Call when recording stops, after cancelling the pipeline's earlier work; the set's count goes to the listener.
+    public void finish()
+    {
+        if (m_pipeline == null)
+        {
+            return;
+        }
+        m_pipeline.run(
+                new SerialWorker.Task<RepResult>()
+                {
+                    @Override
+                    public RepResult run()
+                    {
+                        if (!addNewSamples() || m_counter.getNumSamples() == 0)
+                        {
+                            return null;
+                        }
+                        long startTime = System.nanoTime();
+                        m_counter.finish();
+                        Metrics.LIVE_FINISH.recordSince(startTime);
+                        if (m_counter.getNumResults() == 0)
+                        {
+                            return null;
+                        }
+                        RepResult result = new RepResult();
+                        result.set(m_counter.getResult(0));
+                        return result;
+                    }
+                },
+                new SerialWorker.Receiver<RepResult>()
+                {
+                    @Override
+                    public void onResult(RepResult result)
+                    {
+                        if (result != null)
+                        {
+                            m_listener.onSetCounted(result);
+                        }
+                    }
+                } );
+        m_pipeline = null;
+        m_pending = false;
+    }
+
+    ////////////////////////////////////////
+
+    private static final long LIVE_INTERVAL_MS = 1000;
+    private static final int MAX_SAMPLES = 10 * 60 * 50; // 10 minutes at 50Hz
+
+    private final TrainerRegistry m_registry;
+    private final SampleRingBuffer m_buffer;
+    private final Listener m_listener;
+
+    private AnalysisPipeline m_pipeline; // of the device recording, while a set is being counted
+    private boolean m_pending;
+    private long m_lastStartTime;
+
+    // analysis thread only
+    private final PeakRepCounter m_counter = new PeakRepCounter();
+    private final SampleRingBuffer.View m_view = new SampleRingBuffer.View();
+    private long m_numAdded; // of the buffer's samples since it was cleared
+
+    // Add the samples received since the last call to the counter; returns false once the set is too long.
+    private boolean addNewSamples()
+    {
+        synchronized (m_buffer)
+        {
+            long total = m_buffer.getTotalSamples();
+            // none if the buffer was cleared for the next recording before begin() ran
+            int count = (int) Math.max(0, Math.min(total - m_numAdded, m_buffer.size()));
+            m_numAdded = total;
+            if (m_counter.getNumSamples() + count > MAX_SAMPLES)
+            {
+                return false;
+            }
+            m_buffer.view(m_view, m_buffer.size() - count, count);
+            m_counter.add(m_view, 0, count);
+        }
+        return true;
+    }
+}
@@ -14,7 +14,10 @@ import android.view.*;
 import android.widget.*;
 
 //import java.util.UUID;
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Executor;
 
 
 
@@ -24,6 +27,7 @@ public class MainActivity extends Activity implements DeviceListener
     protected void onCreate(Bundle savedInstanceState)
     {
         super.onCreate(savedInstanceState);
+        m_startup = new StartupOrchestrator(this);
         setContentView(R.layout.activity_main);
 
         m_startButton = (Button) findViewById(R.id.start_button);
@@ -35,6 +39,14 @@ public class MainActivity extends Activity implements DeviceListener
                         onStartButtonPressed();
                     }
                 } );
+        m_startButton.setOnLongClickListener(
+                new View.OnLongClickListener()
+                {
+                    public boolean onLongClick(View v)
+                    {
+                        return onStartButtonLongPressed();
+                    }
+                } );
         m_trainButton = (Button) findViewById(R.id.train_button);
         m_trainButton.setOnClickListener(
                 new View.OnClickListener()
@@ -56,6 +68,23 @@ public class MainActivity extends Activity implements DeviceListener
 
         m_resultsLabel = (TextView) findViewById(R.id.results_label);
         m_statusLabel = (TextView) findViewById(R.id.status_label);
+        m_statusLabel.setOnClickListener(
+                new View.OnClickListener()
+                {
+                    public void onClick(View v)
+                    {
+                        onStatusLabelPressed();
+                    }
+                } );
+        m_statusLabel.setOnLongClickListener(
+                new View.OnLongClickListener()
+                {
+                    public boolean onLongClick(View v)
+                    {
+                        showMetrics();
+                        return true;
+                    }
+                } );
         m_dataSetsLabel = (TextView) findViewById(R.id.data_sets_label);
 
 
@@ -67,34 +96,197 @@ public class MainActivity extends Activity implements DeviceListener
         {
             throw new Error("Could not initialize FocusMotion SDK");
         }
+        m_startup.mark("SDK initialized");
 
         // initialize general device support
         Device.addListener(this);
 
+        // Device backends are started after the first frame, most recently used first;
+        // most users only own one kind of device.
+        final Activity activity = this;
+
         // initialize Pebble support
-        // the UUID is for the "simple" Pebble app, defined in fm/src/samples/simple/pebble/appinfo.json
-        UUID uuid = UUID.fromString("f3fef676-0c23-41b9-8d23-ba225575b9a0");
-        PebbleDevice.initialize(this, uuid);
+        m_startup.addBackend(BACKEND_PEBBLE,
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        // the UUID is for the "simple" Pebble app, defined in fm/src/samples/simple/pebble/appinfo.json
+                        UUID uuid = UUID.fromString("f3fef676-0c23-41b9-8d23-ba225575b9a0");
+                        PebbleDevice.initialize(activity, uuid);
+                    }
+                } );
 
         // initialize Microsoft Band support
-        BandDevice.initialize(this);
+        m_startup.addBackend(BACKEND_BAND,
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        BandDevice.initialize(activity);
+                    }
+                } );
 
         // initialize Android Wear support
-        WearDevice.initialize(this);
+        m_startup.addBackend(BACKEND_WEAR,
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        WearDevice.initialize(activity);
+                    }
+                } );
+
+        m_analyzerPool = new AnalyzerPool(ANALYZER_POOL_SIZE);
+        m_deviceManager = new DeviceManager(m_analyzerPool);
+        m_trainerRegistry = new TrainerRegistry(m_analyzerPool, getFilesDir());
 
         // create trainer for movement called "demo"
-        m_trainer = new AnalyzerTrainer("demo");
+        m_trainingService = m_trainerRegistry.register("demo",
+                new TrainingService.Listener()
+                {
+                    @Override
+                    public void onTrainingProgress(String stage, float progress)
+                    {
+                        m_dataSetsLabel.setText(String.format("%s... %d%%", stage, (int) (progress * 100)));
+                    }
+
+                    @Override
+                    public void onTrainingComplete(int numDataSets)
+                    {
+                        if (numDataSets > 0)
+                        {
+                            reanalyzeSessions();
+                        }
+                        else
+                        {
+                            // reset; there is no trained model to re-count with
+                            cancelReanalysis();
+                        }
+                        updateDataSetsLabel();
+                        evaluateModel();
+                    }
+
+                    @Override
+                    public void onDataSetRejected(String reason)
+                    {
+                        m_resultsLabel.setText("data set not added: " + reason);
+                    }
+
+                    @Override
+                    public void onSavedModelLoaded(ModelStore.Model model)
+                    {
+                        m_startup.mark("saved model loaded");
+                        m_savedModel = model;
+                        updateDataSetsLabel();
+                    }
+                } );
+        // raw samples from our wear app, saved with each recording
+        m_sampleBuffer = new SampleRingBuffer(SAMPLE_BUFFER_CAPACITY);
+        m_sampleReceiver = new WearSampleReceiver(this, m_sampleBuffer, OTHER_SAMPLE_BUFFER_CAPACITY);
+        m_sampleReceiver.setSummaryListener(
+                new WearSampleReceiver.SummaryListener()
+                {
+                    @Override
+                    public void onWatchSummary(RepResult result)
+                    {
+                        // our wear app counted the set itself
+                        m_watchResult = result;
+                        onLongRecordingCounted(result, true);
+                        showResults();
+                    }
+                } );
+        m_sampleReceiver.connect();
+        m_sessionRecorder = new SessionRecorder(m_sampleBuffer, new SessionStore(new File(getFilesDir(), "sessions.bin")));
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        m_batchAnalyzer = new BatchAnalyzer(m_sessionRecorder.getStore(), Runtime.getRuntime().availableProcessors(),
+                new Executor()
+                {
+                    @Override
+                    public void execute(Runnable r)
+                    {
+                        mainHandler.post(r);
+                    }
+                } );
+        m_modelEvaluator = new ModelEvaluator(m_sessionRecorder.getStore(), Runtime.getRuntime().availableProcessors());
+        m_history = new WorkoutHistory(new File(getFilesDir(), "history.bin"));
+        m_history.load();
+        // the SDK's analyzer only takes live device output, so raw samples are counted with the pure-Java counter,
+        // on the device's analysis thread; those of long recordings go to disk as they are counted
+        m_rawAnalysis = new RawSampleAnalysis(m_sampleBuffer, new File(getCacheDir(), "recording.spill"), LONG_RECORDING_MS,
+                new RawSampleAnalysis.Listener()
+                {
+                    @Override
+                    public void onSetStarted(long startTime)
+                    {
+                        m_resultsLabel.setText(m_workoutText + "set in progress...");
+                    }
+
+                    @Override
+                    public void onSegmentClosed(SetSegmenter.Segment segment)
+                    {
+                        onWorkoutSegment(segment);
+                    }
+
+                    @Override
+                    public void onRecordingCounted(RepResult result)
+                    {
+                        onLongRecordingCounted(result, false);
+                    }
+
+                    @Override
+                    public void onSpillFailed(IOException e)
+                    {
+                        logInfo("could not spill raw samples: " + e);
+                        m_spillFailed = true;
+                    }
+                } );
+
+        // live counts from the raw samples, for the movements trained so far
+        m_liveAnalysis = new LiveAnalysis(m_trainerRegistry, m_sampleBuffer,
+                new LiveAnalysis.Listener()
+                {
+                    @Override
+                    public void onLiveResult(RepResult result)
+                    {
+                        m_resultsLabel.setText(String.format("%d reps so far", result.repCount));
+                    }
+
+                    @Override
+                    public void onSetCounted(RepResult result)
+                    {
+                        m_streamedResult = result;
+                        showResults();
+                    }
+                } );
 
         m_resultsLabel.setText("");
         updateStatusLabel();
         updateStartButton();
         updateTrainButton();
         updateDataSetsLabel();
+
+        m_startup.start(getWindow().getDecorView());
     }
 
     @Override
     protected void onDestroy()
     {
+        if (m_batch != null)
+        {
+            m_batch.cancel();
+        }
+        m_batchAnalyzer.shutdown();
+        m_modelEvaluator.shutdown();
+        m_deviceManager.shutdown();
+        m_trainerRegistry.shutdown();
+        m_sampleReceiver.disconnect();
+        m_sessionRecorder.shutdown();
+        m_history.shutdown();
+        m_analyzerPool.destroy();
         FocusMotion.shutdown();
 
         super.onDestroy();
@@ -129,9 +321,48 @@ public class MainActivity extends Activity implements DeviceListener
     private Button m_clearButton;
     private TextView m_resultsLabel;
 
-    private Device m_device; // the current device
-    private DeviceOutput m_output;
-    private AnalyzerTrainer m_trainer;
+    private DeviceManager m_deviceManager; // all available devices
+    private DeviceOutput m_output; // from the primary device
+    private TrainerRegistry m_trainerRegistry;
+    private AnalyzerPool m_analyzerPool;
+    private LiveAnalysis m_liveAnalysis;
+    private TrainingService m_trainingService;
+    private ModelStore.Model m_savedModel; // from a previous run, if any
+    private SampleRingBuffer m_sampleBuffer;
+    private WearSampleReceiver m_sampleReceiver;
+    private RepResult m_watchResult; // counted on the watch, for the current set
+    private RepResult m_streamedResult; // counted from the raw samples as they arrived, for the current set
+    private SessionRecorder m_sessionRecorder;
+    private int m_sessionId = -1; // raw samples of m_output in the session store, if captured
+    private SampleBlock m_sessionSamples; // the raw samples of m_output, if captured
+    private BatchAnalyzer m_batchAnalyzer;
+    private BatchAnalyzer.Batch m_batch;       // re-analysis of stored sessions, if running
+    private PeakRepCounter.Model m_batchModel; // of the last re-analysis started, or null
+    private String m_batchText = "";           // what the last re-analysis found
+    private ModelEvaluator m_modelEvaluator;
+    private CrossValidator.Report m_evaluation; // of PeakRepCounter on the current data sets, once cross-validated
+    private WorkoutHistory m_history; // every set the primary device recorded
+    private RawSampleAnalysis m_rawAnalysis; // counts the primary device's raw samples as they arrive
+    private boolean m_spillFailed; // the primary's recording can't be counted chunk by chunk
+    private boolean m_longRecording; // the primary's last recording is too long for getOutput(); its count is awaited
+    private boolean m_longFromWatch; // from the watch's summary, as it had no raw samples; else from m_rawAnalysis
+    private boolean m_longContinuous; // and was a whole workout, already counted set by set
+    private boolean m_continuous; // the primary device is recording a whole workout
+    private RepResult m_chunkedResult; // for the last recording, if it was too long to analyze at once
+    private RepResult m_fusedResult;   // for the last recording, from every watch's raw samples
+    private int m_fusedStreams;
+    private String m_workoutText = ""; // a line for every set and rest of the continuous recording
+    private StartupOrchestrator m_startup;
+
+    private static final String BACKEND_PEBBLE = "pebble";
+    private static final String BACKEND_BAND = "band";
+    private static final String BACKEND_WEAR = "wear";
+
+    private static final int ANALYZER_POOL_SIZE = 4;
+    private static final int SAMPLE_BUFFER_CAPACITY = 60 * 60 * 50; // an hour at 50Hz
+    private static final long HISTORY_SUMMARY_MS = 30L * 24 * 60 * 60 * 1000; // 30 days
+    private static final long LONG_RECORDING_MS = 10 * 60 * 1000; // counted in chunks, or by the watch, not from getOutput(); not saved or fused
+    private static final int OTHER_SAMPLE_BUFFER_CAPACITY = (int) (LONG_RECORDING_MS / 1000 * 50); // each other watch's, at most
 
 
     ////////////////////////////////////////
@@ -139,17 +370,57 @@ public class MainActivity extends Activity implements DeviceListener
 
     private void onStartButtonPressed()
     {
-        if (m_device != null)
+        // all connected devices record together
+        if (m_deviceManager.isAnyRecording())
         {
-            if (m_device.isRecording())
-            {
-                m_device.stopRecording();
-            }
-            else
+            m_deviceManager.stopRecording();
+        }
+        else
+        {
+            m_deviceManager.startRecording();
+        }
+    }
+
+    // Make the next connected device the primary one.
+    private void onStatusLabelPressed()
+    {
+        if (m_deviceManager.isAnyRecording())
+        {
+            return;
+        }
+        List<DeviceManager.DeviceState> connected = new ArrayList<>();
+        for (DeviceManager.DeviceState state : m_deviceManager.getDevices())
+        {
+            if (state.device.isConnected())
             {
-                m_device.startRecording();
+                connected.add(state);
             }
         }
+        if (connected.size() < 2)
+        {
+            return;
+        }
+        int next = (connected.indexOf(m_deviceManager.getPrimary()) + 1) % connected.size();
+        if (m_deviceManager.setPrimary(connected.get(next).device))
+        {
+            updateStatusLabel();
+        }
+    }
+
+    // Record a whole workout, with the sets found and counted as it goes.
+    private boolean onStartButtonLongPressed()
+    {
+        DeviceManager.DeviceState primary = m_deviceManager.getPrimary();
+        if (m_deviceManager.isAnyRecording() || !m_deviceManager.isAnyConnected() || primary == null || !primary.hasRawSamples)
+        {
+            return false;
+        }
+
+        // the sets are found in our wear app's raw samples
+        m_continuous = true;
+        updateRawRequest();
+        m_deviceManager.startRecording();
+        return true;
     }
 
     private void onTrainButtonPressed()
@@ -157,10 +428,12 @@ public class MainActivity extends Activity implements DeviceListener
         // train the analyzer with the data we just recorded.
         // NOTE: to simplify the user interface, we are assuming the user always performed 10 reps; in practice,
         // you would probably want the user to enter how many reps he just did.
-        m_trainer.addTrainingDataSet(m_output, 10);
-        m_trainer.train();
+        // training runs in the background; the data sets label shows progress. sets recorded with raw samples are
+        // screened first, and the results label says why if one isn't added.
+        m_trainingService.addDataSet(m_output, 10, m_sessionId, m_sessionSamples);
 
         m_output = null;
+        m_sessionSamples = null;
 
         updateTrainButton();
         updateDataSetsLabel();
@@ -168,17 +441,22 @@ public class MainActivity extends Activity implements DeviceListener
 
     private void onClearButtonPressed()
     {
-        m_trainer.reset();
-        updateDataSetsLabel();
+        m_trainingService.reset();
     }
 
     ////////////////////////////////////////
 
     private void updateStatusLabel()
     {
-        if (m_device != null)
+        if (!m_deviceManager.getDevices().isEmpty())
         {
-            m_statusLabel.setText(String.format("%s: %s", m_device.getName(), (m_device.isConnected() ? "connected" : "disconnected")));
+            String text = "";
+            for (DeviceManager.DeviceState state : m_deviceManager.getDevices())
+            {
+                text += String.format("%s%s: %s%s", (text.isEmpty() ? "" : "\n"), state.device.getName(),
+                        (state.device.isConnected() ? "connected" : "disconnected"), (state == m_deviceManager.getPrimary() ? " (primary)" : ""));
+            }
+            m_statusLabel.setText(text);
         }
         else
         {
@@ -188,11 +466,11 @@ public class MainActivity extends Activity implements DeviceListener
 
     private void updateStartButton()
     {
-        if (m_device != null && m_device.isConnected())
+        if (m_deviceManager.isAnyConnected())
         {
             m_startButton.setEnabled(true);
 
-            if (m_device.isRecording())
+            if (m_deviceManager.isAnyRecording())
             {
                 m_startButton.setText(R.string.stop_recording);
             }
@@ -214,28 +492,85 @@ public class MainActivity extends Activity implements DeviceListener
 
     private void updateDataSetsLabel()
     {
-        m_dataSetsLabel.setText("Training data sets: " + m_trainer.getNumTrainingDataSets());
-        m_clearButton.setEnabled(m_trainer.getNumTrainingDataSets() > 0);
+        int numDataSets = m_trainingService.getNumTrainingDataSets();
+        if (numDataSets == 0 && m_savedModel != null && !m_savedModel.dataSets.isEmpty())
+        {
+            // the SDK can't reload a trained model, so tell the user what they had; live counts use the saved one
+            m_dataSetsLabel.setText(String.format("Training data sets: 0 (%d last time, still used for live counts)",
+                    m_savedModel.dataSets.size()));
+        }
+        else
+        {
+            String text = "Training data sets: " + numDataSets;
+            if (m_evaluation != null)
+            {
+                // the SDK's model can't be evaluated off the device, so this is the reference counter's result
+                text += String.format("\nreference counter, cross-validated: off by %.1f reps, %.2fs rep time",
+                        m_evaluation.repCountError, m_evaluation.repTimeError);
+            }
+            m_dataSetsLabel.setText(text + m_batchText);
+        }
+        m_clearButton.setEnabled(m_trainingService.getNumTrainingDataSets() > 0);
+        updateRawRequest();
+    }
+
+    // Once the analyzer is trained, the watch's own summaries are enough for routine sets; until then, and for
+    // continuous recordings, raw samples are saved with each recording for training and re-analysis. Only changed
+    // between recordings, so a set never loses its raw samples part way through; called again when recording stops.
+    private void updateRawRequest()
+    {
+        if (!m_deviceManager.isAnyRecording())
+        {
+            m_sampleReceiver.requestRawSamples(m_continuous || m_trainingService.getNumTrainingDataSets() == 0);
+        }
     }
 
     ////////////////////////////////////////
     // analysis
 
-    private void analyze()
+    private void analyze(final DeviceManager.DeviceState state)
     {
-        logInfo("analyzing...");
+        logInfo("analyzing " + state.device.getName() + "...");
 
-        // create analyzer for our "demo" analyzer
-        MovementAnalyzer analyzer = MovementAnalyzer.createTrainedSingleMovementAnalyzer("demo");
+        // count reps in the background on the device's own pipeline, against every movement we have trained;
+        // the SDK's analyzer can take a long time on long sets
+        final List<String> movementTypes = m_trainerRegistry.getTrainedMovementTypes();
+        if (m_deviceManager.isPrimary(state.device))
+        {
+            m_resultsLabel.setText("analyzing...");
+        }
+        state.pipeline.classify(state.output, movementTypes,
+                new AnalysisPipeline.ClassifyCallback()
+                {
+                    @Override
+                    public void onClassificationComplete(String movementType, AnalyzerResult result)
+                    {
+                        state.movementType = (movementTypes.size() > 1 ? movementType : null);
+                        state.result = result;
+                        if (result != null && m_deviceManager.isPrimary(state.device))
+                        {
+                            m_history.add(System.currentTimeMillis(), movementType, result.repCount, result.duration,
+                                    result.meanRepTime, result.internalVariation);
+                        }
 
-        // count reps
-        analyzer.analyze(m_output);
+                        long startTime = System.nanoTime();
+                        showResults();
+                        Metrics.UPDATE_UI.recordSince(startTime);
+                        Metrics.STOP_TO_RESULT.recordSince(state.stopTime);
+                        logInfo("...done");
+                    }
+                } );
+    }
 
-        // update the UI
-        if (analyzer.getNumResults() > 0)
+    // Full results for the primary device, and a summary line for each other device.
+    private void showResults()
+    {
+        DeviceManager.DeviceState primary = m_deviceManager.getPrimary();
+        AnalyzerResult result = (primary != null ? primary.result : null);
+        String text;
+        if (result != null)
         {
-            AnalyzerResult result = analyzer.getResult(0);
-            m_resultsLabel.setText(String.format(
+            text = (primary.movementType != null ? primary.movementType + "\n" : "") + String.format(
                     "%d reps\n" +
                             "duration %.2fs\n" +
                             "rep time %.2f (%.2f-%.2f)\n" +
@@ -243,16 +578,277 @@ public class MainActivity extends Activity implements DeviceListener
                     result.repCount,
                     result.duration,
                     result.meanRepTime, result.minRepTime, result.maxRepTime,
-                    result.internalVariation));
+                    result.internalVariation);
+
+            long now = System.currentTimeMillis();
+            String movementType = (primary.movementType != null ? primary.movementType : m_trainingService.getMovementType());
+            WorkoutHistory.Aggregate history = m_history.aggregate(movementType, now - HISTORY_SUMMARY_MS, now + 1, new WorkoutHistory.Aggregate());
+            text += String.format("last 30 days: %d sets, %d reps, rep time %.2f\n", history.numSets, history.totalReps, history.meanRepTime);
         }
         else
         {
-            m_resultsLabel.setText("(no result)");
+            text = (m_streamedResult != null ? "" : "(no result)\n");
         }
 
-        analyzer.destroy();
+        for (DeviceManager.DeviceState state : m_deviceManager.getDevices())
+        {
+            if (state != primary && state.result != null)
+            {
+                text += String.format("\n%s: %d reps", state.device.getName(), state.result.repCount);
+            }
+        }
+        if (m_streamedResult != null)
+        {
+            text += String.format("\ncounted as recorded: %d reps, rep time %.2f", m_streamedResult.repCount, m_streamedResult.meanRepTime);
+        }
+        if (m_chunkedResult != null)
+        {
+            text += String.format("\nwhole recording: %d reps, rep time %.2f", m_chunkedResult.repCount, m_chunkedResult.meanRepTime);
+        }
+        if (m_watchResult != null)
+        {
+            text += String.format("\nwatch: %d reps, rep time %.2f", m_watchResult.repCount, m_watchResult.meanRepTime);
+        }
+        if (m_fusedResult != null)
+        {
+            text += String.format("\n%d watches together: %d reps, rep time %.2f", m_fusedStreams, m_fusedResult.repCount,
+                    m_fusedResult.meanRepTime);
+        }
+        m_resultsLabel.setText(text);
+    }
+
+    // The primary device stopped recording: count the rest of its raw samples in the background. Returns true if the
+    // recording is too long to analyze at once, so that its chunked count, once it arrives, stands for it instead.
+    // Once the analyzer is trained the watch sends no raw samples, only a summary of each set, which it counts
+    // whatever its length; a long recording without raw samples is counted from that instead.
+    private boolean finishRawSamples(DeviceManager.DeviceState state)
+    {
+        m_rawAnalysis.finish();
+        long durationMs = (System.nanoTime() - state.startTime) / 1000000;
+        m_longFromWatch = (m_rawAnalysis.getDuration() == 0 && durationMs >= LONG_RECORDING_MS
+                && m_sampleReceiver.hasWatchSummaries());
+        m_longRecording = m_longFromWatch || (m_rawAnalysis.getDuration() >= LONG_RECORDING_MS && !m_spillFailed);
+        m_longContinuous = m_continuous;
+        if (m_continuous)
+        {
+            m_continuous = false;
+            updateDataSetsLabel();
+        }
+        if (m_longFromWatch && m_watchResult != null)
+        {
+            // the summary came before the device's callback
+            onLongRecordingCounted(m_watchResult, true);
+            return true;
+        }
+        return m_longRecording;
+    }
+
+    private void onLongRecordingCounted(RepResult result, boolean fromWatch)
+    {
+        if (!m_longRecording || fromWatch != m_longFromWatch || result == null)
+        {
+            return;
+        }
+        m_longRecording = false;
+        m_chunkedResult = result;
+        if (!m_longContinuous)
+        {
+            m_history.add(System.currentTimeMillis(), m_trainingService.getMovementType(), result);
+        }
+        showResults();
+    }
+
+    // Count the set just recorded from the primary's raw samples and the other watches' together.
+    private void fuseRawSamples(SampleBlock samples, List<SampleBlock> otherSamples)
+    {
+        m_deviceManager.fuseRawSamples(samples, otherSamples, m_trainingService.getCounterModel(),
+                new DeviceManager.FusionCallback()
+                {
+                    @Override
+                    public void onFused(RepResult result, int numStreams)
+                    {
+                        m_fusedResult = result;
+                        m_fusedStreams = numStreams;
+                        showResults();
+                    }
+                } );
+    }
+
+    private void onWorkoutSegment(SetSegmenter.Segment segment)
+    {
+        float seconds = (segment.endTime - segment.startTime) / 1000.0f;
+        if (!segment.isSet)
+        {
+            m_workoutText += String.format("rest %.0fs\n", seconds);
+        }
+        else if (segment.result != null)
+        {
+            RepResult result = segment.result;
+            m_workoutText += String.format("set: %d reps in %.0fs, rep time %.2f\n", result.repCount, seconds, result.meanRepTime);
+            m_history.add(System.currentTimeMillis(), m_trainingService.getMovementType(), result.repCount, result.duration,
+                    result.meanRepTime, result.internalVariation);
+        }
+        m_resultsLabel.setText(m_workoutText);
+    }
+
+    // Cross-validate PeakRepCounter on the data sets of the model just trained.
+    private void evaluateModel()
+    {
+        m_evaluation = null;
+        m_modelEvaluator.evaluate(m_trainingService.getDataSets(),
+                new ModelEvaluator.Listener()
+                {
+                    @Override
+                    public void onModelEvaluated(CrossValidator.Report report)
+                    {
+                        m_evaluation = report;
+                        updateDataSetsLabel();
+                    }
+                } );
+    }
+
+    // Re-count reps in every stored session with the model just trained, in the background; what it finds is shown
+    // with the data sets.
+    private void reanalyzeSessions()
+    {
+        PeakRepCounter.Model model = m_trainingService.getCounterModel();
+        if (m_batchModel != null && model.minRepTime == m_batchModel.minRepTime && model.maxRepTime == m_batchModel.maxRepTime)
+        {
+            // nothing new was trained
+            return;
+        }
+
+        final List<SessionStore.Session> sessions;
+        try
+        {
+            sessions = m_sessionRecorder.getStore().getSessions();
+        }
+        catch (IOException e)
+        {
+            logInfo("could not read sessions: " + e);
+            return;
+        }
+        if (sessions.isEmpty())
+        {
+            return;
+        }
+
+        // sessions are stored before they are labeled, so the known counts are those of the data sets trained on them
+        final Map<Integer, Integer> labels = new HashMap<>();
+        for (ModelStore.DataSet dataSet : m_trainingService.getDataSets())
+        {
+            if (dataSet.sessionId >= 0 && dataSet.repCount > 0)
+            {
+                labels.put(dataSet.sessionId, dataSet.repCount);
+            }
+        }
+
+        cancelReanalysis();
+        m_batchModel = model;
+        // the SDK's analyzer only takes live device output, so stored samples are counted with the pure-Java counter
+        m_batch = m_batchAnalyzer.start(sessions, model,
+                new BatchAnalyzer.Sink()
+                {
+                    @Override
+                    public void onResult(SessionStore.Session session, RepResult result)
+                    {
+                        Integer repCount = labels.get(session.id);
+                        if (repCount != null)
+                        {
+                            ++m_numLabeled;
+                            m_countError += Math.abs(result.repCount - repCount);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(SessionStore.Session session, Exception error)
+                    {
+                        // counted in onBatchComplete()
+                        logInfo(String.format("could not re-count session %d: %s", session.id, error));
+                    }
+
+                    @Override
+                    public void onBatchComplete(int numAnalyzed, int numFailed, long elapsedMs)
+                    {
+                        logInfo(String.format("re-counted %d sessions (%d failed) in %dms on %d threads (%.1f sessions/s)",
+                                numAnalyzed, numFailed, elapsedMs, m_batchAnalyzer.getNumThreads(),
+                                numAnalyzed * 1000.0f / Math.max(elapsedMs, 1)));
+                        m_batch = null;
+                        m_batchText = String.format("\nstored sessions re-counted: %d", numAnalyzed);
+                        if (numFailed > 0)
+                        {
+                            m_batchText += String.format(", %d failed", numFailed);
+                        }
+                        if (m_numLabeled > 0)
+                        {
+                            m_batchText += String.format(", off by %.1f reps on the %d trained", m_countError / (float) m_numLabeled,
+                                    m_numLabeled);
+                        }
+                        updateDataSetsLabel();
+                    }
+
+                    private int m_numLabeled;
+                    private int m_countError;
+                } );
+    }
+
+    private void cancelReanalysis()
+    {
+        if (m_batch != null)
+        {
+            m_batch.cancel();
+            m_batch = null;
+        }
+        m_batchModel = null;
+        m_batchText = "";
+    }
+
+    // Debug overlay with the pipeline metrics; they can be saved to a file for later.
+    private void showMetrics()
+    {
+        final String text = Metrics.dump();
+        logInfo(text);
 
-        logInfo("...done");
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Metrics");
+        builder.setMessage(text);
+        builder.setPositiveButton("Save",
+                new DialogInterface.OnClickListener()
+                {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which)
+                    {
+                        File file = new File(getFilesDir(), "metrics.txt");
+                        try
+                        {
+                            Metrics.writeTo(file);
+                            logInfo("saved metrics to " + file);
+                        }
+                        catch (IOException e)
+                        {
+                            logInfo("could not save metrics: " + e);
+                        }
+                    }
+                } );
+        builder.setNeutralButton("Reset",
+                new DialogInterface.OnClickListener()
+                {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which)
+                    {
+                        Metrics.reset();
+                    }
+                } );
+        builder.setNegativeButton("Close",
+                new DialogInterface.OnClickListener()
+                {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which)
+                    {
+                        dialog.dismiss();
+                    }
+                } );
+        builder.create().show();
     }
 
     private static void logInfo(String msg)
@@ -266,50 +862,192 @@ public class MainActivity extends Activity implements DeviceListener
     @Override
     public void onAvailableChanged(Device device, boolean available)
     {
-        // We are only supporting Pebble, and at most one Pebble can be paired at a time;
-        // so just connect automatically when we detect one.
+        // connect automatically to every device we detect, so they can all record at once
+        // our wear app sends raw samples alongside the SDK's Wear device
+        m_deviceManager.onAvailableChanged(device, available, device instanceof WearDevice);
         if (available)
         {
-            m_device = device;
-            m_device.connect();
+            m_startup.onDeviceAvailable(getBackend(device));
         }
 
         updateStatusLabel();
+        updateStartButton();
+    }
+
+    private static String getBackend(Device device)
+    {
+        if (device instanceof PebbleDevice)
+        {
+            return BACKEND_PEBBLE;
+        }
+        if (device instanceof BandDevice)
+        {
+            return BACKEND_BAND;
+        }
+        return BACKEND_WEAR;
     }
 
     @Override
     public void onConnectedChanged(Device device, boolean connected)
     {
+        m_deviceManager.onConnectedChanged(device, connected);
         updateStartButton();
         updateStatusLabel();
     }
 
     @Override
     public void onRecordingChanged(Device device, boolean recording)
+    {
+        long startTime = System.nanoTime();
+        handleRecordingChanged(device, recording);
+        Metrics.RECORDING_CHANGED.recordSince(startTime);
+        if (m_deviceManager.onRecordingChanged(device, recording))
+        {
+            // a preferred device connected during the set
+            updateStatusLabel();
+        }
+
+        logInfo(String.format("onRecordingChanged blocked main thread for %.1fms", (System.nanoTime() - startTime) / 1e6f));
+    }
+
+    private void handleRecordingChanged(Device device, boolean recording)
     {
         updateStartButton();
 
+        DeviceManager.DeviceState state = m_deviceManager.get(device);
+        if (state == null)
+        {
+            return;
+        }
+        boolean primary = m_deviceManager.isPrimary(device);
+        boolean rawSamples = m_deviceManager.isRawSampleSource(device);
+        boolean longRecording = false;
+
         if (!recording)
         {
-            // just stopped recording
-            m_output = m_device.getOutput();
-            if (m_trainer.getNumTrainingDataSets() > 0)
+            // just stopped recording; live results are superseded by the final analysis
+            state.pipeline.cancel();
+            state.result = null;
+            if (rawSamples)
+            {
+                // only the samples since the last live update are left to count; done before the SDK's analysis
+                m_liveAnalysis.finish();
+            }
+
+            // a continuous recording has already been counted set by set
+            boolean continuous = (rawSamples && m_continuous);
+            longRecording = (rawSamples && finishRawSamples(state));
+            if (longRecording)
+            {
+                // too long to pull into memory at once; it is being counted chunk by chunk, or by the watch, instead
+                state.output = null;
+            }
+            else
+            {
+                state.stopTime = System.nanoTime();
+                state.output = device.getOutput();
+                Metrics.GET_OUTPUT.recordSince(state.stopTime);
+            }
+
+            if (!m_trainerRegistry.getTrainedMovementTypes().isEmpty() && !continuous && !longRecording)
             {
                 // we have already trained our analyzer; try counting reps.
-                analyze();
+                analyze(state);
+            }
+            // training may have finished during the set
+            updateRawRequest();
+        }
+        else
+        {
+            // a new set is starting; any analysis of the previous one is stale
+            state.pipeline.cancel();
+            state.startTime = System.nanoTime();
+            state.result = null;
+        }
+
+        // training, live results and raw sample capture follow the primary device
+        if (!primary)
+        {
+            return;
+        }
+
+        if (!recording)
+        {
+            m_output = state.output;
+            m_sessionId = -1;
+            m_sessionSamples = null;
+            if (longRecording)
+            {
+                // copying it out whole would undo the chunked count's flat heap; it is neither saved nor fused
+                m_sampleReceiver.clearOtherStreams();
+            }
+            else if (rawSamples)
+            {
+                // samples other watches sent during the set, to count together with the primary's
+                final List<SampleBlock> otherSamples = m_sampleReceiver.copyOtherStreams();
+                m_sessionRecorder.onRecordingStopped("",
+                        new SessionRecorder.Callback()
+                        {
+                            @Override
+                            public void onSessionSaved(int sessionId, SampleBlock samples)
+                            {
+                                m_sessionId = sessionId;
+                                m_sessionSamples = samples;
+                                if (!otherSamples.isEmpty())
+                                {
+                                    fuseRawSamples(samples, otherSamples);
+                                }
+                            }
+                        } );
             }
         }
         else
         {
+            m_streamedResult = null;
+            m_watchResult = null;
+            m_chunkedResult = null;
+            m_fusedResult = null;
             m_resultsLabel.setText("");
+            if (rawSamples)
+            {
+                startRawSamples(state);
+            }
         }
 
         updateTrainButton();
     }
 
+    // The primary device started recording, and its raw samples are coming in: start capturing and counting them.
+    private void startRawSamples(DeviceManager.DeviceState state)
+    {
+        m_sessionRecorder.onRecordingStarted();
+        m_sampleReceiver.clearOtherStreams();
+        if (!m_continuous)
+        {
+            // a continuous recording is counted set by set by the segmenter instead
+            m_liveAnalysis.start(state.pipeline);
+        }
+        m_spillFailed = false;
+        m_longRecording = false;
+        m_rawAnalysis.start(state.pipeline, m_continuous);
+        m_workoutText = "";
+    }
+
     @Override
     public void onDataReceived(Device device)
     {
+        Metrics.DATA_RECEIVED.record();
+        if (!m_deviceManager.isRawSampleSource(device))
+        {
+            // the raw samples in m_sampleBuffer are another device's
+            return;
+        }
+        // the new samples are counted on the device's analysis thread; a set is reported as soon as it ends
+        m_rawAnalysis.onDataReceived();
+        if (device.isRecording())
+        {
+            m_liveAnalysis.onDataReceived();
+        }
     }
 
     @Override
@@ -0,0 +1,66 @@
+package io.focusmotion.trainingdemo;
+
+import java.io.*;
+
+
+// Where the time goes between a set ending and its results being shown.
+//
+// Each stage of the device-to-result path records into its own
+// LatencyHistogram; recording is lock-free, so the instrumentation stays in
+// release builds. dump() formats everything for the log, a file, or the debug
+// overlay (long-press the status label).
+public class Metrics
+{
+    public static final LatencyHistogram RECORDING_CHANGED = new LatencyHistogram("onRecordingChanged");
+    public static final LatencyHistogram GET_OUTPUT = new LatencyHistogram("getOutput");
+    public static final LatencyHistogram CREATE_ANALYZER = new LatencyHistogram("create analyzer");
+    public static final LatencyHistogram ANALYZE = new LatencyHistogram("analyze");
+    public static final LatencyHistogram GET_RESULT = new LatencyHistogram("getResult");
+    public static final LatencyHistogram UPDATE_UI = new LatencyHistogram("update UI");
+    public static final LatencyHistogram STOP_TO_RESULT = new LatencyHistogram("stop to result");
+    public static final LatencyHistogram LIVE_FINISH = new LatencyHistogram("finish live count");
+
+    public static final EventRate DATA_RECEIVED = new EventRate("onDataReceived");
+
+    public static String dump()
+    {
+        StringBuilder text = new StringBuilder();
+        for (LatencyHistogram histogram : HISTOGRAMS)
+        {
+            text.append(histogram).append('\n');
+        }
+        text.append(DATA_RECEIVED).append('\n');
+        return text.toString();
+    }
+
+    public static void writeTo(File file) throws IOException
+    {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try
+        {
+            out.write(dump());
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    public static void reset()
+    {
+        for (LatencyHistogram histogram : HISTOGRAMS)
+        {
+            histogram.reset();
+        }
+        DATA_RECEIVED.reset();
+    }
+
+    ////////////////////////////////////////
+
+    private static final LatencyHistogram[] HISTOGRAMS =
+    {
+        RECORDING_CHANGED, GET_OUTPUT, CREATE_ANALYZER, ANALYZE, GET_RESULT, UPDATE_UI, STOP_TO_RESULT, LIVE_FINISH
+    };
+
+    private Metrics() {}
+}
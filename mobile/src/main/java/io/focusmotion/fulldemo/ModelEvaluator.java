@@ -0,0 +1,141 @@
+package io.focusmotion.trainingdemo;
+
+import android.os.*;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+// Cross-validates a trained model's data sets in the background, from their
+// raw samples in the SessionStore.
+//
+// The SDK's AnalyzerTrainer only learns from live device output, so what is
+// evaluated is a PeakRepCounter model trained on the same data sets and
+// labels, not the SDK's model: the report is the reference counter's, and
+// says little about whether the data sets added helped the SDK's count. Data
+// sets whose raw samples weren't captured are left out. Sessions
+// are loaded on one background thread and the folds run on the
+// CrossValidator's threads. Only the latest request is evaluated: a request
+// made while an earlier one is waiting or running supersedes it, and the
+// earlier report is dropped. Must be used from the main thread.
+public class ModelEvaluator
+{
+    public interface Listener
+    {
+        // called on the main thread
+        void onModelEvaluated(CrossValidator.Report report);
+    }
+
+    public ModelEvaluator(SessionStore store, int numThreads)
+    {
+        m_store = store;
+        m_validator = new CrossValidator(numThreads);
+    }
+
+    // Cross-validate the data sets of a model; nothing is reported if fewer than MIN_DATA_SETS have raw samples.
+    public void evaluate(final List<ModelStore.DataSet> dataSets, final Listener listener)
+    {
+        final int request = m_request.incrementAndGet();
+        m_executor.execute(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if (request == m_request.get())
+                        {
+                            runEvaluation(request, dataSets, listener);
+                        }
+                    }
+                } );
+    }
+
+    public void shutdown()
+    {
+        m_executor.shutdownNow();
+        m_validator.shutdown();
+    }
+
+    ////////////////////////////////////////
+
+    private static final int MIN_DATA_SETS = 3;
+    private static final int NUM_FOLDS = 5;
+
+    private final SessionStore m_store;
+    private final CrossValidator m_validator;
+    private final ExecutorService m_executor = Executors.newSingleThreadExecutor();
+    private final Handler m_mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger m_request = new AtomicInteger();
+
+    // called on the background thread
+    private void runEvaluation(final int request, List<ModelStore.DataSet> dataSets, final Listener listener)
+    {
+        List<SampleBlock> sets = new ArrayList<>();
+        List<Integer> labels = new ArrayList<>();
+        for (ModelStore.DataSet dataSet : dataSets)
+        {
+            if (dataSet.sessionId < 0 || dataSet.repCount <= 0)
+            {
+                continue;
+            }
+            try
+            {
+                sets.add(m_store.load(dataSet.sessionId));
+                labels.add(dataSet.repCount);
+            }
+            catch (IOException e)
+            {
+                logInfo(String.format("could not load session %d: %s", dataSet.sessionId, e));
+            }
+        }
+        if (sets.size() < MIN_DATA_SETS)
+        {
+            return;
+        }
+        int[] repCounts = new int[labels.size()];
+        for (int i = 0; i < repCounts.length; ++i)
+        {
+            repCounts[i] = labels.get(i);
+        }
+
+        final CrossValidator.Report report;
+        try
+        {
+            report = m_validator.evaluate(sets, repCounts, NUM_FOLDS, Integer.MAX_VALUE);
+        }
+        catch (InterruptedException e)
+        {
+            // shutting down
+            return;
+        }
+        for (CrossValidator.Fold fold : report.folds)
+        {
+            logInfo(String.format("fold %d: %d training, %d test sets; rep count error %.2f, rep time error %.3fs; " +
+                    "train %.2fms, count %.2fms", fold.index, fold.numTrainingSets, fold.numTestSets, fold.repCountError,
+                    fold.repTimeError, fold.trainNs / 1e6f, fold.inferenceNs / 1e6f));
+        }
+        logInfo(String.format("cross-validated %d data sets in %dms: rep count error %.2f, rep time error %.3fs",
+                report.numSets, report.elapsedMs, report.repCountError, report.repTimeError));
+
+        m_mainHandler.post(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if (request == m_request.get())
+                        {
+                            listener.onModelEvaluated(report);
+                        }
+                    }
+                } );
+    }
+
+    private static void logInfo(String msg)
+    {
+        Log.i(ModelEvaluator.class.getName(), msg);
+    }
+}
@@ -0,0 +1,211 @@
+package io.focusmotion.trainingdemo;
+
+import android.util.Log;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+
+// Saves what was trained for a movement (the data sets, with their labels
+// and rep times) so it survives restarts.
+//
+// The SDK can't export its trained model, but the PeakRepCounter model used
+// for live counts and re-analysis is fully described by the data sets' rep
+// times, so getCounterModel() restores it exactly.
+//
+// The file is written to a temporary file and renamed into place, and starts
+// with a format version, the payload length and a CRC32 of the payload;
+// files from another version, with a length that doesn't fit the file, or
+// with a bad checksum are rejected rather than half-loaded. Version 1 files,
+// which have no rep times, still load, with no counter model.
+public class ModelStore
+{
+    public static class DataSet
+    {
+        public DataSet(int repCount, int sessionId, long time, float repTime)
+        {
+            this.repCount = repCount;
+            this.sessionId = sessionId;
+            this.time = time;
+            this.repTime = repTime;
+        }
+
+        public final int repCount;
+        public final int sessionId; // in the SessionStore, or -1 if the raw samples weren't captured
+        public final long time;
+        public final float repTime; // seconds, from the raw samples; 0 if they weren't captured
+    }
+
+    public static class Model
+    {
+        public Model(String movementType, List<DataSet> dataSets)
+        {
+            this.movementType = movementType;
+            this.dataSets = Collections.unmodifiableList(new ArrayList<>(dataSets));
+        }
+
+        // The PeakRepCounter model of the data sets' rep times; DEFAULT if none has one.
+        public PeakRepCounter.Model getCounterModel()
+        {
+            float minRepTime = Float.MAX_VALUE;
+            float maxRepTime = 0.0f;
+            for (DataSet dataSet : dataSets)
+            {
+                if (dataSet.repTime > 0.0f)
+                {
+                    minRepTime = Math.min(minRepTime, dataSet.repTime);
+                    maxRepTime = Math.max(maxRepTime, dataSet.repTime);
+                }
+            }
+            return PeakRepCounter.Model.fromRepTimes(minRepTime, maxRepTime);
+        }
+
+        public final String movementType;
+        public final List<DataSet> dataSets;
+    }
+
+    public ModelStore(File file)
+    {
+        m_file = file;
+    }
+
+    public synchronized void save(Model model) throws IOException
+    {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(payloadBytes);
+        payload.writeUTF(model.movementType);
+        payload.writeInt(model.dataSets.size());
+        for (DataSet dataSet : model.dataSets)
+        {
+            payload.writeInt(dataSet.repCount);
+            payload.writeInt(dataSet.sessionId);
+            payload.writeLong(dataSet.time);
+            payload.writeFloat(dataSet.repTime);
+        }
+        payload.flush();
+        byte[] bytes = payloadBytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        File tempFile = new File(m_file.getPath() + ".tmp");
+        FileOutputStream fileOut = new FileOutputStream(tempFile);
+        try
+        {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(bytes.length);
+            out.writeLong(crc.getValue());
+            out.write(bytes);
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        finally
+        {
+            fileOut.close();
+        }
+
+        if (!tempFile.renameTo(m_file))
+        {
+            throw new IOException("Could not replace " + m_file);
+        }
+    }
+
+    // Returns null if there is no saved model, or it can't be used.
+    public synchronized Model load()
+    {
+        if (!m_file.exists())
+        {
+            return null;
+        }
+
+        try
+        {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(m_file)));
+            try
+            {
+                if (in.readInt() != MAGIC)
+                {
+                    logInfo("not a model file; ignoring");
+                    return null;
+                }
+                int version = in.readInt();
+                if (version != VERSION && version != VERSION_NO_REP_TIMES)
+                {
+                    logInfo(String.format("model file version %d is not supported; ignoring", version));
+                    return null;
+                }
+
+                int length = in.readInt();
+                if (length < 0 || length > m_file.length() - HEADER_SIZE)
+                {
+                    logInfo(String.format("model file length %d doesn't fit the file; ignoring", length));
+                    return null;
+                }
+                byte[] bytes = new byte[length];
+                long expectedCrc = in.readLong();
+                in.readFully(bytes);
+
+                CRC32 crc = new CRC32();
+                crc.update(bytes);
+                if (crc.getValue() != expectedCrc)
+                {
+                    logInfo("model file checksum mismatch; ignoring");
+                    return null;
+                }
+
+                DataInputStream payload = new DataInputStream(new ByteArrayInputStream(bytes));
+                String movementType = payload.readUTF();
+                int numDataSets = payload.readInt();
+                int dataSetSize = (version == VERSION ? DATA_SET_SIZE : DATA_SET_SIZE_NO_REP_TIME);
+                if (numDataSets < 0 || numDataSets > payload.available() / dataSetSize)
+                {
+                    logInfo(String.format("model file data set count %d doesn't fit the file; ignoring", numDataSets));
+                    return null;
+                }
+                List<DataSet> dataSets = new ArrayList<>(numDataSets);
+                for (int i = 0; i < numDataSets; ++i)
+                {
+                    int repCount = payload.readInt();
+                    int sessionId = payload.readInt();
+                    long time = payload.readLong();
+                    float repTime = (version == VERSION ? payload.readFloat() : 0.0f);
+                    dataSets.add(new DataSet(repCount, sessionId, time, repTime));
+                }
+                return new Model(movementType, dataSets);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            logInfo("could not read model file: " + e);
+            return null;
+        }
+    }
+
+    public synchronized void delete()
+    {
+        m_file.delete();
+    }
+
+    ////////////////////////////////////////
+
+    private static final int MAGIC = 0x464D4D31; // "FMM1"
+    private static final int VERSION = 2;
+    private static final int VERSION_NO_REP_TIMES = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8; // magic, version, length, CRC
+    private static final int DATA_SET_SIZE = 4 + 4 + 8 + 4;
+    private static final int DATA_SET_SIZE_NO_REP_TIME = 4 + 4 + 8;
+
+    private final File m_file;
+
+    private static void logInfo(String msg)
+    {
+        Log.i(ModelStore.class.getName(), msg);
+    }
+}
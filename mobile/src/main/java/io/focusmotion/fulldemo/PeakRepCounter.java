@@ -0,0 +1,454 @@
+package io.focusmotion.trainingdemo;
+
+import java.util.List;
+
+
+// Pure-Java reference RepCounter, independent of the SDK.
+//
+// Reps are found in the smoothed acceleration magnitude: the dominant rep
+// period is estimated by PeriodEstimator over the rep times the model
+// allows, and then each rep is a peak above PEAK_THRESHOLD standard
+// deviations, at least MIN_SPACING periods after the previous one. Working buffers are
+// reused between calls, so analyzing sets no longer than the longest one seen
+// so far doesn't allocate.
+//
+// A set can also be counted as it is recorded: begin(), then add() each batch
+// of new samples, which only does the per-sample work (magnitude and
+// smoothing) for the samples added, and finish() at the end, which runs the
+// rest (statistics, period and peaks) once and gives the same result as
+// analyze() over every sample added; analyze() is in fact begin(), one add()
+// and finish(). In between, update() gives a live estimate at a cost that
+// doesn't grow with the set: the period is estimated over the latest
+// LIVE_WINDOW rep times only, and only peaks since the last update are
+// examined, against the statistics so far.
+public class PeakRepCounter implements RepCounter
+{
+    // Range of rep times (in seconds) the counter looks for.
+    public static class Model
+    {
+        public static final Model DEFAULT = new Model(0.5f, 6.0f);
+
+        public Model(float minRepTime, float maxRepTime)
+        {
+            this.minRepTime = minRepTime;
+            this.maxRepTime = maxRepTime;
+        }
+
+        // Learn the range from sets whose rep counts are known.
+        public static Model train(List<? extends SampleSeries> sets, int[] repCounts)
+        {
+            float minRepTime = Float.MAX_VALUE;
+            float maxRepTime = 0.0f;
+            for (int i = 0; i < sets.size(); ++i)
+            {
+                SampleSeries set = sets.get(i);
+                if (set.size() < 2 || repCounts[i] <= 0)
+                {
+                    continue;
+                }
+                float repTime = (set.getTime(set.size() - 1) - set.getTime(0)) / 1000.0f / repCounts[i];
+                minRepTime = Math.min(minRepTime, repTime);
+                maxRepTime = Math.max(maxRepTime, repTime);
+            }
+            return fromRepTimes(minRepTime, maxRepTime);
+        }
+
+        // The model trained on sets whose rep times ranged from minRepTime to maxRepTime; DEFAULT if maxRepTime is 0.
+        public static Model fromRepTimes(float minRepTime, float maxRepTime)
+        {
+            if (maxRepTime == 0.0f)
+            {
+                return DEFAULT;
+            }
+            return new Model(minRepTime * (1.0f - TRAINED_MARGIN), maxRepTime * (1.0f + TRAINED_MARGIN));
+        }
+
+        public final float minRepTime;
+        public final float maxRepTime;
+    }
+
+    public PeakRepCounter()
+    {
+        this(Model.DEFAULT);
+    }
+
+    public PeakRepCounter(Model model)
+    {
+        m_model = model;
+    }
+
+    public void setModel(Model model)
+    {
+        m_model = model;
+    }
+
+    public Model getModel()
+    {
+        return m_model;
+    }
+
+    @Override
+    public void analyze(SampleSeries samples)
+    {
+        begin();
+        add(samples, 0, samples.size());
+        finish();
+    }
+
+    // Start counting a set incrementally.
+    public void begin()
+    {
+        m_result.clear();
+        m_numResults = 0;
+        m_numSamples = 0;
+        m_window = 0;
+        m_smoothSum = 0.0f;
+        m_liveSum = 0.0;
+        m_liveSquares = 0.0;
+        m_liveScanned = 1;
+        m_liveLastPeak = -1;
+        m_liveNumPeaks = 0;
+        m_liveFirstPeakTime = 0;
+        m_liveLastPeakTime = 0;
+    }
+
+    // Add count samples of the set, starting at start.
+    public void add(SampleSeries samples, int start, int count)
+    {
+        int n = m_numSamples + count;
+        ensureCapacity(n);
+        for (int i = 0; i < count; ++i)
+        {
+            int index = m_numSamples + i;
+            float x = samples.getValue(start + i, SampleBlock.ACCEL_X);
+            float y = samples.getValue(start + i, SampleBlock.ACCEL_Y);
+            float z = samples.getValue(start + i, SampleBlock.ACCEL_Z);
+            m_times[index] = samples.getTime(start + i);
+            m_scratch[index] = (float) Math.sqrt(x * x + y * y + z * z);
+        }
+
+        int window = getWindow(n);
+        if (window != m_window)
+        {
+            // the sample rate so far has moved the window; smooth everything again
+            m_window = window;
+            m_smoothSum = smooth(0, n);
+            m_liveSum = 0.0;
+            m_liveSquares = 0.0;
+            addLiveStatistics(0, n);
+        }
+        else
+        {
+            m_smoothSum = smooth(m_numSamples, n);
+            addLiveStatistics(m_numSamples, n);
+        }
+        m_numSamples = n;
+    }
+
+    // Estimate the result so far into result, or clear it if there aren't enough samples yet.
+    public RepResult update(RepResult result)
+    {
+        result.clear();
+        int n = m_numSamples;
+        float duration = getDuration(n);
+        if (duration <= 0.0f)
+        {
+            return result;
+        }
+        float rate = (n - 1) / duration;
+
+        float mean = (float) (m_liveSum / n);
+        float std = (float) Math.sqrt(Math.max(0.0, m_liveSquares / n - (double) mean * mean));
+        int window = Math.min(n, (int) (LIVE_WINDOW * m_model.maxRepTime * rate));
+        int start = n - window;
+        for (int i = 0; i < window; ++i)
+        {
+            m_liveSignal[i] = m_signal[start + i] - mean;
+        }
+        float period = estimatePeriod(m_liveSignal, window, rate);
+
+        // peaks since the last update; the last sample can't be one until the next arrives
+        float threshold = mean + PEAK_THRESHOLD * std;
+        int minSpacing = Math.max(1, (int) (period * rate * MIN_SPACING));
+        for (int i = m_liveScanned; i < n - 1; ++i)
+        {
+            float v = m_signal[i];
+            if (v <= threshold || v < m_signal[i - 1] || v <= m_signal[i + 1])
+            {
+                continue;
+            }
+            if (m_liveLastPeak < 0 || i - m_liveLastPeak >= minSpacing)
+            {
+                if (m_liveNumPeaks++ == 0)
+                {
+                    m_liveFirstPeakTime = m_times[i];
+                }
+                m_liveLastPeak = i;
+                m_liveLastPeakTime = m_times[i];
+            }
+            else if (v > m_signal[m_liveLastPeak])
+            {
+                m_liveLastPeak = i;
+                m_liveLastPeakTime = m_times[i];
+            }
+        }
+        m_liveScanned = Math.max(m_liveScanned, n - 1);
+
+        result.repCount = m_liveNumPeaks;
+        result.duration = duration;
+        if (m_liveNumPeaks >= 2)
+        {
+            result.meanRepTime = (m_liveLastPeakTime - m_liveFirstPeakTime) / 1000.0f / (m_liveNumPeaks - 1);
+        }
+        return result;
+    }
+
+    // Count everything added since begin(), as analyze() would have; add no more samples until the next begin().
+    public void finish()
+    {
+        m_result.clear();
+        m_numResults = 0;
+
+        int n = m_numSamples;
+        float duration = getDuration(n);
+        if (duration <= 0.0f)
+        {
+            return;
+        }
+        float rate = (n - 1) / duration;
+
+        float std = normalize(n);
+        float period = estimatePeriod(m_signal, n, rate);
+        int numPeaks = findPeaks(n, std, period * rate);
+
+        computeResult(numPeaks, duration);
+        m_numResults = 1;
+    }
+
+    // Number of samples added since begin().
+    public int getNumSamples()
+    {
+        return m_numSamples;
+    }
+
+    @Override
+    public int getNumResults()
+    {
+        return m_numResults;
+    }
+
+    @Override
+    public RepResult getResult(int index)
+    {
+        if (index >= m_numResults)
+        {
+            throw new IndexOutOfBoundsException("No result " + index);
+        }
+        return m_result;
+    }
+
+    // The reps found by the last analyze(), as the times of their peaks; valid until the next call.
+    public int getNumPeaks()
+    {
+        return (m_numResults > 0 ? m_result.repCount : 0);
+    }
+
+    public long getPeakTime(int index)
+    {
+        return m_peakTimes[index];
+    }
+
+    ////////////////////////////////////////
+
+    private static final float SMOOTH_TIME = 0.1f;     // seconds
+    private static final float PEAK_THRESHOLD = 0.5f;  // standard deviations
+    private static final float MIN_SPACING = 0.6f;     // periods
+    private static final float TRAINED_MARGIN = 0.5f;
+    private static final float LIVE_WINDOW = 4.0f;     // of the longest rep time
+
+    private Model m_model;
+    private final RepResult m_result = new RepResult();
+    private final PeriodEstimator m_periodEstimator = new PeriodEstimator();
+    private int m_numResults;
+
+    private int m_numSamples;       // added since begin()
+    private int m_window;           // smoothing window, in samples, at the sample rate so far
+    private float m_smoothSum;      // of the magnitudes in the window ending at the last sample
+    private long[] m_times = new long[0];
+    private float[] m_signal = new float[0];    // smoothed magnitude
+    private float[] m_scratch = new float[0];   // magnitude
+    private long[] m_peakTimes = new long[0];
+
+    // live estimate
+    private double m_liveSum;       // of m_signal
+    private double m_liveSquares;
+    private float[] m_liveSignal = new float[0];
+    private int m_liveScanned;      // samples examined for peaks
+    private int m_liveLastPeak;
+    private int m_liveNumPeaks;
+    private long m_liveFirstPeakTime;
+    private long m_liveLastPeakTime;
+
+    // grow the buffers to hold n samples, keeping those added so far
+    private void ensureCapacity(int n)
+    {
+        if (m_signal.length < n)
+        {
+            int capacity = Math.max(n, m_numSamples * 2);
+            m_times = grow(m_times, capacity);
+            m_signal = grow(m_signal, capacity);
+            m_scratch = grow(m_scratch, capacity);
+            m_peakTimes = new long[capacity];
+            m_liveSignal = new float[capacity];
+        }
+    }
+
+    private long[] grow(long[] array, int capacity)
+    {
+        long[] grown = new long[capacity];
+        System.arraycopy(array, 0, grown, 0, m_numSamples);
+        return grown;
+    }
+
+    private float[] grow(float[] array, int capacity)
+    {
+        float[] grown = new float[capacity];
+        System.arraycopy(array, 0, grown, 0, m_numSamples);
+        return grown;
+    }
+
+    private float getDuration(int n)
+    {
+        return (n < 3 ? 0.0f : (m_times[n - 1] - m_times[0]) / 1000.0f);
+    }
+
+    // smoothing window for the sample rate of the first n samples
+    private int getWindow(int n)
+    {
+        float duration = getDuration(n);
+        if (duration <= 0.0f)
+        {
+            return 1;
+        }
+        return Math.max(1, Math.round((n - 1) / duration * SMOOTH_TIME));
+    }
+
+    // Smooth the magnitudes of samples [from, to) into m_signal, carrying on from m_smoothSum; returns the new sum.
+    private float smooth(int from, int to)
+    {
+        int window = m_window;
+        float sum = (from == 0 ? 0.0f : m_smoothSum);
+        for (int i = from; i < to; ++i)
+        {
+            sum += m_scratch[i];
+            if (i >= window)
+            {
+                sum -= m_scratch[i - window];
+            }
+            m_signal[i] = sum / Math.min(i + 1, window);
+        }
+        return sum;
+    }
+
+    private void addLiveStatistics(int from, int to)
+    {
+        for (int i = from; i < to; ++i)
+        {
+            m_liveSum += m_signal[i];
+            m_liveSquares += m_signal[i] * m_signal[i];
+        }
+    }
+
+    // Make m_signal zero-mean; returns its standard deviation.
+    private float normalize(int n)
+    {
+        double total = 0.0;
+        for (int i = 0; i < n; ++i)
+        {
+            total += m_signal[i];
+        }
+
+        float mean = (float) (total / n);
+        double sumSquares = 0.0;
+        for (int i = 0; i < n; ++i)
+        {
+            m_signal[i] -= mean;
+            sumSquares += m_signal[i] * m_signal[i];
+        }
+        return (float) Math.sqrt(sumSquares / n);
+    }
+
+    // Dominant rep period in seconds, over the rep times the model allows.
+    private float estimatePeriod(float[] signal, int n, float rate)
+    {
+        int minLag = Math.max(1, (int) (m_model.minRepTime * rate));
+        int maxLag = Math.min(n / 2, (int) Math.ceil(m_model.maxRepTime * rate));
+        if (maxLag <= minLag)
+        {
+            return m_model.minRepTime;
+        }
+        return m_periodEstimator.estimate(signal, n, minLag, maxLag) / rate;
+    }
+
+    // Store peak times in m_peakTimes; returns the number of peaks.
+    private int findPeaks(int n, float std, float periodSamples)
+    {
+        float threshold = PEAK_THRESHOLD * std;
+        int minSpacing = Math.max(1, (int) (periodSamples * MIN_SPACING));
+
+        int numPeaks = 0;
+        int lastPeak = -minSpacing;
+        for (int i = 1; i < n - 1; ++i)
+        {
+            float v = m_signal[i];
+            if (v <= threshold || v < m_signal[i - 1] || v <= m_signal[i + 1])
+            {
+                continue;
+            }
+
+            if (i - lastPeak >= minSpacing)
+            {
+                m_peakTimes[numPeaks++] = m_times[i];
+                lastPeak = i;
+            }
+            else if (v > m_signal[lastPeak])
+            {
+                // a higher peak within the same rep; use it instead
+                m_peakTimes[numPeaks - 1] = m_times[i];
+                lastPeak = i;
+            }
+        }
+        return numPeaks;
+    }
+
+    private void computeResult(int numPeaks, float duration)
+    {
+        m_result.repCount = numPeaks;
+        m_result.duration = duration;
+        if (numPeaks < 2)
+        {
+            return;
+        }
+
+        double sum = 0.0;
+        double sumSquares = 0.0;
+        float minRepTime = Float.MAX_VALUE;
+        float maxRepTime = 0.0f;
+        for (int i = 1; i < numPeaks; ++i)
+        {
+            float repTime = (m_peakTimes[i] - m_peakTimes[i - 1]) / 1000.0f;
+            sum += repTime;
+            sumSquares += repTime * repTime;
+            minRepTime = Math.min(minRepTime, repTime);
+            maxRepTime = Math.max(maxRepTime, repTime);
+        }
+
+        int count = numPeaks - 1;
+        float mean = (float) (sum / count);
+        double variance = Math.max(0.0, sumSquares / count - mean * mean);
+        m_result.meanRepTime = mean;
+        m_result.minRepTime = minRepTime;
+        m_result.maxRepTime = maxRepTime;
+        m_result.internalVariation = (float) Math.sqrt(variance) / mean;
+    }
+}
@@ -0,0 +1,246 @@
+package io.focusmotion.trainingdemo;
+
+
+// Estimates the dominant repetition period of a signal by autocorrelation,
+// computed with an FFT in O(n log maxLag) instead of O(n * lags).
+//
+// The signal is cut into blocks of BLOCK samples, BLOCK > maxLag. Every
+// product x[i] * x[i + lag] with i in block k falls within blocks k and k+1,
+// so the full autocorrelation is the sum over blocks of the cross-correlation
+// of block k with blocks k and k+1 together. Each cross-correlation is a
+// product of spectra; both spectra come from one complex FFT (one signal in
+// the real part, the other in the imaginary part), the products are summed,
+// and a single inverse FFT at the end gives the same values as the direct
+// sum. A periodic signal correlates just as well at multiples of its period,
+// so the shortest lag scoring within HARMONIC_RATIO of the best one is taken,
+// and refined by parabolic interpolation. Buffers are reused between calls.
+public class PeriodEstimator
+{
+    // Period of signal[0, n) in samples, searched between minLag and maxLag.
+    public float estimate(float[] signal, int n, int minLag, int maxLag)
+    {
+        maxLag = Math.min(maxLag, n - 1);
+        if (maxLag <= minLag)
+        {
+            return minLag;
+        }
+
+        float[] scores = autocorrelate(signal, n, maxLag);
+        int bestLag = pickLag(scores, minLag, maxLag);
+
+        // parabolic interpolation around the peak
+        if (bestLag > minLag && bestLag < maxLag)
+        {
+            float a = scores[bestLag - 1];
+            float b = scores[bestLag];
+            float c = scores[bestLag + 1];
+            float denominator = a - 2.0f * b + c;
+            if (denominator < 0.0f)
+            {
+                return bestLag + 0.5f * (a - c) / denominator;
+            }
+        }
+        return bestLag;
+    }
+
+    // Unbiased autocorrelation of signal[0, n) at lags 0 to maxLag (maxLag < n), by FFT. The returned array is
+    // reused by the next call, and only its first maxLag + 1 values are meaningful.
+    public float[] autocorrelate(float[] signal, int n, int maxLag)
+    {
+        int block = Math.max(MIN_BLOCK, nextPowerOfTwo(maxLag + 1));
+        prepare(2 * block);
+        int size = m_size;
+
+        for (int i = 0; i < size; ++i)
+        {
+            m_sumRe[i] = 0.0f;
+            m_sumIm[i] = 0.0f;
+        }
+        for (int start = 0; start < n; start += block)
+        {
+            // block k in the real part, blocks k and k+1 in the imaginary part
+            for (int i = 0; i < size; ++i)
+            {
+                int index = start + i;
+                float value = (index < n ? signal[index] : 0.0f);
+                m_re[i] = (i < block ? value : 0.0f);
+                m_im[i] = value;
+            }
+            fft(m_re, m_im, false);
+
+            for (int f = 0; f < size; ++f)
+            {
+                int g = (size - f) & (size - 1);
+                // separate the two spectra: A = (Z[f] + conj(Z[g])) / 2, Y = (Z[f] - conj(Z[g])) / 2i
+                float aRe = 0.5f * (m_re[f] + m_re[g]);
+                float aIm = 0.5f * (m_im[f] - m_im[g]);
+                float yRe = 0.5f * (m_im[f] + m_im[g]);
+                float yIm = 0.5f * (m_re[g] - m_re[f]);
+                // conj(A) * Y
+                m_sumRe[f] += aRe * yRe + aIm * yIm;
+                m_sumIm[f] += aRe * yIm - aIm * yRe;
+            }
+        }
+        fft(m_sumRe, m_sumIm, true);
+
+        // unbiased: lag has (n - lag) products
+        for (int lag = 0; lag <= maxLag; ++lag)
+        {
+            m_sumRe[lag] /= (n - lag);
+        }
+        return m_sumRe;
+    }
+
+    // Reference O(n * lags) time-domain version, for comparison.
+    public static float estimateDirect(float[] signal, int n, int minLag, int maxLag)
+    {
+        maxLag = Math.min(maxLag, n - 1);
+        if (maxLag <= minLag)
+        {
+            return minLag;
+        }
+
+        return pickLag(autocorrelateDirect(signal, n, maxLag), minLag, maxLag);
+    }
+
+    // Reference O(n * lags) version of autocorrelate(), for comparison.
+    public static float[] autocorrelateDirect(float[] signal, int n, int maxLag)
+    {
+        float[] scores = new float[maxLag + 1];
+        for (int lag = 0; lag <= maxLag; ++lag)
+        {
+            double sum = 0.0;
+            for (int i = 0; i + lag < n; ++i)
+            {
+                sum += signal[i] * signal[i + lag];
+            }
+            scores[lag] = (float) (sum / (n - lag));
+        }
+        return scores;
+    }
+
+    ////////////////////////////////////////
+
+    private static final int MIN_BLOCK = 64;
+    private static final float HARMONIC_RATIO = 0.85f;
+
+    private int m_size;
+    private float[] m_re = new float[0];
+    private float[] m_im = new float[0];
+    private float[] m_sumRe = new float[0];
+    private float[] m_sumIm = new float[0];
+    private float[] m_cos = new float[0];
+    private float[] m_sin = new float[0];
+
+    private void prepare(int size)
+    {
+        if (size != m_size)
+        {
+            m_size = size;
+            m_re = new float[size];
+            m_im = new float[size];
+            m_sumRe = new float[size];
+            m_sumIm = new float[size];
+            m_cos = new float[size / 2];
+            m_sin = new float[size / 2];
+            for (int i = 0; i < size / 2; ++i)
+            {
+                double angle = -2.0 * Math.PI * i / size;
+                m_cos[i] = (float) Math.cos(angle);
+                m_sin[i] = (float) Math.sin(angle);
+            }
+        }
+    }
+
+    // In-place radix-2 FFT of (re, im) over m_size points; the inverse is scaled by 1 / m_size.
+    private void fft(float[] re, float[] im, boolean inverse)
+    {
+        int size = m_size;
+
+        // bit-reversal permutation
+        for (int i = 1, j = 0; i < size; ++i)
+        {
+            int bit = size >> 1;
+            for (; (j & bit) != 0; bit >>= 1)
+            {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j)
+            {
+                float t = re[i]; re[i] = re[j]; re[j] = t;
+                t = im[i]; im[i] = im[j]; im[j] = t;
+            }
+        }
+
+        float sign = (inverse ? -1.0f : 1.0f);
+        for (int length = 2; length <= size; length <<= 1)
+        {
+            int half = length >> 1;
+            int step = size / length;
+            for (int start = 0; start < size; start += length)
+            {
+                for (int k = 0; k < half; ++k)
+                {
+                    float wRe = m_cos[k * step];
+                    float wIm = sign * m_sin[k * step];
+                    int a = start + k;
+                    int b = a + half;
+                    float tRe = re[b] * wRe - im[b] * wIm;
+                    float tIm = re[b] * wIm + im[b] * wRe;
+                    re[b] = re[a] - tRe;
+                    im[b] = im[a] - tIm;
+                    re[a] += tRe;
+                    im[a] += tIm;
+                }
+            }
+        }
+
+        if (inverse)
+        {
+            float scale = 1.0f / size;
+            for (int i = 0; i < size; ++i)
+            {
+                re[i] *= scale;
+                im[i] *= scale;
+            }
+        }
+    }
+
+    // The first local maximum in scores[minLag, maxLag] within HARMONIC_RATIO of the highest.
+    private static int pickLag(float[] scores, int minLag, int maxLag)
+    {
+        int bestLag = minLag;
+        for (int lag = minLag; lag <= maxLag; ++lag)
+        {
+            if (scores[lag] > scores[bestLag])
+            {
+                bestLag = lag;
+            }
+        }
+        if (scores[bestLag] <= 0.0f)
+        {
+            return bestLag;
+        }
+
+        float threshold = HARMONIC_RATIO * scores[bestLag];
+        for (int lag = minLag + 1; lag < bestLag; ++lag)
+        {
+            if (scores[lag] >= threshold && scores[lag] >= scores[lag - 1] && scores[lag] >= scores[lag + 1])
+            {
+                return lag;
+            }
+        }
+        return bestLag;
+    }
+
+    private static int nextPowerOfTwo(int n)
+    {
+        int power = 1;
+        while (power < n)
+        {
+            power <<= 1;
+        }
+        return power;
+    }
+}
@@ -0,0 +1,375 @@
+package io.focusmotion.trainingdemo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+
+// Counts the raw samples of the device recording as they arrive in the
+// SampleRingBuffer, for the DeviceListener callbacks.
+//
+// Every recording is counted chunk by chunk by a ChunkedAnalyzer, so one too
+// long to pull from the device at once still gets a count; its samples spill
+// to disk once it is spillAfterMs long. A continuous recording is also split into sets by a
+// SetSegmenter, and each set is counted as soon as it ends. The samples
+// received since the last call are passed on by onDataReceived(), and what
+// is left at finish(). Has no Android dependencies, so the device simulator
+// can drive it as the app does.
+//
+// The counting runs on the device's Runner (its AnalysisPipeline, in the
+// app), with at most one update in flight, so the calling thread only takes
+// note of the recording's duration. The Listener's callbacks are made on the
+// thread the Runner delivers results to, which must be the one calling these
+// methods (the main thread, in the app). If the Runner's work is cancelled,
+// as the app does when a recording stops, nothing is lost: the samples are
+// picked up by the next task, and the callbacks of cancelled tasks by the
+// next delivery. finish() copies the samples not counted yet, usually those
+// of the last update or two, so the buffer can be cleared for the next
+// recording before the count is done.
+public class RawSampleAnalysis
+{
+    public interface Listener
+    {
+        // in a continuous recording, as SetSegmenter.Listener
+        void onSetStarted(long startTime);
+        void onSegmentClosed(SetSegmenter.Segment segment);
+
+        // after finish(): the count of the whole recording, or null if it couldn't be spilled
+        void onRecordingCounted(RepResult result);
+
+        // the recording can't be counted chunk by chunk
+        void onSpillFailed(IOException e);
+    }
+
+    // spillFile may be null, as for ChunkedAnalyzer
+    public RawSampleAnalysis(SampleRingBuffer buffer, File spillFile, long spillAfterMs, Listener listener)
+    {
+        m_buffer = buffer;
+        m_listener = listener;
+        m_chunkedAnalyzer = new ChunkedAnalyzer(new PeakRepCounter(), spillFile, spillAfterMs);
+        m_segmenter = new SetSegmenter(new PeakRepCounter(),
+                new SetSegmenter.Listener()
+                {
+                    @Override
+                    public void onSetStarted(final long startTime)
+                    {
+                        post(
+                                new Runnable()
+                                {
+                                    @Override
+                                    public void run()
+                                    {
+                                        m_listener.onSetStarted(startTime);
+                                    }
+                                } );
+                    }
+
+                    @Override
+                    public void onSegmentClosed(final SetSegmenter.Segment segment)
+                    {
+                        post(
+                                new Runnable()
+                                {
+                                    @Override
+                                    public void run()
+                                    {
+                                        m_listener.onSegmentClosed(segment);
+                                    }
+                                } );
+                    }
+                } );
+    }
+
+    // Call when recording starts, after the buffer has been cleared; continuous if it is a whole workout.
+    public void start(SerialWorker.Runner runner, final boolean continuous)
+    {
+        m_runner = runner;
+        m_pending = false;
+        m_firstTime = -1;
+        m_lastTime = -1;
+        synchronized (m_events)
+        {
+            m_events.clear();
+        }
+        synchronized (m_buffer)
+        {
+            // the buffer was cleared before this, so it holds this recording's samples alone
+            m_openRecording = ++m_numRecordings;
+            m_processedSamples = 0;
+        }
+
+        // the analyzers are only touched on the runner's thread, after anything still running there
+        runner.run(
+                new SerialWorker.Task<Void>()
+                {
+                    @Override
+                    public Void run()
+                    {
+                        synchronized (m_events)
+                        {
+                            m_events.clear();
+                        }
+                        m_continuous = continuous;
+                        m_segmenter.reset();
+                        m_chunkedFailed = false;
+                        try
+                        {
+                            m_chunkedAnalyzer.reset();
+                        }
+                        catch (IOException e)
+                        {
+                            spillFailed(e);
+                        }
+                        return null;
+                    }
+                },
+                new SerialWorker.Receiver<Void>()
+                {
+                    @Override
+                    public void onResult(Void result)
+                    {
+                        deliverEvents();
+                    }
+                } );
+    }
+
+    // Pass on the raw samples received since the last call; between recordings, does nothing.
+    public void onDataReceived()
+    {
+        if (m_runner == null)
+        {
+            return;
+        }
+        synchronized (m_buffer)
+        {
+            int size = m_buffer.size();
+            if (size > 0)
+            {
+                SampleRingBuffer.View view = m_buffer.view(m_durationView);
+                if (m_firstTime < 0)
+                {
+                    m_firstTime = view.getTime(0);
+                }
+                m_lastTime = view.getTime(size - 1);
+            }
+        }
+        if (m_pending)
+        {
+            // the update in flight, or the next, takes these samples too
+            return;
+        }
+
+        m_pending = true;
+        final int recording = m_numRecordings;
+        m_runner.run(
+                new SerialWorker.Task<Void>()
+                {
+                    @Override
+                    public Void run()
+                    {
+                        addNewSamples(recording);
+                        return null;
+                    }
+                },
+                new SerialWorker.Receiver<Void>()
+                {
+                    @Override
+                    public void onResult(Void result)
+                    {
+                        m_pending = false;
+                        deliverEvents();
+                    }
+                } );
+    }
+
+    // Call when recording stops: count the rest of the raw samples, close the continuous recording's last segment,
+    // and pass the count of the whole recording to the Listener.
+    public void finish()
+    {
+        if (m_runner == null)
+        {
+            return;
+        }
+        onDataReceived();
+
+        // the samples the analysis thread hasn't taken yet; updates still in flight take none after this
+        final SampleBlock rest;
+        synchronized (m_buffer)
+        {
+            long total = m_buffer.getTotalSamples();
+            int count = (int) Math.min(total - m_processedSamples, m_buffer.size());
+            SampleRingBuffer.View view = m_buffer.view(m_durationView, m_buffer.size() - count, count);
+            rest = new SampleBlock(count);
+            for (int i = 0; i < count; ++i)
+            {
+                rest.add(view.getTime(i),
+                        view.getValue(i, SampleBlock.ACCEL_X), view.getValue(i, SampleBlock.ACCEL_Y), view.getValue(i, SampleBlock.ACCEL_Z),
+                        view.getValue(i, SampleBlock.GYRO_X), view.getValue(i, SampleBlock.GYRO_Y), view.getValue(i, SampleBlock.GYRO_Z));
+            }
+            m_processedSamples = total;
+            m_openRecording = 0;
+        }
+
+        m_runner.run(
+                new SerialWorker.Task<RepResult>()
+                {
+                    @Override
+                    public RepResult run()
+                    {
+                        addSamples(rest, rest.size());
+                        if (m_continuous)
+                        {
+                            m_segmenter.finish();
+                            m_continuous = false;
+                        }
+                        if (m_chunkedFailed)
+                        {
+                            return null;
+                        }
+                        try
+                        {
+                            return m_chunkedAnalyzer.finish(new RepResult());
+                        }
+                        catch (IOException e)
+                        {
+                            spillFailed(e);
+                            return null;
+                        }
+                    }
+                },
+                new SerialWorker.Receiver<RepResult>()
+                {
+                    @Override
+                    public void onResult(RepResult result)
+                    {
+                        deliverEvents();
+                        m_listener.onRecordingCounted(result);
+                    }
+                } );
+        m_runner = null;
+        m_pending = false;
+    }
+
+    // Milliseconds from the first raw sample of the recording to the last passed on so far.
+    public long getDuration()
+    {
+        return (m_firstTime >= 0 ? m_lastTime - m_firstTime : 0);
+    }
+
+    ////////////////////////////////////////
+
+    private final SampleRingBuffer m_buffer;
+    private final Listener m_listener;
+    private final List<Runnable> m_events = new ArrayList<>(); // Listener calls made on the runner's thread, to deliver
+
+    // with m_buffer locked, from either thread
+    private long m_processedSamples;    // of m_buffer, taken for counting since the recording started
+    private int m_openRecording;        // the recording m_buffer's samples are taken for, from start() to finish(); or 0
+
+    // calling thread only
+    private SerialWorker.Runner m_runner;   // between start() and finish()
+    private int m_numRecordings;            // started so far, numbering them
+    private boolean m_pending;              // an update is in flight
+    private final SampleRingBuffer.View m_durationView = new SampleRingBuffer.View();
+    private long m_firstTime = -1;
+    private long m_lastTime = -1;
+
+    // runner's thread only
+    private final ChunkedAnalyzer m_chunkedAnalyzer;
+    private final SetSegmenter m_segmenter;
+    private final SampleRingBuffer.View m_view = new SampleRingBuffer.View();
+    private boolean m_continuous;       // the recording is a whole workout
+    private boolean m_chunkedFailed;    // couldn't spill the current recording
+
+    // runner's thread: count the samples of the given recording received since the last call
+    private void addNewSamples(int recording)
+    {
+        synchronized (m_buffer)
+        {
+            if (recording != m_openRecording)
+            {
+                // finish() has taken the rest, and the buffer may hold the next recording's samples already
+                return;
+            }
+            long total = m_buffer.getTotalSamples();
+            int count = (int) Math.min(total - m_processedSamples, m_buffer.size());
+            m_processedSamples = total;
+            addSamples(m_buffer.view(m_view, m_buffer.size() - count, count), count);
+        }
+    }
+
+    // runner's thread
+    private void addSamples(SampleSeries samples, int count)
+    {
+        if (m_continuous)
+        {
+            for (int i = 0; i < count; ++i)
+            {
+                m_segmenter.add(samples.getTime(i),
+                        samples.getValue(i, SampleBlock.ACCEL_X), samples.getValue(i, SampleBlock.ACCEL_Y), samples.getValue(i, SampleBlock.ACCEL_Z),
+                        samples.getValue(i, SampleBlock.GYRO_X), samples.getValue(i, SampleBlock.GYRO_Y), samples.getValue(i, SampleBlock.GYRO_Z));
+            }
+        }
+
+        if (m_chunkedFailed)
+        {
+            return;
+        }
+        try
+        {
+            for (int i = 0; i < count; ++i)
+            {
+                m_chunkedAnalyzer.add(samples.getTime(i),
+                        samples.getValue(i, SampleBlock.ACCEL_X), samples.getValue(i, SampleBlock.ACCEL_Y), samples.getValue(i, SampleBlock.ACCEL_Z),
+                        samples.getValue(i, SampleBlock.GYRO_X), samples.getValue(i, SampleBlock.GYRO_Y), samples.getValue(i, SampleBlock.GYRO_Z));
+            }
+        }
+        catch (IOException e)
+        {
+            spillFailed(e);
+        }
+    }
+
+    // runner's thread
+    private void spillFailed(final IOException e)
+    {
+        m_chunkedFailed = true;
+        post(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        m_listener.onSpillFailed(e);
+                    }
+                } );
+    }
+
+    // runner's thread: make a Listener call at the next delivery
+    private void post(Runnable event)
+    {
+        synchronized (m_events)
+        {
+            m_events.add(event);
+        }
+    }
+
+    // calling thread
+    private void deliverEvents()
+    {
+        List<Runnable> events;
+        synchronized (m_events)
+        {
+            if (m_events.isEmpty())
+            {
+                return;
+            }
+            events = new ArrayList<>(m_events);
+            m_events.clear();
+        }
+        for (Runnable event : events)
+        {
+            event.run();
+        }
+    }
+}
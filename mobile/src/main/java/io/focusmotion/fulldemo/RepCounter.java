@@ -0,0 +1,15 @@
+package io.focusmotion.trainingdemo;
+
+
+// App-level counterpart of the SDK's MovementAnalyzer: counts reps in a
+// sequence of samples and reports AnalyzerResult-like results.
+//
+// Implementations work on SampleSeries, so they can run anywhere the samples
+// can be read, including a plain JVM; results are only valid until the next
+// call to analyze().
+public interface RepCounter
+{
+    void analyze(SampleSeries samples);
+    int getNumResults();
+    RepResult getResult(int index);
+}
@@ -0,0 +1,33 @@
+package io.focusmotion.trainingdemo;
+
+
+// The fields of the SDK's AnalyzerResult that a RepCounter can produce; times are in seconds.
+public class RepResult
+{
+    public int repCount;
+    public float duration;
+    public float meanRepTime;
+    public float minRepTime;
+    public float maxRepTime;
+    public float internalVariation; // standard deviation of rep time, relative to the mean
+
+    public void clear()
+    {
+        repCount = 0;
+        duration = 0.0f;
+        meanRepTime = 0.0f;
+        minRepTime = 0.0f;
+        maxRepTime = 0.0f;
+        internalVariation = 0.0f;
+    }
+
+    public void set(RepResult other)
+    {
+        repCount = other.repCount;
+        duration = other.duration;
+        meanRepTime = other.meanRepTime;
+        minRepTime = other.minRepTime;
+        maxRepTime = other.maxRepTime;
+        internalVariation = other.internalVariation;
+    }
+}
@@ -0,0 +1,97 @@
+package io.focusmotion.trainingdemo;
+
+import java.util.Arrays;
+
+
+// A recorded stream of IMU samples, stored as primitive arrays.
+//
+// Each sample has a timestamp in milliseconds and NUM_CHANNELS values,
+// interleaved in the values array: accelerometer x/y/z followed by gyro x/y/z.
+public class SampleBlock implements SampleSeries
+{
+    public static final int NUM_CHANNELS = 6;
+
+    public static final int ACCEL_X = 0;
+    public static final int ACCEL_Y = 1;
+    public static final int ACCEL_Z = 2;
+    public static final int GYRO_X = 3;
+    public static final int GYRO_Y = 4;
+    public static final int GYRO_Z = 5;
+
+    public SampleBlock(int capacity)
+    {
+        m_times = new long[Math.max(capacity, 1)];
+        m_values = new float[m_times.length * NUM_CHANNELS];
+    }
+
+    public void add(long time, float ax, float ay, float az, float gx, float gy, float gz)
+    {
+        ensureCapacity(m_size + 1);
+
+        m_times[m_size] = time;
+        int base = m_size * NUM_CHANNELS;
+        m_values[base + ACCEL_X] = ax;
+        m_values[base + ACCEL_Y] = ay;
+        m_values[base + ACCEL_Z] = az;
+        m_values[base + GYRO_X] = gx;
+        m_values[base + GYRO_Y] = gy;
+        m_values[base + GYRO_Z] = gz;
+        ++m_size;
+    }
+
+    @Override
+    public int size()
+    {
+        return m_size;
+    }
+
+    public void clear()
+    {
+        m_size = 0;
+    }
+
+    @Override
+    public long getTime(int sample)
+    {
+        return m_times[sample];
+    }
+
+    @Override
+    public float getValue(int sample, int channel)
+    {
+        return m_values[sample * NUM_CHANNELS + channel];
+    }
+
+    // Duration in seconds from the first to the last sample.
+    public float getDuration()
+    {
+        return (m_size > 1 ? (m_times[m_size - 1] - m_times[0]) / 1000.0f : 0.0f);
+    }
+
+    // Backing arrays, for loops that can't afford per-sample calls; only the first size() samples are valid.
+    public long[] getTimes()
+    {
+        return m_times;
+    }
+
+    public float[] getValues()
+    {
+        return m_values;
+    }
+
+    public void ensureCapacity(int capacity)
+    {
+        if (capacity > m_times.length)
+        {
+            int newCapacity = Math.max(capacity, m_times.length * 2);
+            m_times = Arrays.copyOf(m_times, newCapacity);
+            m_values = Arrays.copyOf(m_values, newCapacity * NUM_CHANNELS);
+        }
+    }
+
+    ////////////////////////////////////////
+
+    private long[] m_times;
+    private float[] m_values;
+    private int m_size;
+}
@@ -0,0 +1,51 @@
+package io.focusmotion.trainingdemo;
+
+import java.nio.ByteBuffer;
+
+
+// Decodes sample frames sent by the watch into a SampleRingBuffer.
+//
+// NOTE: must match SampleFrameEncoder in the wear module, which documents the frame layout;
+// the benchmark module's SampleFrameLoopbackTest checks that they do.
+public class SampleFrameDecoder
+{
+    public static final String PATH = "/focusmotion/samples";
+    public static final byte VERSION = 1;
+    public static final float ACCEL_RESOLUTION = 0.01f; // m/s^2
+    public static final float GYRO_RESOLUTION = 0.001f; // rad/s
+
+    // Decode a frame into buffer; returns the number of samples decoded.
+    public int decode(byte[] frame, SampleRingBuffer buffer)
+    {
+        ByteBuffer in = ByteBuffer.wrap(frame);
+        byte version = in.get();
+        if (version != VERSION)
+        {
+            throw new IllegalArgumentException("Unsupported sample frame version " + version);
+        }
+
+        int count = (int) VarInt.getUnsigned(in);
+        long time = VarInt.getUnsigned(in);
+        for (int channel = 0; channel < SampleBlock.NUM_CHANNELS; ++channel)
+        {
+            m_prevValues[channel] = 0;
+        }
+
+        for (int sample = 0; sample < count; ++sample)
+        {
+            time += VarInt.getSigned(in);
+            for (int channel = 0; channel < SampleBlock.NUM_CHANNELS; ++channel)
+            {
+                m_prevValues[channel] += (int) VarInt.getSigned(in);
+                m_values[channel] = m_prevValues[channel] * (channel < 3 ? ACCEL_RESOLUTION : GYRO_RESOLUTION);
+            }
+            buffer.add(time, m_values[0], m_values[1], m_values[2], m_values[3], m_values[4], m_values[5]);
+        }
+        return count;
+    }
+
+    ////////////////////////////////////////
+
+    private final int[] m_prevValues = new int[SampleBlock.NUM_CHANNELS];
+    private final float[] m_values = new float[SampleBlock.NUM_CHANNELS];
+}
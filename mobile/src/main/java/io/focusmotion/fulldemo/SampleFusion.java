@@ -0,0 +1,336 @@
+package io.focusmotion.trainingdemo;
+
+
+// Merges sample streams from several devices into one stream at a common
+// rate, on the first stream's clock.
+//
+// Each device has its own clock and sample rate. align() estimates a linear
+// clock mapping for each stream against the first,
+//   streamTime = time + offset + drift * (time - startTime),
+// by cross-correlating acceleration magnitude in a window at the start and at
+// the end of the recording. Devices start recording at about the same moment,
+// so the difference between first timestamps is the initial guess, refined
+// by the start window; the drift comes from how much the offset changed by
+// the end window. fuse() then linearly interpolates every stream at the
+// common rate into one output array with NUM_CHANNELS values per stream per
+// sample.
+//
+// All buffers are allocated up front, so aligning and fusing don't allocate.
+public class SampleFusion
+{
+    // The fused streams as one, for a RepCounter: acceleration magnitude averaged over the streams, in ACCEL_X,
+    // and zero in every other channel. Devices are worn in different orientations, so only magnitudes are
+    // comparable between them. Valid until the next fuse().
+    public static class MeanMagnitude implements SampleSeries
+    {
+        public MeanMagnitude(SampleFusion fusion)
+        {
+            m_fusion = fusion;
+        }
+
+        @Override
+        public int size()
+        {
+            return m_fusion.m_numOutputSamples;
+        }
+
+        @Override
+        public long getTime(int sample)
+        {
+            return Math.round(m_fusion.m_startTime + sample * m_fusion.m_periodMs);
+        }
+
+        @Override
+        public float getValue(int sample, int channel)
+        {
+            if (channel != SampleBlock.ACCEL_X)
+            {
+                return 0.0f;
+            }
+            int stride = m_fusion.getStride();
+            float sum = 0.0f;
+            for (int i = 0; i < m_fusion.m_numStreams; ++i)
+            {
+                int base = sample * stride + i * SampleBlock.NUM_CHANNELS;
+                float x = m_fusion.m_output[base + SampleBlock.ACCEL_X];
+                float y = m_fusion.m_output[base + SampleBlock.ACCEL_Y];
+                float z = m_fusion.m_output[base + SampleBlock.ACCEL_Z];
+                sum += (float) Math.sqrt(x * x + y * y + z * z);
+            }
+            return sum / m_fusion.m_numStreams;
+        }
+
+        private final SampleFusion m_fusion;
+    }
+
+    public SampleFusion(float rateHz, int maxStreams, int maxSamples)
+    {
+        m_periodMs = 1000.0f / rateHz;
+        m_maxStreams = maxStreams;
+        m_maxSamples = maxSamples;
+        m_streams = new SampleSeries[maxStreams];
+        m_offsets = new double[maxStreams];
+        m_drifts = new double[maxStreams];
+        m_cursors = new int[maxStreams];
+        m_output = new float[maxSamples * maxStreams * SampleBlock.NUM_CHANNELS];
+        m_referenceWindow = new float[ALIGN_WINDOW];
+        m_streamWindow = new float[ALIGN_WINDOW + 2 * MAX_LAG];
+    }
+
+    public void setStreams(SampleSeries[] streams, int numStreams)
+    {
+        if (numStreams > m_maxStreams)
+        {
+            throw new IllegalArgumentException("Too many streams: " + numStreams);
+        }
+        m_numStreams = numStreams;
+        for (int i = 0; i < numStreams; ++i)
+        {
+            m_streams[i] = streams[i];
+            m_offsets[i] = 0;
+            m_drifts[i] = 0;
+        }
+    }
+
+    // Estimate each stream's clock offset and drift against the first stream; streams with fewer than two
+    // samples, and every stream if the first has fewer than two, keep a zero offset and drift.
+    public void align()
+    {
+        if (m_numStreams == 0 || m_streams[0].size() < 2)
+        {
+            return;
+        }
+        SampleSeries reference = m_streams[0];
+        long startTime = reference.getTime(0);
+        long endTime = reference.getTime(reference.size() - 1);
+        double windowMs = ALIGN_WINDOW * m_periodMs;
+
+        for (int i = 1; i < m_numStreams; ++i)
+        {
+            if (m_streams[i].size() < 2)
+            {
+                continue;
+            }
+            double initialOffset = m_streams[i].getTime(0) - startTime;
+            double startOffset = estimateOffset(reference, m_streams[i], startTime, initialOffset);
+            double endWindowStart = Math.max(startTime, endTime - windowMs);
+            double endOffset = estimateOffset(reference, m_streams[i], endWindowStart, startOffset);
+
+            m_offsets[i] = startOffset;
+            m_drifts[i] = (endWindowStart > startTime ? (endOffset - startOffset) / (endWindowStart - startTime) : 0.0);
+        }
+    }
+
+    public void setClock(int stream, double offsetMs, double drift)
+    {
+        m_offsets[stream] = offsetMs;
+        m_drifts[stream] = drift;
+    }
+
+    public double getOffset(int stream)
+    {
+        return m_offsets[stream];
+    }
+
+    public double getDrift(int stream)
+    {
+        return m_drifts[stream];
+    }
+
+    // Resample all streams over the time they overlap; returns the number of output samples, 0 if any stream has
+    // fewer than two samples.
+    public int fuse()
+    {
+        if (m_numStreams == 0 || m_streams[0].size() < 2)
+        {
+            m_numOutputSamples = 0;
+            return 0;
+        }
+        SampleSeries reference = m_streams[0];
+
+        // the span covered by every stream, on the reference clock
+        long referenceStart = reference.getTime(0);
+        double start = referenceStart;
+        double end = reference.getTime(reference.size() - 1);
+        for (int i = 1; i < m_numStreams; ++i)
+        {
+            SampleSeries stream = m_streams[i];
+            if (stream.size() < 2)
+            {
+                m_numOutputSamples = 0;
+                return 0;
+            }
+            start = Math.max(start, toReferenceTime(i, stream.getTime(0), referenceStart));
+            end = Math.min(end, toReferenceTime(i, stream.getTime(stream.size() - 1), referenceStart));
+        }
+
+        m_startTime = start;
+        m_numOutputSamples = (end > start ? Math.min(m_maxSamples, (int) ((end - start) / m_periodMs) + 1) : 0);
+
+        int stride = m_numStreams * SampleBlock.NUM_CHANNELS;
+        for (int i = 0; i < m_numStreams; ++i)
+        {
+            m_cursors[i] = 0;
+        }
+        for (int sample = 0; sample < m_numOutputSamples; ++sample)
+        {
+            double time = start + sample * m_periodMs;
+            int base = sample * stride;
+            for (int i = 0; i < m_numStreams; ++i)
+            {
+                double streamTime = time + m_offsets[i] + m_drifts[i] * (time - referenceStart);
+                interpolate(i, streamTime, m_output, base + i * SampleBlock.NUM_CHANNELS);
+            }
+        }
+        return m_numOutputSamples;
+    }
+
+    // Fused samples: NUM_CHANNELS values per stream, for each of getNumSamples() samples.
+    public float[] getOutput()
+    {
+        return m_output;
+    }
+
+    public int getNumSamples()
+    {
+        return m_numOutputSamples;
+    }
+
+    public int getStride()
+    {
+        return m_numStreams * SampleBlock.NUM_CHANNELS;
+    }
+
+    // Time of the first fused sample, on the reference clock.
+    public double getStartTime()
+    {
+        return m_startTime;
+    }
+
+    public float getPeriodMs()
+    {
+        return m_periodMs;
+    }
+
+    ////////////////////////////////////////
+
+    private static final int ALIGN_WINDOW = 256; // samples at the common rate
+    private static final int MAX_LAG = 64;       // samples at the common rate
+
+    private final float m_periodMs;
+    private final int m_maxStreams;
+    private final int m_maxSamples;
+    private final SampleSeries[] m_streams;
+    private final double[] m_offsets;
+    private final double[] m_drifts;
+    private final int[] m_cursors;
+    private final float[] m_output;
+    private final float[] m_referenceWindow;
+    private final float[] m_streamWindow;
+    private int m_numStreams;
+    private int m_numOutputSamples;
+    private double m_startTime;
+
+    // inverse of the clock mapping, to first order in drift
+    private double toReferenceTime(int stream, double streamTime, long referenceStart)
+    {
+        return referenceStart + (streamTime - m_offsets[stream] - referenceStart) / (1.0 + m_drifts[stream]);
+    }
+
+    // Linearly interpolate stream at time into out; times must increase between calls for a stream.
+    private void interpolate(int stream, double time, float[] out, int outOffset)
+    {
+        SampleSeries series = m_streams[stream];
+        int last = series.size() - 1;
+        int cursor = m_cursors[stream];
+        while (cursor < last - 1 && series.getTime(cursor + 1) <= time)
+        {
+            ++cursor;
+        }
+        m_cursors[stream] = cursor;
+
+        long t0 = series.getTime(cursor);
+        long t1 = series.getTime(cursor + 1);
+        float f = (t1 > t0 ? (float) ((time - t0) / (t1 - t0)) : 0.0f);
+        f = Math.max(0.0f, Math.min(1.0f, f));
+        for (int channel = 0; channel < SampleBlock.NUM_CHANNELS; ++channel)
+        {
+            float v0 = series.getValue(cursor, channel);
+            out[outOffset + channel] = v0 + (series.getValue(cursor + 1, channel) - v0) * f;
+        }
+    }
+
+    // Offset (ms) to add to a reference time to get the matching stream time near windowStart,
+    // searched within MAX_LAG samples of guess.
+    private double estimateOffset(SampleSeries reference, SampleSeries stream, double windowStart, double guess)
+    {
+        sampleMagnitude(reference, windowStart, m_referenceWindow, ALIGN_WINDOW);
+        sampleMagnitude(stream, windowStart + guess - MAX_LAG * m_periodMs, m_streamWindow, ALIGN_WINDOW + 2 * MAX_LAG);
+        removeMean(m_referenceWindow, ALIGN_WINDOW);
+        removeMean(m_streamWindow, ALIGN_WINDOW + 2 * MAX_LAG);
+
+        int bestLag = 0;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int lag = -MAX_LAG; lag <= MAX_LAG; ++lag)
+        {
+            double dot = 0.0;
+            double energy = 0.0;
+            int base = lag + MAX_LAG;
+            for (int i = 0; i < ALIGN_WINDOW; ++i)
+            {
+                float s = m_streamWindow[base + i];
+                dot += m_referenceWindow[i] * s;
+                energy += s * s;
+            }
+            double score = (energy > 0.0 ? dot / Math.sqrt(energy) : 0.0);
+            if (score > bestScore)
+            {
+                bestScore = score;
+                bestLag = lag;
+            }
+        }
+        return guess + bestLag * m_periodMs;
+    }
+
+    // Sample acceleration magnitude at the common rate, starting at time.
+    private void sampleMagnitude(SampleSeries series, double time, float[] out, int count)
+    {
+        int cursor = 0;
+        int last = series.size() - 1;
+        for (int i = 0; i < count; ++i)
+        {
+            double t = time + i * m_periodMs;
+            while (cursor < last - 1 && series.getTime(cursor + 1) <= t)
+            {
+                ++cursor;
+            }
+            long t0 = series.getTime(cursor);
+            long t1 = series.getTime(Math.min(cursor + 1, last));
+            float f = (t1 > t0 ? (float) ((t - t0) / (t1 - t0)) : 0.0f);
+            f = Math.max(0.0f, Math.min(1.0f, f));
+            out[i] = magnitude(series, cursor) * (1.0f - f) + magnitude(series, Math.min(cursor + 1, last)) * f;
+        }
+    }
+
+    private static float magnitude(SampleSeries series, int sample)
+    {
+        float x = series.getValue(sample, SampleBlock.ACCEL_X);
+        float y = series.getValue(sample, SampleBlock.ACCEL_Y);
+        float z = series.getValue(sample, SampleBlock.ACCEL_Z);
+        return (float) Math.sqrt(x * x + y * y + z * z);
+    }
+
+    private static void removeMean(float[] values, int count)
+    {
+        float sum = 0.0f;
+        for (int i = 0; i < count; ++i)
+        {
+            sum += values[i];
+        }
+        float mean = sum / count;
+        for (int i = 0; i < count; ++i)
+        {
+            values[i] -= mean;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package io.focusmotion.trainingdemo;
+
+
+// Fixed-capacity buffer of the most recent IMU samples, stored in
+// preallocated primitive arrays, so ingesting samples never allocates.
+//
+// When full, new samples overwrite the oldest. view() exposes a range of the
+// buffered samples through a reusable View that reads the backing arrays
+// directly; a view is only valid until the samples it covers are overwritten.
+// Not thread-safe: the producer and readers must synchronize externally.
+public class SampleRingBuffer
+{
+    public static class View implements SampleSeries
+    {
+        @Override
+        public int size()
+        {
+            return m_length;
+        }
+
+        @Override
+        public long getTime(int sample)
+        {
+            return m_buffer.m_times[index(sample)];
+        }
+
+        @Override
+        public float getValue(int sample, int channel)
+        {
+            return m_buffer.m_values[index(sample) * SampleBlock.NUM_CHANNELS + channel];
+        }
+
+        ////////////////////////////////////////
+
+        private SampleRingBuffer m_buffer;
+        private int m_start; // index in the backing arrays
+        private int m_length;
+
+        private int index(int sample)
+        {
+            int index = m_start + sample;
+            return (index < m_buffer.m_capacity ? index : index - m_buffer.m_capacity);
+        }
+    }
+
+    public SampleRingBuffer(int capacity)
+    {
+        m_capacity = capacity;
+        m_times = new long[capacity];
+        m_values = new float[capacity * SampleBlock.NUM_CHANNELS];
+    }
+
+    public void add(long time, float ax, float ay, float az, float gx, float gy, float gz)
+    {
+        m_times[m_head] = time;
+        int base = m_head * SampleBlock.NUM_CHANNELS;
+        m_values[base + SampleBlock.ACCEL_X] = ax;
+        m_values[base + SampleBlock.ACCEL_Y] = ay;
+        m_values[base + SampleBlock.ACCEL_Z] = az;
+        m_values[base + SampleBlock.GYRO_X] = gx;
+        m_values[base + SampleBlock.GYRO_Y] = gy;
+        m_values[base + SampleBlock.GYRO_Z] = gz;
+        advance();
+    }
+
+    // Add count samples; values holds NUM_CHANNELS interleaved values per sample.
+    public void add(long[] times, float[] values, int offset, int count)
+    {
+        for (int i = 0; i < count; ++i)
+        {
+            m_times[m_head] = times[offset + i];
+            System.arraycopy(values, (offset + i) * SampleBlock.NUM_CHANNELS, m_values, m_head * SampleBlock.NUM_CHANNELS, SampleBlock.NUM_CHANNELS);
+            advance();
+        }
+    }
+
+    // Number of samples currently buffered.
+    public int size()
+    {
+        return m_size;
+    }
+
+    public int getCapacity()
+    {
+        return m_capacity;
+    }
+
+    // Number of samples added since the last clear(), including those since overwritten.
+    public long getTotalSamples()
+    {
+        return m_totalSamples;
+    }
+
+    public void clear()
+    {
+        m_head = 0;
+        m_size = 0;
+        m_totalSamples = 0;
+    }
+
+    // Point view at length buffered samples, starting at start (0 is the oldest buffered sample).
+    public View view(View view, int start, int length)
+    {
+        if (start < 0 || length < 0 || start + length > m_size)
+        {
+            throw new IndexOutOfBoundsException(String.format("%d+%d of %d", start, length, m_size));
+        }
+
+        int oldest = m_head - m_size;
+        if (oldest < 0)
+        {
+            oldest += m_capacity;
+        }
+        int viewStart = oldest + start;
+        if (viewStart >= m_capacity)
+        {
+            viewStart -= m_capacity;
+        }
+
+        view.m_buffer = this;
+        view.m_start = viewStart;
+        view.m_length = length;
+        return view;
+    }
+
+    // View of everything buffered.
+    public View view(View view)
+    {
+        return view(view, 0, m_size);
+    }
+
+    // Copy the buffered samples into block, e.g. to store them.
+    public SampleBlock copyTo(SampleBlock block)
+    {
+        block.clear();
+        block.ensureCapacity(m_size);
+        View view = view(new View());
+        for (int i = 0; i < m_size; ++i)
+        {
+            int index = view.index(i) * SampleBlock.NUM_CHANNELS;
+            block.add(m_times[view.index(i)],
+                    m_values[index], m_values[index + 1], m_values[index + 2],
+                    m_values[index + 3], m_values[index + 4], m_values[index + 5]);
+        }
+        return block;
+    }
+
+    ////////////////////////////////////////
+
+    private final int m_capacity;
+    private final long[] m_times;
+    private final float[] m_values;
+    private int m_head; // where the next sample goes
+    private int m_size;
+    private long m_totalSamples;
+
+    private void advance()
+    {
+        if (++m_head == m_capacity)
+        {
+            m_head = 0;
+        }
+        if (m_size < m_capacity)
+        {
+            ++m_size;
+        }
+        ++m_totalSamples;
+    }
+}
@@ -0,0 +1,11 @@
+package io.focusmotion.trainingdemo;
+
+
+// Read access to a sequence of IMU samples, in time order, without copying.
+// Channels are numbered as in SampleBlock.
+public interface SampleSeries
+{
+    int size();
+    long getTime(int sample);
+    float getValue(int sample, int channel);
+}
@@ -0,0 +1,213 @@
+package io.focusmotion.trainingdemo;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+
+
+// Runs tasks one at a time, in order, on a background thread, and hands their
+// results to a delivery executor (in the app, one that posts to the main
+// thread), so the thread that submits work never waits for it.
+//
+// Tasks are grouped in generations. cancel() starts a new generation: tasks
+// of earlier ones that haven't started are discarded, and results of earlier
+// ones are dropped instead of delivered, even those already computed, since
+// the generation is checked again on the delivery thread. So once cancel()
+// returns on the delivery thread, no earlier result is delivered.
+//
+// Droppable tasks are requests that are cheap to re-issue: at most
+// maxDroppable of them wait at once, and when the worker is behind, the oldest
+// waiting one is dropped and its receiver never called. Other tasks are never
+// dropped, only cancelled. Submitting and cancelling are thread-safe.
+public class SerialWorker
+{
+    public interface Task<T>
+    {
+        // called on the worker thread
+        T run();
+    }
+
+    public interface Receiver<T>
+    {
+        // called on the delivery thread
+        void onResult(T result);
+    }
+
+    // Runs tasks in order on a worker, never dropping them, as AnalysisPipeline.run() does.
+    public interface Runner
+    {
+        <T> void run(Task<T> task, Receiver<T> receiver);
+    }
+
+    public SerialWorker(String threadName, int priority, int maxDroppable, Executor deliveryExecutor)
+    {
+        m_maxDroppable = maxDroppable;
+        m_deliveryExecutor = deliveryExecutor;
+        m_thread = new Thread(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        runJobs();
+                    }
+                }, threadName);
+        m_thread.setPriority(priority);
+        m_thread.start();
+    }
+
+    // receiver may be null, if the task has no result to deliver.
+    public <T> void submit(Task<T> task, Receiver<T> receiver, boolean droppable)
+    {
+        synchronized (m_jobs)
+        {
+            if (m_shutdown)
+            {
+                return;
+            }
+            if (droppable && m_numDroppable == m_maxDroppable)
+            {
+                for (Iterator<Job<?>> it = m_jobs.iterator(); it.hasNext(); )
+                {
+                    if (it.next().droppable)
+                    {
+                        it.remove();
+                        --m_numDroppable;
+                        ++m_numDropped;
+                        break;
+                    }
+                }
+            }
+            m_jobs.add(new Job<>(task, receiver, droppable, m_generation));
+            if (droppable)
+            {
+                ++m_numDroppable;
+            }
+            m_jobs.notify();
+        }
+    }
+
+    // Discard waiting tasks and any results not yet delivered.
+    public void cancel()
+    {
+        synchronized (m_jobs)
+        {
+            ++m_generation;
+            m_jobs.clear();
+            m_numDroppable = 0;
+        }
+    }
+
+    // Cancel, and stop the worker thread once its current task is done.
+    public void shutdown()
+    {
+        synchronized (m_jobs)
+        {
+            cancel();
+            m_shutdown = true;
+            m_jobs.notify();
+        }
+    }
+
+    // Number of droppable tasks dropped so far.
+    public long getNumDropped()
+    {
+        synchronized (m_jobs)
+        {
+            return m_numDropped;
+        }
+    }
+
+    ////////////////////////////////////////
+
+    private static class Job<T>
+    {
+        Job(Task<T> task, Receiver<T> receiver, boolean droppable, int generation)
+        {
+            this.task = task;
+            this.receiver = receiver;
+            this.droppable = droppable;
+            this.generation = generation;
+        }
+
+        final Task<T> task;
+        final Receiver<T> receiver;
+        final boolean droppable;
+        final int generation;
+    }
+
+    private final int m_maxDroppable;
+    private final Executor m_deliveryExecutor;
+    private final Thread m_thread;
+    private final LinkedList<Job<?>> m_jobs = new LinkedList<>(); // also the lock for everything below
+    private int m_numDroppable;
+    private long m_numDropped;
+    private int m_generation;
+    private boolean m_shutdown;
+
+    // worker thread
+    private void runJobs()
+    {
+        while (true)
+        {
+            Job<?> job;
+            synchronized (m_jobs)
+            {
+                while (m_jobs.isEmpty() && !m_shutdown)
+                {
+                    try
+                    {
+                        m_jobs.wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                }
+                if (m_shutdown)
+                {
+                    return;
+                }
+                job = m_jobs.removeFirst();
+                if (job.droppable)
+                {
+                    --m_numDroppable;
+                }
+            }
+            run(job);
+        }
+    }
+
+    private <T> void run(final Job<T> job)
+    {
+        if (!isCurrent(job.generation))
+        {
+            return;
+        }
+        final T result = job.task.run();
+        if (job.receiver == null)
+        {
+            return;
+        }
+        m_deliveryExecutor.execute(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        // checked again on the delivery thread, since cancel() is called from there
+                        if (isCurrent(job.generation))
+                        {
+                            job.receiver.onResult(result);
+                        }
+                    }
+                } );
+    }
+
+    private boolean isCurrent(int generation)
+    {
+        synchronized (m_jobs)
+        {
+            return (generation == m_generation);
+        }
+    }
+}
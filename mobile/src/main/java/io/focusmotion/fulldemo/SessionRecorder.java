@@ -0,0 +1,119 @@
+package io.focusmotion.trainingdemo;
+
+import android.os.*;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.*;
+
+
+// Collects the raw samples of each recording and saves them to the SessionStore.
+//
+// Samples arrive in a SampleRingBuffer (from WearSampleReceiver); when a
+// recording stops, the buffered samples are copied out and written on a
+// background thread. Must be used from the main thread.
+//
+// The copy holds the whole recording, so MainActivity doesn't call
+// onRecordingStopped() for recordings long enough to be counted chunk by chunk;
+// those are not saved.
+public class SessionRecorder
+{
+    public interface Callback
+    {
+        // called on the main thread; sessionId is -1 if nothing could be saved
+        void onSessionSaved(int sessionId, SampleBlock samples);
+    }
+
+    public SessionRecorder(SampleRingBuffer buffer, SessionStore store)
+    {
+        m_buffer = buffer;
+        m_store = store;
+    }
+
+    public void onRecordingStarted()
+    {
+        synchronized (m_buffer)
+        {
+            m_buffer.clear();
+        }
+    }
+
+    public void onRecordingStopped(final String label, final Callback callback)
+    {
+        final SampleBlock samples;
+        synchronized (m_buffer)
+        {
+            if (m_buffer.getTotalSamples() > m_buffer.size())
+            {
+                logInfo(String.format("recording too long; only the last %d samples are kept", m_buffer.size()));
+            }
+            samples = m_buffer.copyTo(new SampleBlock(m_buffer.size()));
+        }
+
+        m_executor.execute(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        int sessionId = -1;
+                        if (samples.size() > 0)
+                        {
+                            try
+                            {
+                                long startTime = SystemClock.elapsedRealtime();
+                                long unreadable = m_store.getUnreadableLength();
+                                if (unreadable > 0)
+                                {
+                                    logInfo(String.format("overwriting %d bytes of unreadable data", unreadable));
+                                }
+                                sessionId = m_store.append(samples, label, -1);
+
+                                int size = m_store.getSessions().get(sessionId).length;
+                                int naiveSize = samples.size() * (8 + 4 * SampleBlock.NUM_CHANNELS);
+                                logInfo(String.format("wrote session %d: %d samples, %d bytes (%.0f%% of %d unencoded) in %dms",
+                                        sessionId, samples.size(), size, 100.0f * size / Math.max(naiveSize, 1), naiveSize,
+                                        SystemClock.elapsedRealtime() - startTime));
+                            }
+                            catch (IOException e)
+                            {
+                                logInfo("could not save session: " + e);
+                            }
+                        }
+
+                        final int savedSessionId = sessionId;
+                        m_mainHandler.post(
+                                new Runnable()
+                                {
+                                    @Override
+                                    public void run()
+                                    {
+                                        callback.onSessionSaved(savedSessionId, samples);
+                                    }
+                                } );
+                    }
+                } );
+    }
+
+    public SessionStore getStore()
+    {
+        return m_store;
+    }
+
+    public void shutdown()
+    {
+        m_executor.shutdown();
+    }
+
+    ////////////////////////////////////////
+
+    private final SampleRingBuffer m_buffer;
+    private final SessionStore m_store;
+    private final ExecutorService m_executor = Executors.newSingleThreadExecutor();
+    private final Handler m_mainHandler = new Handler(Looper.getMainLooper());
+
+    private static void logInfo(String msg)
+    {
+        Log.i(SessionRecorder.class.getName(), msg);
+    }
+}
@@ -0,0 +1,345 @@
+package io.focusmotion.trainingdemo;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.zip.CRC32;
+
+
+// Append-only on-disk store of recorded sample sessions.
+//
+// Each session is one record:
+//   int magic, byte version, int payload length, int CRC32 of the payload, payload
+// (records of version 1 have no CRC) and the payload is
+//   varint repCount+1 (0 if unknown), varint label length, label (UTF-8),
+//   varint sample count, long first timestamp, NUM_CHANNELS float scales,
+//   then per sample: zigzag varint timestamp delta and NUM_CHANNELS shorts.
+//
+// Channels are quantized to 16 bits against the largest magnitude in each
+// channel, and timestamp deltas are usually a single byte, so a sample takes
+// about 13 bytes instead of 32. Records are read back through a memory-mapped
+// view of the file, and indexed once: an append only indexes the records
+// after the last one indexed. Indexing stops at the first record that is
+// truncated, by a crash mid-write, or corrupt: a bad header, a CRC mismatch,
+// or fields that don't fit its payload; it and anything after it are ignored,
+// and overwritten by the next append. Has no Android dependencies, so the
+// batch re-analysis can be benchmarked on stored sessions off the device.
+public class SessionStore
+{
+    public static class Session
+    {
+        Session(int id, int offset, int end, int length, String label, int repCount, int numSamples, long startTime)
+        {
+            this.id = id;
+            this.offset = offset;
+            this.end = end;
+            this.length = length;
+            this.label = label;
+            this.repCount = repCount;
+            this.numSamples = numSamples;
+            this.startTime = startTime;
+        }
+
+        public final int id;
+        public final int length;   // bytes of the record, header included
+        public final String label; // movement type, or empty
+        public final int repCount; // -1 if unknown
+        public final int numSamples;
+        public final long startTime;
+
+        final int offset; // of the payload
+        final int end;    // of the payload
+    }
+
+    public SessionStore(File file)
+    {
+        m_file = file;
+    }
+
+    // Append a session; returns its id.
+    public synchronized int append(SampleBlock block, String label, int repCount) throws IOException
+    {
+        byte[] labelBytes = (label != null ? label : "").getBytes(UTF8);
+        int numSamples = block.size();
+        ByteBuffer buffer = ByteBuffer.allocate(
+                HEADER_SIZE + 3 * VarInt.MAX_BYTES + labelBytes.length + 8 + 4 * SampleBlock.NUM_CHANNELS +
+                numSamples * (VarInt.MAX_BYTES + 2 * SampleBlock.NUM_CHANNELS));
+
+        buffer.position(HEADER_SIZE);
+        encode(block, labelBytes, repCount, buffer);
+        int payloadLength = buffer.position() - HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), buffer.arrayOffset() + HEADER_SIZE, payloadLength);
+        buffer.putInt(0, MAGIC);
+        buffer.put(4, VERSION);
+        buffer.putInt(5, payloadLength);
+        buffer.putInt(9, (int) crc.getValue());
+        buffer.flip();
+
+        map();
+        RandomAccessFile out = new RandomAccessFile(m_file, "rw");
+        try
+        {
+            FileChannel channel = out.getChannel();
+            channel.truncate(m_validLength);
+            channel.position(m_validLength);
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+            out.getFD().sync();
+        }
+        finally
+        {
+            out.close();
+        }
+
+        // the file may be as long as before, if a torn record was overwritten
+        m_mappedLength = -1;
+        return getSessions().size() - 1;
+    }
+
+    public synchronized List<Session> getSessions() throws IOException
+    {
+        map();
+        return Collections.unmodifiableList(m_sessions);
+    }
+
+    // Safe to call from several threads at once; only finding the record is serialized.
+    public SampleBlock load(int id) throws IOException
+    {
+        ByteBuffer buffer;
+        synchronized (this)
+        {
+            map();
+            Session session = m_sessions.get(id);
+            buffer = m_map.duplicate();
+            buffer.limit(session.end);
+            buffer.position(session.offset);
+        }
+        try
+        {
+            return decode(buffer);
+        }
+        catch (BufferUnderflowException | IllegalArgumentException e)
+        {
+            // only a version 1 record, which has no CRC, can get past indexing corrupt
+            throw new IOException(String.format("session %d is corrupt: %s", id, e));
+        }
+    }
+
+    // Bytes at the end of the file that can't be read, from the first truncated or corrupt record on; the next append
+    // overwrites them.
+    public synchronized long getUnreadableLength() throws IOException
+    {
+        map();
+        return m_mappedLength - m_validLength;
+    }
+
+    ////////////////////////////////////////
+
+    private static final int MAGIC = 0x464D5331; // "FMS1"
+    private static final byte VERSION = 2;
+    private static final byte VERSION_NO_CRC = 1;
+    private static final int HEADER_SIZE = 4 + 1 + 4 + 4;   // magic, version, length, CRC
+    private static final int HEADER_SIZE_NO_CRC = 4 + 1 + 4;
+    private static final int MIN_SAMPLE_SIZE = 1 + 2 * SampleBlock.NUM_CHANNELS;
+    private static final int CRC_CHUNK_SIZE = 64 * 1024;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File m_file;
+    private MappedByteBuffer m_map;
+    private long m_mappedLength = -1;
+    private long m_validLength; // up to the end of the last complete record
+    private List<Session> m_sessions;
+
+    // (re)map the file if it has changed since last time, and index the records not indexed yet
+    private void map() throws IOException
+    {
+        long length = m_file.length();
+        if (m_sessions != null && length == m_mappedLength)
+        {
+            return;
+        }
+
+        if (m_sessions == null || length < m_validLength)
+        {
+            // first time, or the file was cut short by someone else: index it from the start
+            m_sessions = new ArrayList<>();
+            m_validLength = 0;
+        }
+        m_mappedLength = length;
+        if (length == 0)
+        {
+            m_map = null;
+            return;
+        }
+
+        RandomAccessFile file = new RandomAccessFile(m_file, "r");
+        try
+        {
+            m_map = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        finally
+        {
+            file.close();
+        }
+
+        ByteBuffer buffer = m_map.duplicate();
+        buffer.position((int) m_validLength);
+        Session session;
+        while ((session = readRecord(buffer, m_sessions.size())) != null)
+        {
+            m_sessions.add(session);
+            m_validLength = buffer.position();
+        }
+        // anything left is unreadable, for getUnreadableLength()
+    }
+
+    // The session whose record starts at the buffer's position, which is left after the record; null if there is no
+    // complete and intact record there.
+    private static Session readRecord(ByteBuffer buffer, int id)
+    {
+        int recordStart = buffer.position();
+        if (buffer.remaining() < HEADER_SIZE_NO_CRC)
+        {
+            return null;
+        }
+        int magic = buffer.getInt();
+        byte version = buffer.get();
+        int payloadLength = buffer.getInt();
+        if (magic != MAGIC || (version != VERSION && version != VERSION_NO_CRC) ||
+                buffer.remaining() < (version == VERSION ? 4 : 0))
+        {
+            return null;
+        }
+        int crc = (version == VERSION ? buffer.getInt() : 0);
+        if (payloadLength < 0 || payloadLength > buffer.remaining())
+        {
+            return null;
+        }
+
+        int payloadStart = buffer.position();
+        int payloadEnd = payloadStart + payloadLength;
+        ByteBuffer payload = buffer.duplicate();
+        payload.limit(payloadEnd);
+        if (version == VERSION && computeCrc(payload.duplicate()) != crc)
+        {
+            return null;
+        }
+
+        try
+        {
+            int repCount = (int) VarInt.getUnsigned(payload) - 1;
+            long labelLength = VarInt.getUnsigned(payload);
+            if (labelLength > payload.remaining())
+            {
+                return null;
+            }
+            byte[] labelBytes = new byte[(int) labelLength];
+            payload.get(labelBytes);
+
+            // the first timestamp, the scales, and at least the shorts of every sample must fit
+            long numSamples = VarInt.getUnsigned(payload);
+            int fixedSize = 8 + 4 * SampleBlock.NUM_CHANNELS;
+            if (payload.remaining() < fixedSize || numSamples > (payload.remaining() - fixedSize) / MIN_SAMPLE_SIZE)
+            {
+                return null;
+            }
+            long firstTime = payload.getLong();
+
+            buffer.position(payloadEnd);
+            return new Session(id, payloadStart, payloadEnd, payloadEnd - recordStart, new String(labelBytes, UTF8),
+                    repCount, (int) numSamples, firstTime);
+        }
+        catch (BufferUnderflowException | IllegalArgumentException e)
+        {
+            // a varint runs past the payload, or is malformed
+            return null;
+        }
+    }
+
+    // CRC32 of the buffer's remaining bytes, which it consumes
+    private static int computeCrc(ByteBuffer buffer)
+    {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[Math.min(buffer.remaining(), CRC_CHUNK_SIZE)];
+        while (buffer.hasRemaining())
+        {
+            int count = Math.min(buffer.remaining(), chunk.length);
+            buffer.get(chunk, 0, count);
+            crc.update(chunk, 0, count);
+        }
+        return (int) crc.getValue();
+    }
+
+    private static void encode(SampleBlock block, byte[] labelBytes, int repCount, ByteBuffer buffer)
+    {
+        int numSamples = block.size();
+        long[] times = block.getTimes();
+        float[] values = block.getValues();
+
+        VarInt.putUnsigned(buffer, repCount + 1);
+        VarInt.putUnsigned(buffer, labelBytes.length);
+        buffer.put(labelBytes);
+        VarInt.putUnsigned(buffer, numSamples);
+        buffer.putLong(numSamples > 0 ? times[0] : 0);
+
+        // per-channel scale, so the largest magnitude maps to the full short range
+        float[] scales = new float[SampleBlock.NUM_CHANNELS];
+        for (int i = 0; i < numSamples * SampleBlock.NUM_CHANNELS; ++i)
+        {
+            int channel = i % SampleBlock.NUM_CHANNELS;
+            scales[channel] = Math.max(scales[channel], Math.abs(values[i]));
+        }
+        for (int channel = 0; channel < SampleBlock.NUM_CHANNELS; ++channel)
+        {
+            scales[channel] = (scales[channel] > 0.0f ? scales[channel] / Short.MAX_VALUE : 1.0f);
+            buffer.putFloat(scales[channel]);
+        }
+
+        long prevTime = (numSamples > 0 ? times[0] : 0);
+        for (int sample = 0; sample < numSamples; ++sample)
+        {
+            VarInt.putSigned(buffer, times[sample] - prevTime);
+            prevTime = times[sample];
+
+            int base = sample * SampleBlock.NUM_CHANNELS;
+            for (int channel = 0; channel < SampleBlock.NUM_CHANNELS; ++channel)
+            {
+                buffer.putShort((short) Math.round(values[base + channel] / scales[channel]));
+            }
+        }
+    }
+
+    private static SampleBlock decode(ByteBuffer buffer)
+    {
+        VarInt.getUnsigned(buffer); // rep count
+        int labelLength = (int) VarInt.getUnsigned(buffer);
+        buffer.position(buffer.position() + labelLength);
+        int numSamples = (int) VarInt.getUnsigned(buffer);
+        long time = buffer.getLong();
+
+        float[] scales = new float[SampleBlock.NUM_CHANNELS];
+        for (int channel = 0; channel < SampleBlock.NUM_CHANNELS; ++channel)
+        {
+            scales[channel] = buffer.getFloat();
+        }
+
+        SampleBlock block = new SampleBlock(numSamples);
+        for (int sample = 0; sample < numSamples; ++sample)
+        {
+            time += VarInt.getSigned(buffer);
+            block.add(time,
+                    buffer.getShort() * scales[0],
+                    buffer.getShort() * scales[1],
+                    buffer.getShort() * scales[2],
+                    buffer.getShort() * scales[3],
+                    buffer.getShort() * scales[4],
+                    buffer.getShort() * scales[5]);
+        }
+        return block;
+    }
+}
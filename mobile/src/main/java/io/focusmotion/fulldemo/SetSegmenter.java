@@ -0,0 +1,236 @@
+package io.focusmotion.trainingdemo;
+
+
+// Splits a continuous recording into sets and rest periods as samples arrive,
+// and counts the reps of each set as soon as it ends, so a whole-workout
+// recording never needs one long analysis at the end.
+//
+// Motion energy is computed as by the watch's MotionEnergyDetector: gravity
+// is tracked with a slow low-pass filter and the energy is a moving average of
+// the squared acceleration left over; the thresholds are twice the
+// detector's, since a set must stand out from shifting position while resting,
+// not just from keeping still. A set opens when the energy crosses
+// START_ENERGY and closes once it has stayed below END_ENERGY for
+// REST_HOLD_MS, so pauses between reps don't split it. The set starts
+// PRE_ROLL_MS before the energy crossed, since the filter lags the first rep,
+// and ends at the last sample above END_ENERGY. A set only counts once the
+// energy has been above END_ENERGY for MIN_SET_MS in all; shorter bursts
+// (picking up the weights, or shifting position) are part of the rest. Not
+// thread-safe; the RepCounter runs on the thread calling add().
+public class SetSegmenter
+{
+    // A set, or the rest between two sets; times are in milliseconds.
+    public static class Segment
+    {
+        Segment(boolean isSet, long startTime, long endTime, SampleBlock samples, RepResult result)
+        {
+            this.isSet = isSet;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.samples = samples;
+            this.result = result;
+        }
+
+        public final boolean isSet;
+        public final long startTime;
+        public final long endTime;
+        public final SampleBlock samples;  // the set's samples; null for rest
+        public final RepResult result;     // the set's first result; null for rest, or if the counter had none
+    }
+
+    public interface Listener
+    {
+        // a set has been active for MIN_SET_MS, since startTime
+        void onSetStarted(long startTime);
+
+        // rest segments close when the next set starts, or at finish()
+        void onSegmentClosed(Segment segment);
+    }
+
+    public SetSegmenter(RepCounter counter, Listener listener)
+    {
+        m_counter = counter;
+        m_listener = listener;
+    }
+
+    public void add(long time, float ax, float ay, float az, float gx, float gy, float gz)
+    {
+        m_preRoll.add(time, ax, ay, az, gx, gy, gz);
+        if (m_lastTime < 0)
+        {
+            m_gravityX = ax;
+            m_gravityY = ay;
+            m_gravityZ = az;
+            m_lastTime = time;
+            m_restStart = time;
+            return;
+        }
+        float energy = updateEnergy(time, ax, ay, az);
+
+        if (!m_inSet)
+        {
+            if (energy >= START_ENERGY)
+            {
+                openSet(time);
+            }
+            return;
+        }
+
+        m_set.add(time, ax, ay, az, gx, gy, gz);
+        if (energy >= END_ENERGY)
+        {
+            m_activeMs += time - m_lastActiveSampleTime;
+            m_lastActiveTime = time;
+            m_setSize = m_set.size();
+        }
+        m_lastActiveSampleTime = time;
+        if (!m_confirmed && m_activeMs >= MIN_SET_MS)
+        {
+            m_confirmed = true;
+            if (m_setStart > m_restStart)
+            {
+                m_listener.onSegmentClosed(new Segment(false, m_restStart, m_setStart, null, null));
+            }
+            m_listener.onSetStarted(m_setStart);
+        }
+        if (time - m_lastActiveTime >= REST_HOLD_MS)
+        {
+            closeSet();
+        }
+    }
+
+    // End of the recording: close the set or rest in progress.
+    public void finish()
+    {
+        if (m_inSet)
+        {
+            closeSet();
+        }
+        if (m_lastTime > m_restStart)
+        {
+            m_listener.onSegmentClosed(new Segment(false, m_restStart, m_lastTime, null, null));
+        }
+        reset();
+    }
+
+    public boolean isInSet()
+    {
+        return m_confirmed;
+    }
+
+    // Start over, discarding anything in progress.
+    public void reset()
+    {
+        m_preRoll.clear();
+        m_set.clear();
+        m_lastTime = -1;
+        m_energy = 0.0f;
+        m_inSet = false;
+        m_confirmed = false;
+    }
+
+    ////////////////////////////////////////
+
+    private static final float GRAVITY_TIME = 2.0f;     // seconds
+    private static final float ENERGY_TIME = 0.25f;     // seconds
+    private static final float START_ENERGY = 2.0f;     // (m/s^2)^2
+    private static final float END_ENERGY = 1.0f;       // (m/s^2)^2
+    private static final long REST_HOLD_MS = 4000;
+    private static final long MIN_SET_MS = 5000;
+    private static final long PRE_ROLL_MS = 1000;
+    private static final int PRE_ROLL_CAPACITY = 256;   // samples; over PRE_ROLL_MS up to 250Hz
+
+    private final RepCounter m_counter;
+    private final Listener m_listener;
+    private final SampleRingBuffer m_preRoll = new SampleRingBuffer(PRE_ROLL_CAPACITY);
+    private final SampleRingBuffer.View m_preRollView = new SampleRingBuffer.View();
+    private final SampleBlock m_set = new SampleBlock(0);   // the open set, up to the current sample
+
+    private long m_lastTime = -1;
+    private float m_gravityX;
+    private float m_gravityY;
+    private float m_gravityZ;
+    private float m_energy;
+
+    private boolean m_inSet;
+    private boolean m_confirmed;    // the open set has been active for MIN_SET_MS
+    private long m_setStart;
+    private long m_lastActiveTime;
+    private long m_lastActiveSampleTime;    // of the previous sample, to add up m_activeMs
+    private long m_activeMs;        // time above END_ENERGY since the set opened
+    private int m_setSize;          // samples of m_set up to m_lastActiveTime
+    private long m_restStart;       // end of the last set, or start of the recording
+
+    private float updateEnergy(long time, float ax, float ay, float az)
+    {
+        float dt = Math.max(time - m_lastTime, 1) / 1000.0f;
+        m_lastTime = time;
+
+        float gravityAlpha = dt / (GRAVITY_TIME + dt);
+        m_gravityX += gravityAlpha * (ax - m_gravityX);
+        m_gravityY += gravityAlpha * (ay - m_gravityY);
+        m_gravityZ += gravityAlpha * (az - m_gravityZ);
+
+        float mx = ax - m_gravityX;
+        float my = ay - m_gravityY;
+        float mz = az - m_gravityZ;
+        float energyAlpha = dt / (ENERGY_TIME + dt);
+        m_energy += energyAlpha * (mx * mx + my * my + mz * mz - m_energy);
+        return m_energy;
+    }
+
+    // start a set with the samples from PRE_ROLL_MS before time, which include the current one
+    private void openSet(long time)
+    {
+        m_set.clear();
+        SampleRingBuffer.View view = m_preRoll.view(m_preRollView);
+        for (int i = 0; i < view.size(); ++i)
+        {
+            if (view.getTime(i) >= time - PRE_ROLL_MS)
+            {
+                m_set.add(view.getTime(i),
+                        view.getValue(i, SampleBlock.ACCEL_X), view.getValue(i, SampleBlock.ACCEL_Y), view.getValue(i, SampleBlock.ACCEL_Z),
+                        view.getValue(i, SampleBlock.GYRO_X), view.getValue(i, SampleBlock.GYRO_Y), view.getValue(i, SampleBlock.GYRO_Z));
+            }
+        }
+        m_setStart = Math.max(m_set.getTime(0), m_restStart);
+        m_lastActiveTime = time;
+        m_lastActiveSampleTime = time;
+        m_activeMs = 0;
+        m_setSize = m_set.size();
+        m_inSet = true;
+        m_confirmed = false;
+    }
+
+    private void closeSet()
+    {
+        m_inSet = false;
+        if (!m_confirmed)
+        {
+            // too short for a set; still resting
+            return;
+        }
+        m_confirmed = false;
+
+        // the listener keeps the samples, so they get their own block
+        SampleBlock samples = new SampleBlock(m_setSize);
+        float[] values = m_set.getValues();
+        for (int i = 0; i < m_setSize; ++i)
+        {
+            int base = i * SampleBlock.NUM_CHANNELS;
+            samples.add(m_set.getTime(i), values[base], values[base + 1], values[base + 2],
+                    values[base + 3], values[base + 4], values[base + 5]);
+        }
+
+        RepResult result = null;
+        m_counter.analyze(samples);
+        if (m_counter.getNumResults() > 0)
+        {
+            result = new RepResult();
+            result.set(m_counter.getResult(0));
+        }
+
+        m_restStart = m_lastActiveTime;
+        m_listener.onSegmentClosed(new Segment(true, m_setStart, m_lastActiveTime, samples, result));
+    }
+}
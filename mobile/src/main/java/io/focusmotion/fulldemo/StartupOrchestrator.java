@@ -0,0 +1,123 @@
+package io.focusmotion.trainingdemo;
+
+import android.content.*;
+import android.os.*;
+import android.util.Log;
+import android.view.*;
+
+import java.util.*;
+
+
+// Starts device backends after the first frame has been drawn, instead of
+// all of them in onCreate().
+//
+// Backends are started one per main-loop message, so the UI can keep drawing
+// in between, and the backend that last gave us a device goes first. The SDK
+// backends register receivers and callbacks that expect the main thread, so
+// they are deferred rather than moved to a background thread.
+//
+// Each phase is recorded in a startup trace, relative to construction.
+public class StartupOrchestrator
+{
+    public StartupOrchestrator(Context context)
+    {
+        m_startTime = SystemClock.elapsedRealtime();
+        m_prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public void addBackend(String name, Runnable initializer)
+    {
+        m_backends.put(name, initializer);
+    }
+
+    // Start the backends once the view has drawn its first frame.
+    public void start(final View rootView)
+    {
+        rootView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener()
+                {
+                    @Override
+                    public boolean onPreDraw()
+                    {
+                        rootView.getViewTreeObserver().removeOnPreDrawListener(this);
+
+                        // posted, so it runs after this frame is drawn
+                        m_handler.post(
+                                new Runnable()
+                                {
+                                    @Override
+                                    public void run()
+                                    {
+                                        mark("first frame");
+                                        startBackends();
+                                    }
+                                } );
+                        return true;
+                    }
+                } );
+    }
+
+    // Call when a device from the given backend becomes available.
+    public void onDeviceAvailable(String backend)
+    {
+        if (!m_deviceAvailable)
+        {
+            m_deviceAvailable = true;
+            mark("device available (" + backend + ")");
+        }
+        m_prefs.edit().putString(PREF_LAST_BACKEND, backend).apply();
+    }
+
+    public void mark(String phase)
+    {
+        long elapsed = SystemClock.elapsedRealtime() - m_startTime;
+        m_trace.append(String.format("%6dms %s\n", elapsed, phase));
+        logInfo(String.format("startup: %s at %dms", phase, elapsed));
+    }
+
+    public String getTrace()
+    {
+        return m_trace.toString();
+    }
+
+    ////////////////////////////////////////
+
+    private static final String PREFS_NAME = "startup";
+    private static final String PREF_LAST_BACKEND = "lastBackend";
+
+    private final long m_startTime;
+    private final SharedPreferences m_prefs;
+    private final Handler m_handler = new Handler(Looper.getMainLooper());
+    private final LinkedHashMap<String, Runnable> m_backends = new LinkedHashMap<>();
+    private final StringBuilder m_trace = new StringBuilder();
+    private boolean m_deviceAvailable;
+
+    private void startBackends()
+    {
+        List<String> order = new ArrayList<>(m_backends.keySet());
+        String lastBackend = m_prefs.getString(PREF_LAST_BACKEND, null);
+        if (lastBackend != null && order.remove(lastBackend))
+        {
+            order.add(0, lastBackend);
+        }
+
+        for (final String name : order)
+        {
+            m_handler.post(
+                    new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            m_backends.get(name).run();
+                            mark(name + " started");
+                        }
+                    } );
+        }
+    }
+
+    private static void logInfo(String msg)
+    {
+        Log.i(StartupOrchestrator.class.getName(), msg);
+    }
+}
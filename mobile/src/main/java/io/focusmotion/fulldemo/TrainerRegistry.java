@@ -0,0 +1,93 @@
+package io.focusmotion.trainingdemo;
+
+import io.focusmotion.sdk.*;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+// Named AnalyzerTrainers, one per custom movement, each with its own
+// TrainingService and saved model file.
+//
+// All training runs on one shared training thread, since every run holds
+// the model write lock anyway. Must be used from the main thread.
+public class TrainerRegistry
+{
+    public TrainerRegistry(AnalyzerPool pool, File modelDir)
+    {
+        m_pool = pool;
+        m_modelDir = modelDir;
+        m_executor = Executors.newSingleThreadExecutor(
+                new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread thread = new Thread(r, "training");
+                        thread.setPriority(Thread.NORM_PRIORITY - 1);
+                        return thread;
+                    }
+                } );
+    }
+
+    // Create the trainer for a movement, and start loading its saved model.
+    public TrainingService register(String movementType, TrainingService.Listener listener)
+    {
+        if (m_services.containsKey(movementType))
+        {
+            throw new IllegalArgumentException("Movement already registered: " + movementType);
+        }
+
+        TrainingService service = new TrainingService(
+                movementType,
+                new AnalyzerTrainer(movementType),
+                m_pool,
+                new ModelStore(new File(m_modelDir, movementType + ".model")),
+                m_executor,
+                listener);
+        m_services.put(movementType, service);
+        service.loadSavedModel();
+        return service;
+    }
+
+    public TrainingService get(String movementType)
+    {
+        return m_services.get(movementType);
+    }
+
+    public Set<String> getMovementTypes()
+    {
+        return Collections.unmodifiableSet(m_services.keySet());
+    }
+
+    // Movements that have at least one data set in their trained model.
+    public List<String> getTrainedMovementTypes()
+    {
+        List<String> movementTypes = new ArrayList<>();
+        for (TrainingService service : m_services.values())
+        {
+            if (service.getNumTrainingDataSets() > 0)
+            {
+                movementTypes.add(service.getMovementType());
+            }
+        }
+        return movementTypes;
+    }
+
+    public void shutdown()
+    {
+        for (TrainingService service : m_services.values())
+        {
+            service.cancel();
+        }
+        m_executor.shutdown();
+    }
+
+    ////////////////////////////////////////
+
+    private final AnalyzerPool m_pool;
+    private final File m_modelDir;
+    private final ExecutorService m_executor;
+    private final Map<String, TrainingService> m_services = new LinkedHashMap<>();
+}
@@ -0,0 +1,174 @@
+package io.focusmotion.trainingdemo;
+
+import java.util.*;
+
+
+// Screens training data sets before they are added to the trainer, so that
+// train(), which retrains over every data set it has, only pays for sets that
+// teach it something.
+//
+// A set is scored on its raw samples, three ways, each from 0 to 1:
+// - rep count consistency: PeakRepCounter's count against the count the set
+//   is labeled with; rejected if they differ by more than REP_TOLERANCE;
+// - regularity: one less the variation of its rep times; rejected below
+//   MIN_REGULARITY;
+// - continuity: one less the share of the recording lost in gaps between
+//   samples (dropped packets); rejected below MIN_CONTINUITY.
+// Its quality is the product of the three.
+//
+// A set that passes is reduced to a signature: its rep time, amplitude and
+// wrist orientation, each quantized to steps within which the trainer learns
+// nothing new, packed into a long. Sets with the same signature are
+// near-duplicates; once MAX_PER_SIGNATURE of them have been accepted, more of
+// them only add training time and are rejected.
+//
+// That bounds the training time of those who train the most, at a price: a
+// user who lifts consistently, every set within the same steps, stops adding
+// data sets after the first few (TrainingFilterSimulation's consistent user
+// trains 4 of 20), so a slow change in their form within a step is never
+// trained until training is reset. Not thread-safe.
+public class TrainingFilter
+{
+    public static class Verdict
+    {
+        public boolean accepted;
+        public String reason;   // why the set was rejected; null if accepted
+        public float quality;   // 0 to 1; 0 if the set couldn't be scored
+        public int countedReps;
+        public long signature;
+    }
+
+    // Score a set labeled with repCount, and remember its signature if it is accepted.
+    public Verdict check(SampleSeries samples, int repCount, Verdict verdict)
+    {
+        verdict.accepted = false;
+        verdict.reason = null;
+        verdict.quality = 0.0f;
+        verdict.countedReps = 0;
+        verdict.signature = 0;
+
+        int n = samples.size();
+        if (n < MIN_SAMPLES || repCount <= 0)
+        {
+            verdict.reason = "too short";
+            return verdict;
+        }
+        m_counter.analyze(samples);
+        if (m_counter.getNumResults() == 0)
+        {
+            verdict.reason = "too short";
+            return verdict;
+        }
+        RepResult result = m_counter.getResult(0);
+        verdict.countedReps = result.repCount;
+
+        float repError = Math.abs(result.repCount - repCount) / (float) repCount;
+        float consistency = Math.max(0.0f, 1.0f - repError);
+        float regularity = Math.max(0.0f, 1.0f - result.internalVariation);
+        float continuity = 1.0f - getGapFraction(samples, n);
+        verdict.quality = consistency * regularity * continuity;
+        if (repError > REP_TOLERANCE)
+        {
+            verdict.reason = String.format("%d reps counted, %d labeled", result.repCount, repCount);
+            return verdict;
+        }
+        if (regularity < MIN_REGULARITY)
+        {
+            verdict.reason = String.format("irregular reps (variation %.2f)", result.internalVariation);
+            return verdict;
+        }
+        if (continuity < MIN_CONTINUITY)
+        {
+            verdict.reason = String.format("%d%% of samples missing", (int) ((1.0f - continuity) * 100));
+            return verdict;
+        }
+
+        verdict.signature = getSignature(samples, n, result.meanRepTime);
+        Integer count = m_signatureCounts.get(verdict.signature);
+        if (count != null && count >= MAX_PER_SIGNATURE)
+        {
+            verdict.reason = "near-duplicate of earlier sets";
+            return verdict;
+        }
+        m_signatureCounts.put(verdict.signature, (count != null ? count + 1 : 1));
+        verdict.accepted = true;
+        return verdict;
+    }
+
+    // Forget every set accepted so far, as when the trainer is reset.
+    public void reset()
+    {
+        m_signatureCounts.clear();
+    }
+
+    ////////////////////////////////////////
+
+    private static final int MIN_SAMPLES = 50;
+    private static final float REP_TOLERANCE = 0.25f;   // of the labeled rep count
+    private static final float MIN_REGULARITY = 0.6f;
+    private static final float MIN_CONTINUITY = 0.9f;
+    private static final float GAP_FACTOR = 3.0f;       // sample intervals; longer ones are gaps
+    private static final int MAX_PER_SIGNATURE = 2;
+
+    // signature steps
+    private static final double TEMPO_STEP = Math.log(1.1);        // rep times 10% apart
+    private static final double AMPLITUDE_STEP = Math.log(1.25);   // amplitudes 25% apart
+    private static final float ORIENTATION_STEPS = 2.0f;           // per unit of each gravity component
+
+    private final PeakRepCounter m_counter = new PeakRepCounter();
+    private final Map<Long, Integer> m_signatureCounts = new HashMap<>();
+
+    // share of the recording's time in gaps of more than GAP_FACTOR mean sample intervals
+    private static float getGapFraction(SampleSeries samples, int n)
+    {
+        long duration = samples.getTime(n - 1) - samples.getTime(0);
+        if (duration <= 0)
+        {
+            return 1.0f;
+        }
+        float interval = duration / (float) (n - 1);
+        float lost = 0.0f;
+        for (int i = 1; i < n; ++i)
+        {
+            long gap = samples.getTime(i) - samples.getTime(i - 1);
+            if (gap > GAP_FACTOR * interval)
+            {
+                lost += gap - interval;
+            }
+        }
+        return Math.min(1.0f, lost / duration);
+    }
+
+    // quantized rep time, acceleration amplitude and mean gravity direction, 16 bits each for the first two and
+    // 8 for each gravity component
+    private static long getSignature(SampleSeries samples, int n, float meanRepTime)
+    {
+        double sumX = 0.0;
+        double sumY = 0.0;
+        double sumZ = 0.0;
+        double sumMagnitude = 0.0;
+        double sumSquares = 0.0;
+        for (int i = 0; i < n; ++i)
+        {
+            float x = samples.getValue(i, SampleBlock.ACCEL_X);
+            float y = samples.getValue(i, SampleBlock.ACCEL_Y);
+            float z = samples.getValue(i, SampleBlock.ACCEL_Z);
+            double magnitude = Math.sqrt(x * x + y * y + z * z);
+            sumX += x;
+            sumY += y;
+            sumZ += z;
+            sumMagnitude += magnitude;
+            sumSquares += magnitude * magnitude;
+        }
+        double mean = sumMagnitude / n;
+        double amplitude = Math.sqrt(Math.max(0.0, sumSquares / n - mean * mean));
+        double gravity = Math.max(Math.sqrt(sumX * sumX + sumY * sumY + sumZ * sumZ), 1e-6);
+
+        long tempo = Math.round(Math.log(Math.max(meanRepTime, 0.01f)) / TEMPO_STEP);
+        long strength = Math.round(Math.log(Math.max(amplitude, 1e-3)) / AMPLITUDE_STEP);
+        long gx = Math.round(sumX / gravity * ORIENTATION_STEPS);
+        long gy = Math.round(sumY / gravity * ORIENTATION_STEPS);
+        long gz = Math.round(sumZ / gravity * ORIENTATION_STEPS);
+        return ((tempo & 0xffff) << 48) | ((strength & 0xffff) << 32) | ((gx & 0xff) << 16) | ((gy & 0xff) << 8) | (gz & 0xff);
+    }
+}
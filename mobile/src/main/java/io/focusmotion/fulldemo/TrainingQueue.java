@@ -0,0 +1,74 @@
+package io.focusmotion.trainingdemo;
+
+import java.util.*;
+
+
+// Data sets queued for a training thread, which takes all of them at once:
+// data sets queued while a run is busy are picked up together by the next
+// run, so they cost one more train() rather than one each.
+//
+// cancel() drops the data sets not taken yet, and cancels the batches already
+// taken: a run checks isCancelled() between steps and stops adding its data
+// sets at the next check. What a run has already handed to the trainer stays
+// there, since the trainer can't remove a data set, and a train() call in
+// progress always completes. Thread-safe.
+public class TrainingQueue<T>
+{
+    public static class Batch<T>
+    {
+        public final List<T> items;
+
+        Batch(List<T> items, int generation)
+        {
+            this.items = items;
+            m_generation = generation;
+        }
+
+        private final int m_generation;
+    }
+
+    public void add(T item)
+    {
+        synchronized (m_items)
+        {
+            m_items.add(item);
+        }
+    }
+
+    // Everything queued so far, or null if nothing is.
+    public Batch<T> take()
+    {
+        synchronized (m_items)
+        {
+            if (m_items.isEmpty())
+            {
+                return null;
+            }
+            Batch<T> batch = new Batch<>(new ArrayList<>(m_items), m_generation);
+            m_items.clear();
+            return batch;
+        }
+    }
+
+    public void cancel()
+    {
+        synchronized (m_items)
+        {
+            m_items.clear();
+            ++m_generation;
+        }
+    }
+
+    public boolean isCancelled(Batch<T> batch)
+    {
+        synchronized (m_items)
+        {
+            return (batch.m_generation != m_generation);
+        }
+    }
+
+    ////////////////////////////////////////
+
+    private final List<T> m_items = new ArrayList<>(); // also the lock for m_generation
+    private int m_generation;
+}
@@ -0,0 +1,381 @@
+package io.focusmotion.trainingdemo;
+
+import io.focusmotion.sdk.*;
+
+import android.os.*;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+// Trains an AnalyzerTrainer on a background thread.
+//
+// The executor must be single-threaded; TrainerRegistry shares one between
+// the services for all movements.
+//
+// Data sets are queued with addDataSet() in a TrainingQueue; the worker adds
+// every data set queued so far and then calls train() once, so several
+// presses of the train button while a training run is busy cost a single
+// extra train() rather than one each. AnalyzerTrainer has no incremental
+// update, so this coalescing is the cheapest we can do; train() itself still
+// covers all data sets added so far, and its cost is logged against the data
+// set count.
+//
+// cancel() stops a run between data sets, but AnalyzerTrainer.train() can't
+// be interrupted: once any data set of a run has been added to the trainer,
+// the run trains and completes, since the trainer has no way to take the
+// data set back out.
+//
+// Data sets with raw samples are screened by a TrainingFilter first: sets of
+// poor quality, or near-duplicates of sets already added, are dropped before
+// they cost anything in train(), and a run whose data sets are all dropped
+// doesn't train at all. Data sets without raw samples can't be scored and are
+// always added.
+//
+// Alongside the SDK's model, a PeakRepCounter.Model is trained on the rep
+// times of the data sets with raw samples, for the analyses that run on raw
+// samples instead of device output (live counts, re-analysis of sessions).
+//
+// After each training run the data sets are saved to the ModelStore;
+// loadSavedModel() reads them back on the training thread at startup. The
+// SDK has no way to export or import its trained model, so the
+// AnalyzerTrainer starts empty and getNumTrainingDataSets() is 0 until it is
+// trained again. The counter model and getDataSets() are restored, though,
+// and data sets trained later are added to the restored ones, so the saved
+// record keeps growing across restarts rather than being overwritten.
+//
+// Listener methods are called on the main thread.
+public class TrainingService
+{
+    public interface Listener
+    {
+        void onTrainingProgress(String stage, float progress);
+        void onTrainingComplete(int numDataSets);
+        void onDataSetRejected(String reason);
+        void onSavedModelLoaded(ModelStore.Model model); // model is null if none could be loaded
+    }
+
+    public TrainingService(String movementType, AnalyzerTrainer trainer, AnalyzerPool pool, ModelStore modelStore,
+                           ExecutorService executor, Listener listener)
+    {
+        m_movementType = movementType;
+        m_trainer = trainer;
+        m_pool = pool;
+        m_modelStore = modelStore;
+        m_listener = listener;
+        m_numDataSets = trainer.getNumTrainingDataSets();
+        m_executor = executor;
+        m_mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    // Queue a data set and (re)train once it has been added.
+    // sessionId is the data set's raw samples in the SessionStore, or -1 if they weren't captured;
+    // samples are the raw samples themselves, or null.
+    public void addDataSet(DeviceOutput output, int repCount, int sessionId, SampleBlock samples)
+    {
+        m_queue.add(new DataSet(output, repCount, sessionId, samples));
+        m_executor.execute(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        train();
+                    }
+                } );
+    }
+
+    // Read the saved model description in the background.
+    public void loadSavedModel()
+    {
+        m_executor.execute(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        long startTime = SystemClock.elapsedRealtime();
+                        ModelStore.Model model = m_modelStore.load();
+                        if (model != null && !model.movementType.equals(m_movementType))
+                        {
+                            model = null;
+                        }
+                        if (model != null)
+                        {
+                            // before anything trained since, which is added after them
+                            m_savedDataSets.addAll(0, model.dataSets);
+                        }
+                        logInfo(String.format("loaded saved model in %dms", SystemClock.elapsedRealtime() - startTime));
+
+                        final ModelStore.Model loadedModel = model;
+                        final List<ModelStore.DataSet> dataSets = Collections.unmodifiableList(new ArrayList<>(m_savedDataSets));
+                        final PeakRepCounter.Model counterModel = getCounterModel(m_savedDataSets);
+                        m_mainHandler.post(
+                                new Runnable()
+                                {
+                                    @Override
+                                    public void run()
+                                    {
+                                        m_dataSets = dataSets;
+                                        m_counterModel = counterModel;
+                                        m_listener.onSavedModelLoaded(loadedModel);
+                                    }
+                                } );
+                    }
+                } );
+    }
+
+    // Discard all data sets; runs after any training already queued.
+    public void reset()
+    {
+        cancel();
+        m_executor.execute(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        m_pool.getModelLock().writeLock().lock();
+                        try
+                        {
+                            m_trainer.reset();
+                            m_pool.invalidate();
+                            m_filter.reset();
+                            m_savedDataSets.clear();
+                            m_modelStore.delete();
+                        }
+                        finally
+                        {
+                            m_pool.getModelLock().writeLock().unlock();
+                        }
+                        complete(0);
+                    }
+                } );
+    }
+
+    // Drop data sets that have not been added to the trainer yet, including those of a run in progress.
+    // A run that has added some already still trains on them, and a train() in progress still completes.
+    public void cancel()
+    {
+        m_queue.cancel();
+    }
+
+    public boolean isTraining()
+    {
+        return m_training;
+    }
+
+    // Number of data sets in the trained model, as of the last completed run.
+    public int getNumTrainingDataSets()
+    {
+        return m_numDataSets;
+    }
+
+    // Data sets the counter model was trained on, as of the last completed run, including those saved
+    // before the app started.
+    public List<ModelStore.DataSet> getDataSets()
+    {
+        return m_dataSets;
+    }
+
+    // PeakRepCounter model for the data sets, as of the last completed run; DEFAULT if none had raw samples.
+    public PeakRepCounter.Model getCounterModel()
+    {
+        return m_counterModel;
+    }
+
+    public String getMovementType()
+    {
+        return m_movementType;
+    }
+
+    ////////////////////////////////////////
+
+    private static class DataSet
+    {
+        DataSet(DeviceOutput output, int repCount, int sessionId, SampleBlock samples)
+        {
+            this.output = output;
+            this.repCount = repCount;
+            this.sessionId = sessionId;
+            this.samples = samples;
+        }
+
+        final DeviceOutput output;
+        final int repCount;
+        final int sessionId;
+        final SampleBlock samples;
+    }
+
+    private final String m_movementType;
+    private final AnalyzerTrainer m_trainer;
+    private final AnalyzerPool m_pool;
+    private final ModelStore m_modelStore;
+    private final Listener m_listener;
+    private final ExecutorService m_executor;
+    private final Handler m_mainHandler;
+    private final TrainingQueue<DataSet> m_queue = new TrainingQueue<>();
+    private final List<ModelStore.DataSet> m_savedDataSets = new ArrayList<>(); // training thread only
+    private final TrainingFilter m_filter = new TrainingFilter(); // training thread only
+    private final TrainingFilter.Verdict m_verdict = new TrainingFilter.Verdict(); // training thread only
+
+    private volatile boolean m_training;
+    private int m_numDataSets; // main thread only
+    private List<ModelStore.DataSet> m_dataSets = Collections.emptyList(); // main thread only
+    private PeakRepCounter.Model m_counterModel = PeakRepCounter.Model.DEFAULT; // main thread only
+
+    // called on the training thread
+    private void train()
+    {
+        TrainingQueue.Batch<DataSet> batch = m_queue.take();
+        if (batch == null)
+        {
+            // already handled by an earlier run, or cancelled
+            return;
+        }
+
+        List<DataSet> dataSets = filter(batch.items);
+        if (dataSets.isEmpty() || m_queue.isCancelled(batch))
+        {
+            // nothing new to train on
+            complete(m_trainer.getNumTrainingDataSets());
+            return;
+        }
+
+        m_training = true;
+        m_pool.getModelLock().writeLock().lock();
+        try
+        {
+            // each data set counts as one step, and train() as the last one
+            int numSteps = dataSets.size() + 1;
+            for (int i = 0; i < dataSets.size(); ++i)
+            {
+                if (i > 0 && m_queue.isCancelled(batch))
+                {
+                    logInfo(String.format("cancelled after adding %d of %d data sets", i, dataSets.size()));
+                    break;
+                }
+                postProgress("adding data set", (float) i / numSteps);
+                DataSet dataSet = dataSets.get(i);
+                m_trainer.addTrainingDataSet(dataSet.output, dataSet.repCount);
+                m_savedDataSets.add(new ModelStore.DataSet(dataSet.repCount, dataSet.sessionId, System.currentTimeMillis(),
+                        getRepTime(dataSet)));
+            }
+
+            int numDataSets = m_trainer.getNumTrainingDataSets();
+            postProgress("training", (float) dataSets.size() / numSteps);
+
+            long startTime = SystemClock.elapsedRealtime();
+            m_trainer.train();
+            m_pool.invalidate();
+            logInfo(String.format("train() with %d data sets took %dms", numDataSets, SystemClock.elapsedRealtime() - startTime));
+
+            try
+            {
+                m_modelStore.save(new ModelStore.Model(m_movementType, m_savedDataSets));
+            }
+            catch (IOException e)
+            {
+                logInfo("could not save model: " + e);
+            }
+
+            complete(numDataSets);
+        }
+        finally
+        {
+            m_pool.getModelLock().writeLock().unlock();
+            m_training = false;
+        }
+    }
+
+    // the data sets worth adding; the rest are reported to the listener
+    private List<DataSet> filter(List<DataSet> dataSets)
+    {
+        List<DataSet> accepted = new ArrayList<>();
+        for (DataSet dataSet : dataSets)
+        {
+            if (dataSet.samples == null || dataSet.samples.size() == 0)
+            {
+                accepted.add(dataSet);
+                continue;
+            }
+
+            long startTime = SystemClock.elapsedRealtime();
+            TrainingFilter.Verdict verdict = m_filter.check(dataSet.samples, dataSet.repCount, m_verdict);
+            logInfo(String.format("data set quality %.2f, %d reps counted; %s in %dms", verdict.quality,
+                    verdict.countedReps, (verdict.accepted ? "accepted" : verdict.reason), SystemClock.elapsedRealtime() - startTime));
+            if (verdict.accepted)
+            {
+                accepted.add(dataSet);
+            }
+            else
+            {
+                final String reason = verdict.reason;
+                m_mainHandler.post(
+                        new Runnable()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                m_listener.onDataSetRejected(reason);
+                            }
+                        } );
+            }
+        }
+        return accepted;
+    }
+
+    // seconds per rep, from the raw samples; 0 if there are none
+    private static float getRepTime(DataSet dataSet)
+    {
+        SampleBlock samples = dataSet.samples;
+        if (samples == null || samples.size() < 2 || dataSet.repCount <= 0)
+        {
+            return 0.0f;
+        }
+        return (samples.getTime(samples.size() - 1) - samples.getTime(0)) / 1000.0f / dataSet.repCount;
+    }
+
+    private PeakRepCounter.Model getCounterModel(List<ModelStore.DataSet> dataSets)
+    {
+        return new ModelStore.Model(m_movementType, dataSets).getCounterModel();
+    }
+
+    private void postProgress(final String stage, final float progress)
+    {
+        m_mainHandler.post(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        m_listener.onTrainingProgress(stage, progress);
+                    }
+                } );
+    }
+
+    private void complete(final int numDataSets)
+    {
+        final List<ModelStore.DataSet> dataSets = Collections.unmodifiableList(new ArrayList<>(m_savedDataSets));
+        final PeakRepCounter.Model counterModel = getCounterModel(m_savedDataSets);
+        m_mainHandler.post(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        m_numDataSets = numDataSets;
+                        m_dataSets = dataSets;
+                        m_counterModel = counterModel;
+                        m_listener.onTrainingComplete(numDataSets);
+                    }
+                } );
+    }
+
+    private static void logInfo(String msg)
+    {
+        Log.i(TrainingService.class.getName(), msg);
+    }
+}
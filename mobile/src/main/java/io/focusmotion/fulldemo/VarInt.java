@@ -0,0 +1,56 @@
+package io.focusmotion.trainingdemo;
+
+import java.nio.ByteBuffer;
+
+
+// LEB128-style variable-length integers, with zigzag encoding for signed values,
+// so small deltas take a single byte.
+public class VarInt
+{
+    // Worst-case encoded size of a 64-bit value.
+    public static final int MAX_BYTES = 10;
+
+    public static void putUnsigned(ByteBuffer buffer, long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static long getUnsigned(ByteBuffer buffer)
+    {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do
+        {
+            if (shift >= 64)
+            {
+                throw new IllegalArgumentException("malformed varint");
+            }
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        while ((b & 0x80) != 0);
+        return value;
+    }
+
+    public static void putSigned(ByteBuffer buffer, long value)
+    {
+        putUnsigned(buffer, (value << 1) ^ (value >> 63));
+    }
+
+    public static long getSigned(ByteBuffer buffer)
+    {
+        long value = getUnsigned(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    ////////////////////////////////////////
+
+    private VarInt() {}
+}
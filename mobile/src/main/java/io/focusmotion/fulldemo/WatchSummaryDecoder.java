@@ -0,0 +1,36 @@
+package io.focusmotion.trainingdemo;
+
+import java.nio.ByteBuffer;
+
+
+// Decodes the set summaries the watch sends when it counts reps itself.
+//
+// NOTE: must match WatchRepCounter in the wear module, which documents the summary layout.
+public class WatchSummaryDecoder
+{
+    public static final String PATH = "/focusmotion/summary";
+    public static final String RAW_REQUEST_PATH = "/focusmotion/raw-request"; // a DataItem
+    public static final String RAW_REQUEST_KEY = "sendRaw";                   // boolean; raw samples are sent if absent
+
+    // Decode a summary into result.
+    public static void decode(byte[] summary, RepResult result)
+    {
+        ByteBuffer in = ByteBuffer.wrap(summary);
+        byte version = in.get();
+        if (version != VERSION)
+        {
+            throw new IllegalArgumentException("Unsupported watch summary version " + version);
+        }
+
+        result.repCount = in.getInt();
+        result.duration = in.getInt() / 1000.0f;
+        result.meanRepTime = in.getInt() / 1000.0f;
+        result.minRepTime = in.getInt() / 1000.0f;
+        result.maxRepTime = in.getInt() / 1000.0f;
+        result.internalVariation = in.getFloat();
+    }
+
+    ////////////////////////////////////////
+
+    private static final byte VERSION = 1;
+}
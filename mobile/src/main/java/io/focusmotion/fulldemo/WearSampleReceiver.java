@@ -0,0 +1,285 @@
+package io.focusmotion.trainingdemo;
+
+import android.content.Context;
+import android.os.*;
+import android.util.Log;
+
+import java.util.*;
+
+import com.google.android.gms.common.api.*;
+import com.google.android.gms.wearable.*;
+
+
+// Receives sample frames from the wear app and decodes them into a SampleRingBuffer.
+//
+// Frames arrive on a binder thread; the buffer is locked while a frame is
+// decoded into it, so readers must synchronize on the buffer too.
+//
+// The buffer holds the samples of the first watch to send any. Up to
+// MAX_OTHER_NODES more watches running the wear app (one on each wrist, say)
+// go to buffers of their own, for copyOtherStreams() to fuse with the first.
+// Those are allocated at a watch's first frame since clearOtherStreams(),
+// start at a minute's worth and double as they fill, up to otherCapacity
+// samples, the longest recording that is fused; they are dropped when cleared
+// or when their watch disconnects.
+//
+// When the watch counts reps itself, it also sends a summary of each set,
+// and raw samples only while requestRawSamples(true) is in effect. The
+// request is a DataItem, which the watch reads whenever its app starts, so it
+// holds even if the app isn't running when the request is made. Turning raw
+// samples off saves only our own stream: the SDK's LocalDevice on the watch
+// sends its samples to the phone regardless.
+public class WearSampleReceiver implements MessageApi.MessageListener, NodeApi.NodeListener,
+        GoogleApiClient.ConnectionCallbacks
+{
+    public interface SummaryListener
+    {
+        // called on the main thread
+        void onWatchSummary(RepResult result);
+    }
+
+    public WearSampleReceiver(Context context, SampleRingBuffer buffer, int otherCapacity)
+    {
+        m_buffer = buffer;
+        m_otherCapacity = otherCapacity;
+        m_client = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .addConnectionCallbacks(this)
+                .build();
+    }
+
+    public void connect()
+    {
+        m_client.connect();
+    }
+
+    public void disconnect()
+    {
+        Wearable.MessageApi.removeListener(m_client, this);
+        Wearable.NodeApi.removeListener(m_client, this);
+        m_client.disconnect();
+    }
+
+    public void setSummaryListener(SummaryListener listener)
+    {
+        m_summaryListener = listener;
+    }
+
+    // Ask the watch to send raw samples or not, from its next recording on; the watch won't stop sending in the
+    // middle of one. If not connected, the request is made when the connection comes back.
+    public void requestRawSamples(boolean send)
+    {
+        if (send == m_rawRequested)
+        {
+            return;
+        }
+        m_rawRequested = send;
+        if (m_client.isConnected())
+        {
+            putRawRequest();
+        }
+    }
+
+    // Copies of the samples buffered from every watch but the first, since the last clearOtherStreams().
+    public List<SampleBlock> copyOtherStreams()
+    {
+        List<SampleBlock> streams = new ArrayList<>();
+        synchronized (m_buffer)
+        {
+            for (SampleRingBuffer buffer : m_otherBuffers.values())
+            {
+                if (buffer.size() > 0)
+                {
+                    streams.add(buffer.copyTo(new SampleBlock(buffer.size())));
+                }
+            }
+        }
+        return streams;
+    }
+
+    public void clearOtherStreams()
+    {
+        synchronized (m_buffer)
+        {
+            m_otherBuffers.clear();
+        }
+    }
+
+    // Whether a watch has sent a summary since connecting, so it counts reps itself.
+    public boolean hasWatchSummaries()
+    {
+        return m_hasSummaries;
+    }
+
+    public synchronized long getNumFrames()
+    {
+        return m_numFrames;
+    }
+
+    public synchronized long getNumBytes()
+    {
+        return m_numBytes;
+    }
+
+    ////////////////////////////////////////
+    // MessageApi.MessageListener
+
+    @Override
+    public void onMessageReceived(MessageEvent event)
+    {
+        if (WatchSummaryDecoder.PATH.equals(event.getPath()))
+        {
+            onSummaryReceived(event.getData());
+            return;
+        }
+        if (!SampleFrameDecoder.PATH.equals(event.getPath()))
+        {
+            return;
+        }
+
+        byte[] frame = event.getData();
+        try
+        {
+            synchronized (m_buffer)
+            {
+                SampleRingBuffer buffer = getBuffer(event.getSourceNodeId());
+                if (buffer == null)
+                {
+                    return;
+                }
+                m_decoder.decode(frame, buffer);
+            }
+        }
+        catch (RuntimeException e)
+        {
+            Log.w(WearSampleReceiver.class.getName(), "dropping bad sample frame: " + e);
+            return;
+        }
+
+        synchronized (this)
+        {
+            ++m_numFrames;
+            m_numBytes += frame.length;
+        }
+    }
+
+    ////////////////////////////////////////
+    // NodeApi.NodeListener
+
+    @Override
+    public void onPeerConnected(Node peer)
+    {
+    }
+
+    @Override
+    public void onPeerDisconnected(Node peer)
+    {
+        synchronized (m_buffer)
+        {
+            m_otherBuffers.remove(peer.getId());
+        }
+    }
+
+    ////////////////////////////////////////
+    // GoogleApiClient.ConnectionCallbacks
+
+    @Override
+    public void onConnected(Bundle connectionHint)
+    {
+        Wearable.MessageApi.addListener(m_client, this);
+        Wearable.NodeApi.addListener(m_client, this);
+        putRawRequest();
+    }
+
+    @Override
+    public void onConnectionSuspended(int cause)
+    {
+    }
+
+    ////////////////////////////////////////
+
+    private static final int MAX_OTHER_NODES = 3;
+    private static final int OTHER_INITIAL_CAPACITY = 60 * 50; // a minute at 50Hz
+
+    private final SampleRingBuffer m_buffer;
+    private final int m_otherCapacity;
+    private final GoogleApiClient m_client;
+    private final SampleFrameDecoder m_decoder = new SampleFrameDecoder(); // used with m_buffer locked
+    private String m_firstNode;                                             // with m_buffer locked
+    private final Map<String, SampleRingBuffer> m_otherBuffers = new LinkedHashMap<>(); // with m_buffer locked
+    private long m_numFrames;
+    private long m_numBytes;
+    private final Handler m_mainHandler = new Handler(Looper.getMainLooper());
+    private volatile SummaryListener m_summaryListener;
+    private volatile boolean m_rawRequested = true;
+    private volatile boolean m_hasSummaries;
+
+    // The buffer for a watch's samples, or null if there are too many watches; with m_buffer locked.
+    private SampleRingBuffer getBuffer(String node)
+    {
+        if (m_firstNode == null)
+        {
+            m_firstNode = node;
+        }
+        if (node.equals(m_firstNode))
+        {
+            return m_buffer;
+        }
+        SampleRingBuffer buffer = m_otherBuffers.get(node);
+        if (buffer == null)
+        {
+            if (m_otherBuffers.size() == MAX_OTHER_NODES)
+            {
+                Log.w(WearSampleReceiver.class.getName(), "dropping samples from another watch: " + node);
+                return null;
+            }
+            buffer = new SampleRingBuffer(Math.min(OTHER_INITIAL_CAPACITY, m_otherCapacity));
+            m_otherBuffers.put(node, buffer);
+        }
+        else if (buffer.size() >= buffer.getCapacity() / 2 && buffer.getCapacity() < m_otherCapacity)
+        {
+            // half full: grow before a frame could overwrite the oldest samples
+            SampleBlock samples = buffer.copyTo(new SampleBlock(buffer.size()));
+            buffer = new SampleRingBuffer(Math.min(2 * buffer.getCapacity(), m_otherCapacity));
+            buffer.add(samples.getTimes(), samples.getValues(), 0, samples.size());
+            m_otherBuffers.put(node, buffer);
+        }
+        return buffer;
+    }
+
+    private void onSummaryReceived(byte[] summary)
+    {
+        final RepResult result = new RepResult();
+        try
+        {
+            WatchSummaryDecoder.decode(summary, result);
+        }
+        catch (RuntimeException e)
+        {
+            Log.w(WearSampleReceiver.class.getName(), "dropping bad watch summary: " + e);
+            return;
+        }
+        m_hasSummaries = true;
+
+        m_mainHandler.post(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        SummaryListener listener = m_summaryListener;
+                        if (listener != null)
+                        {
+                            listener.onWatchSummary(result);
+                        }
+                    }
+                } );
+    }
+
+    private void putRawRequest()
+    {
+        PutDataMapRequest request = PutDataMapRequest.create(WatchSummaryDecoder.RAW_REQUEST_PATH);
+        request.getDataMap().putBoolean(WatchSummaryDecoder.RAW_REQUEST_KEY, m_rawRequested);
+        Wearable.DataApi.putDataItem(m_client, request.asPutDataRequest());
+    }
+}
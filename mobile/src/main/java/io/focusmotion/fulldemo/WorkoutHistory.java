@@ -0,0 +1,561 @@
+package io.focusmotion.trainingdemo;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+// Every analyzed set, kept for range queries and per-movement aggregates.
+//
+// Sets are held in columns of primitive arrays (time, movement, rep count,
+// duration, rep times, variation) sorted by time, so a time range is two
+// binary searches and aggregating it is a scan over a few contiguous arrays
+// rather than over objects. Each movement also has an index of its rows in
+// time order, so "all demo sets in the last 30 days" is found by binary
+// search within that movement's rows alone.
+//
+// On disk the history is an append-only log of fixed-size set records, with
+// a record naming each movement type the first time it's used. Loading and
+// appending happen on a background thread; new sets are visible to queries
+// as soon as they're added. A record truncated by a crash is ignored and
+// overwritten. All methods are thread safe.
+public class WorkoutHistory
+{
+    public static class Aggregate
+    {
+        public int numSets;
+        public int totalReps;
+        public float totalDuration;     // seconds
+        public float meanRepTime;       // over all reps, weighted by each set's rep count
+        public float meanVariation;     // over sets
+
+        public void clear()
+        {
+            numSets = 0;
+            totalReps = 0;
+            totalDuration = 0.0f;
+            meanRepTime = 0.0f;
+            meanVariation = 0.0f;
+        }
+    }
+
+    public WorkoutHistory(File file)
+    {
+        m_file = file;
+    }
+
+    // Read the saved history in the background; sets added meanwhile are kept.
+    public void load()
+    {
+        m_executor.execute(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        readFile();
+                    }
+                } );
+    }
+
+    public void add(long time, String movementType, RepResult result)
+    {
+        add(time, movementType, result.repCount, result.duration, result.meanRepTime, result.internalVariation);
+    }
+
+    public void add(final long time, final String movementType, final int repCount, final float duration,
+                    final float meanRepTime, final float internalVariation)
+    {
+        synchronized (this)
+        {
+            insert(time, getMovementId(movementType), repCount, duration, meanRepTime, internalVariation);
+        }
+
+        m_executor.execute(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            writeSet(time, movementType, repCount, duration, meanRepTime, internalVariation);
+                        }
+                        catch (IOException e)
+                        {
+                            logInfo("could not save set: " + e);
+                        }
+                    }
+                } );
+    }
+
+    public synchronized int size()
+    {
+        return m_size;
+    }
+
+    public synchronized List<String> getMovementTypes()
+    {
+        return Collections.unmodifiableList(new ArrayList<>(m_movementNames));
+    }
+
+    // Number of sets of movementType (or of any movement, if null) with from <= time < to.
+    public synchronized int count(String movementType, long from, long to)
+    {
+        if (movementType == null)
+        {
+            return lowerBound(to) - lowerBound(from);
+        }
+        MovementIndex index = getIndex(movementType);
+        return (index != null ? index.lowerBound(to) - index.lowerBound(from) : 0);
+    }
+
+    // Totals over sets of movementType (or of any movement, if null) with from <= time < to.
+    public synchronized Aggregate aggregate(String movementType, long from, long to, Aggregate out)
+    {
+        out.clear();
+        double repTimeSum = 0.0;
+        double variationSum = 0.0;
+
+        if (movementType == null)
+        {
+            int end = lowerBound(to);
+            for (int row = lowerBound(from); row < end; ++row)
+            {
+                out.totalReps += m_repCounts[row];
+                out.totalDuration += m_durations[row];
+                repTimeSum += m_meanRepTimes[row] * m_repCounts[row];
+                variationSum += m_variations[row];
+                ++out.numSets;
+            }
+        }
+        else
+        {
+            MovementIndex index = getIndex(movementType);
+            if (index != null)
+            {
+                int end = index.lowerBound(to);
+                for (int i = index.lowerBound(from); i < end; ++i)
+                {
+                    int row = index.rows[i];
+                    out.totalReps += m_repCounts[row];
+                    out.totalDuration += m_durations[row];
+                    repTimeSum += m_meanRepTimes[row] * m_repCounts[row];
+                    variationSum += m_variations[row];
+                    ++out.numSets;
+                }
+            }
+        }
+
+        out.meanRepTime = (out.totalReps > 0 ? (float) (repTimeSum / out.totalReps) : 0.0f);
+        out.meanVariation = (out.numSets > 0 ? (float) (variationSum / out.numSets) : 0.0f);
+        return out;
+    }
+
+    // Mean rep time of movementType in each of meanRepTimes.length equal intervals of [from, to);
+    // intervals without reps get 0.
+    public synchronized void getRepTimeTrend(String movementType, long from, long to, float[] meanRepTimes)
+    {
+        int numBuckets = meanRepTimes.length;
+        double[] sums = new double[numBuckets];
+        int[] reps = new int[numBuckets];
+
+        MovementIndex index = getIndex(movementType);
+        if (index != null && to > from)
+        {
+            int end = index.lowerBound(to);
+            for (int i = index.lowerBound(from); i < end; ++i)
+            {
+                int row = index.rows[i];
+                int bucket = (int) ((m_times[row] - from) * numBuckets / (to - from));
+                sums[bucket] += m_meanRepTimes[row] * m_repCounts[row];
+                reps[bucket] += m_repCounts[row];
+            }
+        }
+
+        for (int bucket = 0; bucket < numBuckets; ++bucket)
+        {
+            meanRepTimes[bucket] = (reps[bucket] > 0 ? (float) (sums[bucket] / reps[bucket]) : 0.0f);
+        }
+    }
+
+    // Row numbers (in time order) of sets of movementType with from <= time < to and at least
+    // minRepCount reps and minDuration seconds; returns how many were stored in rows.
+    public synchronized int select(String movementType, long from, long to, int minRepCount, float minDuration, int[] rows)
+    {
+        int numRows = 0;
+        MovementIndex index = getIndex(movementType);
+        if (index != null)
+        {
+            int end = index.lowerBound(to);
+            for (int i = index.lowerBound(from); i < end && numRows < rows.length; ++i)
+            {
+                int row = index.rows[i];
+                if (m_repCounts[row] >= minRepCount && m_durations[row] >= minDuration)
+                {
+                    rows[numRows++] = row;
+                }
+            }
+        }
+        return numRows;
+    }
+
+    public synchronized long getTime(int row)
+    {
+        return m_times[row];
+    }
+
+    public synchronized String getMovementType(int row)
+    {
+        return m_movementNames.get(m_movements[row]);
+    }
+
+    public synchronized int getRepCount(int row)
+    {
+        return m_repCounts[row];
+    }
+
+    public synchronized float getDuration(int row)
+    {
+        return m_durations[row];
+    }
+
+    public synchronized float getMeanRepTime(int row)
+    {
+        return m_meanRepTimes[row];
+    }
+
+    public void shutdown()
+    {
+        m_executor.shutdown();
+    }
+
+    ////////////////////////////////////////
+
+    private static final int MAGIC = 0x464D4831; // "FMH1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final byte RECORD_MOVEMENT = 1;
+    private static final byte RECORD_SET = 2;
+    private static final int SET_RECORD_SIZE = 1 + 8 + 4 + 4 + 4 + 4 + 4;
+    private static final int INITIAL_CAPACITY = 256;
+
+    // rows of one movement, in time order
+    private class MovementIndex
+    {
+        int[] rows = new int[INITIAL_CAPACITY];
+        int size;
+
+        void add(int row)
+        {
+            if (size == rows.length)
+            {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+
+        // first position whose time is >= time
+        int lowerBound(long time)
+        {
+            int low = 0;
+            int high = size;
+            while (low < high)
+            {
+                int mid = (low + high) >>> 1;
+                if (m_times[rows[mid]] < time)
+                {
+                    low = mid + 1;
+                }
+                else
+                {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    private final File m_file;
+    private final ExecutorService m_executor = Executors.newSingleThreadExecutor();
+
+    // columns, sorted by time
+    private long[] m_times = new long[INITIAL_CAPACITY];
+    private int[] m_movements = new int[INITIAL_CAPACITY];
+    private int[] m_repCounts = new int[INITIAL_CAPACITY];
+    private float[] m_durations = new float[INITIAL_CAPACITY];
+    private float[] m_meanRepTimes = new float[INITIAL_CAPACITY];
+    private float[] m_variations = new float[INITIAL_CAPACITY];
+    private int m_size;
+
+    private final List<String> m_movementNames = new ArrayList<>();
+    private final Map<String, Integer> m_movementIds = new HashMap<>();
+    private final List<MovementIndex> m_indexes = new ArrayList<>();
+    private boolean m_indexesValid = true;
+
+    // file state; only used on m_executor
+    private long m_validLength = -1; // up to the end of the last complete record
+    private final Map<String, Integer> m_fileMovementIds = new HashMap<>(); // may differ from m_movementIds
+
+    private int getMovementId(String movementType)
+    {
+        Integer id = m_movementIds.get(movementType);
+        if (id == null)
+        {
+            id = m_movementNames.size();
+            m_movementNames.add(movementType);
+            m_movementIds.put(movementType, id);
+            m_indexes.add(new MovementIndex());
+        }
+        return id;
+    }
+
+    private MovementIndex getIndex(String movementType)
+    {
+        Integer id = m_movementIds.get(movementType);
+        if (id == null)
+        {
+            return null;
+        }
+        if (!m_indexesValid)
+        {
+            // rows moved after an out-of-order insert
+            for (MovementIndex index : m_indexes)
+            {
+                index.size = 0;
+            }
+            for (int row = 0; row < m_size; ++row)
+            {
+                m_indexes.get(m_movements[row]).add(row);
+            }
+            m_indexesValid = true;
+        }
+        return m_indexes.get(id);
+    }
+
+    // first row whose time is >= time
+    private int lowerBound(long time)
+    {
+        int low = 0;
+        int high = m_size;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (m_times[mid] < time)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void insert(long time, int movement, int repCount, float duration, float meanRepTime, float internalVariation)
+    {
+        if (m_size == m_times.length)
+        {
+            int capacity = m_size * 2;
+            m_times = Arrays.copyOf(m_times, capacity);
+            m_movements = Arrays.copyOf(m_movements, capacity);
+            m_repCounts = Arrays.copyOf(m_repCounts, capacity);
+            m_durations = Arrays.copyOf(m_durations, capacity);
+            m_meanRepTimes = Arrays.copyOf(m_meanRepTimes, capacity);
+            m_variations = Arrays.copyOf(m_variations, capacity);
+        }
+
+        // sets almost always arrive in time order; otherwise shift the later rows up
+        int row = m_size;
+        if (m_size > 0 && m_times[m_size - 1] > time)
+        {
+            row = lowerBound(time + 1);
+            int count = m_size - row;
+            System.arraycopy(m_times, row, m_times, row + 1, count);
+            System.arraycopy(m_movements, row, m_movements, row + 1, count);
+            System.arraycopy(m_repCounts, row, m_repCounts, row + 1, count);
+            System.arraycopy(m_durations, row, m_durations, row + 1, count);
+            System.arraycopy(m_meanRepTimes, row, m_meanRepTimes, row + 1, count);
+            System.arraycopy(m_variations, row, m_variations, row + 1, count);
+            m_indexesValid = false;
+        }
+
+        m_times[row] = time;
+        m_movements[row] = movement;
+        m_repCounts[row] = repCount;
+        m_durations[row] = duration;
+        m_meanRepTimes[row] = meanRepTime;
+        m_variations[row] = internalVariation;
+        ++m_size;
+
+        if (m_indexesValid)
+        {
+            m_indexes.get(movement).add(row);
+        }
+    }
+
+    private void readFile()
+    {
+        if (m_validLength >= 0)
+        {
+            return;
+        }
+        long startTime = SystemClock.elapsedRealtime();
+        m_validLength = 0;
+        if (!m_file.exists())
+        {
+            return;
+        }
+
+        int numSets = 0;
+        try
+        {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(m_file)));
+            try
+            {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                {
+                    logInfo("history file is not readable; starting a new one");
+                    return;
+                }
+                m_validLength = HEADER_SIZE;
+
+                List<String> fileMovements = new ArrayList<>();
+                while (true)
+                {
+                    byte type = in.readByte();
+                    if (type == RECORD_MOVEMENT)
+                    {
+                        String name = in.readUTF();
+                        m_fileMovementIds.put(name, fileMovements.size());
+                        fileMovements.add(name);
+                        m_validLength += encodeMovement(name).length;
+                        continue;
+                    }
+
+                    long time = in.readLong();
+                    int movement = in.readInt();
+                    int repCount = in.readInt();
+                    float duration = in.readFloat();
+                    float meanRepTime = in.readFloat();
+                    float internalVariation = in.readFloat();
+                    if (type != RECORD_SET || movement < 0 || movement >= fileMovements.size())
+                    {
+                        logInfo(String.format("ignoring unreadable data at %d", m_validLength));
+                        break;
+                    }
+                    synchronized (this)
+                    {
+                        insert(time, getMovementId(fileMovements.get(movement)), repCount, duration, meanRepTime, internalVariation);
+                    }
+                    m_validLength += SET_RECORD_SIZE;
+                    ++numSets;
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (EOFException e)
+        {
+            // end of file, or a record cut short
+        }
+        catch (IOException e)
+        {
+            logInfo("could not read history: " + e);
+        }
+
+        logInfo(String.format("loaded %d sets in %dms", numSets, SystemClock.elapsedRealtime() - startTime));
+    }
+
+    private void writeSet(long time, String movementType, int repCount, float duration, float meanRepTime,
+                          float internalVariation) throws IOException
+    {
+        if (m_validLength < 0)
+        {
+            readFile();
+        }
+
+        RandomAccessFile out = new RandomAccessFile(m_file, "rw");
+        try
+        {
+            if (m_validLength < HEADER_SIZE)
+            {
+                out.setLength(0);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                m_validLength = HEADER_SIZE;
+                m_fileMovementIds.clear();
+            }
+            out.setLength(m_validLength);
+            out.seek(m_validLength);
+
+            Integer movement = m_fileMovementIds.get(movementType);
+            if (movement == null)
+            {
+                movement = m_fileMovementIds.size();
+                m_fileMovementIds.put(movementType, movement);
+                byte[] movementRecord = encodeMovement(movementType);
+                out.write(movementRecord);
+                m_validLength += movementRecord.length;
+            }
+
+            byte[] record = encodeSet(time, movement, repCount, duration, meanRepTime, internalVariation);
+            out.write(record);
+            m_validLength += record.length;
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static byte[] encodeMovement(String name)
+    {
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(RECORD_MOVEMENT);
+            out.writeUTF(name);
+            out.flush();
+            return bytes.toByteArray();
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] encodeSet(long time, int movement, int repCount, float duration, float meanRepTime, float internalVariation)
+    {
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(SET_RECORD_SIZE);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(RECORD_SET);
+            out.writeLong(time);
+            out.writeInt(movement);
+            out.writeInt(repCount);
+            out.writeFloat(duration);
+            out.writeFloat(meanRepTime);
+            out.writeFloat(internalVariation);
+            out.flush();
+            return bytes.toByteArray();
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void logInfo(String msg)
+    {
+        Log.i(WorkoutHistory.class.getName(), msg);
+    }
+}
@@ -5,9 +5,13 @@ import io.focusmotion.sdk.wear.*;
 import android.app.Activity;
 import android.os.*;
 import android.support.wearable.view.WatchViewStub;
+import android.util.Log;
 import android.view.*;
 import android.widget.*;
 
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataMapItem;
+
 
 public class MainActivity extends Activity implements LocalDeviceListener
 {
@@ -42,6 +46,49 @@ public class MainActivity extends Activity implements LocalDeviceListener
 
         m_device = new LocalDevice(this);
         m_device.addListener(this);
+
+        // raw samples also go to the phone in our own batched, compressed frames
+        m_sender = new WearableSender(this, SampleFrameEncoder.PATH);
+        m_batcher = new SampleBatcher(BATCH_MAX_SAMPLES, BATCH_MAX_DELAY_MS, m_sender);
+        // sensors slow down between sets
+        m_capture = new SampleCapture(this, m_batcher, true);
+
+        if (ON_WATCH_ANALYSIS)
+        {
+            // count reps here and send the phone a summary of each set; raw samples until it asks us to stop, which
+            // saves only our own stream, as the SDK's LocalDevice sends its samples regardless
+            m_repCounter = new WatchRepCounter(
+                    new WatchRepCounter.Listener()
+                    {
+                        @Override
+                        public void onRepCounted(int repCount)
+                        {
+                            // sensor events, and so this, are on the main thread
+                            showRepCount(repCount);
+                        }
+                    } );
+            m_capture.setRepCounter(m_repCounter);
+            m_sender.setDataItemListener(WatchRepCounter.RAW_REQUEST_PATH,
+                    new WearableSender.DataItemListener()
+                    {
+                        @Override
+                        public void onDataItem(DataItem item)
+                        {
+                            final boolean sendRaw = DataMapItem.fromDataItem(item).getDataMap()
+                                    .getBoolean(WatchRepCounter.RAW_REQUEST_KEY, true);
+                            runOnUiThread(
+                                    new Runnable()
+                                    {
+                                        @Override
+                                        public void run()
+                                        {
+                                            m_capture.setSendRaw(sendRaw);
+                                        }
+                                    } );
+                        }
+                    } );
+        }
+        m_sender.connect();
     }
 
     @Override
@@ -55,6 +102,8 @@ public class MainActivity extends Activity implements LocalDeviceListener
     protected void onDestroy()
     {
         super.onDestroy();
+        m_capture.stop();
+        m_sender.disconnect();
         m_device.activityDestroy();
     }
 
@@ -94,6 +143,30 @@ public class MainActivity extends Activity implements LocalDeviceListener
         {
             m_vibrator.vibrate(recording ? 250 : 100);
         }
+
+        if (recording)
+        {
+            if (m_repCounter != null)
+            {
+                m_repCounter.reset();
+                showRepCount(0);
+            }
+            m_capture.start();
+        }
+        else
+        {
+            m_capture.stop();
+            if (m_repCounter != null)
+            {
+                byte[] summary = new byte[WatchRepCounter.SUMMARY_SIZE];
+                m_repCounter.writeSummary(summary);
+                m_sender.send(WatchRepCounter.SUMMARY_PATH, summary);
+                Log.i(MainActivity.class.getName(), "counted " + m_repCounter.getRepCount() + " reps");
+            }
+            Log.i(MainActivity.class.getName(), m_capture.toString());
+            Log.i(MainActivity.class.getName(), m_batcher.toString());
+        }
+
         updateUI();
     }
 
@@ -107,6 +180,14 @@ public class MainActivity extends Activity implements LocalDeviceListener
     private ToggleButton m_recordButton;
     private LocalDevice m_device;
     private Vibrator m_vibrator;
+    private WearableSender m_sender;
+    private SampleBatcher m_batcher;
+    private SampleCapture m_capture;
+    private WatchRepCounter m_repCounter; // if counting on the watch
+
+    private static final int BATCH_MAX_SAMPLES = 50;
+    private static final long BATCH_MAX_DELAY_MS = 1000;
+    private static final boolean ON_WATCH_ANALYSIS = true;
 
     private void updateUI()
     {
@@ -114,6 +195,15 @@ public class MainActivity extends Activity implements LocalDeviceListener
         m_recordButton.setEnabled(m_device.isConnected());
     }
 
+    private void showRepCount(int repCount)
+    {
+        if (m_recordButton != null)
+        {
+            m_recordButton.setTextOn(repCount + " reps");
+            m_recordButton.setChecked(m_device.isRecording()); // refreshes the text
+        }
+    }
+
     private void onClickRecord()
     {
         if (m_device.isRecording())
@@ -0,0 +1,91 @@
+package io.focusmotion.trainingdemo;
+
+
+// Decides from the accelerometer alone whether the wearer is mid-set or
+// resting, cheaply enough to run on every sample on the watch.
+//
+// Gravity is tracked with a slow low-pass filter; motion energy is a moving
+// average of the squared acceleration left over. The detector becomes active
+// as soon as the energy crosses ACTIVE_ENERGY, and only returns to rest once
+// it has stayed below REST_ENERGY for REST_HOLD_MS, so the pause at the top
+// of a rep doesn't count as rest. Both filters take the time between samples
+// into account, so the detector behaves the same at any sampling rate.
+public class MotionEnergyDetector
+{
+    // Feed one accelerometer sample; returns true while active.
+    public boolean update(long time, float ax, float ay, float az)
+    {
+        if (m_lastTime < 0)
+        {
+            m_gravityX = ax;
+            m_gravityY = ay;
+            m_gravityZ = az;
+            m_lastTime = time;
+            m_quietSince = time;
+            return m_active;
+        }
+
+        float dt = Math.max(time - m_lastTime, 1) / 1000.0f;
+        m_lastTime = time;
+
+        float gravityAlpha = dt / (GRAVITY_TIME + dt);
+        m_gravityX += gravityAlpha * (ax - m_gravityX);
+        m_gravityY += gravityAlpha * (ay - m_gravityY);
+        m_gravityZ += gravityAlpha * (az - m_gravityZ);
+
+        float mx = ax - m_gravityX;
+        float my = ay - m_gravityY;
+        float mz = az - m_gravityZ;
+        float energyAlpha = dt / (ENERGY_TIME + dt);
+        m_energy += energyAlpha * (mx * mx + my * my + mz * mz - m_energy);
+
+        if (m_energy >= REST_ENERGY)
+        {
+            m_quietSince = time;
+        }
+        if (!m_active && m_energy >= ACTIVE_ENERGY)
+        {
+            m_active = true;
+        }
+        else if (m_active && time - m_quietSince >= REST_HOLD_MS)
+        {
+            m_active = false;
+        }
+        return m_active;
+    }
+
+    public boolean isActive()
+    {
+        return m_active;
+    }
+
+    // Motion energy, in (m/s^2)^2.
+    public float getEnergy()
+    {
+        return m_energy;
+    }
+
+    // Start over, in the given state.
+    public void reset(boolean active)
+    {
+        m_lastTime = -1;
+        m_energy = 0.0f;
+        m_active = active;
+    }
+
+    ////////////////////////////////////////
+
+    private static final float GRAVITY_TIME = 2.0f;     // seconds
+    private static final float ENERGY_TIME = 0.25f;     // seconds
+    private static final float ACTIVE_ENERGY = 1.0f;    // (m/s^2)^2
+    private static final float REST_ENERGY = 0.5f;      // (m/s^2)^2
+    private static final long REST_HOLD_MS = 3000;
+
+    private long m_lastTime = -1;
+    private float m_gravityX;
+    private float m_gravityY;
+    private float m_gravityZ;
+    private float m_energy;
+    private boolean m_active;
+    private long m_quietSince;
+}
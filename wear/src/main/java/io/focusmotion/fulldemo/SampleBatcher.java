@@ -0,0 +1,89 @@
+package io.focusmotion.trainingdemo;
+
+import android.os.SystemClock;
+
+
+// Coalesces samples into frames of at most maxSamples samples or maxDelayMs
+// of latency, whichever comes first, and hands each encoded frame to a Sender.
+//
+// All buffers are preallocated, so adding samples doesn't allocate; only the
+// frame handed to the sender is a new array, since sending is asynchronous.
+public class SampleBatcher
+{
+    public interface Sender
+    {
+        void send(byte[] frame);
+    }
+
+    public SampleBatcher(int maxSamples, long maxDelayMs, Sender sender)
+    {
+        m_maxSamples = maxSamples;
+        m_maxDelayMs = maxDelayMs;
+        m_sender = sender;
+        m_times = new long[maxSamples];
+        m_values = new float[maxSamples * SampleFrameEncoder.NUM_CHANNELS];
+        m_frame = new byte[SampleFrameEncoder.getMaxFrameSize(maxSamples)];
+    }
+
+    public synchronized void add(long time, float[] accel, float[] gyro)
+    {
+        if (m_count == 0)
+        {
+            m_firstAddTime = SystemClock.elapsedRealtime();
+        }
+
+        m_times[m_count] = time;
+        int base = m_count * SampleFrameEncoder.NUM_CHANNELS;
+        System.arraycopy(accel, 0, m_values, base, 3);
+        System.arraycopy(gyro, 0, m_values, base + 3, 3);
+        ++m_count;
+
+        if (m_count == m_maxSamples || SystemClock.elapsedRealtime() - m_firstAddTime >= m_maxDelayMs)
+        {
+            flush();
+        }
+    }
+
+    // Send whatever is buffered now.
+    public synchronized void flush()
+    {
+        if (m_count == 0)
+        {
+            return;
+        }
+
+        int length = m_encoder.encode(m_times, m_values, m_count, m_frame);
+        byte[] frame = new byte[length];
+        System.arraycopy(m_frame, 0, frame, 0, length);
+
+        m_numSamples += m_count;
+        m_numFrames += 1;
+        m_numBytes += length;
+        m_count = 0;
+
+        m_sender.send(frame);
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("SampleBatcher: %d samples in %d frames, %d bytes (%.1f bytes/sample)",
+                m_numSamples, m_numFrames, m_numBytes, (float) m_numBytes / Math.max(m_numSamples, 1));
+    }
+
+    ////////////////////////////////////////
+
+    private final int m_maxSamples;
+    private final long m_maxDelayMs;
+    private final Sender m_sender;
+    private final SampleFrameEncoder m_encoder = new SampleFrameEncoder();
+    private final long[] m_times;
+    private final float[] m_values;
+    private final byte[] m_frame;
+    private int m_count;
+    private long m_firstAddTime;
+
+    private long m_numSamples;
+    private long m_numFrames;
+    private long m_numBytes;
+}
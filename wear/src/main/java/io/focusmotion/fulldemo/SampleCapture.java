@@ -0,0 +1,196 @@
+package io.focusmotion.trainingdemo;
+
+import android.content.Context;
+import android.hardware.*;
+import android.os.SystemClock;
+
+
+// Reads the watch's accelerometer and gyro and passes combined samples to a
+// SampleBatcher; each accelerometer event produces one sample, paired with
+// the most recent gyro reading.
+//
+// In adaptive mode a MotionEnergyDetector watches the accelerometer, and
+// during rest between sets the gyro is turned off (its channels read zero)
+// and our accelerometer listener drops to REST_PERIOD_US. Only the first is
+// a saving in sensor power: the gyro is the costlier sensor, and nothing
+// else keeps it on. The accelerometer stays powered at the SDK's own rate
+// for its stream, so the lower rate saves only the events, encoding and
+// radio time of our stream, and processing on the phone. Capture starts at
+// the full rate, so the start of the first set is never missed, and returns
+// to it as soon as motion picks up again. toString() reports how long the
+// gyro was on.
+//
+// Samples can also go to a WatchRepCounter, for counting on the watch; then
+// sending them to the phone can be turned off with setSendRaw(), from the
+// next capture on, so the phone never gets part of a recording.
+//
+// This is a second stream next to the FocusMotion SDK's own, which the SDK's
+// LocalDevice sends regardless: our listeners add sensor events, encoding and
+// radio time on top of it. So the sensors are only registered for what is
+// used: the gyro only while raw samples are sent (the rep counter uses the
+// accelerometer alone), and nothing at all when there is no rep counter and
+// no raw samples are wanted.
+//
+// Must be used from the main thread, where the sensor events arrive too.
+public class SampleCapture implements SensorEventListener
+{
+    public SampleCapture(Context context, SampleBatcher batcher, boolean adaptive)
+    {
+        m_sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        m_accelerometer = m_sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+        m_gyro = m_sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
+        m_batcher = batcher;
+        m_adaptive = adaptive;
+    }
+
+    // Also count reps in every accelerometer sample; set before start().
+    public void setRepCounter(WatchRepCounter repCounter)
+    {
+        m_repCounter = repCounter;
+    }
+
+    // Whether samples go to the batcher. Turning them on takes effect at once, so a recording the phone wants them
+    // for isn't missed even if the request comes late; turning them off, once the current capture stops.
+    public void setSendRaw(boolean sendRaw)
+    {
+        m_pendingSendRaw = sendRaw;
+        if (sendRaw && !m_sendRaw)
+        {
+            m_sendRaw = true;
+            if (m_capturing)
+            {
+                register();
+            }
+        }
+        else if (!m_capturing)
+        {
+            m_sendRaw = sendRaw;
+        }
+    }
+
+    public void start()
+    {
+        m_capturing = true;
+        m_active = true;
+        m_detector.reset(true);
+        register();
+    }
+
+    public void stop()
+    {
+        m_capturing = false;
+        m_sensorManager.unregisterListener(this);
+        setGyroOn(false);
+        m_batcher.flush();
+        m_sendRaw = m_pendingSendRaw;
+    }
+
+    @Override
+    public String toString()
+    {
+        long gyroOnMs = m_gyroOnMs + (m_gyroOnSince >= 0 ? SystemClock.elapsedRealtime() - m_gyroOnSince : 0);
+        return String.format("SampleCapture: %d samples, %d at the rest rate, %d rate changes; gyro on for %ds",
+                m_numSamples, m_numRestSamples, m_numRateChanges, gyroOnMs / 1000);
+    }
+
+    ////////////////////////////////////////
+    // SensorEventListener
+
+    @Override
+    public void onSensorChanged(SensorEvent event)
+    {
+        if (event.sensor.getType() == Sensor.TYPE_GYROSCOPE)
+        {
+            System.arraycopy(event.values, 0, m_gyroValues, 0, 3);
+        }
+        else
+        {
+            long time = event.timestamp / 1000000;
+            System.arraycopy(event.values, 0, m_accelValues, 0, 3);
+            if (m_sendRaw)
+            {
+                m_batcher.add(time, m_accelValues, m_gyroValues);
+            }
+            if (m_repCounter != null)
+            {
+                m_repCounter.add(time, m_accelValues[0], m_accelValues[1], m_accelValues[2]);
+            }
+
+            ++m_numSamples;
+            if (!m_active)
+            {
+                ++m_numRestSamples;
+            }
+
+            if (m_adaptive && m_detector.update(time, m_accelValues[0], m_accelValues[1], m_accelValues[2]) != m_active)
+            {
+                m_active = !m_active;
+                ++m_numRateChanges;
+                register();
+            }
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy)
+    {
+    }
+
+    ////////////////////////////////////////
+
+    private static final int ACTIVE_PERIOD_US = 20000;  // 50Hz, as SENSOR_DELAY_GAME
+    private static final int REST_PERIOD_US = 100000;   // 10Hz
+
+    private final SensorManager m_sensorManager;
+    private final Sensor m_accelerometer;
+    private final Sensor m_gyro;
+    private final SampleBatcher m_batcher;
+    private final boolean m_adaptive;
+    private final MotionEnergyDetector m_detector = new MotionEnergyDetector();
+    private final float[] m_accelValues = new float[3];
+    private final float[] m_gyroValues = new float[3];
+    private boolean m_active;
+    private WatchRepCounter m_repCounter;
+    private boolean m_sendRaw = true;
+    private boolean m_pendingSendRaw = true; // m_sendRaw from the next stop() on
+    private boolean m_capturing;
+
+    private long m_numSamples;
+    private long m_numRestSamples;
+    private long m_numRateChanges;
+    private long m_gyroOnMs;            // while capturing, up to m_gyroOnSince
+    private long m_gyroOnSince = -1;    // elapsed realtime the gyro was registered, or -1 if it isn't
+
+    // (re)register the sensors that are used, at the rate for the current state
+    private void register()
+    {
+        m_sensorManager.unregisterListener(this);
+        boolean gyro = (m_gyro != null && m_active && m_sendRaw);
+        if (m_accelerometer != null && (m_sendRaw || m_repCounter != null))
+        {
+            m_sensorManager.registerListener(this, m_accelerometer, (m_active ? ACTIVE_PERIOD_US : REST_PERIOD_US));
+        }
+        if (gyro)
+        {
+            m_sensorManager.registerListener(this, m_gyro, ACTIVE_PERIOD_US);
+        }
+        else
+        {
+            m_gyroValues[0] = m_gyroValues[1] = m_gyroValues[2] = 0.0f;
+        }
+        setGyroOn(gyro);
+    }
+
+    private void setGyroOn(boolean on)
+    {
+        if (on && m_gyroOnSince < 0)
+        {
+            m_gyroOnSince = SystemClock.elapsedRealtime();
+        }
+        else if (!on && m_gyroOnSince >= 0)
+        {
+            m_gyroOnMs += SystemClock.elapsedRealtime() - m_gyroOnSince;
+            m_gyroOnSince = -1;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.focusmotion.trainingdemo;
+
+
+// Encodes a batch of IMU samples into a compact frame for sending to the phone.
+//
+// Frame layout:
+//   byte version, varint sample count, varint first timestamp (ms),
+//   then per sample: zigzag varint timestamp delta, and for each of the
+//   NUM_CHANNELS channels, the zigzag varint delta of the quantized value
+//   from the previous sample.
+// Values are quantized to ACCEL_RESOLUTION / GYRO_RESOLUTION, so smooth
+// motion usually takes one or two bytes per channel.
+//
+// NOTE: must match SampleFrameDecoder in the mobile module; the benchmark
+// module's SampleFrameLoopbackTest checks that they do.
+public class SampleFrameEncoder
+{
+    public static final String PATH = "/focusmotion/samples";
+    public static final byte VERSION = 1;
+    public static final float ACCEL_RESOLUTION = 0.01f; // m/s^2
+    public static final float GYRO_RESOLUTION = 0.001f; // rad/s
+    public static final int NUM_CHANNELS = 6; // accelerometer x/y/z, gyro x/y/z
+
+    // Largest frame that count samples can encode to.
+    public static int getMaxFrameSize(int count)
+    {
+        return 1 + 2 * MAX_VARINT_BYTES + count * (1 + NUM_CHANNELS) * MAX_VARINT_BYTES;
+    }
+
+    // Encode count samples (values holds NUM_CHANNELS interleaved values per sample) into out; returns the frame length.
+    public int encode(long[] times, float[] values, int count, byte[] out)
+    {
+        m_pos = 0;
+        out[m_pos++] = VERSION;
+        putUnsigned(out, count);
+        putUnsigned(out, count > 0 ? times[0] : 0);
+
+        long prevTime = (count > 0 ? times[0] : 0);
+        for (int channel = 0; channel < NUM_CHANNELS; ++channel)
+        {
+            m_prevValues[channel] = 0;
+        }
+
+        for (int sample = 0; sample < count; ++sample)
+        {
+            putSigned(out, times[sample] - prevTime);
+            prevTime = times[sample];
+
+            for (int channel = 0; channel < NUM_CHANNELS; ++channel)
+            {
+                float resolution = (channel < 3 ? ACCEL_RESOLUTION : GYRO_RESOLUTION);
+                int value = Math.round(values[sample * NUM_CHANNELS + channel] / resolution);
+                putSigned(out, value - m_prevValues[channel]);
+                m_prevValues[channel] = value;
+            }
+        }
+        return m_pos;
+    }
+
+    ////////////////////////////////////////
+
+    private static final int MAX_VARINT_BYTES = 10;
+
+    private final int[] m_prevValues = new int[NUM_CHANNELS];
+    private int m_pos;
+
+    private void putUnsigned(byte[] out, long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out[m_pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[m_pos++] = (byte) value;
+    }
+
+    private void putSigned(byte[] out, long value)
+    {
+        putUnsigned(out, (value << 1) ^ (value >> 63));
+    }
+}
@@ -0,0 +1,182 @@
+package io.focusmotion.trainingdemo;
+
+
+// Counts reps on the watch as samples arrive, so routine sets only need a
+// summary sent to the phone instead of every sample.
+//
+// Everything per sample is integer arithmetic on fixed arrays: the squared
+// acceleration magnitude (in 1/64 m/s^2 units) is smoothed with a short
+// moving sum, its slowly moving mean removed with a shift-based exponential
+// filter, and the amplitude tracked the same way. A rep is counted when the
+// signal rises above half the amplitude after having dropped below minus half
+// of it (a Schmitt trigger, so noise around zero doesn't count), at least
+// MIN_REP_MS after the previous rep and only while the amplitude is above a
+// noise floor. Nothing is allocated after construction.
+//
+// The summary has the same fields as the SDK's AnalyzerResult; its layout,
+// all big-endian:
+//   byte version, int repCount, int duration (ms), int mean, min and max rep
+//   time (ms), float internalVariation
+//
+// NOTE: must match WatchSummaryDecoder in the mobile module.
+public class WatchRepCounter
+{
+    public static final String SUMMARY_PATH = "/focusmotion/summary";
+    public static final String RAW_REQUEST_PATH = "/focusmotion/raw-request"; // a DataItem
+    public static final String RAW_REQUEST_KEY = "sendRaw";                   // boolean; raw samples are sent if absent
+    public static final int SUMMARY_SIZE = 1 + 5 * 4 + 4;
+
+    public interface Listener
+    {
+        void onRepCounted(int repCount);
+    }
+
+    public WatchRepCounter(Listener listener)
+    {
+        m_listener = listener;
+    }
+
+    public void reset()
+    {
+        m_numSamples = 0;
+        m_smoothIndex = 0;
+        m_smoothSum = 0;
+        for (int i = 0; i < SMOOTH_SAMPLES; ++i)
+        {
+            m_smooth[i] = 0;
+        }
+        m_armed = false;
+        m_repCount = 0;
+        m_intervalSum = 0;
+        m_intervalSquares = 0;
+        m_minInterval = Integer.MAX_VALUE;
+        m_maxInterval = 0;
+    }
+
+    public void add(long time, float ax, float ay, float az)
+    {
+        int x = (int) (ax * SCALE);
+        int y = (int) (ay * SCALE);
+        int z = (int) (az * SCALE);
+        int magnitude = (x * x + y * y + z * z) >> MAGNITUDE_SHIFT;
+
+        m_smoothSum += magnitude - m_smooth[m_smoothIndex];
+        m_smooth[m_smoothIndex] = magnitude;
+        m_smoothIndex = (m_smoothIndex + 1) % SMOOTH_SAMPLES;
+
+        if (m_numSamples == 0)
+        {
+            m_firstTime = time;
+        }
+        m_lastTime = time;
+        if (++m_numSamples < SMOOTH_SAMPLES)
+        {
+            return;
+        }
+        if (m_numSamples == SMOOTH_SAMPLES)
+        {
+            // start the mean from the first full window, not from zero
+            m_mean = m_smoothSum << FRACTION_BITS;
+            m_amplitude = 0;
+        }
+
+        m_mean += ((m_smoothSum << FRACTION_BITS) - m_mean) >> MEAN_SHIFT;
+        int signal = m_smoothSum - (m_mean >> FRACTION_BITS);
+        int level = Math.abs(signal) << FRACTION_BITS;
+        m_amplitude += (level - m_amplitude) >> (level > m_amplitude ? ATTACK_SHIFT : DECAY_SHIFT);
+        int threshold = m_amplitude >> (FRACTION_BITS + 1);
+        if (threshold < NOISE_FLOOR)
+        {
+            m_armed = false;
+            return;
+        }
+
+        if (signal < -threshold)
+        {
+            m_armed = true;
+        }
+        else if (m_armed && signal > threshold && (m_repCount == 0 || time - m_lastRepTime >= MIN_REP_MS))
+        {
+            m_armed = false;
+            if (m_repCount > 0)
+            {
+                int interval = (int) (time - m_lastRepTime);
+                m_intervalSum += interval;
+                m_intervalSquares += (long) interval * interval;
+                m_minInterval = Math.min(m_minInterval, interval);
+                m_maxInterval = Math.max(m_maxInterval, interval);
+            }
+            m_lastRepTime = time;
+            ++m_repCount;
+            m_listener.onRepCounted(m_repCount);
+        }
+    }
+
+    public int getRepCount()
+    {
+        return m_repCount;
+    }
+
+    // Write the summary of the set so far into out; returns SUMMARY_SIZE.
+    public int writeSummary(byte[] out)
+    {
+        int numIntervals = Math.max(m_repCount - 1, 0);
+        int mean = (numIntervals > 0 ? (int) (m_intervalSum / numIntervals) : 0);
+        float variation = 0.0f;
+        if (numIntervals > 0 && mean > 0)
+        {
+            double variance = Math.max(0.0, (double) m_intervalSquares / numIntervals - (double) mean * mean);
+            variation = (float) (Math.sqrt(variance) / mean);
+        }
+
+        int pos = 0;
+        out[pos++] = VERSION;
+        pos = putInt(out, pos, m_repCount);
+        pos = putInt(out, pos, (m_numSamples > 0 ? (int) (m_lastTime - m_firstTime) : 0));
+        pos = putInt(out, pos, mean);
+        pos = putInt(out, pos, (numIntervals > 0 ? m_minInterval : 0));
+        pos = putInt(out, pos, m_maxInterval);
+        pos = putInt(out, pos, Float.floatToIntBits(variation));
+        return pos;
+    }
+
+    ////////////////////////////////////////
+
+    private static final byte VERSION = 1;
+    private static final float SCALE = 64.0f;       // fixed-point units per m/s^2
+    private static final int MAGNITUDE_SHIFT = 6;   // keeps the smoothed sum well inside an int
+    private static final int SMOOTH_SAMPLES = 5;    // 0.1s at 50Hz
+    private static final int FRACTION_BITS = 4;     // extra precision of the filters
+    private static final int MEAN_SHIFT = 8;        // mean follows over about 256 samples (5s)
+    private static final int ATTACK_SHIFT = 4;      // amplitude rises over about 16 samples
+    private static final int DECAY_SHIFT = 7;       // and falls over about 128
+    private static final int NOISE_FLOOR = 1500;    // in smoothed units; below this, the wrist is still
+    private static final long MIN_REP_MS = 500;
+
+    private final Listener m_listener;
+    private final int[] m_smooth = new int[SMOOTH_SAMPLES];
+    private int m_smoothIndex;
+    private int m_smoothSum;
+    private int m_numSamples;
+    private long m_firstTime;
+    private long m_lastTime;
+    private int m_mean;         // with FRACTION_BITS
+    private int m_amplitude;    // with FRACTION_BITS
+    private boolean m_armed;
+
+    private int m_repCount;
+    private long m_lastRepTime;
+    private long m_intervalSum;
+    private long m_intervalSquares;
+    private int m_minInterval = Integer.MAX_VALUE;
+    private int m_maxInterval;
+
+    private static int putInt(byte[] out, int pos, int value)
+    {
+        out[pos] = (byte) (value >>> 24);
+        out[pos + 1] = (byte) (value >>> 16);
+        out[pos + 2] = (byte) (value >>> 8);
+        out[pos + 3] = (byte) value;
+        return pos + 4;
+    }
+}
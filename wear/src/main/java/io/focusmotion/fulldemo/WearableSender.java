@@ -0,0 +1,183 @@
+package io.focusmotion.trainingdemo;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.google.android.gms.common.api.*;
+import com.google.android.gms.wearable.*;
+
+import java.util.*;
+
+
+// Sends messages to the connected phone through the Wearable MessageApi, and
+// passes a DataItem the phone puts to an optional listener.
+//
+// The nodes to send to are fetched when the client connects and then kept up
+// to date by a NodeListener, so a phone that connects later, or reconnects
+// after going out of range, is sent to as well.
+public class WearableSender implements SampleBatcher.Sender, GoogleApiClient.ConnectionCallbacks, NodeApi.NodeListener,
+        DataApi.DataListener
+{
+    public interface DataItemListener
+    {
+        // called on a binder thread
+        void onDataItem(DataItem item);
+    }
+
+    public WearableSender(Context context, String path)
+    {
+        m_path = path;
+        m_client = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .addConnectionCallbacks(this)
+                .build();
+    }
+
+    public void connect()
+    {
+        m_client.connect();
+    }
+
+    public void disconnect()
+    {
+        if (m_client.isConnected())
+        {
+            Wearable.NodeApi.removeListener(m_client, this);
+            if (m_dataItemListener != null)
+            {
+                Wearable.DataApi.removeListener(m_client, this);
+            }
+        }
+        m_client.disconnect();
+    }
+
+    // Receive the DataItem at path once connected, if there is one, and again whenever it changes; set before
+    // connect(). The item stays put while this app isn't running, so nothing the phone puts there is missed.
+    public void setDataItemListener(String path, DataItemListener listener)
+    {
+        m_dataItemPath = path;
+        m_dataItemListener = listener;
+    }
+
+    // Send data on another path than the one given to the constructor.
+    public void send(String path, byte[] data)
+    {
+        if (!m_client.isConnected())
+        {
+            return;
+        }
+
+        for (String nodeId : m_nodeIds)
+        {
+            Wearable.MessageApi.sendMessage(m_client, nodeId, path, data);
+        }
+    }
+
+    ////////////////////////////////////////
+    // SampleBatcher.Sender
+
+    @Override
+    public void send(byte[] frame)
+    {
+        send(m_path, frame);
+    }
+
+    ////////////////////////////////////////
+    // GoogleApiClient.ConnectionCallbacks
+
+    @Override
+    public void onConnected(Bundle connectionHint)
+    {
+        if (m_dataItemListener != null)
+        {
+            Wearable.DataApi.addListener(m_client, this);
+            Uri uri = new Uri.Builder().scheme(PutDataRequest.WEAR_URI_SCHEME).path(m_dataItemPath).build();
+            Wearable.DataApi.getDataItems(m_client, uri).setResultCallback(
+                    new ResultCallback<DataItemBuffer>()
+                    {
+                        @Override
+                        public void onResult(DataItemBuffer items)
+                        {
+                            for (DataItem item : items)
+                            {
+                                m_dataItemListener.onDataItem(item);
+                            }
+                            items.release();
+                        }
+                    } );
+        }
+        // listen first, so a node that connects while the query runs isn't missed
+        Wearable.NodeApi.addListener(m_client, this);
+        Wearable.NodeApi.getConnectedNodes(m_client).setResultCallback(
+                new ResultCallback<NodeApi.GetConnectedNodesResult>()
+                {
+                    @Override
+                    public void onResult(NodeApi.GetConnectedNodesResult result)
+                    {
+                        for (Node node : result.getNodes())
+                        {
+                            onPeerConnected(node);
+                        }
+                    }
+                } );
+    }
+
+    @Override
+    public void onConnectionSuspended(int cause)
+    {
+    }
+
+    ////////////////////////////////////////
+    // NodeApi.NodeListener
+
+    @Override
+    public void onPeerConnected(Node peer)
+    {
+        synchronized (this)
+        {
+            if (!m_nodeIds.contains(peer.getId()))
+            {
+                List<String> nodeIds = new ArrayList<>(m_nodeIds);
+                nodeIds.add(peer.getId());
+                m_nodeIds = nodeIds;
+            }
+        }
+    }
+
+    @Override
+    public void onPeerDisconnected(Node peer)
+    {
+        synchronized (this)
+        {
+            List<String> nodeIds = new ArrayList<>(m_nodeIds);
+            nodeIds.remove(peer.getId());
+            m_nodeIds = nodeIds;
+        }
+    }
+
+    ////////////////////////////////////////
+    // DataApi.DataListener
+
+    @Override
+    public void onDataChanged(DataEventBuffer events)
+    {
+        for (DataEvent event : events)
+        {
+            DataItem item = event.getDataItem();
+            if (event.getType() == DataEvent.TYPE_CHANGED && m_dataItemPath.equals(item.getUri().getPath()))
+            {
+                m_dataItemListener.onDataItem(item);
+            }
+        }
+        events.release();
+    }
+
+    ////////////////////////////////////////
+
+    private final String m_path;
+    private final GoogleApiClient m_client;
+    private String m_dataItemPath;
+    private DataItemListener m_dataItemListener;
+    private volatile List<String> m_nodeIds = Collections.emptyList(); // replaced, not changed, under this object's lock
+}